@@ -0,0 +1,52 @@
+package com.endava.mentorship2022.benchmark;
+
+import com.endava.mentorship2022.model.User;
+import com.endava.mentorship2022.service.CartItemService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+// Adds a product to the cart of a user and removes it again, going round the users and the products
+// that are in no cart, so the carts keep their seeded size
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CartItemServiceBenchmark {
+
+    private static final int FIRST_PRODUCT_IN_NO_CART = SeededShop.USERS * SeededShop.CART_LINES_PER_USER;
+
+    private SeededShop shop;
+
+    private CartItemService cartItemService;
+
+    private int next;
+
+    @Setup
+    public void setUp(SeededShop shop) {
+        this.shop = shop;
+        cartItemService = shop.bean(CartItemService.class);
+    }
+
+    @Benchmark
+    public void addProductToCart(Blackhole blackhole) {
+        int index = next++ & Integer.MAX_VALUE;
+        User user = shop.user(index);
+        long productId = shop.product(FIRST_PRODUCT_IN_NO_CART
+                + index % (SeededShop.PRODUCTS - FIRST_PRODUCT_IN_NO_CART)).getId();
+        blackhole.consume(cartItemService.addProductToCart(user, productId, (short) 1));
+        blackhole.consume(cartItemService.removeProductFromCart(user, productId));
+    }
+}
@@ -0,0 +1,54 @@
+package com.endava.mentorship2022.benchmark;
+
+import com.endava.mentorship2022.model.Role;
+import com.endava.mentorship2022.model.User;
+import com.endava.mentorship2022.model.UserStatus;
+import com.endava.mentorship2022.security.MyUserDetails;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.security.core.GrantedAuthority;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+// The authorities are read on every authorized request, the details are built when a user is not cached.
+// Needs no database, the user is built in memory.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MyUserDetailsBenchmark {
+
+    private User user;
+
+    private MyUserDetails userDetails;
+
+    @Setup
+    public void setUp() {
+        user = new User(1L, "Buyer", "One", "buyer@example.com", "hash", "Strada 1", "0700000000",
+                LocalDate.of(1990, 1, 1), UserStatus.ACTIVE, Set.of(new Role("USER"), new Role("ADMIN")));
+        userDetails = new MyUserDetails(user);
+    }
+
+    @Benchmark
+    public Collection<? extends GrantedAuthority> getAuthorities() {
+        return userDetails.getAuthorities();
+    }
+
+    @Benchmark
+    public MyUserDetails newUserDetails() {
+        return new MyUserDetails(user);
+    }
+}
@@ -0,0 +1,60 @@
+package com.endava.mentorship2022.benchmark;
+
+import com.endava.mentorship2022.model.CartItem;
+import com.endava.mentorship2022.model.Order;
+import com.endava.mentorship2022.model.User;
+import com.endava.mentorship2022.service.OrderService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Placing an order from a cart: stock reservation, total, order lines and their inserts.
+// Every order is rolled back, so the stock and the order history stay as seeded.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OrderServiceBenchmark {
+
+    private OrderService orderService;
+
+    private TransactionTemplate transactionTemplate;
+
+    private User user;
+
+    private List<CartItem> cartItems;
+
+    @Setup
+    public void setUp(SeededShop shop) {
+        orderService = shop.bean(OrderService.class);
+        transactionTemplate = new TransactionTemplate(shop.bean(PlatformTransactionManager.class));
+        user = shop.user(0);
+        cartItems = new ArrayList<>();
+        for (int i = 0; i < SeededShop.CART_LINES_PER_USER; i++) {
+            cartItems.add(new CartItem(0, (short) (1 + i), user, shop.product(i)));
+        }
+    }
+
+    @Benchmark
+    public Order createOrder() {
+        return transactionTemplate.execute(status -> {
+            status.setRollbackOnly();
+            return orderService.createOrder(user, cartItems);
+        });
+    }
+}
@@ -0,0 +1,46 @@
+package com.endava.mentorship2022.benchmark;
+
+import com.endava.mentorship2022.model.Product;
+import com.endava.mentorship2022.service.ProductService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// A page of the catalog sorted by name, near the start and near the end of the seeded products
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProductServiceBenchmark {
+
+    @Param({"1", "200"})
+    private int pageNum;
+
+    @Param({"20", "100"})
+    private int pageSize;
+
+    private ProductService productService;
+
+    @Setup
+    public void setUp(SeededShop shop) {
+        productService = shop.bean(ProductService.class);
+    }
+
+    @Benchmark
+    public List<Product> findAllByPage() {
+        return productService.findAllByPage(pageNum, pageSize, "name", "asc");
+    }
+}
@@ -0,0 +1,151 @@
+package com.endava.mentorship2022.benchmark;
+
+import com.endava.mentorship2022.Mentorship2022Application;
+import com.endava.mentorship2022.model.CartItem;
+import com.endava.mentorship2022.model.Category;
+import com.endava.mentorship2022.model.Order;
+import com.endava.mentorship2022.model.OrderDetail;
+import com.endava.mentorship2022.model.Product;
+import com.endava.mentorship2022.model.Role;
+import com.endava.mentorship2022.model.TechnicalDetail;
+import com.endava.mentorship2022.model.User;
+import com.endava.mentorship2022.model.UserStatus;
+import com.endava.mentorship2022.repository.CartItemRepository;
+import com.endava.mentorship2022.repository.CategoryRepository;
+import com.endava.mentorship2022.repository.OrderRepository;
+import com.endava.mentorship2022.repository.ProductRepository;
+import com.endava.mentorship2022.repository.UserRepository;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
+
+// The application on the in-memory H2 database of the tests, seeded once per fork with a catalog, users,
+// their carts and an order history of a few months
+@State(Scope.Benchmark)
+public class SeededShop {
+
+    public static final int CATEGORIES = 50;
+
+    public static final int PRODUCTS = 5_000;
+
+    public static final int DETAILS_PER_PRODUCT = 4;
+
+    public static final int USERS = 1_000;
+
+    public static final int CART_LINES_PER_USER = 3;
+
+    public static final int ORDERS = 5_000;
+
+    public static final int LINES_PER_ORDER = 3;
+
+    private static final int CHUNK = 1_000;
+
+    private ConfigurableApplicationContext context;
+
+    private List<Product> products;
+
+    private List<User> users;
+
+    private List<Order> orders;
+
+    @Setup
+    public void start() {
+        context = new SpringApplicationBuilder(Mentorship2022Application.class)
+                .profiles("h2")
+                .properties("server.port=0", "spring.main.banner-mode=off", "logging.level.root=WARN",
+                        "jdbc.statistics.enabled=false")
+                .run();
+        seed();
+    }
+
+    @TearDown
+    public void stop() {
+        context.close();
+    }
+
+    public <T> T bean(Class<T> type) {
+        return context.getBean(type);
+    }
+
+    public Product product(int index) {
+        return products.get(index % products.size());
+    }
+
+    public User user(int index) {
+        return users.get(index % users.size());
+    }
+
+    public Order order(int index) {
+        return orders.get(index % orders.size());
+    }
+
+    private void seed() {
+        List<Category> categories = new ArrayList<>();
+        CategoryRepository categoryRepository = bean(CategoryRepository.class);
+        Category parent = categoryRepository.save(new Category(0, "Coffee", "coffee", null));
+        for (int i = 0; i < CATEGORIES; i++) {
+            categories.add(categoryRepository.save(new Category(0, "Category " + i, "category-" + i, parent)));
+        }
+
+        products = new ArrayList<>();
+        for (int i = 0; i < PRODUCTS; i++) {
+            Product product = new Product(0, "Product " + i, "product-" + i, "Cafea boabe ".repeat(40),
+                    "Brand " + i % 20, 5 + i % 100, 1_000_000, true, categories.get(i % CATEGORIES), new HashSet<>());
+            for (int j = 0; j < DETAILS_PER_PRODUCT; j++) {
+                product.getTechnicalDetails().add(new TechnicalDetail(0, "Detail " + j, "Value " + j, product));
+            }
+            products.add(product);
+        }
+        products = saveInChunks(products, bean(ProductRepository.class)::saveAll);
+
+        users = new ArrayList<>();
+        for (int i = 0; i < USERS; i++) {
+            users.add(new User(null, "Buyer", "No " + i, "buyer" + i + "@example.com", "hash", "Strada " + i,
+                    "0700000000", LocalDate.of(1990, 1, 1), UserStatus.ACTIVE,
+                    Set.of(new Role("USER"), new Role("ADMIN"))));
+        }
+        users = saveInChunks(users, bean(UserRepository.class)::saveAll);
+
+        List<CartItem> cartItems = new ArrayList<>();
+        for (int i = 0; i < USERS; i++) {
+            for (int j = 0; j < CART_LINES_PER_USER; j++) {
+                cartItems.add(new CartItem(0, (short) 1, users.get(i), product(i * CART_LINES_PER_USER + j)));
+            }
+        }
+        saveInChunks(cartItems, bean(CartItemRepository.class)::saveAll);
+
+        orders = new ArrayList<>();
+        for (int i = 0; i < ORDERS; i++) {
+            Order order = new Order();
+            order.setUser(user(i));
+            order.setDate(LocalDate.of(2022, 1, 1).plusDays(i % 120));
+            for (int j = 0; j < LINES_PER_ORDER; j++) {
+                Product product = product(i * 7 + j);
+                order.getOrderDetails().add(new OrderDetail(0, (short) (1 + j), product.getPrice(),
+                        product.getPrice() * (1 + j), order, product));
+                order.setTotal(order.getTotal() + product.getPrice() * (1 + j));
+            }
+            orders.add(order);
+        }
+        orders = saveInChunks(orders, bean(OrderRepository.class)::saveAll);
+    }
+
+    // One transaction per chunk keeps the persistence context small
+    private static <T> List<T> saveInChunks(List<T> entities, Function<List<T>, List<T>> saveAll) {
+        List<T> saved = new ArrayList<>();
+        for (int from = 0; from < entities.size(); from += CHUNK) {
+            saved.addAll(saveAll.apply(entities.subList(from, Math.min(from + CHUNK, entities.size()))));
+        }
+        return saved;
+    }
+}
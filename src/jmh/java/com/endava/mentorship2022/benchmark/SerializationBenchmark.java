@@ -0,0 +1,73 @@
+package com.endava.mentorship2022.benchmark;
+
+import com.endava.mentorship2022.model.Order;
+import com.endava.mentorship2022.model.Product;
+import com.endava.mentorship2022.service.OrderService;
+import com.endava.mentorship2022.service.ProductService;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Writes a page of products and a page of orders with the application's ObjectMapper, as the endpoints do.
+// The graphs are loaded and written once in a transaction first, so every lazy association is initialized.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SerializationBenchmark {
+
+    private static final int PAGE_SIZE = 20;
+
+    private ObjectMapper objectMapper;
+
+    private List<Product> products;
+
+    private List<Order> orders;
+
+    @Setup
+    public void setUp(SeededShop shop) {
+        objectMapper = shop.bean(ObjectMapper.class);
+        ProductService productService = shop.bean(ProductService.class);
+        OrderService orderService = shop.bean(OrderService.class);
+        new TransactionTemplate(shop.bean(PlatformTransactionManager.class)).executeWithoutResult(status -> {
+            products = productService.findAllByPage(1, PAGE_SIZE, "id", "asc");
+            orders = new ArrayList<>();
+            for (int i = 0; i < PAGE_SIZE; i++) {
+                orders.add(orderService.findById(shop.order(i).getId()));
+            }
+            try {
+                writeProducts();
+                writeOrders();
+            } catch (JsonProcessingException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+    }
+
+    @Benchmark
+    public byte[] writeProducts() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(products);
+    }
+
+    @Benchmark
+    public byte[] writeOrders() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(orders);
+    }
+}
@@ -0,0 +1,189 @@
+package com.endava.mentorship2022.cache;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+// In-process LRU cache bounded by size and time-to-live.
+// Loads happen outside the lock; a load that raced with an invalidation is returned but not stored.
+public class BoundedCache<K, V> {
+
+    private final int maximumSize;
+
+    private final long timeToLiveNanos;
+
+    private final LongSupplier ticker;
+
+    private final LinkedHashMap<K, Entry<V>> entries;
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    private final AtomicLong puts = new AtomicLong();
+
+    private final AtomicLong evictions = new AtomicLong();
+
+    private long invalidations;
+
+    public BoundedCache(int maximumSize, Duration timeToLive) {
+        this(maximumSize, timeToLive, System::nanoTime);
+    }
+
+    BoundedCache(int maximumSize, Duration timeToLive, LongSupplier ticker) {
+        if (maximumSize < 1) {
+            throw new IllegalArgumentException("Maximum size must be positive, got " + maximumSize);
+        }
+        this.maximumSize = maximumSize;
+        this.timeToLiveNanos = timeToLive.toNanos();
+        this.ticker = ticker;
+        this.entries = new LinkedHashMap<>(16, 0.75F, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+                if (size() > BoundedCache.this.maximumSize) {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    public V get(K key, Function<? super K, ? extends V> loader) {
+        long invalidationsBeforeLoad;
+        synchronized (this) {
+            V cached = lookup(key);
+            if (cached != null) {
+                hits.incrementAndGet();
+                return cached;
+            }
+            invalidationsBeforeLoad = invalidations;
+        }
+        misses.incrementAndGet();
+
+        V loaded = loader.apply(key);
+
+        synchronized (this) {
+            if (loaded != null && invalidations == invalidationsBeforeLoad) {
+                store(key, loaded);
+            }
+        }
+        return loaded;
+    }
+
+    // As get for several keys, the missing ones are loaded with a single call of the loader.
+    // Keys the loader does not return are left out of the result.
+    public Map<K, V> getAll(Collection<? extends K> keys, Function<Set<K>, Map<K, V>> loader) {
+        Map<K, V> values = new HashMap<>();
+        Set<K> missing = new LinkedHashSet<>();
+        long invalidationsBeforeLoad;
+        synchronized (this) {
+            for (K key : keys) {
+                V cached = lookup(key);
+                if (cached != null) {
+                    values.put(key, cached);
+                } else {
+                    missing.add(key);
+                }
+            }
+            invalidationsBeforeLoad = invalidations;
+        }
+        hits.addAndGet(values.size());
+        if (missing.isEmpty()) {
+            return values;
+        }
+        misses.addAndGet(missing.size());
+
+        Map<K, V> loaded = loader.apply(missing);
+
+        synchronized (this) {
+            if (invalidations == invalidationsBeforeLoad) {
+                loaded.forEach(this::store);
+            }
+        }
+        values.putAll(loaded);
+        return values;
+    }
+
+    public synchronized Optional<V> getIfPresent(K key) {
+        V cached = lookup(key);
+        if (cached == null) {
+            misses.incrementAndGet();
+            return Optional.empty();
+        }
+        hits.incrementAndGet();
+        return Optional.of(cached);
+    }
+
+    public synchronized void put(K key, V value) {
+        store(key, value);
+    }
+
+    public synchronized void invalidate(K key) {
+        invalidations++;
+        entries.remove(key);
+    }
+
+    public synchronized void invalidateAll() {
+        invalidations++;
+        entries.clear();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public long hitCount() {
+        return hits.get();
+    }
+
+    public long missCount() {
+        return misses.get();
+    }
+
+    public long putCount() {
+        return puts.get();
+    }
+
+    public long evictionCount() {
+        return evictions.get();
+    }
+
+    private V lookup(K key) {
+        Entry<V> entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (ticker.getAsLong() - entry.writtenAt >= timeToLiveNanos) {
+            entries.remove(key);
+            evictions.incrementAndGet();
+            return null;
+        }
+        return entry.value;
+    }
+
+    private void store(K key, V value) {
+        entries.put(key, new Entry<>(value, ticker.getAsLong()));
+        puts.incrementAndGet();
+    }
+
+    private static final class Entry<V> {
+
+        private final V value;
+
+        private final long writtenAt;
+
+        private Entry(V value, long writtenAt) {
+            this.value = value;
+            this.writtenAt = writtenAt;
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package com.endava.mentorship2022.cart;
+
+import com.endava.mentorship2022.jdbc.StatementStatistics;
+import com.endava.mentorship2022.model.User;
+import org.hibernate.proxy.HibernateProxy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PreDestroy;
+import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+// Applies the cart changes of one user one after the other, each in its own transaction, without locking
+// any row: every user is served by one of cart.commands.stripes single-threaded queues, picked by user id.
+// A change reads the cart and writes it back knowing no other change of that user runs meanwhile, so two
+// adds of the same product cannot both insert a line or together go over the maximum quantity.
+// Users sharing a queue wait for each other, users on different queues never do.
+// The calling thread waits for the result, exceptions are rethrown to it as they were thrown.
+// Commands of several users can also run together in one transaction, holding all their queues meanwhile:
+// every other user of these queues waits too, so callers keep their users on few queues.
+// A command gets the user again as a reference of its own transaction, a lazy user of the request's session
+// cannot be saved from another session.
+@Component
+public class CartCommandQueue {
+
+    // Set on the queue threads, and on a thread running commands together, so a command running another
+    // command of the same user runs it directly
+    private static final ThreadLocal<Set<Integer>> HELD_STRIPES = new ThreadLocal<>();
+
+    private final List<ExecutorService> stripes = new ArrayList<>();
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final EntityManager entityManager;
+
+    public CartCommandQueue(@Value("${cart.commands.stripes:16}") int stripes,
+                            PlatformTransactionManager transactionManager, EntityManager entityManager) {
+        if (stripes < 1) {
+            throw new IllegalArgumentException("At least one stripe is needed");
+        }
+        for (int i = 0; i < stripes; i++) {
+            int stripe = i;
+            this.stripes.add(Executors.newSingleThreadExecutor(task -> {
+                Thread thread = new Thread(() -> {
+                    HELD_STRIPES.set(Set.of(stripe));
+                    task.run();
+                }, "cart-commands-" + stripe);
+                thread.setDaemon(true);
+                return thread;
+            }));
+        }
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.entityManager = entityManager;
+    }
+
+    public <T> T execute(User user, Function<User, T> command) {
+        int stripe = stripeOf(user);
+        Set<Integer> heldStripes = HELD_STRIPES.get();
+        if (heldStripes != null) {
+            // Waiting here for another queue could deadlock with a command of that queue waiting for this one
+            if (!heldStripes.contains(stripe)) {
+                throw new IllegalStateException("A cart command can only run commands of its own user");
+            }
+            return transactionTemplate.execute(status -> command.apply(ownReference(user)));
+        }
+
+        // The statements of the command count for the caller, e.g. the request waiting for it
+        StatementStatistics statistics = StatementStatistics.current();
+        Future<T> result = stripes.get(stripe).submit(() -> StatementStatistics.runWith(statistics,
+                () -> transactionTemplate.execute(status -> command.apply(ownReference(user)))));
+        try {
+            return result.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            result.cancel(false);
+            throw new IllegalStateException("Interrupted while waiting for a cart command", e);
+        }
+    }
+
+    // Runs the command on the calling thread, in one transaction, while the queues of all the users are held,
+    // so no other command of these users runs meanwhile. The queues are taken in ascending order, each one
+    // only once the previous is held, so two callers sharing queues cannot wait for each other.
+    public <T> T executeTogether(Collection<User> users, Function<List<User>, T> command) {
+        if (HELD_STRIPES.get() != null) {
+            throw new IllegalStateException("Cart commands cannot be run together from inside a cart command");
+        }
+        SortedSet<Integer> held = users.stream().map(this::stripeOf).collect(Collectors.toCollection(TreeSet::new));
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            for (int stripe : held) {
+                CountDownLatch holding = new CountDownLatch(1);
+                stripes.get(stripe).execute(() -> {
+                    holding.countDown();
+                    awaitRelease(release);
+                });
+                holding.await();
+            }
+            HELD_STRIPES.set(held);
+            return transactionTemplate.execute(status -> command.apply(
+                    users.stream().map(this::ownReference).collect(Collectors.toList())));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the cart command queues", e);
+        } finally {
+            HELD_STRIPES.remove();
+            release.countDown();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        stripes.forEach(ExecutorService::shutdown);
+    }
+
+    // Users of the same stripe share a queue
+    public int stripeOf(User user) {
+        return (int) Math.floorMod(user.getId(), (long) stripes.size());
+    }
+
+    private User ownReference(User user) {
+        return user instanceof HibernateProxy ? entityManager.getReference(User.class, user.getId()) : user;
+    }
+
+    private static void awaitRelease(CountDownLatch release) {
+        try {
+            release.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
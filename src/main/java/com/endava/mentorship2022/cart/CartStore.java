@@ -0,0 +1,39 @@
+package com.endava.mentorship2022.cart;
+
+import com.endava.mentorship2022.dto.CartLine;
+import com.endava.mentorship2022.model.CartItem;
+import com.endava.mentorship2022.model.User;
+
+import java.util.Collection;
+import java.util.List;
+
+// Where the shopping carts live, chosen with cart.store.mode, see CartStoreMode.
+// Cart items handed out are copies: a change is only kept by passing it back to save.
+public interface CartStore {
+
+    List<CartItem> findByUser(User user);
+
+    // Read-only view of the cart for listing it
+    List<CartLine> findLinesByUser(User user);
+
+    // null when the product is not in the cart
+    CartItem find(User user, long productId);
+
+    // Adds the product to the cart or replaces its quantity
+    void save(CartItem cartItem);
+
+    // Saves many lines at once, new lines are sent in one batch
+    void saveAll(List<CartItem> cartItems);
+
+    void updateQuantity(User user, long productId, short quantity);
+
+    // false when the product was not in the cart
+    boolean remove(User user, long productId);
+
+    void removeProducts(User user, Collection<Long> productIds);
+
+    // Always durable once the surrounding transaction commits, so a checkout never leaves the ordered items behind.
+    // Returns the number of lines removed.
+    int removeAll(User user);
+
+}
@@ -0,0 +1,15 @@
+package com.endava.mentorship2022.cart;
+
+public enum CartStoreMode {
+
+    // Every read and write goes to cart_items
+    DATABASE,
+
+    // Reads are served from memory, every write also goes to cart_items in the same transaction
+    WRITE_THROUGH,
+
+    // Reads and writes are served from memory, changes reach cart_items in batches shortly after.
+    // A crash loses the changes of the last flush interval.
+    WRITE_BEHIND
+
+}
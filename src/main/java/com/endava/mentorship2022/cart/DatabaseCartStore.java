@@ -0,0 +1,62 @@
+package com.endava.mentorship2022.cart;
+
+import com.endava.mentorship2022.dto.CartLine;
+import com.endava.mentorship2022.model.CartItem;
+import com.endava.mentorship2022.model.User;
+import com.endava.mentorship2022.repository.CartItemRepository;
+import lombok.AllArgsConstructor;
+
+import java.util.Collection;
+import java.util.List;
+
+@AllArgsConstructor
+public class DatabaseCartStore implements CartStore {
+
+    private final CartItemRepository cartItemRepository;
+
+    @Override
+    public List<CartItem> findByUser(User user) {
+        return cartItemRepository.findCartItemsByUserId(user.getId());
+    }
+
+    @Override
+    public List<CartLine> findLinesByUser(User user) {
+        return cartItemRepository.findCartLinesByUserId(user.getId());
+    }
+
+    @Override
+    public CartItem find(User user, long productId) {
+        return cartItemRepository.findCartItemByUserIdAndProductId(user.getId(), productId);
+    }
+
+    @Override
+    public void save(CartItem cartItem) {
+        cartItemRepository.save(cartItem);
+    }
+
+    @Override
+    public void saveAll(List<CartItem> cartItems) {
+        cartItemRepository.saveAll(cartItems);
+    }
+
+    @Override
+    public void updateQuantity(User user, long productId, short quantity) {
+        cartItemRepository.updateProductQuantity(quantity, user.getId(), productId);
+    }
+
+    @Override
+    public boolean remove(User user, long productId) {
+        return cartItemRepository.deleteCartItemByUserIdAndProductId(user.getId(), productId) > 0;
+    }
+
+    @Override
+    public void removeProducts(User user, Collection<Long> productIds) {
+        cartItemRepository.deleteCartItemsByUserIdAndProductIdIn(user.getId(), productIds);
+    }
+
+    @Override
+    public int removeAll(User user) {
+        return cartItemRepository.deleteCartItemsByUserId(user.getId());
+    }
+
+}
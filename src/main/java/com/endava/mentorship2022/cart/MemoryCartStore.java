@@ -0,0 +1,519 @@
+package com.endava.mentorship2022.cart;
+
+import com.endava.mentorship2022.dto.CartLine;
+import com.endava.mentorship2022.event.ProductDeletedEvent;
+import com.endava.mentorship2022.exception.ProductNotFound;
+import com.endava.mentorship2022.model.CartItem;
+import com.endava.mentorship2022.model.Product;
+import com.endava.mentorship2022.model.User;
+import com.endava.mentorship2022.repository.CartItemBulkRepository;
+import com.endava.mentorship2022.repository.CartItemRepository;
+import com.endava.mentorship2022.service.ProductService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.event.EventListener;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+// Keeps each user's cart in memory, so cart reads need no query and, in write-behind mode, writes need none
+// either. Products come from the product cache when the cart is read, so prices are always current.
+// A cart is loaded from cart_items on first use, which is also how carts come back after a restart,
+// and dropped again after cart.store.idle-timeout without use once all its changes are written.
+// Each user's requests must be served by the same node, since the carts are not shared between nodes.
+@Slf4j
+public class MemoryCartStore implements CartStore {
+
+    private final CartItemRepository cartItemRepository;
+
+    private final CartItemBulkRepository cartItemBulkRepository;
+
+    private final ProductService productService;
+
+    private final TransactionTemplate flushTransaction;
+
+    private final boolean writeBehind;
+
+    private final long idleTimeoutNanos;
+
+    private final ConcurrentMap<Long, UserCart> carts = new ConcurrentHashMap<>();
+
+    // Shared while a cart is emptied, exclusive while changes are written, so a flush never writes back
+    // items that an emptying transaction has already deleted. A transaction must empty the cart before it
+    // locks products rows: the flush's inserts into cart_items wait for those locks, and the database cannot
+    // see a deadlock that goes through this lock.
+    private final ReadWriteLock flushLock = new ReentrantReadWriteLock(true);
+
+    private final ScheduledExecutorService maintenance;
+
+    public MemoryCartStore(CartItemRepository cartItemRepository, CartItemBulkRepository cartItemBulkRepository,
+                           ProductService productService, PlatformTransactionManager transactionManager,
+                           boolean writeBehind, Duration flushInterval, Duration idleTimeout) {
+        this.cartItemRepository = cartItemRepository;
+        this.cartItemBulkRepository = cartItemBulkRepository;
+        this.productService = productService;
+        this.flushTransaction = new TransactionTemplate(transactionManager);
+        this.flushTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.writeBehind = writeBehind;
+        this.idleTimeoutNanos = idleTimeout.toNanos();
+        this.maintenance = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "cart-store");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = flushInterval.toMillis();
+        maintenance.scheduleWithFixedDelay(this::maintain, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public List<CartItem> findByUser(User user) {
+        List<Line> lines = withCart(user.getId(), cart -> {
+            List<Line> copies = new ArrayList<>();
+            cart.lines.values().forEach(line -> copies.add(line.copy()));
+            return copies;
+        });
+        List<CartItem> cartItems = new ArrayList<>();
+        for (Line line : lines) {
+            CartItem cartItem = toCartItem(user, line);
+            if (cartItem != null) {
+                cartItems.add(cartItem);
+            }
+        }
+        return cartItems;
+    }
+
+    // The products already come from the product cache, so no query is saved by a projection
+    @Override
+    public List<CartLine> findLinesByUser(User user) {
+        return findByUser(user).stream().map(CartLine::of).collect(Collectors.toList());
+    }
+
+    @Override
+    public CartItem find(User user, long productId) {
+        Line line = withCart(user.getId(), cart -> {
+            Line found = cart.lines.get(productId);
+            return found == null ? null : found.copy();
+        });
+        return line == null ? null : toCartItem(user, line);
+    }
+
+    @Override
+    public void save(CartItem cartItem) {
+        User user = cartItem.getUser();
+        long productId = cartItem.getProduct().getId();
+        Line saved = withCart(user.getId(), cart -> {
+            Line line = cart.lines.computeIfAbsent(productId, Line::new);
+            line.quantity = cartItem.getQuantity();
+            cart.changed(productId, writeBehind);
+            return line.copy();
+        });
+
+        if (!writeBehind) {
+            if (saved.id == 0) {
+                long id = cartItemRepository.save(new CartItem(0, saved.quantity, user, cartItem.getProduct())).getId();
+                withCart(user.getId(), cart -> {
+                    Line line = cart.lines.get(productId);
+                    if (line != null && line.id == 0) {
+                        line.id = id;
+                    }
+                    return null;
+                });
+            } else {
+                cartItemRepository.updateProductQuantity(saved.quantity, user.getId(), productId);
+            }
+            evictOnRollback(user.getId());
+        }
+    }
+
+    // One line after the other, in write-through mode new lines still reach the database in one batch at flush
+    @Override
+    public void saveAll(List<CartItem> cartItems) {
+        cartItems.forEach(this::save);
+    }
+
+    @Override
+    public void updateQuantity(User user, long productId, short quantity) {
+        withCart(user.getId(), cart -> {
+            Line line = cart.lines.get(productId);
+            if (line != null) {
+                line.quantity = quantity;
+                cart.changed(productId, writeBehind);
+            }
+            return null;
+        });
+
+        if (!writeBehind) {
+            cartItemRepository.updateProductQuantity(quantity, user.getId(), productId);
+            evictOnRollback(user.getId());
+        }
+    }
+
+    @Override
+    public boolean remove(User user, long productId) {
+        boolean removed = withCart(user.getId(), cart -> {
+            cart.changed(productId, writeBehind);
+            return cart.lines.remove(productId) != null;
+        });
+
+        if (!writeBehind) {
+            cartItemRepository.deleteCartItemByUserIdAndProductId(user.getId(), productId);
+            evictOnRollback(user.getId());
+        }
+        return removed;
+    }
+
+    @Override
+    public void removeProducts(User user, Collection<Long> productIds) {
+        withCart(user.getId(), cart -> {
+            for (Long productId : productIds) {
+                cart.lines.remove(productId);
+                cart.changed(productId, writeBehind);
+            }
+            return null;
+        });
+
+        if (!writeBehind) {
+            cartItemRepository.deleteCartItemsByUserIdAndProductIdIn(user.getId(), productIds);
+            evictOnRollback(user.getId());
+        }
+    }
+
+    @Override
+    public int removeAll(User user) {
+        long userId = user.getId();
+        if (!writeBehind) {
+            int removed = withCart(userId, cart -> {
+                int lines = cart.lines.size();
+                cart.lines.clear();
+                return lines;
+            });
+            cartItemRepository.deleteCartItemsByUserId(userId);
+            evictOnRollback(userId);
+            return removed;
+        }
+
+        // Counted in memory, the lines not written yet are not in the database
+        int removed = withCart(userId, cart -> cart.lines.size());
+
+        // Deleted in the caller's transaction, the cart in memory is only emptied if it commits
+        flushLock.readLock().lock();
+        boolean synchronizedWithTransaction = false;
+        try {
+            cartItemRepository.deleteCartItemsByUserId(userId);
+            if (TransactionSynchronizationManager.isSynchronizationActive()) {
+                TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                    @Override
+                    public void afterCompletion(int status) {
+                        try {
+                            if (status == STATUS_COMMITTED) {
+                                clear(userId);
+                            }
+                        } finally {
+                            flushLock.readLock().unlock();
+                        }
+                    }
+                });
+                synchronizedWithTransaction = true;
+            } else {
+                clear(userId);
+            }
+        } finally {
+            if (!synchronizedWithTransaction) {
+                flushLock.readLock().unlock();
+            }
+        }
+        return removed;
+    }
+
+    // Writes all pending changes of all carts. One transaction with a batch of deletes, a batch of updates
+    // and a batch of inserts, however many changes were made since the last flush. Changes that cannot be
+    // written are kept for the next flush.
+    public void flush() {
+        flushLock.writeLock().lock();
+        try {
+            List<Change> changes = new ArrayList<>();
+            for (UserCart cart : carts.values()) {
+                synchronized (cart) {
+                    for (Long productId : cart.dirty) {
+                        changes.add(new Change(cart, productId, cart.lines.get(productId)));
+                    }
+                    cart.dirty.clear();
+                }
+            }
+            if (changes.isEmpty()) {
+                return;
+            }
+
+            try {
+                write(changes);
+            } catch (RuntimeException e) {
+                // Cart by cart, so one cart that cannot be written does not hold back the others
+                Map<UserCart, List<Change>> changesByCart = new LinkedHashMap<>();
+                changes.forEach(change -> changesByCart.computeIfAbsent(change.cart, cart -> new ArrayList<>()).add(change));
+                changesByCart.forEach((cart, cartChanges) -> {
+                    try {
+                        write(cartChanges);
+                    } catch (RuntimeException cartException) {
+                        log.error("Could not write the cart of user {}, it is written again at the next flush",
+                                cart.userId, cartException);
+                        redo(cart, cartChanges);
+                    }
+                });
+            }
+        } finally {
+            flushLock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        return carts.size();
+    }
+
+    // Products deleted from the database took their cart_items rows with them
+    @EventListener
+    public void onProductDeleted(ProductDeletedEvent event) {
+        for (UserCart cart : carts.values()) {
+            synchronized (cart) {
+                cart.lines.remove(event.getProductId());
+                cart.dirty.remove(event.getProductId());
+            }
+        }
+    }
+
+    public void shutdown() {
+        maintenance.shutdown();
+        if (writeBehind) {
+            flush();
+        }
+    }
+
+    private void maintain() {
+        try {
+            if (writeBehind) {
+                flush();
+            }
+            evictIdle();
+        } catch (RuntimeException e) {
+            log.error("Cart store maintenance failed", e);
+        }
+    }
+
+    private void write(List<Change> changes) {
+        List<long[]> deletes = new ArrayList<>();
+        Map<Long, Short> updates = new HashMap<>();
+        List<long[]> inserts = new ArrayList<>();
+        List<Change> inserted = new ArrayList<>();
+        for (Change change : changes) {
+            long userId = change.cart.userId;
+            // A new line may replace a row of the same product that was removed since the last flush
+            if (change.line == null || change.id == 0) {
+                deletes.add(new long[]{userId, change.productId});
+            }
+            if (change.line != null && change.id == 0) {
+                inserts.add(new long[]{userId, change.productId, change.quantity});
+                inserted.add(change);
+            } else if (change.line != null) {
+                updates.put(change.id, change.quantity);
+            }
+        }
+
+        List<Long> ids = flushTransaction.execute(status -> {
+            cartItemBulkRepository.deleteAll(deletes);
+            cartItemBulkRepository.updateQuantities(updates);
+            return cartItemBulkRepository.insertAll(inserts);
+        });
+
+        for (int i = 0; i < inserted.size(); i++) {
+            Change change = inserted.get(i);
+            synchronized (change.cart) {
+                // Unless the line was removed meanwhile
+                if (change.cart.lines.get(change.productId) == change.line && change.line.id == 0) {
+                    change.line.id = ids.get(i);
+                }
+            }
+        }
+    }
+
+    // The write was rolled back, so the changes are pending again. A dirty cart is never evicted, the changes
+    // stay in memory until a flush writes them.
+    private void redo(UserCart cart, List<Change> changes) {
+        synchronized (cart) {
+            changes.forEach(change -> cart.dirty.add(change.productId));
+        }
+    }
+
+    private void evictIdle() {
+        flushLock.writeLock().lock();
+        try {
+            long now = System.nanoTime();
+            for (UserCart cart : carts.values()) {
+                synchronized (cart) {
+                    if (cart.dirty.isEmpty() && now - cart.lastUsed > idleTimeoutNanos) {
+                        evict(cart);
+                    }
+                }
+            }
+        } finally {
+            flushLock.writeLock().unlock();
+        }
+    }
+
+    private void clear(long userId) {
+        withCart(userId, cart -> {
+            cart.lines.clear();
+            cart.dirty.clear();
+            return null;
+        });
+    }
+
+    // In write-through mode the database is the reference, a cart changed by a rolled back transaction is reloaded
+    private void evictOnRollback(long userId) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    UserCart cart = carts.get(userId);
+                    if (status != STATUS_COMMITTED && cart != null) {
+                        evict(cart);
+                    }
+                }
+            });
+        }
+    }
+
+    private void evict(UserCart cart) {
+        synchronized (cart) {
+            cart.evicted = true;
+            carts.remove(cart.userId, cart);
+        }
+    }
+
+    private <T> T withCart(long userId, Function<UserCart, T> operation) {
+        while (true) {
+            UserCart cart = carts.get(userId);
+            if (cart == null) {
+                UserCart loaded = load(userId);
+                cart = carts.putIfAbsent(userId, loaded);
+                if (cart == null) {
+                    cart = loaded;
+                }
+            }
+            synchronized (cart) {
+                // An evicted cart may still be reached by a request that got it just before, it loads it again
+                if (!cart.evicted) {
+                    cart.lastUsed = System.nanoTime();
+                    return operation.apply(cart);
+                }
+            }
+        }
+    }
+
+    private UserCart load(long userId) {
+        UserCart cart = new UserCart(userId);
+        for (CartItem cartItem : cartItemRepository.findCartItemsByUserId(userId)) {
+            Line line = new Line(cartItem.getProduct().getId());
+            line.id = cartItem.getId();
+            line.quantity = cartItem.getQuantity();
+            cart.lines.put(line.productId, line);
+        }
+        return cart;
+    }
+
+    private CartItem toCartItem(User user, Line line) {
+        Product product;
+        try {
+            product = productService.findById(line.productId);
+        } catch (ProductNotFound e) {
+            return null;
+        }
+        return new CartItem(line.id, line.quantity, user, product);
+    }
+
+    // Guarded by its own monitor
+    private static final class UserCart {
+
+        private final long userId;
+
+        private final Map<Long, Line> lines = new LinkedHashMap<>();
+
+        // Products whose line changed since the last flush, only used in write-behind mode
+        private final Set<Long> dirty = new HashSet<>();
+
+        private long lastUsed;
+
+        private boolean evicted;
+
+        private UserCart(long userId) {
+            this.userId = userId;
+        }
+
+        private void changed(long productId, boolean writeBehind) {
+            if (writeBehind) {
+                dirty.add(productId);
+            }
+        }
+    }
+
+    private static final class Line {
+
+        private final long productId;
+
+        // 0 until the line is written to cart_items
+        private long id;
+
+        private short quantity;
+
+        private Line(long productId) {
+            this.productId = productId;
+        }
+
+        private Line copy() {
+            Line copy = new Line(productId);
+            copy.id = id;
+            copy.quantity = quantity;
+            return copy;
+        }
+    }
+
+    // A line as it was when the flush started, null when the product was removed
+    private static final class Change {
+
+        private final UserCart cart;
+
+        private final long productId;
+
+        private final Line line;
+
+        private final long id;
+
+        private final short quantity;
+
+        private Change(UserCart cart, long productId, Line line) {
+            this.cart = cart;
+            this.productId = productId;
+            this.line = line;
+            this.id = line == null ? 0 : line.id;
+            this.quantity = line == null ? 0 : line.quantity;
+        }
+    }
+}
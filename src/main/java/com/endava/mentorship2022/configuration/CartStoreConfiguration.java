@@ -0,0 +1,33 @@
+package com.endava.mentorship2022.configuration;
+
+import com.endava.mentorship2022.cart.CartStore;
+import com.endava.mentorship2022.cart.CartStoreMode;
+import com.endava.mentorship2022.cart.DatabaseCartStore;
+import com.endava.mentorship2022.cart.MemoryCartStore;
+import com.endava.mentorship2022.repository.CartItemBulkRepository;
+import com.endava.mentorship2022.repository.CartItemRepository;
+import com.endava.mentorship2022.service.ProductService;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.Duration;
+
+@Configuration
+public class CartStoreConfiguration {
+
+    // A memory cart store is shut down with the context, writing its pending changes
+    @Bean
+    public CartStore cartStore(@Value("${cart.store.mode:database}") CartStoreMode mode,
+                               @Value("${cart.store.flush-interval:1s}") Duration flushInterval,
+                               @Value("${cart.store.idle-timeout:30m}") Duration idleTimeout,
+                               CartItemRepository cartItemRepository, CartItemBulkRepository cartItemBulkRepository,
+                               ProductService productService, PlatformTransactionManager transactionManager) {
+        if (mode == CartStoreMode.DATABASE) {
+            return new DatabaseCartStore(cartItemRepository);
+        }
+        return new MemoryCartStore(cartItemRepository, cartItemBulkRepository, productService, transactionManager,
+                mode == CartStoreMode.WRITE_BEHIND, flushInterval, idleTimeout);
+    }
+}
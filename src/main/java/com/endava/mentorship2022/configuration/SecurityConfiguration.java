@@ -1,14 +1,20 @@
 package com.endava.mentorship2022.configuration;
 
+import com.endava.mentorship2022.security.TokenAuthenticationFilter;
+import com.endava.mentorship2022.security.TokenService;
+import com.endava.mentorship2022.security.UserDetailsCache;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpMethod;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.config.annotation.authentication.configuration.AuthenticationConfiguration;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
+import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.web.SecurityFilterChain;
+import org.springframework.security.web.authentication.www.BasicAuthenticationFilter;
 
 @Configuration
 @EnableWebSecurity
@@ -20,12 +26,19 @@ public class SecurityConfiguration {
     }
 
     @Bean
-    public SecurityFilterChain filterChain(HttpSecurity http) throws Exception {
+    public SecurityFilterChain filterChain(HttpSecurity http, TokenService tokenService,
+                                           UserDetailsService userDetailsService,
+                                           UserDetailsCache userDetailsCache) throws Exception {
         return http
                 .csrf().disable()
+                // Bearer tokens from /auth/login are checked first, Basic and form login still work
+                .addFilterBefore(new TokenAuthenticationFilter(tokenService, userDetailsService, userDetailsCache),
+                        BasicAuthenticationFilter.class)
                 .authorizeRequests()
-                .antMatchers("/", "/doc/**").permitAll()
+                .antMatchers("/", "/doc/**", "/actuator/health", "/auth/login", "/auth/refresh", "/auth/register").permitAll()
+                .antMatchers("/actuator/**").hasAuthority("ADMIN")
                 .antMatchers("/users/**").hasAuthority("ADMIN")
+                .antMatchers(HttpMethod.DELETE, "/products", "/orders").hasAuthority("ADMIN")
                 .anyRequest().authenticated()
                 .and()
                 .formLogin().permitAll()
@@ -0,0 +1,42 @@
+package com.endava.mentorship2022.controller;
+
+import com.endava.mentorship2022.dto.LoginRequest;
+import com.endava.mentorship2022.dto.RefreshRequest;
+import com.endava.mentorship2022.dto.TokenResponse;
+import com.endava.mentorship2022.model.User;
+import com.endava.mentorship2022.service.AuthService;
+import com.endava.mentorship2022.service.UserService;
+import lombok.AllArgsConstructor;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.concurrent.CompletableFuture;
+
+@AllArgsConstructor
+@RestController
+@RequestMapping("/auth")
+public class AuthController {
+
+    private final AuthService authService;
+
+    private final UserService userService;
+
+    // Served asynchronously: the request thread is released while the password is checked
+    @PostMapping("/login")
+    public CompletableFuture<TokenResponse> login(@RequestBody LoginRequest request) {
+        return authService.login(request);
+    }
+
+    // Served asynchronously like the login, the password is hashed off the request thread
+    @PostMapping("/register")
+    public CompletableFuture<User> register(@RequestBody User user) {
+        return userService.register(user);
+    }
+
+    @PostMapping("/refresh")
+    public TokenResponse refresh(@RequestBody RefreshRequest request) {
+        return authService.refresh(request);
+    }
+}
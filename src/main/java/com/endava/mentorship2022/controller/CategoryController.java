@@ -1,6 +1,8 @@
 package com.endava.mentorship2022.controller;
 
+import com.endava.mentorship2022.dto.CategoryNode;
 import com.endava.mentorship2022.model.Category;
+import com.endava.mentorship2022.model.Product;
 import com.endava.mentorship2022.service.CategoryService;
 import lombok.AllArgsConstructor;
 import org.springframework.web.bind.annotation.*;
@@ -24,6 +26,22 @@ public class CategoryController {
         return categoryService.findAllByParent(id);
     }
 
+    // The whole tree in one response, for the navigation menu
+    @GetMapping("/menu")
+    public List<CategoryNode> findMenu() {
+        return categoryService.findMenu();
+    }
+
+    @GetMapping("/{id}/breadcrumb")
+    public List<Category> findBreadcrumb(@PathVariable long id) {
+        return categoryService.findBreadcrumb(id);
+    }
+
+    @GetMapping("/{id}/products")
+    public List<Product> findProductsInSubtree(@PathVariable long id) {
+        return categoryService.findProductsInSubtree(id);
+    }
+
     @GetMapping("/{id}")
     public Category findById(@PathVariable long id) {
         return categoryService.findById(id);
@@ -1,14 +1,21 @@
 package com.endava.mentorship2022.controller;
 
+import com.endava.mentorship2022.dto.OrderTicket;
 import com.endava.mentorship2022.model.User;
+import com.endava.mentorship2022.security.CurrentUser;
+import com.endava.mentorship2022.service.CheckoutQueue;
 import com.endava.mentorship2022.service.CheckoutService;
-import com.endava.mentorship2022.service.UserService;
+import com.endava.mentorship2022.service.IdempotencyService;
 import lombok.AllArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
-import java.security.Principal;
+import java.net.URI;
 
 @AllArgsConstructor
 @RestController
@@ -17,12 +24,34 @@ public class CheckoutController {
 
     private final CheckoutService checkoutService;
 
-    private final UserService userService;
+    private final CheckoutQueue checkoutQueue;
 
+    private final IdempotencyService idempotencyService;
+
+    // With checkout.async.enabled the order is placed later: 202 with the ticket to poll.
+    // A retry sent with the same Idempotency-Key gets the first response instead of a second order
     @PostMapping()
-    public String placeOrder(Principal principal) {
-        User user = userService.findUserByEmail(principal.getName());
-        return checkoutService.placeOrder(user);
+    public ResponseEntity<Object> placeOrder(@CurrentUser User user,
+                                             @RequestHeader(value = IdempotencyService.HEADER, required = false)
+                                             String idempotencyKey) {
+        if (idempotencyKey != null) {
+            return idempotencyService.execute(user, "POST /checkout", idempotencyKey, null,
+                    work -> checkoutService.inCheckoutTransaction(user, work), () -> placeOrder(user));
+        }
+        return placeOrder(user);
+    }
+
+    @GetMapping("/{ticketId}")
+    public OrderTicket findTicket(@PathVariable String ticketId, @CurrentUser User user) {
+        return checkoutQueue.find(user, ticketId);
+    }
+
+    private ResponseEntity<Object> placeOrder(User user) {
+        if (!checkoutQueue.isEnabled()) {
+            return ResponseEntity.ok(checkoutService.placeOrder(user));
+        }
+        OrderTicket ticket = checkoutQueue.submit(user);
+        return ResponseEntity.accepted().location(URI.create("/checkout/" + ticket.getId())).body(ticket);
     }
 
 }
@@ -0,0 +1,97 @@
+package com.endava.mentorship2022.controller;
+
+import com.endava.mentorship2022.jdbc.StatementStatistics;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import javax.persistence.EntityManager;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+// Writes query results as newline-delimited JSON while they are read from a forward-only cursor,
+// clearing the persistence context every chunk so memory use does not grow with the table size.
+@Component
+public class NdjsonStreamer {
+
+    // Keep in line with the fetch size hint of the streaming repository queries
+    private static final int CHUNK_SIZE = 500;
+
+    private final ObjectMapper objectMapper;
+
+    private final EntityManager entityManager;
+
+    private final TransactionTemplate readOnlyTransaction;
+
+    public NdjsonStreamer(ObjectMapper objectMapper, EntityManager entityManager,
+                          PlatformTransactionManager transactionManager) {
+        this.objectMapper = objectMapper;
+        this.entityManager = entityManager;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+    }
+
+    public <T> ResponseEntity<StreamingResponseBody> stream(Supplier<Stream<T>> rows) {
+        // Handed over with the work, so the statements of the stream count for the request
+        StatementStatistics statistics = StatementStatistics.current();
+        StreamingResponseBody body = out -> {
+            try {
+                // The body is written on an async thread, so the cursor needs its own transaction there
+                StatementStatistics.runWith(statistics, () -> readOnlyTransaction.execute(status -> {
+                    write(rows, out);
+                    return null;
+                }));
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        };
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(body);
+    }
+
+    // Writes every object the producer emits as a line as soon as it is emitted, e.g. progress of a long operation
+    public ResponseEntity<StreamingResponseBody> write(Consumer<Consumer<Object>> producer) {
+        StreamingResponseBody body = out -> {
+            try {
+                producer.accept(line -> {
+                    try {
+                        out.write(objectMapper.writeValueAsBytes(line));
+                        out.write('\n');
+                        out.flush();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        };
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(body);
+    }
+
+    private <T> void write(Supplier<Stream<T>> rows, OutputStream out) {
+        try (Stream<T> stream = rows.get()) {
+            Iterator<T> iterator = stream.iterator();
+            int written = 0;
+            while (iterator.hasNext()) {
+                out.write(objectMapper.writeValueAsBytes(iterator.next()));
+                out.write('\n');
+                if (++written % CHUNK_SIZE == 0) {
+                    out.flush();
+                    entityManager.clear();
+                }
+            }
+            out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -1,11 +1,17 @@
 package com.endava.mentorship2022.controller;
 
+import com.endava.mentorship2022.dto.OrderSummary;
 import com.endava.mentorship2022.model.Order;
 import com.endava.mentorship2022.model.OrderStatus;
 import com.endava.mentorship2022.model.User;
+import com.endava.mentorship2022.security.CurrentUser;
+import com.endava.mentorship2022.service.IdempotencyService;
 import com.endava.mentorship2022.service.OrderService;
 import lombok.AllArgsConstructor;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.util.List;
 
@@ -16,11 +22,21 @@ public class OrderController {
 
     private final OrderService orderService;
 
+    private final NdjsonStreamer ndjsonStreamer;
+
+    private final IdempotencyService idempotencyService;
+
+    // Summaries only, GET /orders/{id} returns the order with its details
     @GetMapping
-    public List<Order> findAll(){
+    public List<OrderSummary> findAll(){
         return orderService.findAll();
     }
 
+    @GetMapping(produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamAll() {
+        return ndjsonStreamer.stream(orderService::streamAll);
+    }
+
     // View orders for a specific user
     @GetMapping("user/{userId}")
     public List<Order> findOrdersByUserId(@PathVariable long userId) {
@@ -32,9 +48,16 @@ public class OrderController {
         return orderService.findById(id);
     }
 
+    // A retry sent with the same Idempotency-Key gets the first response instead of a second order
     @PostMapping
-    public Order save(@RequestBody Order order) {
-        return orderService.save(order);
+    public ResponseEntity<Object> save(@RequestBody Order order, @CurrentUser User user,
+                                       @RequestHeader(value = IdempotencyService.HEADER, required = false)
+                                       String idempotencyKey) {
+        if (idempotencyKey == null) {
+            return ResponseEntity.ok(orderService.save(order));
+        }
+        return idempotencyService.execute(user, "POST /orders", idempotencyKey, order,
+                () -> ResponseEntity.ok(orderService.save(order)));
     }
 
     @PutMapping("/{id}/updateStatus")
@@ -45,4 +68,10 @@ public class OrderController {
     @DeleteMapping("/{id}")
     public void deleteById(@PathVariable Long id) {orderService.deleteById(id); }
 
+    // Admins only, returns the number of orders deleted
+    @DeleteMapping
+    public int deleteAllById(@RequestParam List<Long> ids) {
+        return orderService.deleteAllById(ids);
+    }
+
 }
@@ -3,10 +3,13 @@ package com.endava.mentorship2022.controller;
 import com.endava.mentorship2022.model.OrderDetail;
 import com.endava.mentorship2022.service.OrderDetailService;
 import lombok.AllArgsConstructor;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.util.List;
 
@@ -17,11 +20,18 @@ public class OrderDetailController {
 
     private final OrderDetailService orderDetailsService;
 
+    private final NdjsonStreamer ndjsonStreamer;
+
     @GetMapping
     public List<OrderDetail> findAll() {
         return orderDetailsService.findAll();
     }
 
+    @GetMapping(produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamAll() {
+        return ndjsonStreamer.stream(orderDetailsService::streamAll);
+    }
+
     @GetMapping("/{id}")
     public List<OrderDetail> findByOrderId(@PathVariable long id) {
         return orderDetailsService.findByOrderId(id);
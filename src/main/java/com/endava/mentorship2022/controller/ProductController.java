@@ -1,11 +1,21 @@
 package com.endava.mentorship2022.controller;
 
 
+import com.endava.mentorship2022.dto.FacetCounts;
+import com.endava.mentorship2022.dto.KeysetPage;
+import com.endava.mentorship2022.dto.ProductSummary;
 import com.endava.mentorship2022.model.Product;
+import com.endava.mentorship2022.service.ProductFacetService;
+import com.endava.mentorship2022.service.ProductImportService;
+import com.endava.mentorship2022.service.ProductSearchService;
 import com.endava.mentorship2022.service.ProductService;
 import lombok.AllArgsConstructor;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.InputStream;
 import java.util.List;
 
 @AllArgsConstructor
@@ -15,10 +25,25 @@ public class ProductController {
 
     private final ProductService productService;
 
+    private final ProductSearchService productSearchService;
+
+    private final ProductFacetService productFacetService;
+
+    private final ProductImportService productImportService;
+
+    private final NdjsonStreamer ndjsonStreamer;
+
+    // Summaries only, GET /products/{id} returns the whole product
     @GetMapping
-    public List<Product> findAll(){
+    public List<ProductSummary> findAll(){
         return productService.findAllProducts();
     }
+
+    @GetMapping(produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamAll() {
+        return ndjsonStreamer.stream(productService::streamAllProducts);
+    }
+
     @GetMapping("/page/{pageNum}")
     public List<Product> findAllByPage(@PathVariable int pageNum,
                                     @RequestParam(defaultValue = "10") int pageSize,
@@ -26,6 +51,33 @@ public class ProductController {
                                     @RequestParam(defaultValue = "asc") String sortDir ) {
         return productService.findAllByPage(pageNum, pageSize, sortField, sortDir);
     }
+
+    // Keyset pagination: pass the "next" token of a page as "after" to get the following page
+    @GetMapping("/page")
+    public KeysetPage<Product> findAllAfter(@RequestParam(required = false) String after,
+                                    @RequestParam(defaultValue = "10") int pageSize,
+                                    @RequestParam(defaultValue = "id") String sortField,
+                                    @RequestParam(defaultValue = "asc") String sortDir) {
+        return productService.findAllAfter(after, pageSize, sortField, sortDir);
+    }
+
+    // Best matches first. Words are optional, "quoted phrases" must match
+    @GetMapping("/search")
+    public List<Product> search(@RequestParam String q,
+                                @RequestParam(defaultValue = "20") int limit) {
+        return productSearchService.search(q, limit);
+    }
+
+    // Repeat a parameter to select several values, e.g. ?brand=Lavazza&brand=Illy&price=0-25
+    @GetMapping("/facets")
+    public FacetCounts findFacets(@RequestParam(required = false) List<String> brand,
+                                  @RequestParam(required = false) List<Long> category,
+                                  @RequestParam(required = false) List<String> price,
+                                  @RequestParam(required = false) Boolean enabled,
+                                  @RequestParam(required = false) Boolean inStock) {
+        return productFacetService.countFacets(brand, category, price, enabled, inStock);
+    }
+
     @GetMapping("{id}")
     public Product findProductById(@PathVariable long id){
         return productService.findById(id);
@@ -35,11 +87,24 @@ public class ProductController {
         return productService.saveProduct(product);
     }
 
+    // Body is a JSON array or newline-delimited JSON of products. Answers with one NDJSON line per imported chunk
+    // and a summary line at the end
+    @PostMapping(value = "/bulk", consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    public ResponseEntity<StreamingResponseBody> bulkImport(InputStream body) {
+        return ndjsonStreamer.write(lines -> lines.accept(productImportService.importProducts(body, lines::accept)));
+    }
+
     @DeleteMapping("{id}")
     public void deleteProduct(@PathVariable long id){
         productService.deleteById(id);
     }
 
+    // Admins only, returns the number of products deleted
+    @DeleteMapping
+    public int deleteProducts(@RequestParam List<Long> ids) {
+        return productService.deleteAllById(ids);
+    }
+
     @PutMapping("{id}")
     public Product updateProduct(@PathVariable long id, @RequestBody Product newProduct){
         return productService.updateProduct(id, newProduct);
@@ -1,8 +1,13 @@
 package com.endava.mentorship2022.controller;
+import com.endava.mentorship2022.model.Product;
 import com.endava.mentorship2022.model.TechnicalDetail;
+import com.endava.mentorship2022.service.ProductAttributeService;
 import com.endava.mentorship2022.service.TechnicalDetailService;
 import lombok.AllArgsConstructor;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.util.List;
 
@@ -13,11 +18,28 @@ public class TechnicalDetailController {
 
     private final TechnicalDetailService technicalDetailService;
 
+    private final ProductAttributeService productAttributeService;
+
+    private final NdjsonStreamer ndjsonStreamer;
+
     @GetMapping
     public List<TechnicalDetail> findAll() {
         return technicalDetailService.findAllTechnicalDetails();
     }
 
+    @GetMapping(produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamAll() {
+        return ndjsonStreamer.stream(technicalDetailService::streamAllTechnicalDetails);
+    }
+
+    // Products having every "all" attribute and at least one "any" attribute, written as name:value,
+    // e.g. ?all=Burr type:Conical&any=Color:Black&any=Color:Silver
+    @GetMapping("/products")
+    public List<Product> findProductsByAttributes(@RequestParam(required = false) List<String> all,
+                                                  @RequestParam(required = false) List<String> any,
+                                                  @RequestParam(defaultValue = "100") int limit) {
+        return productAttributeService.findProducts(all, any, limit);
+    }
 
     @GetMapping("/{id}")
     public TechnicalDetail findByIdTechnicalDetail(@PathVariable Long id) {
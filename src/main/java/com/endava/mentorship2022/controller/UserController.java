@@ -1,10 +1,14 @@
 package com.endava.mentorship2022.controller;
 
+import com.endava.mentorship2022.dto.KeysetPage;
 import com.endava.mentorship2022.model.User;
 import com.endava.mentorship2022.model.UserStatus;
 import com.endava.mentorship2022.service.UserService;
 import lombok.AllArgsConstructor;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.util.List;
 
@@ -15,11 +19,18 @@ public class UserController {
 
     private final UserService userService;
 
+    private final NdjsonStreamer ndjsonStreamer;
+
     @GetMapping
     public List<User> findAll() {
         return userService.findAll();
     }
 
+    @GetMapping(produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamAll() {
+        return ndjsonStreamer.stream(userService::streamAll);
+    }
+
     @GetMapping("/page/{pageNum}")
     public List<User> findAllByPage(@PathVariable int pageNum,
                                     @RequestParam(defaultValue = "10") int pageSize,
@@ -28,6 +39,15 @@ public class UserController {
         return userService.findAllByPage(pageNum, pageSize, sortField, sortDir);
     }
 
+    // Keyset pagination: pass the "next" token of a page as "after" to get the following page
+    @GetMapping("/page")
+    public KeysetPage<User> findAllAfter(@RequestParam(required = false) String after,
+                                    @RequestParam(defaultValue = "10") int pageSize,
+                                    @RequestParam(defaultValue = "id") String sortField,
+                                    @RequestParam(defaultValue = "asc") String sortDir) {
+        return userService.findAllAfter(after, pageSize, sortField, sortDir);
+    }
+
     // method for getting all the users sorted by their birthdate and after that by their first name
     @GetMapping("/sorted")
     public List<User> findAllSorted() {
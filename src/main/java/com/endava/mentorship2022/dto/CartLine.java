@@ -0,0 +1,33 @@
+package com.endava.mentorship2022.dto;
+
+import com.endava.mentorship2022.model.CartItem;
+import com.endava.mentorship2022.model.Product;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+// Row of GET /cart: the product fields a cart shows instead of the whole product and the user
+@Getter
+@AllArgsConstructor
+public class CartLine {
+
+    private final long productId;
+
+    private final String name;
+
+    private final String alias;
+
+    private final float price;
+
+    private final short quantity;
+
+    public static CartLine of(CartItem cartItem) {
+        Product product = cartItem.getProduct();
+        return new CartLine(product.getId(), product.getName(), product.getAlias(), product.getPrice(),
+                cartItem.getQuantity());
+    }
+
+    public float getSubtotal() {
+        return price * quantity;
+    }
+
+}
@@ -0,0 +1,26 @@
+package com.endava.mentorship2022.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// One line of POST /cart/batch, applied as the matching single cart endpoint would
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CartOperation {
+
+    public enum Type {
+        ADD,
+        UPDATE,
+        REMOVE
+    }
+
+    private Type type;
+
+    private long productId;
+
+    // Not used by REMOVE
+    private short quantity;
+
+}
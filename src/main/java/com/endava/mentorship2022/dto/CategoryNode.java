@@ -0,0 +1,20 @@
+package com.endava.mentorship2022.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.List;
+
+@Getter
+@AllArgsConstructor
+public class CategoryNode {
+
+    private final long id;
+
+    private final String name;
+
+    private final String alias;
+
+    private final List<CategoryNode> children;
+
+}
@@ -0,0 +1,18 @@
+package com.endava.mentorship2022.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.Map;
+
+@Getter
+@AllArgsConstructor
+public class FacetCounts {
+
+    // Number of products matching all the selected filters
+    private final int total;
+
+    // facet -> value -> number of products with that value matching the filters of the other facets
+    private final Map<String, Map<String, Integer>> facets;
+
+}
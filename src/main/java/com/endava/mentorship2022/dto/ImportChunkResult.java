@@ -0,0 +1,24 @@
+package com.endava.mentorship2022.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.List;
+
+// Progress line of a bulk import, written as soon as a chunk is committed or rolled back
+@Getter
+@AllArgsConstructor
+public class ImportChunkResult {
+
+    private final int chunk;
+
+    // Position of the first row of the chunk in the imported body, starting at 0
+    private final long firstRow;
+
+    private final int imported;
+
+    private final int failed;
+
+    private final List<String> errors;
+
+}
@@ -0,0 +1,20 @@
+package com.endava.mentorship2022.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+// Last line of a bulk import
+@Getter
+@AllArgsConstructor
+public class ImportSummary {
+
+    private final long imported;
+
+    private final long failed;
+
+    private final long elapsedMillis;
+
+    // Set when the body could not be parsed any further, rows before it were still imported
+    private final String error;
+
+}
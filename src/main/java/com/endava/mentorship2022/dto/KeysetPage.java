@@ -0,0 +1,17 @@
+package com.endava.mentorship2022.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.List;
+
+@Getter
+@AllArgsConstructor
+public class KeysetPage<T> {
+
+    private final List<T> content;
+
+    // Opaque token to pass as "after" for the next page, null on the last page
+    private final String next;
+
+}
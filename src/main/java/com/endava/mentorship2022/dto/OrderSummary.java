@@ -0,0 +1,27 @@
+package com.endava.mentorship2022.dto;
+
+import com.endava.mentorship2022.model.OrderStatus;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.time.LocalDate;
+
+// Row of GET /orders: the order without its user and details, which GET /orders/{id} still returns
+@Getter
+@AllArgsConstructor
+public class OrderSummary {
+
+    private final long id;
+
+    private final LocalDate date;
+
+    private final float total;
+
+    private final OrderStatus status;
+
+    private final Long userId;
+
+    // Number of order details
+    private final long lines;
+
+}
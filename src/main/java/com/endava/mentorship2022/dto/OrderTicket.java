@@ -0,0 +1,29 @@
+package com.endava.mentorship2022.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+// Outcome of a queued checkout, returned by POST /checkout and polled with GET /checkout/{id}
+@Getter
+@AllArgsConstructor
+public class OrderTicket {
+
+    public enum Status {
+        QUEUED,
+        PLACED,
+        FAILED
+    }
+
+    private final String id;
+
+    private final Status status;
+
+    // Set once the order is placed
+    private final Long orderId;
+
+    private final Float total;
+
+    // Why the checkout failed, e.g. an empty cart or a product out of stock
+    private final String message;
+
+}
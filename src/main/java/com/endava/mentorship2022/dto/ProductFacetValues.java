@@ -0,0 +1,24 @@
+package com.endava.mentorship2022.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+// The columns of a product the facet index counts by, selected without loading the entity
+@Getter
+@AllArgsConstructor
+public class ProductFacetValues {
+
+    private final long id;
+
+    private final String brand;
+
+    // null for products without a category
+    private final Long categoryId;
+
+    private final float price;
+
+    private final boolean enabled;
+
+    private final int stock;
+
+}
@@ -0,0 +1,30 @@
+package com.endava.mentorship2022.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+// Row of GET /products, selected column by column: no description, technical details or category entity
+@Getter
+@AllArgsConstructor
+public class ProductSummary {
+
+    private final long id;
+
+    private final String name;
+
+    private final String alias;
+
+    private final String brand;
+
+    private final float price;
+
+    private final int stock;
+
+    private final boolean enabled;
+
+    // null for products without a category
+    private final Long categoryId;
+
+    private final String categoryName;
+
+}
@@ -0,0 +1,12 @@
+package com.endava.mentorship2022.dto;
+
+// Projection of a technical_details row without loading the TechnicalDetail entity and its product
+public interface TechnicalDetailAttribute {
+
+    long getProductId();
+
+    String getName();
+
+    String getValue();
+
+}
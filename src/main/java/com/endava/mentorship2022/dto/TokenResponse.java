@@ -0,0 +1,19 @@
+package com.endava.mentorship2022.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+@Getter
+@AllArgsConstructor
+public class TokenResponse {
+
+    private final String tokenType;
+
+    private final String accessToken;
+
+    // Seconds until the access token expires
+    private final long expiresIn;
+
+    private final String refreshToken;
+
+}
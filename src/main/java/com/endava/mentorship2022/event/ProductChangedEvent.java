@@ -0,0 +1,13 @@
+package com.endava.mentorship2022.event;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+// Published after a product, or one of its technical details, was created or updated
+@Getter
+@AllArgsConstructor
+public class ProductChangedEvent {
+
+    private final long productId;
+
+}
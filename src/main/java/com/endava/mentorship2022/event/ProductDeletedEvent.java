@@ -0,0 +1,13 @@
+package com.endava.mentorship2022.event;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+// Published after a product was deleted
+@Getter
+@AllArgsConstructor
+public class ProductDeletedEvent {
+
+    private final long productId;
+
+}
@@ -0,0 +1,16 @@
+package com.endava.mentorship2022.event;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.Collection;
+
+// Published after orders took stock of products, once it is committed or written behind. Only the stock changed,
+// so the indexes of names and technical details need not follow it
+@Getter
+@AllArgsConstructor
+public class ProductStockChangedEvent {
+
+    private final Collection<Long> productIds;
+
+}
@@ -0,0 +1,15 @@
+package com.endava.mentorship2022.event;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.List;
+
+// Published after a chunk of a bulk import was committed, instead of one ProductChangedEvent per product
+@Getter
+@AllArgsConstructor
+public class ProductsImportedEvent {
+
+    private final List<Long> productIds;
+
+}
@@ -1,7 +1,10 @@
 package com.endava.mentorship2022.exception;
 
 import org.springframework.core.NestedRuntimeException;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
 
+@ResponseStatus(HttpStatus.BAD_REQUEST)
 public class CartItemException extends NestedRuntimeException {
     public CartItemException(String msg) {
         super(msg);
@@ -0,0 +1,14 @@
+package com.endava.mentorship2022.exception;
+
+import org.springframework.core.NestedRuntimeException;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.TOO_MANY_REQUESTS)
+public class CheckoutBusy extends NestedRuntimeException {
+
+    public CheckoutBusy(String msg) {
+        super(msg);
+    }
+
+}
@@ -0,0 +1,14 @@
+package com.endava.mentorship2022.exception;
+
+import org.springframework.core.NestedRuntimeException;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.BAD_REQUEST)
+public class InvalidAttributeQuery extends NestedRuntimeException {
+
+    public InvalidAttributeQuery(String msg) {
+        super(msg);
+    }
+
+}
@@ -0,0 +1,14 @@
+package com.endava.mentorship2022.exception;
+
+import org.springframework.core.NestedRuntimeException;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.UNAUTHORIZED)
+public class InvalidCredentials extends NestedRuntimeException {
+
+    public InvalidCredentials(String msg) {
+        super(msg);
+    }
+
+}
@@ -0,0 +1,14 @@
+package com.endava.mentorship2022.exception;
+
+import org.springframework.core.NestedRuntimeException;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.UNPROCESSABLE_ENTITY)
+public class InvalidIdempotencyKey extends NestedRuntimeException {
+
+    public InvalidIdempotencyKey(String msg) {
+        super(msg);
+    }
+
+}
@@ -0,0 +1,91 @@
+package com.endava.mentorship2022.jdbc;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+// Statements executed, rows fetched and time spent in JDBC calls by one unit of work, e.g. an HTTP request.
+// Counted by the DataSource wrapped by StatementStatisticsPostProcessor for the statistics attached to the
+// calling thread. Work handed over to another thread is only counted when the statistics are handed over
+// too, see runWith. A JDBC batch is sent as one execution, so it counts as one statement.
+public class StatementStatistics {
+
+    private static final ThreadLocal<StatementStatistics> CURRENT = new ThreadLocal<>();
+
+    private final LongAdder statements = new LongAdder();
+
+    private final LongAdder rows = new LongAdder();
+
+    private final LongAdder jdbcNanos = new LongAdder();
+
+    // Only kept when asked for, for the failure messages of tests
+    private final List<String> sql;
+
+    public StatementStatistics(boolean keepSql) {
+        this.sql = keepSql ? Collections.synchronizedList(new ArrayList<>()) : null;
+    }
+
+    // null when nothing is counted on this thread
+    public static StatementStatistics current() {
+        return CURRENT.get();
+    }
+
+    // Counts the work of this thread in the given statistics until the returned ones are attached again
+    public static StatementStatistics attach(StatementStatistics statistics) {
+        StatementStatistics previous = CURRENT.get();
+        if (statistics == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(statistics);
+        }
+        return previous;
+    }
+
+    public static <T> T runWith(StatementStatistics statistics, Supplier<T> work) {
+        StatementStatistics previous = attach(statistics);
+        try {
+            return work.get();
+        } finally {
+            attach(previous);
+        }
+    }
+
+    public long getStatements() {
+        return statements.sum();
+    }
+
+    public long getRows() {
+        return rows.sum();
+    }
+
+    public long getJdbcNanos() {
+        return jdbcNanos.sum();
+    }
+
+    public List<String> getSql() {
+        if (sql == null) {
+            return List.of();
+        }
+        synchronized (sql) {
+            return List.copyOf(sql);
+        }
+    }
+
+    void executed(String statement, long nanos) {
+        statements.increment();
+        jdbcNanos.add(nanos);
+        if (sql != null) {
+            sql.add(statement == null ? "(batch)" : statement);
+        }
+    }
+
+    void fetched(boolean row, long nanos) {
+        if (row) {
+            rows.increment();
+        }
+        jdbcNanos.add(nanos);
+    }
+
+}
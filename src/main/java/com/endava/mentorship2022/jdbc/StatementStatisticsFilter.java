@@ -0,0 +1,204 @@
+package com.endava.mentorship2022.jdbc;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerMapping;
+import org.springframework.web.util.ContentCachingResponseWrapper;
+import org.springframework.web.util.WebUtils;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+// Counts the statements, rows and JDBC time of each HTTP request, filters included, and publishes them as
+// jdbc.request.statements, jdbc.request.rows and jdbc.request.time tagged with the method and the matched uri.
+// With jdbc.statistics.headers, set in the debug profile, they are also sent as the X-SQL-Statements, X-SQL-Rows
+// and X-SQL-Time (milliseconds) headers. The body is then buffered until the request is done, so statements run
+// while it is written, e.g. lazy loads during JSON serialization, are counted too. Asynchronous responses, e.g.
+// NDJSON streams, are sent as they are written and get no headers: buffering would hold the whole stream.
+// Statements run on other threads, e.g. by NDJSON streams or password hashing, are not counted.
+// A request run by a caller already counting, e.g. a test measuring it, counts in the caller's statistics.
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+@ConditionalOnProperty(name = "jdbc.statistics.enabled", matchIfMissing = true)
+public class StatementStatisticsFilter extends OncePerRequestFilter {
+
+    public static final String STATEMENTS_HEADER = "X-SQL-Statements";
+
+    public static final String ROWS_HEADER = "X-SQL-Rows";
+
+    public static final String TIME_HEADER = "X-SQL-Time";
+
+    // Kept over the dispatches of an asynchronous request
+    private static final String STATISTICS_ATTRIBUTE = StatementStatisticsFilter.class.getName() + ".statistics";
+
+    private final boolean headers;
+
+    private final MeterRegistry meterRegistry;
+
+    public StatementStatisticsFilter(@Value("${jdbc.statistics.headers:false}") boolean headers,
+                                     MeterRegistry meterRegistry) {
+        this.headers = headers;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    protected boolean shouldNotFilterAsyncDispatch() {
+        return false;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        StatementStatistics statistics = (StatementStatistics) request.getAttribute(STATISTICS_ATTRIBUTE);
+        if (statistics == null) {
+            statistics = StatementStatistics.current() != null ? StatementStatistics.current()
+                    : new StatementStatistics(false);
+            request.setAttribute(STATISTICS_ATTRIBUTE, statistics);
+        }
+        HttpServletResponse responseToUse = response;
+        if (headers && !isAsyncDispatch(request) && !(response instanceof BufferedResponse)) {
+            responseToUse = new BufferedResponse(response);
+        }
+
+        StatementStatistics previous = StatementStatistics.attach(statistics);
+        try {
+            filterChain.doFilter(request, responseToUse);
+        } finally {
+            StatementStatistics.attach(previous);
+        }
+
+        BufferedResponse buffered = WebUtils.getNativeResponse(responseToUse, BufferedResponse.class);
+        // The last dispatch of an asynchronous request finishes it
+        if (isAsyncStarted(request)) {
+            if (buffered != null) {
+                buffered.stream();
+            }
+            return;
+        }
+        record(request, statistics);
+        if (buffered != null && !buffered.streaming) {
+            buffered.setHeader(STATEMENTS_HEADER, String.valueOf(statistics.getStatements()));
+            buffered.setHeader(ROWS_HEADER, String.valueOf(statistics.getRows()));
+            buffered.setHeader(TIME_HEADER, String.format(Locale.ROOT, "%.3f", statistics.getJdbcNanos() / 1e6));
+            buffered.copyBodyToResponse();
+        }
+    }
+
+    private void record(HttpServletRequest request, StatementStatistics statistics) {
+        Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        Tags tags = Tags.of("method", request.getMethod(), "uri", pattern == null ? "UNKNOWN" : pattern.toString());
+        DistributionSummary.builder("jdbc.request.statements").tags(tags).register(meterRegistry)
+                .record(statistics.getStatements());
+        DistributionSummary.builder("jdbc.request.rows").tags(tags).register(meterRegistry)
+                .record(statistics.getRows());
+        Timer.builder("jdbc.request.time").tags(tags).register(meterRegistry)
+                .record(statistics.getJdbcNanos(), TimeUnit.NANOSECONDS);
+    }
+
+    // Buffers the body until the statistics headers are set, or passes it through once the response turns
+    // asynchronous. A StreamingResponseBody takes the stream before that and writes to it from its own thread,
+    // so the stream checks on every write where it goes.
+    private static class BufferedResponse extends ContentCachingResponseWrapper {
+
+        private volatile boolean streaming;
+
+        private ServletOutputStream outputStream;
+
+        private PrintWriter writer;
+
+        BufferedResponse(HttpServletResponse response) {
+            super(response);
+        }
+
+        synchronized void stream() throws IOException {
+            copyBodyToResponse(false);
+            streaming = true;
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() throws IOException {
+            if (outputStream == null) {
+                outputStream = new SwitchingOutputStream(super.getOutputStream());
+            }
+            return outputStream;
+        }
+
+        @Override
+        public PrintWriter getWriter() throws IOException {
+            if (writer == null) {
+                writer = new PrintWriter(new OutputStreamWriter(getOutputStream(), getCharacterEncoding()));
+            }
+            return writer;
+        }
+
+        @Override
+        public void flushBuffer() throws IOException {
+            if (streaming) {
+                getResponse().flushBuffer();
+            } else {
+                super.flushBuffer();
+            }
+        }
+
+        private class SwitchingOutputStream extends ServletOutputStream {
+
+            private final ServletOutputStream buffer;
+
+            SwitchingOutputStream(ServletOutputStream buffer) {
+                this.buffer = buffer;
+            }
+
+            @Override
+            public void write(int b) throws IOException {
+                synchronized (BufferedResponse.this) {
+                    target().write(b);
+                }
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                synchronized (BufferedResponse.this) {
+                    target().write(b, off, len);
+                }
+            }
+
+            @Override
+            public void flush() throws IOException {
+                synchronized (BufferedResponse.this) {
+                    target().flush();
+                }
+            }
+
+            @Override
+            public boolean isReady() {
+                return true;
+            }
+
+            @Override
+            public void setWriteListener(WriteListener writeListener) {
+                buffer.setWriteListener(writeListener);
+            }
+
+            private ServletOutputStream target() throws IOException {
+                return streaming ? getResponse().getOutputStream() : buffer;
+            }
+        }
+    }
+}
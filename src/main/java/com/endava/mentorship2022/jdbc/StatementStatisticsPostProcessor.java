@@ -0,0 +1,73 @@
+package com.endava.mentorship2022.jdbc;
+
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+
+// Wraps the DataSource so the statements, rows and JDBC time of each unit of work are counted, see
+// StatementStatistics. Calls made while no statistics are attached to the thread only pay for the proxy.
+// Turned off with jdbc.statistics.enabled=false.
+@Component
+@ConditionalOnProperty(name = "jdbc.statistics.enabled", matchIfMissing = true)
+public class StatementStatisticsPostProcessor implements BeanPostProcessor {
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        return bean instanceof DataSource ? wrap(DataSource.class, bean, null) : bean;
+    }
+
+    // A prepared statement keeps the SQL it was prepared with, a plain statement gets it on execute
+    private static Object wrap(Class<?> type, Object target, String preparedSql) {
+        return Proxy.newProxyInstance(StatementStatisticsPostProcessor.class.getClassLoader(), new Class<?>[]{type},
+                (proxy, method, args) -> {
+                    StatementStatistics statistics = StatementStatistics.current();
+                    long start = statistics == null ? 0 : System.nanoTime();
+                    Object result = invoke(target, method, args);
+                    if (statistics != null) {
+                        count(statistics, target, method, args, preparedSql, result, System.nanoTime() - start);
+                    }
+                    if (result == null) {
+                        return null;
+                    }
+                    Class<?> returnType = method.getReturnType();
+                    if (returnType == Connection.class || Statement.class.isAssignableFrom(returnType)) {
+                        return wrap(returnType, result, target instanceof Connection ? sqlArgument(args) : null);
+                    }
+                    if (returnType == ResultSet.class && target instanceof Statement) {
+                        return wrap(ResultSet.class, result, null);
+                    }
+                    return result;
+                });
+    }
+
+    private static void count(StatementStatistics statistics, Object target, Method method, Object[] args,
+                              String preparedSql, Object result, long nanos) {
+        if (target instanceof Statement && method.getName().startsWith("execute")) {
+            String sql = sqlArgument(args);
+            statistics.executed(sql == null ? preparedSql : sql, nanos);
+        } else if (target instanceof ResultSet && method.getName().equals("next")) {
+            statistics.fetched(Boolean.TRUE.equals(result), nanos);
+        }
+    }
+
+    private static String sqlArgument(Object[] args) {
+        return args != null && args.length > 0 && args[0] instanceof String ? (String) args[0] : null;
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+}
@@ -13,7 +13,9 @@ import javax.persistence.*;
 @Table(name = "cart_items")
 public class CartItem {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "cart_items")
+    @TableGenerator(name = "cart_items", table = "id_generators", pkColumnName = "name", valueColumnName = "next_id",
+            allocationSize = 50)
     @Column(name = "id")
     private long id;
 
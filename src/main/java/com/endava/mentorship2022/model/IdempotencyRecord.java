@@ -0,0 +1,71 @@
+package com.endava.mentorship2022.model;
+
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+import org.springframework.data.domain.Persistable;
+
+import javax.persistence.*;
+import java.time.LocalDateTime;
+
+// The response served for an Idempotency-Key, replayed when the same request comes again
+@Data
+@NoArgsConstructor
+@Entity
+@Table(name = "idempotency_keys")
+public class IdempotencyRecord implements Persistable<String> {
+    // User id, endpoint and the client's key
+    @Id
+    @Column(name = "id", length = 300)
+    private String id;
+
+    // SHA-256 of the request body, a key reused for another request is refused
+    @Column(name = "request_hash", nullable = false, length = 64)
+    private String requestHash;
+
+    @Column(name = "status", nullable = false)
+    private int status;
+
+    @Column(name = "content_type", length = 100)
+    private String contentType;
+
+    @Column(name = "location", length = 300)
+    private String location;
+
+    @Lob
+    @Column(name = "body")
+    private String body;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+
+    // The id is assigned, so save would merge and SELECT the row first. A new record is persisted with a plain
+    // INSERT instead, a record already in the table is marked when it is loaded or inserted.
+    @Transient
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    private boolean stored;
+
+    public IdempotencyRecord(String id, String requestHash, int status, String contentType, String location,
+                             String body, LocalDateTime createdAt) {
+        this.id = id;
+        this.requestHash = requestHash;
+        this.status = status;
+        this.contentType = contentType;
+        this.location = location;
+        this.body = body;
+        this.createdAt = createdAt;
+    }
+
+    @Override
+    public boolean isNew() {
+        return !stored;
+    }
+
+    @PostLoad
+    @PostPersist
+    void markStored() {
+        stored = true;
+    }
+}
@@ -16,7 +16,9 @@ import java.util.Set;
 @Table(name = "orders")
 public class Order {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "orders")
+    @TableGenerator(name = "orders", table = "id_generators", pkColumnName = "name", valueColumnName = "next_id",
+            allocationSize = 50)
     @Column(name = "id", nullable = false)
     private long id;
 
@@ -34,7 +36,7 @@ public class Order {
     private Set<OrderDetail> orderDetails = new HashSet<>();
 
     @Enumerated(EnumType.STRING)
-    @Column(name = "status", nullable = false, length = 10, columnDefinition = "PENDING")
+    @Column(name = "status", nullable = false, length = 10, columnDefinition = "VARCHAR(10) DEFAULT 'PENDING'")
     private OrderStatus status = OrderStatus.PENDING;
 
     public Order(long id) {
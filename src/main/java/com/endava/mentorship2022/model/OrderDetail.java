@@ -15,7 +15,9 @@ import javax.persistence.*;
 public class OrderDetail {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "order_details")
+    @TableGenerator(name = "order_details", table = "id_generators", pkColumnName = "name", valueColumnName = "next_id",
+            allocationSize = 50)
     @Column(name = "id")
     private long id;
 
@@ -15,7 +15,9 @@ import java.util.Set;
 @Table(name = "products")
 public class Product {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "products")
+    @TableGenerator(name = "products", table = "id_generators", pkColumnName = "name", valueColumnName = "next_id",
+            allocationSize = 50)
     @Column(name = "id")
     private long id;
 
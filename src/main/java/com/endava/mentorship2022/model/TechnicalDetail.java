@@ -14,6 +14,7 @@ import javax.persistence.Id;
 import javax.persistence.JoinColumn;
 import javax.persistence.ManyToOne;
 import javax.persistence.Table;
+import javax.persistence.TableGenerator;
 
 @Getter
 @Setter
@@ -24,7 +25,9 @@ import javax.persistence.Table;
 public class TechnicalDetail {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "technical_details")
+    @TableGenerator(name = "technical_details", table = "id_generators", pkColumnName = "name", valueColumnName = "next_id",
+            allocationSize = 50)
     @Column(name="id")
     private long id;
 
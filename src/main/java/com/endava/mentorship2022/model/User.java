@@ -1,5 +1,6 @@
 package com.endava.mentorship2022.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import lombok.AllArgsConstructor;
 import lombok.Data;
@@ -14,6 +15,8 @@ import java.util.Set;
 @Data
 @Entity
 @Table(name = "users")
+// The current user of a request is a lazy reference, see CurrentUserArgumentResolver
+@JsonIgnoreProperties({"hibernateLazyInitializer", "handler"})
 public class User {
 
     @Id
@@ -44,7 +47,7 @@ public class User {
     private LocalDate birthDate;
 
     @Enumerated(EnumType.STRING)
-    @Column(name = "status", nullable = false, length = 10, columnDefinition = "PENDING")
+    @Column(name = "status", nullable = false, length = 10, columnDefinition = "VARCHAR(10) DEFAULT 'PENDING'")
     private UserStatus status = UserStatus.PENDING;
 
     @ManyToMany(cascade = CascadeType.ALL, fetch = FetchType.EAGER)
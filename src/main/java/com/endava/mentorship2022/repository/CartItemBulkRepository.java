@@ -0,0 +1,58 @@
+package com.endava.mentorship2022.repository;
+
+import com.endava.mentorship2022.model.CartItem;
+import com.endava.mentorship2022.model.Product;
+import com.endava.mentorship2022.model.User;
+import lombok.AllArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+// Batched cart writes for the write-behind cart store: each method is one JDBC batch whatever the number of rows.
+@Repository
+@AllArgsConstructor
+public class CartItemBulkRepository {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final EntityManager entityManager;
+
+    // Pairs of user id and product id
+    public void deleteAll(List<long[]> userAndProductIds) {
+        if (!userAndProductIds.isEmpty()) {
+            List<Object[]> arguments = new ArrayList<>();
+            userAndProductIds.forEach(ids -> arguments.add(new Object[]{ids[0], ids[1]}));
+            jdbcTemplate.batchUpdate("DELETE FROM cart_items WHERE user_id = ? AND product_id = ?", arguments);
+        }
+    }
+
+    public void updateQuantities(Map<Long, Short> quantitiesById) {
+        if (!quantitiesById.isEmpty()) {
+            List<Object[]> arguments = new ArrayList<>();
+            quantitiesById.forEach((id, quantity) -> arguments.add(new Object[]{quantity, id}));
+            jdbcTemplate.batchUpdate("UPDATE cart_items SET quantity = ? WHERE id = ?", arguments);
+        }
+    }
+
+    // Triples of user id, product id and quantity, returns the generated ids in the same order.
+    // The ids are allocated in pooled blocks, so Hibernate sends the inserts in JDBC batches.
+    public List<Long> insertAll(List<long[]> userProductAndQuantity) {
+        List<CartItem> cartItems = new ArrayList<>();
+        for (long[] values : userProductAndQuantity) {
+            CartItem cartItem = new CartItem(0, (short) values[2], entityManager.getReference(User.class, values[0]),
+                    entityManager.getReference(Product.class, values[1]));
+            entityManager.persist(cartItem);
+            cartItems.add(cartItem);
+        }
+        entityManager.flush();
+        entityManager.clear();
+
+        List<Long> ids = new ArrayList<>();
+        cartItems.forEach(cartItem -> ids.add(cartItem.getId()));
+        return ids;
+    }
+}
@@ -1,26 +1,44 @@
 package com.endava.mentorship2022.repository;
 
+import com.endava.mentorship2022.dto.CartLine;
 import com.endava.mentorship2022.model.CartItem;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 
 @Repository
 public interface CartItemRepository extends JpaRepository<CartItem, Long> {
 
+    // Products and their categories come in the same query, instead of one select per line
+    @Query("SELECT c FROM CartItem c JOIN FETCH c.product p LEFT JOIN FETCH p.category WHERE c.user.id = ?1")
     List<CartItem> findCartItemsByUserId(long id);
 
+    // Only the product columns a cart shows, no entity is loaded
+    @Query("SELECT new com.endava.mentorship2022.dto.CartLine(p.id, p.name, p.alias, p.price, c.quantity) " +
+            "FROM CartItem c JOIN c.product p WHERE c.user.id = ?1 ORDER BY c.id")
+    List<CartLine> findCartLinesByUserId(long id);
+
     CartItem findCartItemByUserIdAndProductId(long userId, long productId);
 
     @Modifying
     @Query("UPDATE CartItem c SET c.quantity = ?1 WHERE c.user.id = ?2 AND c.product.id = ?3")
     void updateProductQuantity(short quantity, long userId, long productId);
 
-    void deleteCartItemByUserIdAndProductId(long userId, long productId);
+    // Single statements returning the number of rows deleted, instead of derived deletes loading every row first
+    @Modifying
+    @Query("DELETE FROM CartItem c WHERE c.user.id = ?1 AND c.product.id = ?2")
+    int deleteCartItemByUserIdAndProductId(long userId, long productId);
 
-    void deleteCartItemsByUserId(long userId);
+    @Modifying
+    @Query("DELETE FROM CartItem c WHERE c.user.id = ?1")
+    int deleteCartItemsByUserId(long userId);
+
+    @Modifying
+    @Query("DELETE FROM CartItem c WHERE c.user.id = ?1 AND c.product.id IN ?2")
+    int deleteCartItemsByUserIdAndProductIdIn(long userId, Collection<Long> productIds);
 
 }
\ No newline at end of file
@@ -0,0 +1,126 @@
+package com.endava.mentorship2022.repository;
+
+import com.endava.mentorship2022.dto.KeysetPage;
+import com.endava.mentorship2022.exception.InvalidPageRequest;
+import lombok.AllArgsConstructor;
+import org.springframework.stereotype.Repository;
+
+import javax.persistence.EntityManager;
+import javax.persistence.TypedQuery;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+// Seek pagination: instead of OFFSET n, each page continues strictly after the (sort key, id) of the previous
+// page's last row, so any page depth is a range scan on the sort key index and no COUNT(*) is needed.
+// Only id and String fields backed by a unique index may be used as sort keys.
+@Repository
+@AllArgsConstructor
+public class KeysetPageQuery {
+
+    // One page is read in a single query and held in memory, so its size is bounded
+    public static final int MAX_PAGE_SIZE = 100;
+
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+    private static final String ID_FIELD = "id";
+
+    private final EntityManager entityManager;
+
+    public <T> KeysetPage<T> findPage(Class<T> entityClass, Map<String, Function<T, ?>> sortKeys,
+                                      String after, int pageSize, String sortField, String sortDir) {
+        if (!sortKeys.containsKey(sortField) || !sortKeys.containsKey(ID_FIELD)) {
+            throw new InvalidPageRequest("Cannot page by " + sortField + ". Allowed sort fields: " + sortKeys.keySet());
+        }
+        if (pageSize < 1 || pageSize > MAX_PAGE_SIZE) {
+            throw new InvalidPageRequest("Page size must be between 1 and " + MAX_PAGE_SIZE + ", got " + pageSize);
+        }
+        boolean ascending = sortDir.equals("asc");
+        Cursor cursor = after == null ? null : Cursor.decode(after, sortField, ascending);
+
+        TypedQuery<T> query = entityManager.createQuery(
+                buildQuery(entityClass.getSimpleName(), sortField, ascending, cursor != null), entityClass);
+        if (cursor != null) {
+            query.setParameter("lastId", cursor.id);
+            if (!sortField.equals(ID_FIELD)) {
+                query.setParameter("lastKey", cursor.key);
+            }
+        }
+        // One extra row tells whether there is a next page without counting
+        List<T> rows = query.setMaxResults(pageSize + 1).getResultList();
+
+        if (rows.size() <= pageSize) {
+            return new KeysetPage<>(rows, null);
+        }
+        List<T> content = rows.subList(0, pageSize);
+        T last = content.get(pageSize - 1);
+        Object lastKey = sortKeys.get(sortField).apply(last);
+        long lastId = ((Number) sortKeys.get(ID_FIELD).apply(last)).longValue();
+        return new KeysetPage<>(List.copyOf(content), new Cursor(sortField, ascending, String.valueOf(lastKey), lastId).encode());
+    }
+
+    private static String buildQuery(String entityName, String sortField, boolean ascending, boolean hasCursor) {
+        String seek = ascending ? ">" : "<";
+        String direction = ascending ? "ASC" : "DESC";
+        StringBuilder jpql = new StringBuilder("SELECT e FROM ").append(entityName).append(" e");
+
+        if (hasCursor && sortField.equals(ID_FIELD)) {
+            jpql.append(" WHERE e.id ").append(seek).append(" :lastId");
+        } else if (hasCursor) {
+            // Written as a bounded range on the sort key so MySQL can use the index for the seek
+            jpql.append(" WHERE e.").append(sortField).append(' ').append(seek).append("= :lastKey")
+                    .append(" AND (e.").append(sortField).append(' ').append(seek).append(" :lastKey")
+                    .append(" OR e.id ").append(seek).append(" :lastId)");
+        }
+
+        jpql.append(" ORDER BY ");
+        if (!sortField.equals(ID_FIELD)) {
+            jpql.append("e.").append(sortField).append(' ').append(direction).append(", ");
+        }
+        return jpql.append("e.id ").append(direction).toString();
+    }
+
+    private static final class Cursor {
+
+        private final String sortField;
+
+        private final boolean ascending;
+
+        private final String key;
+
+        private final long id;
+
+        private Cursor(String sortField, boolean ascending, String key, long id) {
+            this.sortField = sortField;
+            this.ascending = ascending;
+            this.key = key;
+            this.id = id;
+        }
+
+        private String encode() {
+            String raw = sortField + ':' + (ascending ? "asc" : "desc") + ':' + id + ':' + key;
+            return ENCODER.encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+        }
+
+        private static Cursor decode(String token, String sortField, boolean ascending) {
+            String[] parts;
+            try {
+                parts = new String(DECODER.decode(token), StandardCharsets.UTF_8).split(":", 4);
+            } catch (IllegalArgumentException e) {
+                throw new InvalidPageRequest("Malformed page token: " + token);
+            }
+            if (parts.length != 4 || !parts[0].equals(sortField) || !parts[1].equals(ascending ? "asc" : "desc")) {
+                throw new InvalidPageRequest("Page token does not match sort " + sortField + " " + (ascending ? "asc" : "desc"));
+            }
+            try {
+                return new Cursor(sortField, ascending, parts[3], Long.parseLong(parts[2]));
+            } catch (NumberFormatException e) {
+                throw new InvalidPageRequest("Malformed page token: " + token);
+            }
+        }
+    }
+}
@@ -1,13 +1,37 @@
 package com.endava.mentorship2022.repository;
 
 import com.endava.mentorship2022.model.OrderDetail;
+import org.springframework.data.jpa.repository.EntityGraph;
+import org.springframework.data.jpa.repository.EntityGraph.EntityGraphType;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.stereotype.Repository;
 
+import javax.persistence.QueryHint;
+
 import java.util.List;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
+import static org.hibernate.jpa.QueryHints.HINT_READONLY;
 
 @Repository
 public interface OrderDetailRepository extends JpaRepository<OrderDetail, Long> {
+
+    // The eager order, user and product of each line come in the same query
+    @Override
+    @EntityGraph(type = EntityGraphType.LOAD,
+            attributePaths = {"order", "order.user", "product", "product.category"})
+    List<OrderDetail> findAll();
+
+    @EntityGraph(type = EntityGraphType.LOAD,
+            attributePaths = {"order", "order.user", "product", "product.category"})
     List<OrderDetail> findByOrderId(long orderId);
 
+    // Forward-only cursor for streaming the whole table, see NdjsonStreamer
+    @Query("SELECT d FROM OrderDetail d")
+    @QueryHints({@QueryHint(name = HINT_FETCH_SIZE, value = "500"), @QueryHint(name = HINT_READONLY, value = "true")})
+    Stream<OrderDetail> streamAll();
+
 }
@@ -1,15 +1,58 @@
 package com.endava.mentorship2022.repository;
 
+import com.endava.mentorship2022.dto.OrderSummary;
 import com.endava.mentorship2022.model.Order;
 import com.endava.mentorship2022.model.User;
+import org.springframework.data.jpa.repository.EntityGraph;
+import org.springframework.data.jpa.repository.EntityGraph.EntityGraphType;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.stereotype.Repository;
 
+import javax.persistence.QueryHint;
+
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
 
 @Repository
 public interface OrderRepository extends JpaRepository<Order, Long> {
 
+    // Details with their products and categories come in the same query, instead of queries per order and line
+    @EntityGraph(type = EntityGraphType.LOAD,
+            attributePaths = {"orderDetails", "orderDetails.product", "orderDetails.product.category"})
     List<Order> findByUser(User user);
 
+    @Override
+    @EntityGraph(type = EntityGraphType.LOAD,
+            attributePaths = {"user", "orderDetails", "orderDetails.product", "orderDetails.product.category"})
+    Optional<Order> findById(Long id);
+
+    // Only the columns of the list view and the number of lines, no entity is loaded
+    @Query("SELECT new com.endava.mentorship2022.dto.OrderSummary(o.id, o.date, o.total, o.status, o.user.id, " +
+            "COUNT(d)) FROM Order o LEFT JOIN o.orderDetails d GROUP BY o.id, o.date, o.total, o.status, o.user.id " +
+            "ORDER BY o.id")
+    List<OrderSummary> findAllSummaries();
+
+    // Forward-only cursor over the rows of findAllSummaries, for streaming the whole table, see NdjsonStreamer
+    @Query("SELECT new com.endava.mentorship2022.dto.OrderSummary(o.id, o.date, o.total, o.status, o.user.id, " +
+            "COUNT(d)) FROM Order o LEFT JOIN o.orderDetails d GROUP BY o.id, o.date, o.total, o.status, o.user.id " +
+            "ORDER BY o.id")
+    @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = "500"))
+    Stream<OrderSummary> streamAllSummaries();
+
+    // Bulk deletes skip the JPA cascades, the order details are deleted first
+    @Modifying
+    @Query("DELETE FROM OrderDetail d WHERE d.order.id IN :ids")
+    int deleteOrderDetailsByOrderIdIn(Collection<Long> ids);
+
+    @Modifying
+    @Query("DELETE FROM Order o WHERE o.id IN :ids")
+    int deleteAllByIdIn(Collection<Long> ids);
+
 }
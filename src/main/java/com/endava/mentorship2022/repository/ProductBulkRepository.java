@@ -0,0 +1,66 @@
+package com.endava.mentorship2022.repository;
+
+import com.endava.mentorship2022.model.Product;
+import lombok.AllArgsConstructor;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.stereotype.Repository;
+
+import javax.persistence.EntityManager;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.SortedMap;
+
+// Bulk writes: plain JDBC lookups of the unique columns and batched inserts through the entity manager for imports,
+// batched stock decrements for checkout.
+@Repository
+@AllArgsConstructor
+public class ProductBulkRepository {
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    private final EntityManager entityManager;
+
+    public Set<String> findExistingNames(Collection<String> names) {
+        return findExisting("name", names);
+    }
+
+    public Set<String> findExistingAliases(Collection<String> aliases) {
+        return findExisting("alias", aliases);
+    }
+
+    private Set<String> findExisting(String column, Collection<String> values) {
+        // An empty IN () is not valid SQL
+        if (values.isEmpty()) {
+            return new HashSet<>();
+        }
+        return new HashSet<>(jdbcTemplate.queryForList("SELECT " + column + " FROM products WHERE " + column + " IN (:values)",
+                new MapSqlParameterSource("values", values), String.class));
+    }
+
+    // Sets the generated ids on the products. The ids are allocated in pooled blocks, so Hibernate sends
+    // the inserts in JDBC batches of hibernate.jdbc.batch_size
+    public void insertAll(List<Product> products) {
+        for (Product product : products) {
+            product.getTechnicalDetails().forEach(technicalDetail -> technicalDetail.setProduct(product));
+            entityManager.persist(product);
+        }
+        // Keeps the persistence context from growing over the chunks of a long import
+        entityManager.flush();
+        entityManager.clear();
+    }
+
+    // Each line checks and decrements in one statement, and the row stays locked until the transaction ends,
+    // so two buyers can never take the same units. The lines go in one JDBC batch, in the map's ascending id
+    // order. Returns the rows updated per line, 0 where the stock was not enough
+    public int[] decrementStock(SortedMap<Long, Integer> quantities) {
+        SqlParameterSource[] lines = quantities.entrySet().stream()
+                .map(line -> new MapSqlParameterSource("id", line.getKey()).addValue("quantity", line.getValue()))
+                .toArray(SqlParameterSource[]::new);
+        return jdbcTemplate.batchUpdate("UPDATE products SET stock = stock - :quantity WHERE id = :id AND stock >= :quantity",
+                lines);
+    }
+}
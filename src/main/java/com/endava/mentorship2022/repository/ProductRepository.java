@@ -1,9 +1,94 @@
 package com.endava.mentorship2022.repository;
 
+import com.endava.mentorship2022.dto.ProductFacetValues;
+import com.endava.mentorship2022.dto.ProductSummary;
 import com.endava.mentorship2022.model.Product;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.EntityGraph;
+import org.springframework.data.jpa.repository.EntityGraph.EntityGraphType;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.stereotype.Repository;
 
+import javax.persistence.QueryHint;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
+import static org.hibernate.jpa.QueryHints.HINT_READONLY;
+
 @Repository
 public interface ProductRepository extends JpaRepository<Product, Long> {
+
+    // Fetch technical details in the same query so the products can be indexed and serialized outside the session
+    @Override
+    @Query("SELECT DISTINCT p FROM Product p LEFT JOIN FETCH p.technicalDetails")
+    @QueryHints(@QueryHint(name = "hibernate.query.passDistinctThrough", value = "false"))
+    List<Product> findAll();
+
+    // Only the columns of the list view, no entity is loaded
+    @Query("SELECT new com.endava.mentorship2022.dto.ProductSummary(p.id, p.name, p.alias, p.brand, p.price, " +
+            "p.stock, p.enabled, c.id, c.name) FROM Product p LEFT JOIN p.category c ORDER BY p.id")
+    List<ProductSummary> findAllSummaries();
+
+    // Only the columns the facet index counts by, without the technical details findAll() fetches
+    @Query("SELECT new com.endava.mentorship2022.dto.ProductFacetValues(p.id, p.brand, c.id, p.price, " +
+            "p.enabled, p.stock) FROM Product p LEFT JOIN p.category c")
+    List<ProductFacetValues> findAllFacetValues();
+
+    @Query("SELECT new com.endava.mentorship2022.dto.ProductFacetValues(p.id, p.brand, c.id, p.price, " +
+            "p.enabled, p.stock) FROM Product p LEFT JOIN p.category c WHERE p.id IN :ids")
+    List<ProductFacetValues> findFacetValuesByIdIn(Collection<Long> ids);
+
+    // A collection fetch join would page in memory, the technical details of the page come in batches instead
+    @Override
+    @EntityGraph(type = EntityGraphType.LOAD, attributePaths = "category")
+    Page<Product> findAll(Pageable pageable);
+
+    @Query("SELECT p FROM Product p LEFT JOIN FETCH p.category LEFT JOIN FETCH p.technicalDetails WHERE p.id = :id")
+    Optional<Product> findWithTechnicalDetailsById(long id);
+
+    @Query("SELECT DISTINCT p FROM Product p LEFT JOIN FETCH p.technicalDetails WHERE p.id IN :ids")
+    @QueryHints(@QueryHint(name = "hibernate.query.passDistinctThrough", value = "false"))
+    List<Product> findAllWithTechnicalDetailsByIdIn(Collection<Long> ids);
+
+    @Query("SELECT DISTINCT p FROM Product p LEFT JOIN FETCH p.category LEFT JOIN FETCH p.technicalDetails " +
+            "WHERE p.category.id IN :categoryIds ORDER BY p.id")
+    @QueryHints(@QueryHint(name = "hibernate.query.passDistinctThrough", value = "false"))
+    List<Product> findAllWithTechnicalDetailsByCategoryIdIn(Collection<Long> categoryIds);
+
+    // Forward-only cursor for streaming the whole table, see NdjsonStreamer
+    @Query("SELECT p FROM Product p")
+    @QueryHints({@QueryHint(name = HINT_FETCH_SIZE, value = "500"), @QueryHint(name = HINT_READONLY, value = "true")})
+    Stream<Product> streamAll();
+
+    @Query("SELECT p.id FROM Product p WHERE p.category.id = :categoryId")
+    List<Long> findIdsByCategoryId(long categoryId);
+
+    @Query("SELECT p.stock FROM Product p WHERE p.id = :id")
+    Optional<Integer> findStockById(long id);
+
+    // Write-behind of stock reserved in memory, the quantity is negative when more was released than reserved
+    @Modifying
+    @Query("UPDATE Product p SET p.stock = p.stock - :quantity WHERE p.id = :id")
+    int subtractStock(long id, int quantity);
+
+    // Bulk deletes skip the JPA cascades, the technical details and cart lines of the products are deleted first
+    @Modifying
+    @Query("DELETE FROM TechnicalDetail t WHERE t.product.id IN :ids")
+    int deleteTechnicalDetailsByProductIdIn(Collection<Long> ids);
+
+    @Modifying
+    @Query("DELETE FROM CartItem c WHERE c.product.id IN :ids")
+    int deleteCartItemsByProductIdIn(Collection<Long> ids);
+
+    @Modifying
+    @Query("DELETE FROM Product p WHERE p.id IN :ids")
+    int deleteAllByIdIn(Collection<Long> ids);
+
 }
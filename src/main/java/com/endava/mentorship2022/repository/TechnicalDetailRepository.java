@@ -1,15 +1,51 @@
 package com.endava.mentorship2022.repository;
+import com.endava.mentorship2022.dto.TechnicalDetailAttribute;
 import com.endava.mentorship2022.model.TechnicalDetail;
+import org.springframework.data.jpa.repository.EntityGraph;
+import org.springframework.data.jpa.repository.EntityGraph.EntityGraphType;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.stereotype.Repository;
 
+import javax.persistence.QueryHint;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
+import static org.hibernate.jpa.QueryHints.HINT_READONLY;
 
 @Repository
 public interface TechnicalDetailRepository extends JpaRepository<TechnicalDetail, Long> {
 
+    // The eager product of each detail comes in the same query
+    @Override
+    @EntityGraph(type = EntityGraphType.LOAD, attributePaths = {"product", "product.category"})
+    List<TechnicalDetail> findAll();
+
     List<TechnicalDetail> findByProductId(long id);
-}
 
+    // Forward-only cursor for streaming the whole table, see NdjsonStreamer
+    @Query("SELECT t FROM TechnicalDetail t")
+    @QueryHints({@QueryHint(name = HINT_FETCH_SIZE, value = "500"), @QueryHint(name = HINT_READONLY, value = "true")})
+    Stream<TechnicalDetail> streamAll();
+
+    @Query("SELECT t.product.id AS productId, t.name AS name, t.value AS value FROM TechnicalDetail t " +
+            "WHERE t.product.id = :productId")
+    List<TechnicalDetailAttribute> findAttributesByProductId(long productId);
 
+    @Query("SELECT t.product.id AS productId, t.name AS name, t.value AS value FROM TechnicalDetail t " +
+            "WHERE t.product.id IN :productIds")
+    List<TechnicalDetailAttribute> findAttributesByProductIdIn(Collection<Long> productIds);
 
+    @Query("SELECT t.product.id AS productId, t.name AS name, t.value AS value FROM TechnicalDetail t " +
+            "WHERE t.product.id BETWEEN :fromProductId AND :toProductId")
+    @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = "500"))
+    List<TechnicalDetailAttribute> findAttributesByProductIdBetween(long fromProductId, long toProductId);
+
+    @Query("SELECT MAX(t.product.id) FROM TechnicalDetail t")
+    Optional<Long> findMaxProductId();
+
+}
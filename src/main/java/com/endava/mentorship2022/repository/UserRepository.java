@@ -1,12 +1,34 @@
 package com.endava.mentorship2022.repository;
 
 import com.endava.mentorship2022.model.User;
+import org.springframework.data.jpa.repository.EntityGraph;
+import org.springframework.data.jpa.repository.EntityGraph.EntityGraphType;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.stereotype.Repository;
 
+import javax.persistence.QueryHint;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
+import static org.hibernate.jpa.QueryHints.HINT_READONLY;
+
 @Repository
 public interface UserRepository extends JpaRepository<User, Long> {
 
     User findUserByEmail(String email);
 
+    // The eager roles come in the same query instead of one query per user
+    @Override
+    @EntityGraph(type = EntityGraphType.LOAD, attributePaths = "roles")
+    List<User> findAll();
+
+    // Forward-only cursor for streaming the whole table, see NdjsonStreamer. The eager roles are fetched in the
+    // same query, ordered by user so the rows of a user come together
+    @Query("SELECT u FROM User u LEFT JOIN FETCH u.roles ORDER BY u.id")
+    @QueryHints({@QueryHint(name = HINT_FETCH_SIZE, value = "500"), @QueryHint(name = HINT_READONLY, value = "true")})
+    Stream<User> streamAll();
+
 }
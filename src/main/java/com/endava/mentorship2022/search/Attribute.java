@@ -0,0 +1,14 @@
+package com.endava.mentorship2022.search;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+@Getter
+@AllArgsConstructor
+public class Attribute {
+
+    private final String name;
+
+    private final String value;
+
+}
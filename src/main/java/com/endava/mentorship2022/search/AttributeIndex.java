@@ -0,0 +1,137 @@
+package com.endava.mentorship2022.search;
+
+import org.roaringbitmap.RoaringBitmap;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Inverted index from (attribute name, attribute value) to the ids of the products having it.
+// Names and values are dictionary-encoded to ints and a pair is keyed by both codes packed in a long,
+// so the index holds every distinct name and value string once, however many products share it.
+// Names and values match ignoring case and surrounding whitespace.
+public class AttributeIndex {
+
+    private static final long[] NO_PAIRS = new long[0];
+
+    private final Dictionary names = new Dictionary();
+
+    private final Dictionary values = new Dictionary();
+
+    // packed (name, value) codes -> product ids
+    private final Map<Long, RoaringBitmap> products = new HashMap<>();
+
+    // product id -> packed (name, value) codes, kept so a product can be replaced without scanning every bitmap
+    private final Map<Integer, long[]> pairsByProduct = new HashMap<>();
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // Replaces all the attributes of a product
+    public void replace(long productId, List<Attribute> attributes) {
+        int id = Math.toIntExact(productId);
+        lock.writeLock().lock();
+        try {
+            removeLocked(id);
+            if (attributes.isEmpty()) {
+                return;
+            }
+            long[] pairs = new long[attributes.size()];
+            for (int i = 0; i < pairs.length; i++) {
+                Attribute attribute = attributes.get(i);
+                pairs[i] = pack(names.encode(attribute.getName()), values.encode(attribute.getValue()));
+                products.computeIfAbsent(pairs[i], pair -> new RoaringBitmap()).add(id);
+            }
+            pairsByProduct.put(id, pairs);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(long productId) {
+        lock.writeLock().lock();
+        try {
+            removeLocked(Math.toIntExact(productId));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Products having every attribute of allOf and at least one attribute of anyOf; an empty list is no constraint
+    public RoaringBitmap find(List<Attribute> allOf, List<Attribute> anyOf) {
+        lock.readLock().lock();
+        try {
+            RoaringBitmap result = null;
+            for (Attribute attribute : allOf) {
+                RoaringBitmap matching = lookup(attribute);
+                result = result == null ? matching.clone() : RoaringBitmap.and(result, matching);
+                if (result.isEmpty()) {
+                    return result;
+                }
+            }
+            if (!anyOf.isEmpty()) {
+                RoaringBitmap anyMatching = new RoaringBitmap();
+                anyOf.forEach(attribute -> anyMatching.or(lookup(attribute)));
+                result = result == null ? anyMatching : RoaringBitmap.and(result, anyMatching);
+            }
+            return result == null ? new RoaringBitmap() : result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return pairsByProduct.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private RoaringBitmap lookup(Attribute attribute) {
+        Integer name = names.find(attribute.getName());
+        Integer value = values.find(attribute.getValue());
+        RoaringBitmap matching = name == null || value == null ? null : products.get(pack(name, value));
+        return matching == null ? new RoaringBitmap() : matching;
+    }
+
+    private void removeLocked(int productId) {
+        long[] pairs = pairsByProduct.getOrDefault(productId, NO_PAIRS);
+        for (long pair : pairs) {
+            RoaringBitmap bitmap = products.get(pair);
+            // A product may list the same pair twice, then the first removal already dropped the bitmap
+            if (bitmap != null) {
+                bitmap.remove(productId);
+                if (bitmap.isEmpty()) {
+                    products.remove(pair);
+                }
+            }
+        }
+        pairsByProduct.remove(productId);
+    }
+
+    private static long pack(int name, int value) {
+        return ((long) name << 32) | (value & 0xFFFFFFFFL);
+    }
+
+    // Codes are never reused, an unused string only costs its dictionary entry
+    private static final class Dictionary {
+
+        private final Map<String, Integer> codes = new HashMap<>();
+
+        private int encode(String text) {
+            return codes.computeIfAbsent(normalize(text), key -> codes.size());
+        }
+
+        private Integer find(String text) {
+            return codes.get(normalize(text));
+        }
+
+        private static String normalize(String text) {
+            return text == null ? "" : text.trim().toLowerCase(Locale.ROOT);
+        }
+    }
+}
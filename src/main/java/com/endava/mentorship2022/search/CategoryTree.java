@@ -0,0 +1,118 @@
+package com.endava.mentorship2022.search;
+
+import com.endava.mentorship2022.dto.CategoryNode;
+import com.endava.mentorship2022.model.Category;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+// Immutable snapshot of the category tree, answering tree queries without the database.
+// Categories are numbered in depth-first order, the nested-set intervals: a subtree is the contiguous range
+// from the category's own position to the position of its last descendant.
+public class CategoryTree {
+
+    // Parent key of the top level categories, as in CategoryService.findAllByParent
+    public static final long ROOT = 0;
+
+    private static final Comparator<Category> BY_NAME =
+            Comparator.comparing(Category::getName).thenComparingLong(Category::getId);
+
+    private final Map<Long, Category> categoriesById = new HashMap<>();
+
+    private final Map<Long, List<Category>> childrenById = new HashMap<>();
+
+    private final Map<Long, Long> parentById = new HashMap<>();
+
+    // Position of each category in depth-first order, and of its last descendant
+    private final Map<Long, Integer> left = new HashMap<>();
+
+    private final Map<Long, Integer> right = new HashMap<>();
+
+    private final List<Long> depthFirst = new ArrayList<>();
+
+    private final List<CategoryNode> menu;
+
+    public CategoryTree(Collection<Category> categories) {
+        categories.forEach(category -> categoriesById.put(category.getId(), category));
+        for (Category category : categories) {
+            Category parent = category.getParent();
+            // A parent that no longer exists makes a top level category
+            long parentId = parent != null && categoriesById.containsKey(parent.getId()) ? parent.getId() : ROOT;
+            childrenById.computeIfAbsent(parentId, id -> new ArrayList<>()).add(category);
+        }
+        childrenById.values().forEach(children -> children.sort(BY_NAME));
+
+        number(ROOT);
+        // Categories left are in a parent cycle, the first of each cycle is made top level
+        categories.stream().sorted(BY_NAME).filter(category -> !left.containsKey(category.getId())).forEach(category -> {
+            childrenById.get(category.getParent().getId()).remove(category);
+            List<Category> roots = childrenById.computeIfAbsent(ROOT, id -> new ArrayList<>());
+            roots.add(category);
+            roots.sort(BY_NAME);
+            parentById.put(category.getId(), ROOT);
+            number(category.getId());
+        });
+
+        menu = nodes(ROOT);
+    }
+
+    public boolean contains(long id) {
+        return categoriesById.containsKey(id);
+    }
+
+    public int size() {
+        return categoriesById.size();
+    }
+
+    // ROOT for the top level categories, an empty list for unknown categories
+    public List<Category> children(long id) {
+        return List.copyOf(childrenById.getOrDefault(id, List.of()));
+    }
+
+    // From the top level category down to the category itself, an empty list for unknown categories
+    public List<Category> breadcrumb(long id) {
+        List<Category> breadcrumb = new ArrayList<>();
+        for (Long current = id; contains(current); current = parentById.get(current)) {
+            breadcrumb.add(0, categoriesById.get(current));
+        }
+        return breadcrumb;
+    }
+
+    // The category and all its descendants, in depth-first order
+    public List<Long> subtreeIds(long id) {
+        Integer from = left.get(id);
+        return from == null ? List.of() : List.copyOf(depthFirst.subList(from, right.get(id) + 1));
+    }
+
+    public List<CategoryNode> menu() {
+        return menu;
+    }
+
+    private void number(long id) {
+        if (id != ROOT) {
+            left.put(id, depthFirst.size());
+            depthFirst.add(id);
+        }
+        for (Category child : childrenById.getOrDefault(id, List.of())) {
+            if (!left.containsKey(child.getId())) {
+                parentById.put(child.getId(), id);
+                number(child.getId());
+            }
+        }
+        if (id != ROOT) {
+            right.put(id, depthFirst.size() - 1);
+        }
+    }
+
+    private List<CategoryNode> nodes(long parentId) {
+        return childrenById.getOrDefault(parentId, List.of()).stream()
+                .map(category -> new CategoryNode(category.getId(), category.getName(), category.getAlias(),
+                        nodes(category.getId())))
+                .collect(Collectors.toUnmodifiableList());
+    }
+}
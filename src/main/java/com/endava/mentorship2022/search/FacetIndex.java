@@ -0,0 +1,179 @@
+package com.endava.mentorship2022.search;
+
+import com.endava.mentorship2022.dto.FacetCounts;
+import org.roaringbitmap.RoaringBitmap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// One compressed bitmap of document ids per (facet, value), so facet counts are bitmap intersections
+// instead of a scan over the products.
+// Values selected within a facet are OR-ed, selected facets are AND-ed. The counts of a facet ignore
+// its own selection, so a sidebar can still show how many products the other values of that facet would add.
+public class FacetIndex {
+
+    // Below this share of all documents, counting the matching documents one by one through the value column
+    // is cheaper than intersecting the matches with the bitmap of every value
+    private static final int SCAN_RATIO = 16;
+
+    private final Map<String, Facet> facets = new HashMap<>();
+
+    private final RoaringBitmap all = new RoaringBitmap();
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    public void index(long id, Map<String, String> values) {
+        int docId = Math.toIntExact(id);
+        lock.writeLock().lock();
+        try {
+            removeLocked(docId);
+            values.forEach((facet, value) -> facets.computeIfAbsent(facet, f -> new Facet()).add(docId, value));
+            all.add(docId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(long id) {
+        lock.writeLock().lock();
+        try {
+            removeLocked(Math.toIntExact(id));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Switches long runs of ids, typical for the flag facets, to run-length encoding
+    public void optimize() {
+        lock.writeLock().lock();
+        try {
+            all.runOptimize();
+            facets.values().forEach(facet -> facet.bitmaps.forEach(RoaringBitmap::runOptimize));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public FacetCounts count(Map<String, Set<String>> filters) {
+        lock.readLock().lock();
+        try {
+            Map<String, RoaringBitmap> selections = new HashMap<>();
+            filters.forEach((facet, values) -> {
+                if (!values.isEmpty()) {
+                    selections.put(facet, select(facet, values));
+                }
+            });
+
+            Map<String, Map<String, Integer>> counts = new TreeMap<>();
+            facets.forEach((name, facet) -> counts.put(name, facet.count(intersect(selections, name))));
+
+            RoaringBitmap matching = intersect(selections, null);
+            return new FacetCounts(matching == null ? all.getCardinality() : matching.getCardinality(), counts);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private RoaringBitmap select(String facetName, Set<String> values) {
+        RoaringBitmap selection = new RoaringBitmap();
+        Facet facet = facets.get(facetName);
+        if (facet != null) {
+            for (String value : values) {
+                Integer ordinal = facet.ordinals.get(value);
+                if (ordinal != null) {
+                    selection.or(facet.bitmaps.get(ordinal));
+                }
+            }
+        }
+        return selection;
+    }
+
+    // Intersection of the selections of all facets except the excluded one, null when nothing is selected
+    private static RoaringBitmap intersect(Map<String, RoaringBitmap> selections, String excludedFacet) {
+        RoaringBitmap result = null;
+        for (Map.Entry<String, RoaringBitmap> selection : selections.entrySet()) {
+            if (!selection.getKey().equals(excludedFacet)) {
+                result = result == null ? selection.getValue() : RoaringBitmap.and(result, selection.getValue());
+            }
+        }
+        return result;
+    }
+
+    private void removeLocked(int docId) {
+        if (all.contains(docId)) {
+            facets.values().forEach(facet -> facet.remove(docId));
+            all.remove(docId);
+        }
+    }
+
+    // The values of one facet, dictionary-encoded as ordinals, with a bitmap per value
+    // and a column holding the value ordinal of every document
+    private final class Facet {
+
+        private static final int ABSENT = -1;
+
+        private final Map<String, Integer> ordinals = new HashMap<>();
+
+        private final List<String> values = new ArrayList<>();
+
+        private final List<RoaringBitmap> bitmaps = new ArrayList<>();
+
+        private int[] column = new int[0];
+
+        private void add(int docId, String value) {
+            int ordinal = ordinals.computeIfAbsent(value, v -> {
+                values.add(v);
+                bitmaps.add(new RoaringBitmap());
+                return values.size() - 1;
+            });
+            bitmaps.get(ordinal).add(docId);
+            if (docId >= column.length) {
+                int previousLength = column.length;
+                column = Arrays.copyOf(column, Math.max(docId + 1, previousLength * 2));
+                Arrays.fill(column, previousLength, column.length, ABSENT);
+            }
+            column[docId] = ordinal;
+        }
+
+        private void remove(int docId) {
+            if (docId < column.length && column[docId] != ABSENT) {
+                bitmaps.get(column[docId]).remove(docId);
+                column[docId] = ABSENT;
+            }
+        }
+
+        private Map<String, Integer> count(RoaringBitmap matching) {
+            int[] counts = new int[values.size()];
+            if (matching == null) {
+                for (int ordinal = 0; ordinal < counts.length; ordinal++) {
+                    counts[ordinal] = bitmaps.get(ordinal).getCardinality();
+                }
+            } else if (matching.getCardinality() < all.getCardinality() / SCAN_RATIO) {
+                matching.forEach((int docId) -> {
+                    if (docId < column.length && column[docId] != ABSENT) {
+                        counts[column[docId]]++;
+                    }
+                });
+            } else {
+                for (int ordinal = 0; ordinal < counts.length; ordinal++) {
+                    counts[ordinal] = RoaringBitmap.andCardinality(matching, bitmaps.get(ordinal));
+                }
+            }
+
+            Map<String, Integer> valueCounts = new TreeMap<>();
+            for (int ordinal = 0; ordinal < counts.length; ordinal++) {
+                if (counts[ordinal] > 0) {
+                    valueCounts.put(values.get(ordinal), counts[ordinal]);
+                }
+            }
+            return valueCounts;
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package com.endava.mentorship2022.search;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+@Getter
+@AllArgsConstructor
+public class SearchHit {
+
+    private final long id;
+
+    private final double score;
+
+}
@@ -0,0 +1,224 @@
+package com.endava.mentorship2022.search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// In-memory inverted index with positional postings, ranked with BM25.
+// Loose query terms are optional and only add to the score; "quoted phrases" must appear in the document.
+// Documents are replaced as a whole, so an update is a remove followed by an add under the write lock.
+public class SearchIndex {
+
+    private static final double K1 = 1.2;
+
+    private static final double B = 0.75;
+
+    // Position gap between the fields of a document so a phrase never matches across two fields
+    private static final int FIELD_GAP = 100;
+
+    private static final Comparator<SearchHit> BEST_FIRST = Comparator.comparingDouble(SearchHit::getScore).reversed()
+            .thenComparingLong(SearchHit::getId);
+
+    // term -> document id -> sorted positions of the term in that document
+    private final Map<String, Map<Long, int[]>> postings = new HashMap<>();
+
+    private final Map<Long, IndexedDocument> documents = new HashMap<>();
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private long totalLength;
+
+    public void index(long id, List<String> fields) {
+        Map<String, List<Integer>> positions = new HashMap<>();
+        int position = 0;
+        int length = 0;
+        for (String field : fields) {
+            List<String> terms = Tokenizer.tokenize(field);
+            for (String term : terms) {
+                positions.computeIfAbsent(term, t -> new ArrayList<>()).add(position++);
+            }
+            length += terms.size();
+            position += FIELD_GAP;
+        }
+
+        lock.writeLock().lock();
+        try {
+            removeLocked(id);
+            positions.forEach((term, termPositions) -> postings.computeIfAbsent(term, t -> new HashMap<>())
+                    .put(id, termPositions.stream().mapToInt(Integer::intValue).toArray()));
+            documents.put(id, new IndexedDocument(positions.keySet().toArray(new String[0]), length));
+            totalLength += length;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(long id) {
+        lock.writeLock().lock();
+        try {
+            removeLocked(id);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            postings.clear();
+            documents.clear();
+            totalLength = 0;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return documents.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public List<SearchHit> search(String query, int limit) {
+        ParsedQuery parsedQuery = ParsedQuery.parse(query);
+        if (parsedQuery.terms.isEmpty() || limit < 1) {
+            return List.of();
+        }
+
+        lock.readLock().lock();
+        try {
+            if (documents.isEmpty()) {
+                return List.of();
+            }
+            Map<Long, Double> scores = score(parsedQuery.terms);
+
+            // Min-heap holding the best hits so far, with the worst of them on top
+            PriorityQueue<SearchHit> best = new PriorityQueue<>(limit + 1, BEST_FIRST.reversed());
+            scores.forEach((id, score) -> {
+                if (containsPhrases(id, parsedQuery.phrases)) {
+                    best.add(new SearchHit(id, score));
+                    if (best.size() > limit) {
+                        best.poll();
+                    }
+                }
+            });
+            List<SearchHit> hits = new ArrayList<>(best);
+            hits.sort(BEST_FIRST);
+            return hits;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private Map<Long, Double> score(Set<String> terms) {
+        int documentCount = documents.size();
+        double averageLength = (double) totalLength / documentCount;
+        Map<Long, Double> scores = new HashMap<>();
+        for (String term : terms) {
+            Map<Long, int[]> termPostings = postings.get(term);
+            if (termPostings == null) {
+                continue;
+            }
+            double idf = Math.log(1 + (documentCount - termPostings.size() + 0.5) / (termPostings.size() + 0.5));
+            termPostings.forEach((id, positions) -> {
+                double frequency = positions.length;
+                double lengthNorm = 1 - B + B * documents.get(id).length / averageLength;
+                scores.merge(id, idf * frequency * (K1 + 1) / (frequency + K1 * lengthNorm), Double::sum);
+            });
+        }
+        return scores;
+    }
+
+    private boolean containsPhrases(long id, List<List<String>> phrases) {
+        for (List<String> phrase : phrases) {
+            if (!containsPhrase(id, phrase)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean containsPhrase(long id, List<String> phrase) {
+        int[][] positions = new int[phrase.size()][];
+        for (int i = 0; i < phrase.size(); i++) {
+            Map<Long, int[]> termPostings = postings.get(phrase.get(i));
+            positions[i] = termPostings == null ? null : termPostings.get(id);
+            if (positions[i] == null) {
+                return false;
+            }
+        }
+        for (int start : positions[0]) {
+            int i = 1;
+            while (i < positions.length && Arrays.binarySearch(positions[i], start + i) >= 0) {
+                i++;
+            }
+            if (i == positions.length) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void removeLocked(long id) {
+        IndexedDocument document = documents.remove(id);
+        if (document == null) {
+            return;
+        }
+        for (String term : document.terms) {
+            Map<Long, int[]> termPostings = postings.get(term);
+            termPostings.remove(id);
+            if (termPostings.isEmpty()) {
+                postings.remove(term);
+            }
+        }
+        totalLength -= document.length;
+    }
+
+    private static final class IndexedDocument {
+
+        // Distinct terms, kept so the document can be removed without scanning every posting list
+        private final String[] terms;
+
+        private final int length;
+
+        private IndexedDocument(String[] terms, int length) {
+            this.terms = terms;
+            this.length = length;
+        }
+    }
+
+    private static final class ParsedQuery {
+
+        private final Set<String> terms = new LinkedHashSet<>();
+
+        private final List<List<String>> phrases = new ArrayList<>();
+
+        private static ParsedQuery parse(String query) {
+            ParsedQuery parsedQuery = new ParsedQuery();
+            if (query == null) {
+                return parsedQuery;
+            }
+            // Every odd part of the query is between double quotes
+            String[] parts = query.split("\"", -1);
+            for (int i = 0; i < parts.length; i++) {
+                List<String> terms = Tokenizer.tokenize(parts[i]);
+                parsedQuery.terms.addAll(terms);
+                if (i % 2 == 1 && terms.size() > 1) {
+                    parsedQuery.phrases.add(terms);
+                }
+            }
+            return parsedQuery;
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package com.endava.mentorship2022.security;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.springframework.security.core.AuthenticatedPrincipal;
+import org.springframework.security.core.GrantedAuthority;
+
+import java.util.List;
+
+// The identity carried by an access token, Principal.getName() is the email as with the other logins
+@Getter
+@AllArgsConstructor
+public class AuthenticatedUser implements AuthenticatedPrincipal {
+
+    private final long id;
+
+    private final String email;
+
+    private final List<GrantedAuthority> authorities;
+
+    @Override
+    public String getName() {
+        return email;
+    }
+
+}
@@ -0,0 +1,42 @@
+package com.endava.mentorship2022.security;
+
+import com.endava.mentorship2022.exception.InvalidCredentials;
+import com.endava.mentorship2022.model.User;
+import com.endava.mentorship2022.service.UserService;
+import lombok.AllArgsConstructor;
+import org.springframework.core.MethodParameter;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+import org.springframework.web.bind.support.WebDataBinderFactory;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.method.support.HandlerMethodArgumentResolver;
+import org.springframework.web.method.support.ModelAndViewContainer;
+
+// Resolves @CurrentUser from the identity the security layer already has, instead of loading the user by email
+// again. The User is a reference by id: it is only loaded if something reads more than its id.
+@Component
+@AllArgsConstructor
+public class CurrentUserArgumentResolver implements HandlerMethodArgumentResolver {
+
+    private final UserService userService;
+
+    @Override
+    public boolean supportsParameter(MethodParameter parameter) {
+        return parameter.hasParameterAnnotation(CurrentUser.class) && parameter.getParameterType() == User.class;
+    }
+
+    @Override
+    public User resolveArgument(MethodParameter parameter, ModelAndViewContainer mavContainer,
+                                NativeWebRequest webRequest, WebDataBinderFactory binderFactory) {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        Object principal = authentication == null ? null : authentication.getPrincipal();
+        if (principal instanceof MyUserDetails) {
+            return userService.getReferenceById(((MyUserDetails) principal).getId());
+        }
+        if (principal instanceof AuthenticatedUser) {
+            return userService.getReferenceById(((AuthenticatedUser) principal).getId());
+        }
+        throw new InvalidCredentials("Authentication is required.");
+    }
+}
@@ -3,7 +3,6 @@ package com.endava.mentorship2022.security;
 import com.endava.mentorship2022.model.Role;
 import com.endava.mentorship2022.model.User;
 import com.endava.mentorship2022.model.UserStatus;
-import lombok.AllArgsConstructor;
 import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.userdetails.UserDetails;
@@ -11,33 +10,54 @@ import org.springframework.security.core.userdetails.UserDetails;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
-import java.util.Set;
 
-@AllArgsConstructor
+// Immutable snapshot of a user taken when it is loaded, so it can be cached and shared between requests
+// without holding on to the entity. The authorities are built once instead of on every call.
 public class MyUserDetails implements UserDetails {
 
-    private final User user;
+    private final long id;
 
-    @Override
-    public Collection<? extends GrantedAuthority> getAuthorities() {
-        Set<Role> roles = user.getRoles();
-        List<SimpleGrantedAuthority> authorities = new ArrayList<>();
+    private final String email;
+
+    private final String password;
+
+    private final List<GrantedAuthority> authorities;
+
+    private final boolean accountNonLocked;
+
+    private final boolean enabled;
 
-        for (Role role : roles) {
-            authorities.add(new SimpleGrantedAuthority(role.getName()));
+    public MyUserDetails(User user) {
+        List<GrantedAuthority> roles = new ArrayList<>();
+        for (Role role : user.getRoles()) {
+            roles.add(new SimpleGrantedAuthority(role.getName()));
         }
 
+        this.id = user.getId();
+        this.email = user.getEmail();
+        this.password = user.getPassword();
+        this.authorities = List.copyOf(roles);
+        this.accountNonLocked = !user.getStatus().equals(UserStatus.BLOCKED);
+        this.enabled = user.getStatus().equals(UserStatus.ACTIVE);
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    @Override
+    public Collection<? extends GrantedAuthority> getAuthorities() {
         return authorities;
     }
 
     @Override
     public String getPassword() {
-        return user.getPassword();
+        return password;
     }
 
     @Override
     public String getUsername() {
-        return user.getEmail();
+        return email;
     }
 
     @Override
@@ -47,7 +67,7 @@ public class MyUserDetails implements UserDetails {
 
     @Override
     public boolean isAccountNonLocked() {
-        return !user.getStatus().equals(UserStatus.BLOCKED);
+        return accountNonLocked;
     }
 
     @Override
@@ -57,7 +77,7 @@ public class MyUserDetails implements UserDetails {
 
     @Override
     public boolean isEnabled() {
-        return user.getStatus().equals(UserStatus.ACTIVE);
+        return enabled;
     }
 
 }
@@ -14,14 +14,21 @@ public class MyUserDetailsService implements UserDetailsService {
 
     private final UserRepository userRepository;
 
+    private final UserDetailsCache userDetailsCache;
+
     @Override
     public UserDetails loadUserByUsername(String email) throws UsernameNotFoundException {
-        User user = userRepository.findUserByEmail(email);
+        MyUserDetails user = userDetailsCache.getUser(email, this::loadUser);
         if (user == null) {
             throw new UsernameNotFoundException("User with email: " + email + " can not be found !");
         }
 
-        return new MyUserDetails(user);
+        return user;
+    }
+
+    private MyUserDetails loadUser(String email) {
+        User user = userRepository.findUserByEmail(email);
+        return user == null ? null : new MyUserDetails(user);
     }
 
 }
@@ -0,0 +1,91 @@
+package com.endava.mentorship2022.security;
+
+import lombok.AllArgsConstructor;
+import org.springframework.http.HttpHeaders;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.List;
+import java.util.Optional;
+
+// Authenticates requests carrying "Authorization: Bearer <access token>". Requests without a bearer token
+// go on to the other logins, a bearer token that does not verify is rejected right away.
+// The token only proves who the user is: the user is looked up in the user details cache, which only reaches
+// the database on a miss, so a deleted or blocked user is refused and the roles are the current ones.
+@AllArgsConstructor
+public class TokenAuthenticationFilter extends OncePerRequestFilter {
+
+    private static final String BEARER = "Bearer ";
+
+    private final TokenService tokenService;
+
+    private final UserDetailsService userDetailsService;
+
+    private final UserDetailsCache userDetailsCache;
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        String authorization = request.getHeader(HttpHeaders.AUTHORIZATION);
+        if (authorization == null || !authorization.regionMatches(true, 0, BEARER, 0, BEARER.length())) {
+            chain.doFilter(request, response);
+            return;
+        }
+
+        Optional<AuthenticatedUser> token = tokenService.verify(authorization.substring(BEARER.length()).trim(),
+                TokenService.ACCESS);
+        if (token.isEmpty()) {
+            refuse(response, "Invalid or expired access token");
+            return;
+        }
+        MyUserDetails current = findCurrentUser(token.get());
+        if (current == null || !current.isEnabled() || !current.isAccountNonLocked()) {
+            refuse(response, "The user of this access token is not active");
+            return;
+        }
+
+        AuthenticatedUser user = new AuthenticatedUser(current.getId(), current.getUsername(),
+                List.copyOf(current.getAuthorities()));
+        SecurityContext context = SecurityContextHolder.createEmptyContext();
+        context.setAuthentication(new UsernamePasswordAuthenticationToken(user, null, user.getAuthorities()));
+        SecurityContextHolder.setContext(context);
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            SecurityContextHolder.clearContext();
+        }
+    }
+
+    // The email may have been given to another user since the token was issued. Another id in the cache may be
+    // stale, e.g. written by another instance, so the user is loaded again before refusing the token.
+    private MyUserDetails findCurrentUser(AuthenticatedUser token) {
+        MyUserDetails user = loadUser(token.getEmail());
+        if (user == null || user.getId() != token.getId()) {
+            userDetailsCache.invalidate(token.getEmail());
+            user = loadUser(token.getEmail());
+        }
+        return user == null || user.getId() != token.getId() ? null : user;
+    }
+
+    private MyUserDetails loadUser(String email) {
+        try {
+            return (MyUserDetails) userDetailsService.loadUserByUsername(email);
+        } catch (UsernameNotFoundException e) {
+            return null;
+        }
+    }
+
+    private static void refuse(HttpServletResponse response, String message) throws IOException {
+        response.setHeader(HttpHeaders.WWW_AUTHENTICATE, "Bearer error=\"invalid_token\"");
+        response.sendError(HttpServletResponse.SC_UNAUTHORIZED, message);
+    }
+}
@@ -0,0 +1,152 @@
+package com.endava.mentorship2022.security;
+
+import com.endava.mentorship2022.dto.TokenResponse;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.stereotype.Service;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+// Issues and verifies HMAC-SHA256 signed tokens in the JWT compact format, so a request is authenticated
+// with one hash instead of a database lookup and a BCrypt match.
+// Access tokens are short-lived and carry the roles. A refresh token only gets a new pair after the user
+// is loaded again, so a blocked user or a role change takes effect when the access token expires.
+@Slf4j
+@Service
+public class TokenService {
+
+    public static final String ACCESS = "access";
+
+    public static final String REFRESH = "refresh";
+
+    private static final String ALGORITHM = "HmacSHA256";
+
+    private static final int MIN_SECRET_BYTES = 32;
+
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+    // The only header accepted, so a token cannot pick another algorithm
+    private static final String HEADER = ENCODER.encodeToString(
+            "{\"alg\":\"HS256\",\"typ\":\"JWT\"}".getBytes(StandardCharsets.UTF_8));
+
+    private final ObjectMapper objectMapper;
+
+    private final SecretKeySpec key;
+
+    private final Duration accessTokenTtl;
+
+    private final Duration refreshTokenTtl;
+
+    private final Clock clock;
+
+    @Autowired
+    public TokenService(ObjectMapper objectMapper,
+                        @Value("${security.token.secret:}") String secret,
+                        @Value("${security.token.access-ttl:15m}") Duration accessTokenTtl,
+                        @Value("${security.token.refresh-ttl:7d}") Duration refreshTokenTtl) {
+        this(objectMapper, secret, accessTokenTtl, refreshTokenTtl, Clock.systemUTC());
+    }
+
+    public TokenService(ObjectMapper objectMapper, String secret, Duration accessTokenTtl, Duration refreshTokenTtl,
+                        Clock clock) {
+        byte[] secretBytes = secret.getBytes(StandardCharsets.UTF_8);
+        if (secret.isBlank()) {
+            log.warn("security.token.secret is not set, tokens are signed with a random key and are lost on restart");
+            secretBytes = new byte[MIN_SECRET_BYTES];
+            new SecureRandom().nextBytes(secretBytes);
+        } else if (secretBytes.length < MIN_SECRET_BYTES) {
+            throw new IllegalArgumentException("security.token.secret must be at least " + MIN_SECRET_BYTES + " bytes");
+        }
+        this.objectMapper = objectMapper;
+        this.key = new SecretKeySpec(secretBytes, ALGORITHM);
+        this.accessTokenTtl = accessTokenTtl;
+        this.refreshTokenTtl = refreshTokenTtl;
+        this.clock = clock;
+    }
+
+    public TokenResponse issue(long userId, String email, Collection<? extends GrantedAuthority> authorities) {
+        List<String> roles = new ArrayList<>();
+        authorities.forEach(authority -> roles.add(authority.getAuthority()));
+        return new TokenResponse("Bearer",
+                sign(ACCESS, userId, email, roles, accessTokenTtl),
+                accessTokenTtl.toSeconds(),
+                sign(REFRESH, userId, email, roles, refreshTokenTtl));
+    }
+
+    // Empty unless the signature, the type and the expiry are all valid
+    public Optional<AuthenticatedUser> verify(String token, String type) {
+        int headerEnd = token.indexOf('.');
+        int payloadEnd = token.lastIndexOf('.');
+        if (headerEnd < 0 || headerEnd == payloadEnd || !HEADER.equals(token.substring(0, headerEnd))) {
+            return Optional.empty();
+        }
+
+        JsonNode claims;
+        try {
+            byte[] signature = DECODER.decode(token.substring(payloadEnd + 1));
+            if (!MessageDigest.isEqual(signature, mac(token.substring(0, payloadEnd)))) {
+                return Optional.empty();
+            }
+            claims = objectMapper.readTree(DECODER.decode(token.substring(headerEnd + 1, payloadEnd)));
+        } catch (IllegalArgumentException | IOException e) {
+            return Optional.empty();
+        }
+        if (!type.equals(claims.path("typ").asText()) || claims.path("exp").asLong() <= clock.instant().getEpochSecond()) {
+            return Optional.empty();
+        }
+
+        List<GrantedAuthority> authorities = new ArrayList<>();
+        claims.path("roles").forEach(role -> authorities.add(new SimpleGrantedAuthority(role.asText())));
+        return Optional.of(new AuthenticatedUser(claims.path("uid").asLong(), claims.path("sub").asText(),
+                List.copyOf(authorities)));
+    }
+
+    private String sign(String type, long userId, String email, List<String> roles, Duration ttl) {
+        long now = clock.instant().getEpochSecond();
+        ObjectNode claims = objectMapper.createObjectNode()
+                .put("sub", email)
+                .put("uid", userId)
+                .put("typ", type)
+                .put("iat", now)
+                .put("exp", now + ttl.toSeconds());
+        roles.forEach(claims.putArray("roles")::add);
+        try {
+            String unsigned = HEADER + "." + ENCODER.encodeToString(objectMapper.writeValueAsBytes(claims));
+            return unsigned + "." + ENCODER.encodeToString(mac(unsigned));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not write the token claims", e);
+        }
+    }
+
+    private byte[] mac(String unsigned) {
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(key);
+            return mac.doFinal(unsigned.getBytes(StandardCharsets.US_ASCII));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(ALGORITHM + " is not available", e);
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.endava.mentorship2022.security;
+
+import com.endava.mentorship2022.cache.BoundedCache;
+import com.endava.mentorship2022.cache.BoundedCacheMetrics;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.function.Function;
+
+// Users by email, for authentication without the database.
+// Every user write must invalidate the email, so a blocked user is locked out on the next request.
+@Component
+public class UserDetailsCache {
+
+    private final BoundedCache<String, MyUserDetails> usersByEmail;
+
+    public UserDetailsCache(@Value("${user.cache.maximum-size:10000}") int maximumSize,
+                            @Value("${user.cache.time-to-live:10m}") Duration timeToLive,
+                            MeterRegistry meterRegistry) {
+        this.usersByEmail = BoundedCacheMetrics.monitor(meterRegistry,
+                new BoundedCache<>(maximumSize, timeToLive), "users");
+    }
+
+    // Nothing is stored when the loader returns null
+    public MyUserDetails getUser(String email, Function<String, MyUserDetails> loader) {
+        return usersByEmail.get(email, loader);
+    }
+
+    public void invalidate(String email) {
+        if (email != null) {
+            usersByEmail.invalidate(email);
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.endava.mentorship2022.service;
+
+import com.endava.mentorship2022.dto.LoginRequest;
+import com.endava.mentorship2022.dto.RefreshRequest;
+import com.endava.mentorship2022.dto.TokenResponse;
+import com.endava.mentorship2022.exception.InvalidCredentials;
+import com.endava.mentorship2022.security.AuthenticatedUser;
+import com.endava.mentorship2022.security.MyUserDetails;
+import com.endava.mentorship2022.security.PasswordHashingService;
+import com.endava.mentorship2022.security.TokenService;
+import lombok.AllArgsConstructor;
+import org.springframework.security.core.AuthenticationException;
+import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.CompletableFuture;
+
+// Trades a password for a token pair once, so the following requests skip the password check
+@AllArgsConstructor
+@Service
+public class AuthService {
+
+    private final UserDetailsService userDetailsService;
+
+    private final TokenService tokenService;
+
+    private final PasswordHashingService passwordHashingService;
+
+    // The password is checked on the password hashing pool, the calling thread does not wait for it
+    public CompletableFuture<TokenResponse> login(LoginRequest request) {
+        MyUserDetails user = findUser(request.getEmail());
+        return passwordHashingService.matches(request.getPassword(), user == null ? null : user.getPassword())
+                .thenApply(matches -> {
+                    if (!matches) {
+                        throw new InvalidCredentials("Invalid email or password.");
+                    }
+                    checkActive(user);
+                    return tokenService.issue(user.getId(), user.getUsername(), user.getAuthorities());
+                });
+    }
+
+    // Loads the user again, so a blocked user gets no new tokens
+    public TokenResponse refresh(RefreshRequest request) {
+        AuthenticatedUser token = request.getRefreshToken() == null ? null :
+                tokenService.verify(request.getRefreshToken(), TokenService.REFRESH).orElse(null);
+        if (token == null) {
+            throw new InvalidCredentials("Invalid or expired refresh token.");
+        }
+
+        MyUserDetails user = findUser(token.getEmail());
+        if (user == null) {
+            throw new InvalidCredentials("Invalid or expired refresh token.");
+        }
+        checkActive(user);
+        return tokenService.issue(token.getId(), user.getUsername(), user.getAuthorities());
+    }
+
+    private MyUserDetails findUser(String email) {
+        try {
+            return email == null ? null : (MyUserDetails) userDetailsService.loadUserByUsername(email);
+        } catch (AuthenticationException e) {
+            return null;
+        }
+    }
+
+    private static void checkActive(MyUserDetails user) {
+        if (!user.isEnabled() || !user.isAccountNonLocked()) {
+            throw new InvalidCredentials("The account is not active.");
+        }
+    }
+}
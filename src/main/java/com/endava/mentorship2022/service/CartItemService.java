@@ -1,49 +1,83 @@
 package com.endava.mentorship2022.service;
 
+import com.endava.mentorship2022.cart.CartCommandQueue;
+import com.endava.mentorship2022.cart.CartStore;
+import com.endava.mentorship2022.dto.CartLine;
+import com.endava.mentorship2022.dto.CartOperation;
 import com.endava.mentorship2022.exception.CartItemException;
 import com.endava.mentorship2022.model.CartItem;
 import com.endava.mentorship2022.model.Product;
 import com.endava.mentorship2022.model.User;
-import com.endava.mentorship2022.repository.CartItemRepository;
 import lombok.AllArgsConstructor;
 import org.springframework.stereotype.Service;
 
 import javax.transaction.Transactional;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
+// Changes go through the cart command queue, so the changes of one user never interleave
 @AllArgsConstructor
 @Service
-@Transactional
 public class CartItemService {
 
     public static final int MAXIMUM_QUANTITY_ALLOWED = 15;
 
-    private final CartItemRepository cartItemRepository;
+    private static final String NOT_IN_CART = "The product is not in the cart.";
+
+    private static final String REMOVED = "The product has been removed from your shopping cart.";
+
+    private final CartStore cartStore;
 
     private final ProductService productService;
 
+    private final CartCommandQueue cartCommandQueue;
+
+    @Transactional
     public List<CartItem> findCartItemsByUser(User user) {
-        return cartItemRepository.findCartItemsByUserId(user.getId());
+        return cartStore.findByUser(user);
+    }
+
+    @Transactional
+    public List<CartLine> findCartLinesByUser(User user) {
+        return cartStore.findLinesByUser(user);
     }
 
     public String addProductToCart(User user, long productId, short quantity) {
-        if(quantity > MAXIMUM_QUANTITY_ALLOWED) {
-            throw new CartItemException("Could not add " + quantity + " items " +
-                    "to your shopping cart. Maximum allowed quantity is 15.");
-        }
+        return cartCommandQueue.execute(user, commandUser -> addProduct(commandUser, productId, quantity));
+    }
+
+    public String updateProductQuantity(User user, long productId, short quantity) {
+        return cartCommandQueue.execute(user, commandUser -> updateQuantity(commandUser, productId, quantity));
+    }
+
+    public String removeProductFromCart(User user, long productId) {
+        return cartCommandQueue.execute(user, commandUser -> removeProduct(commandUser, productId));
+    }
 
-        short updatedQuantity = quantity;
+    public String deleteCartByUser(User user) {
+        return cartCommandQueue.execute(user, commandUser -> deleteCart(commandUser));
+    }
+
+    // All operations are applied in one transaction, or none when one of them fails.
+    // Returns the message of each operation, as the single cart endpoints would.
+    public List<String> applyOperations(User user, List<CartOperation> operations) {
+        return cartCommandQueue.execute(user, commandUser -> applyAll(commandUser, operations));
+    }
+
+    private String addProduct(User user, long productId, short quantity) {
+        checkAddedQuantity(quantity);
         Product product = productService.findById(productId);
-        CartItem cartItem = cartItemRepository.findCartItemByUserIdAndProductId(user.getId(), productId);
+        CartItem cartItem = cartStore.find(user, productId);
 
+        short updatedQuantity;
         if (cartItem != null) { // If cart already has that product, update quantity
-            updatedQuantity = (short) (cartItem.getQuantity() + quantity);
-            if (updatedQuantity > MAXIMUM_QUANTITY_ALLOWED) {
-                throw new CartItemException("Could not add more " + quantity + " item(s) " +
-                        " because there's already " + cartItem.getQuantity() + " item(s) " +
-                        "in your shopping cart. Maximum allowed quantity is 15.");
-            }
+            updatedQuantity = addedQuantity(cartItem.getQuantity(), quantity);
         } else {
+            updatedQuantity = quantity;
             cartItem = new CartItem();
             cartItem.setUser(user);
             cartItem.setProduct(product);
@@ -51,37 +85,133 @@ public class CartItemService {
 
         cartItem.setQuantity(updatedQuantity);
 
-        cartItemRepository.save(cartItem);
+        cartStore.save(cartItem);
 
-        return "Product " + product.getName() + " x" + updatedQuantity + " has been added to the cart.";
+        return addedMessage(product, updatedQuantity);
     }
 
-    public String updateProductQuantity(User user, long productId, short quantity) {
-        CartItem cartItem = cartItemRepository.findCartItemByUserIdAndProductId(user.getId(), productId);
+    private String updateQuantity(User user, long productId, short quantity) {
+        CartItem cartItem = cartStore.find(user, productId);
         if (cartItem == null) {
-            return "The product is not in the cart.";
+            return NOT_IN_CART;
+        }
+        checkUpdatedQuantity(quantity);
+        cartStore.updateQuantity(user, productId, quantity);
+        return updatedMessage(quantity);
+    }
+
+    private String removeProduct(User user, long productId) {
+        return cartStore.remove(user, productId) ? REMOVED : NOT_IN_CART;
+    }
+
+    // The operations are first played on the quantities alone, only the end result is written:
+    // new lines in one batch, changed lines in one batch and removed lines with one delete
+    private List<String> applyAll(User user, List<CartOperation> operations) {
+        Set<Long> addedIds = new HashSet<>();
+        for (CartOperation operation : operations) {
+            if (operation.getType() == null) {
+                throw new CartItemException("Unknown cart operation for product " + operation.getProductId() + ".");
+            }
+            if (operation.getType() == CartOperation.Type.ADD) {
+                addedIds.add(operation.getProductId());
+            }
+        }
+        Map<Long, Product> products = addedIds.isEmpty() ? Map.of() : productService.findAllById(addedIds);
+
+        Map<Long, CartItem> cartItems = new LinkedHashMap<>();
+        cartStore.findByUser(user).forEach(cartItem -> cartItems.put(cartItem.getProduct().getId(), cartItem));
+        Map<Long, Short> quantities = new LinkedHashMap<>();
+        cartItems.forEach((productId, cartItem) -> quantities.put(productId, cartItem.getQuantity()));
+
+        List<String> messages = new ArrayList<>();
+        for (CartOperation operation : operations) {
+            long productId = operation.getProductId();
+            short quantity = operation.getQuantity();
+            Short current = quantities.get(productId);
+            switch (operation.getType()) {
+                case ADD:
+                    checkAddedQuantity(quantity);
+                    short updatedQuantity = current == null ? quantity : addedQuantity(current, quantity);
+                    quantities.put(productId, updatedQuantity);
+                    messages.add(addedMessage(products.get(productId), updatedQuantity));
+                    break;
+                case UPDATE:
+                    if (current == null) {
+                        messages.add(NOT_IN_CART);
+                    } else {
+                        checkUpdatedQuantity(quantity);
+                        quantities.put(productId, quantity);
+                        messages.add(updatedMessage(quantity));
+                    }
+                    break;
+                default:
+                    messages.add(quantities.remove(productId) == null ? NOT_IN_CART : REMOVED);
+            }
+        }
+
+        List<CartItem> saved = new ArrayList<>();
+        quantities.forEach((productId, quantity) -> {
+            CartItem cartItem = cartItems.get(productId);
+            if (cartItem == null) {
+                saved.add(new CartItem(0, quantity, user, products.get(productId)));
+            } else if (cartItem.getQuantity() != quantity) {
+                cartItem.setQuantity(quantity);
+                saved.add(cartItem);
+            }
+        });
+        List<Long> removed = new ArrayList<>(cartItems.keySet());
+        removed.removeAll(quantities.keySet());
+
+        if (!removed.isEmpty()) {
+            cartStore.removeProducts(user, removed);
+        }
+        if (!saved.isEmpty()) {
+            cartStore.saveAll(saved);
+        }
+        return messages;
+    }
+
+    private String deleteCart(User user) {
+        return cartStore.removeAll(user) == 0 ? "Cart is already empty" : "Cart has been deleted!";
+    }
+
+    private static void checkAddedQuantity(short quantity) {
+        if (quantity < 1) {
+            throw new CartItemException("Could not add " + quantity + " items to your shopping cart. " +
+                    "Quantity must be at least 1.");
+        }
+        if (quantity > MAXIMUM_QUANTITY_ALLOWED) {
+            throw new CartItemException("Could not add " + quantity + " items " +
+                    "to your shopping cart. Maximum allowed quantity is 15.");
+        }
+    }
+
+    private static short addedQuantity(short current, short quantity) {
+        short updatedQuantity = (short) (current + quantity);
+        if (updatedQuantity > MAXIMUM_QUANTITY_ALLOWED) {
+            throw new CartItemException("Could not add more " + quantity + " item(s) " +
+                    " because there's already " + current + " item(s) " +
+                    "in your shopping cart. Maximum allowed quantity is 15.");
+        }
+        return updatedQuantity;
+    }
+
+    private static void checkUpdatedQuantity(short quantity) {
+        if (quantity < 1) {
+            throw new CartItemException("Could not update quantity to " + quantity +
+                    ". Quantity must be at least 1, remove the product instead.");
         }
         if (quantity > 15) {
             throw new CartItemException("Could not update quantity to " + quantity +
                     ". Maximum allowed quantity is 15.");
         }
-        cartItemRepository.updateProductQuantity(quantity, user.getId(), productId);
-        return "Quantity has been updated! New quantity: " + quantity;
     }
 
-    public String removeProductFromCart(User user, long productId) {
-        if (cartItemRepository.findCartItemByUserIdAndProductId(user.getId(), productId) == null) {
-            return "The product is not in the cart.";
-        }
-        cartItemRepository.deleteCartItemByUserIdAndProductId(user.getId(), productId);
-        return "The product has been removed from your shopping cart.";
+    private static String addedMessage(Product product, short quantity) {
+        return "Product " + product.getName() + " x" + quantity + " has been added to the cart.";
     }
 
-    public String deleteCartByUser(User user) {
-        if (findCartItemsByUser(user).isEmpty()) {
-            return "Cart is already empty";
-        }
-        cartItemRepository.deleteCartItemsByUserId(user.getId());
-        return "Cart has been deleted!";
+    private static String updatedMessage(short quantity) {
+        return "Quantity has been updated! New quantity: " + quantity;
     }
-}
\ No newline at end of file
+}
@@ -1,19 +1,41 @@
 package com.endava.mentorship2022.service;
 
+import com.endava.mentorship2022.dto.CategoryNode;
+import com.endava.mentorship2022.event.ProductDeletedEvent;
 import com.endava.mentorship2022.exception.CategoryNotFound;
 import com.endava.mentorship2022.model.Category;
+import com.endava.mentorship2022.model.Product;
 import com.endava.mentorship2022.repository.CategoryRepository;
-import lombok.AllArgsConstructor;
+import com.endava.mentorship2022.search.CategoryTree;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 
 import java.util.List;
 
-@AllArgsConstructor
+// The category tree is loaded once into memory and reloaded after every category write,
+// so menus, children, breadcrumbs and subtrees are answered without the database.
+// Cached products embed their category, so every category write also drops the product cache.
 @Service
 public class CategoryService {
 
     private final CategoryRepository categoryRepository;
 
+    private final ProductService productService;
+
+    private final ProductCache productCache;
+
+    private final ApplicationEventPublisher eventPublisher;
+
+    private volatile CategoryTree tree;
+
+    public CategoryService(CategoryRepository categoryRepository, ProductService productService,
+                           ProductCache productCache, ApplicationEventPublisher eventPublisher) {
+        this.categoryRepository = categoryRepository;
+        this.productService = productService;
+        this.productCache = productCache;
+        this.eventPublisher = eventPublisher;
+    }
+
     public List<Category> findAll() {
         return categoryRepository.findAll();
     }
@@ -23,13 +45,27 @@ public class CategoryService {
     }
 
     public List<Category> findAllByParent(Long id) {
-        Category categoryParent = null;
-        if (id != 0) categoryParent = new Category(id);
-        return categoryRepository.findAllByParent(categoryParent);
+        return tree().children(id);
+    }
+
+    public List<CategoryNode> findMenu() {
+        return tree().menu();
+    }
+
+    public List<Category> findBreadcrumb(long id) {
+        return checkExists(tree(), id).breadcrumb(id);
+    }
+
+    // Products of the category and of all its descendants
+    public List<Product> findProductsInSubtree(long id) {
+        return productService.findAllByCategoryIds(checkExists(tree(), id).subtreeIds(id));
     }
 
     public Category save(Category category) {
-        return categoryRepository.save(category);
+        Category savedCategory = categoryRepository.save(category);
+        reloadTree();
+        productCache.invalidateAll();
+        return savedCategory;
     }
 
     public Category update(Long id, Category category) {
@@ -39,11 +75,45 @@ public class CategoryService {
         updatedCategory.setAlias(category.getAlias());
         updatedCategory.setParent(category.getParent());
 
-        return categoryRepository.save(updatedCategory);
+        Category savedCategory = categoryRepository.save(updatedCategory);
+        reloadTree();
+        productCache.invalidateAll();
+        return savedCategory;
     }
 
+    // The database deletes the products of the category with it, the product indexes and carts hear about
+    // each of them as if they were deleted one by one
     public void deleteById(long id){
         Category category = findById(id);
+        List<Long> productIds = productService.findIdsByCategoryId(id);
         categoryRepository.delete(category);
+        reloadTree();
+        productCache.invalidateAll();
+        productIds.forEach(productId -> eventPublisher.publishEvent(new ProductDeletedEvent(productId)));
+    }
+
+    private CategoryTree tree() {
+        CategoryTree current = tree;
+        if (current == null) {
+            synchronized (this) {
+                if (tree == null) {
+                    tree = new CategoryTree(categoryRepository.findAll());
+                }
+                current = tree;
+            }
+        }
+        return current;
+    }
+
+    // Synchronized with the first load, so a tree read before a write never replaces the reloaded one
+    private synchronized void reloadTree() {
+        tree = new CategoryTree(categoryRepository.findAll());
+    }
+
+    private static CategoryTree checkExists(CategoryTree tree, long id) {
+        if (!tree.contains(id)) {
+            throw new CategoryNotFound("Category: " + id + " not found.");
+        }
+        return tree;
     }
 }
@@ -0,0 +1,290 @@
+package com.endava.mentorship2022.service;
+
+import com.endava.mentorship2022.cart.CartCommandQueue;
+import com.endava.mentorship2022.dto.OrderTicket;
+import com.endava.mentorship2022.exception.CheckoutBusy;
+import com.endava.mentorship2022.exception.OrderTicketNotFound;
+import com.endava.mentorship2022.model.Order;
+import com.endava.mentorship2022.model.User;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+// Asynchronous checkout, used when checkout.async.enabled is set: POST /checkout only queues the checkout and
+// returns a ticket, checkout.queue.workers threads place the orders and GET /checkout/{ticket} tells the outcome.
+// No request thread waits for the order write, and checkouts use at most one connection per worker however
+// many buyers are waiting.
+// A worker takes up to checkout.queue.group-size queued checkouts and commits them in one transaction. When the
+// group fails, e.g. one of the carts is out of stock, its checkouts are placed again one by one.
+// The group holds the cart command queues of its users until it commits, so it only takes users of at most
+// checkout.queue.group-stripes of these queues: the cart changes of users on the other queues go on meanwhile.
+// Checkouts taken from the queue but left out of a group are the first ones of the next group.
+// A full queue is refused right away with CheckoutBusy (429). Tickets are kept checkout.queue.ticket-ttl after
+// their checkout is done.
+// Published as checkout.queue.depth, checkout.queue.wait (the time in the queue), checkout.queue.rejected and
+// checkout.group.size.
+@Slf4j
+@Component
+public class CheckoutQueue {
+
+    private static final Duration EXPIRY_INTERVAL = Duration.ofSeconds(1);
+
+    private final CheckoutService checkoutService;
+
+    private final CartCommandQueue cartCommandQueue;
+
+    private final boolean enabled;
+
+    private final int groupSize;
+
+    private final int groupStripes;
+
+    private final Duration ticketTtl;
+
+    private final BlockingQueue<Checkout> queue;
+
+    private final Map<String, Checkout> checkouts = new ConcurrentHashMap<>();
+
+    private final List<Thread> workers = new ArrayList<>();
+
+    private final Timer waitTime;
+
+    private final Counter rejected;
+
+    private final DistributionSummary groupSizes;
+
+    private volatile boolean running = true;
+
+    public CheckoutQueue(CheckoutService checkoutService, CartCommandQueue cartCommandQueue,
+                         @Value("${checkout.async.enabled:false}") boolean enabled,
+                         @Value("${checkout.queue.capacity:1000}") int capacity,
+                         @Value("${checkout.queue.workers:2}") int workers,
+                         @Value("${checkout.queue.group-size:20}") int groupSize,
+                         @Value("${checkout.queue.group-stripes:2}") int groupStripes,
+                         @Value("${checkout.queue.ticket-ttl:10m}") Duration ticketTtl,
+                         MeterRegistry meterRegistry) {
+        if (groupSize < 1) {
+            throw new IllegalArgumentException("checkout.queue.group-size must be at least 1");
+        }
+        if (groupStripes < 1) {
+            throw new IllegalArgumentException("checkout.queue.group-stripes must be at least 1");
+        }
+        this.checkoutService = checkoutService;
+        this.cartCommandQueue = cartCommandQueue;
+        this.enabled = enabled;
+        this.groupSize = groupSize;
+        this.groupStripes = groupStripes;
+        this.ticketTtl = ticketTtl;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        Gauge.builder("checkout.queue.depth", queue, BlockingQueue::size).register(meterRegistry);
+        this.waitTime = meterRegistry.timer("checkout.queue.wait");
+        this.rejected = meterRegistry.counter("checkout.queue.rejected");
+        this.groupSizes = meterRegistry.summary("checkout.group.size");
+        if (enabled) {
+            for (int i = 0; i < workers; i++) {
+                Thread worker = new Thread(this::work, "checkout-" + (i + 1));
+                worker.setDaemon(true);
+                worker.start();
+                this.workers.add(worker);
+            }
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // Inside a transaction, e.g. the one keeping the request's Idempotency-Key, the checkout is only queued once
+    // it commits: a rolled back request leaves no checkout behind to be placed
+    public OrderTicket submit(User user) {
+        Checkout checkout = new Checkout(UUID.randomUUID().toString(), user);
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            checkouts.put(checkout.ticket.getId(), checkout);
+            if (!queue.offer(checkout)) {
+                checkouts.remove(checkout.ticket.getId());
+                throw busy();
+            }
+            return checkout.ticket;
+        }
+
+        if (queue.remainingCapacity() == 0) {
+            throw busy();
+        }
+        checkouts.put(checkout.ticket.getId(), checkout);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status != STATUS_COMMITTED) {
+                    checkouts.remove(checkout.ticket.getId());
+                } else if (!queue.offer(checkout)) {
+                    // Filled up since the check, the ticket was already answered
+                    fail(checkout, busy());
+                }
+            }
+        });
+        return checkout.ticket;
+    }
+
+    // Tickets of other users are not found either
+    public OrderTicket find(User user, String id) {
+        Checkout checkout = checkouts.get(id);
+        if (checkout == null || !checkout.user.getId().equals(user.getId())) {
+            throw new OrderTicketNotFound("Order ticket: " + id + " not found.");
+        }
+        return checkout.ticket;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        workers.forEach(Thread::interrupt);
+    }
+
+    private void work() {
+        List<Checkout> taken = new ArrayList<>(groupSize);
+        List<Checkout> group = new ArrayList<>(groupSize);
+        long lastExpiry = System.nanoTime();
+        while (running) {
+            try {
+                if (taken.isEmpty()) {
+                    Checkout first = queue.poll(EXPIRY_INTERVAL.toMillis(), TimeUnit.MILLISECONDS);
+                    if (first != null) {
+                        taken.add(first);
+                    }
+                }
+                if (!taken.isEmpty()) {
+                    queue.drainTo(taken, groupSize - taken.size());
+                    takeGroup(taken, group);
+                    place(group);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                // Never lets a worker die or a ticket stay queued
+                group.stream().filter(checkout -> !checkout.done).forEach(checkout -> fail(checkout, e));
+            } finally {
+                group.clear();
+            }
+            if (System.nanoTime() - lastExpiry >= EXPIRY_INTERVAL.toNanos()) {
+                expireTickets();
+                lastExpiry = System.nanoTime();
+            }
+        }
+    }
+
+    // Moves the checkouts of the first group-stripes queues to the group, in the order they were taken
+    private void takeGroup(List<Checkout> taken, List<Checkout> group) {
+        Set<Integer> stripes = new HashSet<>();
+        for (Iterator<Checkout> checkouts = taken.iterator(); checkouts.hasNext(); ) {
+            Checkout checkout = checkouts.next();
+            int stripe = cartCommandQueue.stripeOf(checkout.user);
+            if (stripes.contains(stripe) || stripes.size() < groupStripes) {
+                stripes.add(stripe);
+                group.add(checkout);
+                checkouts.remove();
+            }
+        }
+    }
+
+    private void place(List<Checkout> group) {
+        long now = System.nanoTime();
+        group.forEach(checkout -> waitTime.record(now - checkout.queuedAt, TimeUnit.NANOSECONDS));
+        groupSizes.record(group.size());
+        try {
+            List<Order> orders = checkoutService.placeOrders(
+                    group.stream().map(checkout -> checkout.user).collect(Collectors.toList()));
+            for (int i = 0; i < group.size(); i++) {
+                complete(group.get(i), orders.get(i));
+            }
+        } catch (RuntimeException e) {
+            if (group.size() == 1) {
+                fail(group.get(0), e);
+                return;
+            }
+            // The whole group was rolled back, so none of its checkouts is placed twice
+            for (Checkout checkout : group) {
+                try {
+                    complete(checkout, checkoutService.placeOrders(List.of(checkout.user)).get(0));
+                } catch (RuntimeException checkoutFailure) {
+                    fail(checkout, checkoutFailure);
+                }
+            }
+        }
+    }
+
+    private void complete(Checkout checkout, Order order) {
+        checkout.done(order == null
+                ? new OrderTicket(checkout.ticket.getId(), OrderTicket.Status.FAILED, null, null, "Cart is empty.")
+                : new OrderTicket(checkout.ticket.getId(), OrderTicket.Status.PLACED, order.getId(), order.getTotal(),
+                null));
+    }
+
+    // The messages of the application's own exceptions are meant for the user, any other is only logged
+    private void fail(Checkout checkout, RuntimeException e) {
+        String message = e.getClass().isAnnotationPresent(ResponseStatus.class) ? e.getMessage() : null;
+        if (message == null) {
+            log.warn("Checkout {} failed", checkout.ticket.getId(), e);
+            message = "The order could not be placed, please try again.";
+        }
+        checkout.done(new OrderTicket(checkout.ticket.getId(), OrderTicket.Status.FAILED, null, null, message));
+    }
+
+    private CheckoutBusy busy() {
+        rejected.increment();
+        return new CheckoutBusy("Too many checkouts at the moment, please try again shortly.");
+    }
+
+    private void expireTickets() {
+        long now = System.nanoTime();
+        checkouts.values().removeIf(checkout -> checkout.done && now - checkout.doneAt >= ticketTtl.toNanos());
+    }
+
+    private static final class Checkout {
+
+        private final User user;
+
+        private final long queuedAt = System.nanoTime();
+
+        private volatile OrderTicket ticket;
+
+        private volatile long doneAt;
+
+        // Written last, so doneAt is set once done is seen
+        private volatile boolean done;
+
+        private Checkout(String id, User user) {
+            this.user = user;
+            this.ticket = new OrderTicket(id, OrderTicket.Status.QUEUED, null, null, null);
+        }
+
+        private void done(OrderTicket ticket) {
+            this.ticket = ticket;
+            this.doneAt = System.nanoTime();
+            this.done = true;
+        }
+    }
+}
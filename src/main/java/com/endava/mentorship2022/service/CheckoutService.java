@@ -1,11 +1,15 @@
 package com.endava.mentorship2022.service;
 
+import com.endava.mentorship2022.cart.CartCommandQueue;
 import com.endava.mentorship2022.model.CartItem;
+import com.endava.mentorship2022.model.Order;
 import com.endava.mentorship2022.model.User;
 import lombok.AllArgsConstructor;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Supplier;
 
 @AllArgsConstructor
 @Service
@@ -15,15 +19,41 @@ public class CheckoutService {
 
     private final CartItemService cartItemService;
 
+    private final CartCommandQueue cartCommandQueue;
+
+    // The stock, the order and the emptied cart are committed together, in the user's cart command queue
+    // so no item can be added between reading the cart and emptying it
     public String placeOrder(User user) {
+        return cartCommandQueue.execute(user, commandUser -> checkout(commandUser) == null
+                ? "Cart is empty."
+                : "Order has been placed. Thank you for purchase.");
+    }
+
+    // Runs the work in the transaction of a checkout of the user, in the user's cart command queue, so what it
+    // writes, e.g. the Idempotency-Key of the request, commits together with the order
+    public <T> T inCheckoutTransaction(User user, Supplier<T> work) {
+        return cartCommandQueue.execute(user, commandUser -> work.get());
+    }
+
+    // The checkouts of several users committed in one transaction, all or none. Returns the order of each
+    // user in the same order, null where the cart was empty
+    public List<Order> placeOrders(List<User> users) {
+        return cartCommandQueue.executeTogether(users, commandUsers -> {
+            List<Order> orders = new ArrayList<>();
+            commandUsers.forEach(commandUser -> orders.add(checkout(commandUser)));
+            return orders;
+        });
+    }
+
+    // The cart is emptied before the stock is reserved: emptying may wait for a cart flush, whose inserts into
+    // cart_items need the products rows the stock update locks until commit
+    private Order checkout(User user) {
         List<CartItem> cartItems = cartItemService.findCartItemsByUser(user);
         if (cartItems.isEmpty()) {
-            return "Cart is empty.";
+            return null;
         }
-        orderService.createOrder(user, cartItems);
         cartItemService.deleteCartByUser(user);
-
-        return "Order has been placed. Thank you for purchase.";
+        return orderService.createOrder(user, cartItems);
     }
 
 }
@@ -0,0 +1,245 @@
+package com.endava.mentorship2022.service;
+
+import com.endava.mentorship2022.cache.BoundedCache;
+import com.endava.mentorship2022.cache.BoundedCacheMetrics;
+import com.endava.mentorship2022.exception.InvalidIdempotencyKey;
+import com.endava.mentorship2022.model.IdempotencyRecord;
+import com.endava.mentorship2022.model.User;
+import com.endava.mentorship2022.repository.IdempotencyRecordRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PreDestroy;
+import java.math.BigInteger;
+import java.net.URI;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+// Serves a request sent again with the same Idempotency-Key with the response of the first one, so a client
+// retrying after a timeout does not place a second order. Keys are scoped to the user and the endpoint.
+// Responses are kept in a bounded in-memory cache and in the idempotency_keys table, which survives restarts and
+// is shared by all nodes, for idempotency.time-to-live. Requests with the same key arriving on one node while
+// the first is running wait for it and get its response.
+// Only successful responses are kept: a request that failed can be retried with the same key.
+// A key sent again with another request body is refused with InvalidIdempotencyKey (422).
+// Published as idempotency.requests tagged result=executed, replayed or coalesced.
+@Slf4j
+@Service
+public class IdempotencyService {
+
+    public static final String HEADER = "Idempotency-Key";
+
+    private static final int MAXIMUM_KEY_LENGTH = 200;
+
+    private static final Duration PRUNE_INTERVAL = Duration.ofHours(1);
+
+    private final IdempotencyRecordRepository idempotencyRecordRepository;
+
+    private final ObjectMapper objectMapper;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final Duration timeToLive;
+
+    private final BoundedCache<String, IdempotencyRecord> records;
+
+    private final Map<String, CompletableFuture<IdempotencyRecord>> running = new ConcurrentHashMap<>();
+
+    private final Counter executed;
+
+    private final Counter replayed;
+
+    private final Counter coalesced;
+
+    private final ScheduledExecutorService pruning;
+
+    public IdempotencyService(IdempotencyRecordRepository idempotencyRecordRepository, ObjectMapper objectMapper,
+                              PlatformTransactionManager transactionManager,
+                              @Value("${idempotency.cache.maximum-size:10000}") int maximumSize,
+                              @Value("${idempotency.time-to-live:24h}") Duration timeToLive,
+                              MeterRegistry meterRegistry) {
+        this.idempotencyRecordRepository = idempotencyRecordRepository;
+        this.objectMapper = objectMapper;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.timeToLive = timeToLive;
+        this.records = BoundedCacheMetrics.monitor(meterRegistry,
+                new BoundedCache<>(maximumSize, timeToLive), "idempotency");
+        this.executed = meterRegistry.counter("idempotency.requests", "result", "executed");
+        this.replayed = meterRegistry.counter("idempotency.requests", "result", "replayed");
+        this.coalesced = meterRegistry.counter("idempotency.requests", "result", "coalesced");
+        this.pruning = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "idempotency-pruning");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = PRUNE_INTERVAL.toMillis();
+        pruning.scheduleWithFixedDelay(this::prune, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    // The response of the first request made with this key, running the action only for that first request
+    public ResponseEntity<Object> execute(User user, String endpoint, String key, Object request,
+                                          Supplier<ResponseEntity<?>> action) {
+        return execute(user, endpoint, key, request, work -> transactionTemplate.execute(status -> work.get()), action);
+    }
+
+    // As above, the stored key is looked up and the new one written in the transaction run by inTransaction,
+    // together with what the action writes, e.g. the order. A key is never kept without its order nor an order
+    // committed without its key, and the request thread uses no connection while it waits for the transaction.
+    public ResponseEntity<Object> execute(User user, String endpoint, String key, Object request,
+                                          Function<Supplier<IdempotencyRecord>, IdempotencyRecord> inTransaction,
+                                          Supplier<ResponseEntity<?>> action) {
+        if (key.isBlank() || key.length() > MAXIMUM_KEY_LENGTH) {
+            throw new InvalidIdempotencyKey(HEADER + " must have 1 to " + MAXIMUM_KEY_LENGTH + " characters.");
+        }
+        String id = user.getId() + " " + endpoint + " " + key;
+        String requestHash = hash(request);
+
+        IdempotencyRecord cached = records.getIfPresent(id).orElse(null);
+        if (cached != null) {
+            replayed.increment();
+            return replay(cached, requestHash);
+        }
+
+        CompletableFuture<IdempotencyRecord> execution = new CompletableFuture<>();
+        CompletableFuture<IdempotencyRecord> first = running.putIfAbsent(id, execution);
+        if (first != null) {
+            coalesced.increment();
+            return replay(await(first), requestHash);
+        }
+        try {
+            AtomicBoolean stored = new AtomicBoolean();
+            IdempotencyRecord record = inTransaction.apply(() -> {
+                // Kept by another node, or by this one before a restart
+                IdempotencyRecord found = idempotencyRecordRepository.findById(id).orElse(null);
+                if (found != null && !expired(found)) {
+                    stored.set(true);
+                    return found;
+                }
+                if (found != null) {
+                    // Not pruned yet, removed first so the new record is a plain insert
+                    idempotencyRecordRepository.delete(found);
+                    idempotencyRecordRepository.flush();
+                }
+                IdempotencyRecord executedRecord = record(id, requestHash, action.get());
+                if (executedRecord.getStatus() < 300) {
+                    // A node running the same key meanwhile fails on the primary key, its order is rolled back
+                    idempotencyRecordRepository.saveAndFlush(executedRecord);
+                }
+                return executedRecord;
+            });
+            if (record.getStatus() < 300) {
+                records.put(id, record);
+            }
+            execution.complete(record);
+            if (stored.get()) {
+                replayed.increment();
+                return replay(record, requestHash);
+            }
+            executed.increment();
+            return response(record);
+        } catch (RuntimeException e) {
+            execution.completeExceptionally(e);
+            throw e;
+        } finally {
+            running.remove(id, execution);
+        }
+    }
+
+    public void prune() {
+        try {
+            int deleted = transactionTemplate.execute(status -> idempotencyRecordRepository.deleteCreatedBefore(
+                    LocalDateTime.now().minus(timeToLive)));
+            log.debug("Deleted {} expired idempotency keys", deleted);
+        } catch (RuntimeException e) {
+            log.warn("Could not delete the expired idempotency keys", e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pruning.shutdownNow();
+    }
+
+    private boolean expired(IdempotencyRecord record) {
+        return !record.getCreatedAt().isAfter(LocalDateTime.now().minus(timeToLive));
+    }
+
+    private IdempotencyRecord record(String id, String requestHash, ResponseEntity<?> response) {
+        Object body = response.getBody();
+        String contentType;
+        String content;
+        if (body == null || body instanceof String) {
+            contentType = MediaType.TEXT_PLAIN_VALUE + ";charset=UTF-8";
+            content = (String) body;
+        } else {
+            contentType = MediaType.APPLICATION_JSON_VALUE;
+            try {
+                content = objectMapper.writeValueAsString(body);
+            } catch (JsonProcessingException e) {
+                throw new IllegalStateException("Could not write the response of " + id, e);
+            }
+        }
+        URI location = response.getHeaders().getLocation();
+        return new IdempotencyRecord(id, requestHash, response.getStatusCodeValue(), contentType,
+                location == null ? null : location.toString(), content, LocalDateTime.now());
+    }
+
+    private static ResponseEntity<Object> replay(IdempotencyRecord record, String requestHash) {
+        if (!record.getRequestHash().equals(requestHash)) {
+            throw new InvalidIdempotencyKey(HEADER + " was already used for another request.");
+        }
+        return response(record);
+    }
+
+    private static ResponseEntity<Object> response(IdempotencyRecord record) {
+        ResponseEntity.BodyBuilder response = ResponseEntity.status(record.getStatus())
+                .header(HttpHeaders.CONTENT_TYPE, record.getContentType());
+        if (record.getLocation() != null) {
+            response.location(URI.create(record.getLocation()));
+        }
+        return response.body(record.getBody());
+    }
+
+    // Exceptions of the first request are rethrown as they were thrown
+    private static IdempotencyRecord await(CompletableFuture<IdempotencyRecord> first) {
+        try {
+            return first.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private String hash(Object request) {
+        try {
+            byte[] content = request == null ? new byte[0] : objectMapper.writeValueAsBytes(request);
+            return String.format("%064x", new BigInteger(1, MessageDigest.getInstance("SHA-256").digest(content)));
+        } catch (JsonProcessingException | NoSuchAlgorithmException e) {
+            throw new IllegalStateException("Could not hash the request", e);
+        }
+    }
+}
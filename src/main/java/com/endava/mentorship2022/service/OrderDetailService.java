@@ -6,6 +6,7 @@ import lombok.AllArgsConstructor;
 import org.springframework.stereotype.Service;
 
 import java.util.List;
+import java.util.stream.Stream;
 
 @Service
 @AllArgsConstructor
@@ -17,6 +18,11 @@ public class OrderDetailService {
         return orderDetailsRepository.findAll();
     }
 
+    // Must be consumed inside a transaction and closed afterwards
+    public Stream<OrderDetail> streamAll() {
+        return orderDetailsRepository.streamAll();
+    }
+
     public List<OrderDetail> findByOrderId(long orderId) {
         return orderDetailsRepository.findByOrderId(orderId);
     }
@@ -1,6 +1,7 @@
 
 package com.endava.mentorship2022.service;
 
+import com.endava.mentorship2022.dto.OrderSummary;
 import com.endava.mentorship2022.exception.OrderNotFound;
 import com.endava.mentorship2022.model.CartItem;
 import com.endava.mentorship2022.model.Order;
@@ -12,9 +13,11 @@ import com.endava.mentorship2022.repository.OrderRepository;
 import lombok.AllArgsConstructor;
 import org.springframework.stereotype.Service;
 
-import java.util.HashSet;
+import javax.transaction.Transactional;
+import java.util.Collection;
 import java.util.List;
 import java.util.Set;
+import java.util.stream.Stream;
 
 @Service
 @AllArgsConstructor
@@ -24,8 +27,15 @@ public class OrderService {
 
     private final UserService userService;
 
-    public List<Order> findAll() {
-        return orderRepository.findAll();
+    private final StockReservationService stockReservationService;
+
+    public List<OrderSummary> findAll() {
+        return orderRepository.findAllSummaries();
+    }
+
+    // Must be consumed inside a transaction and closed afterwards
+    public Stream<OrderSummary> streamAll() {
+        return orderRepository.streamAllSummaries();
     }
 
     public List<Order> findOrdersByUserId(Long userId) {
@@ -39,22 +49,26 @@ public class OrderService {
     }
 
     public Order save(Order order) {
-        // Make a copy of orderDetails
-        Set<OrderDetail> orderDetails = new HashSet<>(order.getOrderDetails());
-        order.setOrderDetails(null);
-
-        // Save without orderDetails first, in order to get an orderId to use in orderDetails
-        orderRepository.save(order);
-
-        // Add orderDetails and then save order
-        orderDetails.forEach(orderDetail -> orderDetail.setOrder(order));
-        order.setOrderDetails(orderDetails);
+        // Saving the order cascades to its details, they only need the back reference
+        order.getOrderDetails().forEach(orderDetail -> orderDetail.setOrder(order));
         return orderRepository.save(order);
     }
 
-    public void deleteById(Long id) {
-        findById(id);
-        orderRepository.deleteById(id);
+    @Transactional
+    public void deleteById(long id) {
+        if (deleteAllById(List.of(id)) == 0) {
+            throw new OrderNotFound("Order: " + id + " not found.");
+        }
+    }
+
+    // One statement per table whatever the number of orders, returns the number of orders deleted
+    @Transactional
+    public int deleteAllById(Collection<Long> ids) {
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        orderRepository.deleteOrderDetailsByOrderIdIn(ids);
+        return orderRepository.deleteAllByIdIn(ids);
     }
 
     public Order updateStatus(Long id, OrderStatus newStatus) {
@@ -63,7 +77,10 @@ public class OrderService {
         return orderRepository.save(order);
     }
 
+    // Must be called inside a transaction, the stock is taken back if the order is not saved
     public Order createOrder(User user, List<CartItem> cartItems) {
+        stockReservationService.reserve(cartItems);
+
         Order newOrder = new Order();
         newOrder.setUser(user);
         newOrder.setTotal(calculateTotal(cartItems));
@@ -0,0 +1,167 @@
+package com.endava.mentorship2022.service;
+
+import com.endava.mentorship2022.dto.TechnicalDetailAttribute;
+import com.endava.mentorship2022.event.ProductChangedEvent;
+import com.endava.mentorship2022.event.ProductDeletedEvent;
+import com.endava.mentorship2022.event.ProductsImportedEvent;
+import com.endava.mentorship2022.exception.InvalidAttributeQuery;
+import com.endava.mentorship2022.model.Product;
+import com.endava.mentorship2022.repository.ProductRepository;
+import com.endava.mentorship2022.repository.TechnicalDetailRepository;
+import com.endava.mentorship2022.search.Attribute;
+import com.endava.mentorship2022.search.AttributeIndex;
+import lombok.extern.slf4j.Slf4j;
+import org.roaringbitmap.RoaringBitmap;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+
+// Finds products by their technical details, e.g. all grinders with "Burr type:Conical".
+// The attribute index is rebuilt from the technical_details table at startup, reading product id ranges
+// in parallel, and then kept current by the product write events.
+@Slf4j
+@Service
+public class ProductAttributeService {
+
+    private static final int BUILD_THREADS = 4;
+
+    private static final int MAX_RESULTS = 1000;
+
+    private final TechnicalDetailRepository technicalDetailRepository;
+
+    private final ProductRepository productRepository;
+
+    private final AttributeIndex attributeIndex = new AttributeIndex();
+
+    private volatile boolean built;
+
+    public ProductAttributeService(TechnicalDetailRepository technicalDetailRepository,
+                                   ProductRepository productRepository) {
+        this.technicalDetailRepository = technicalDetailRepository;
+        this.productRepository = productRepository;
+    }
+
+    // Attributes are written as "name:value"
+    public List<Product> findProducts(List<String> allOf, List<String> anyOf, int limit) {
+        List<Attribute> allAttributes = parse(allOf);
+        List<Attribute> anyAttributes = parse(anyOf);
+        if (allAttributes.isEmpty() && anyAttributes.isEmpty()) {
+            throw new InvalidAttributeQuery("At least one attribute is required in all or any");
+        }
+        // As in the search, a limit below 1 finds nothing
+        if (limit < 1) {
+            return List.of();
+        }
+        ensureBuilt();
+
+        RoaringBitmap productIds = attributeIndex.find(allAttributes, anyAttributes);
+        List<Long> ids = productIds.stream().limit(Math.min(limit, MAX_RESULTS))
+                .mapToObj(Long::valueOf).collect(Collectors.toList());
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+        List<Product> products = new ArrayList<>(productRepository.findAllWithTechnicalDetailsByIdIn(ids));
+        products.sort(Comparator.comparingLong(Product::getId));
+        return products;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void buildOnStartup() {
+        try {
+            ensureBuilt();
+        } catch (RuntimeException e) {
+            // Not fatal, the next query tries again
+            log.warn("Could not build the product attribute index at startup", e);
+        }
+    }
+
+    // Synchronized with the build so an event is never dropped while the index is being built
+    @EventListener
+    public synchronized void onProductChanged(ProductChangedEvent event) {
+        if (built) {
+            attributeIndex.replace(event.getProductId(),
+                    toAttributes(technicalDetailRepository.findAttributesByProductId(event.getProductId())));
+        }
+    }
+
+    @EventListener
+    public synchronized void onProductDeleted(ProductDeletedEvent event) {
+        if (built) {
+            attributeIndex.remove(event.getProductId());
+        }
+    }
+
+    @EventListener
+    public synchronized void onProductsImported(ProductsImportedEvent event) {
+        if (built) {
+            indexRows(technicalDetailRepository.findAttributesByProductIdIn(event.getProductIds()));
+        }
+    }
+
+    private void ensureBuilt() {
+        if (!built) {
+            synchronized (this) {
+                if (!built) {
+                    build();
+                    built = true;
+                }
+            }
+        }
+    }
+
+    private void build() {
+        long maxProductId = technicalDetailRepository.findMaxProductId().orElse(0L);
+        long rangeSize = maxProductId / BUILD_THREADS + 1;
+        ExecutorService executor = Executors.newFixedThreadPool(BUILD_THREADS);
+        try {
+            CompletableFuture<?>[] ranges = new CompletableFuture<?>[BUILD_THREADS];
+            for (int i = 0; i < BUILD_THREADS; i++) {
+                long fromProductId = i * rangeSize;
+                ranges[i] = CompletableFuture.runAsync(() -> indexRange(fromProductId, fromProductId + rangeSize - 1), executor);
+            }
+            CompletableFuture.allOf(ranges).join();
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private void indexRange(long fromProductId, long toProductId) {
+        indexRows(technicalDetailRepository.findAttributesByProductIdBetween(fromProductId, toProductId));
+    }
+
+    private void indexRows(List<TechnicalDetailAttribute> rows) {
+        Map<Long, List<TechnicalDetailAttribute>> byProduct = rows.stream()
+                .collect(Collectors.groupingBy(TechnicalDetailAttribute::getProductId));
+        byProduct.forEach((productId, productRows) -> attributeIndex.replace(productId, toAttributes(productRows)));
+    }
+
+    private static List<Attribute> toAttributes(List<TechnicalDetailAttribute> rows) {
+        return rows.stream()
+                .map(row -> new Attribute(row.getName(), row.getValue()))
+                .collect(Collectors.toList());
+    }
+
+    private static List<Attribute> parse(List<String> attributes) {
+        if (attributes == null) {
+            return List.of();
+        }
+        List<Attribute> parsed = new ArrayList<>();
+        for (String attribute : attributes) {
+            int separator = attribute.indexOf(':');
+            if (separator < 1) {
+                throw new InvalidAttributeQuery("Attribute must be written as name:value, got " + attribute);
+            }
+            parsed.add(new Attribute(attribute.substring(0, separator), attribute.substring(separator + 1)));
+        }
+        return parsed;
+    }
+}
@@ -0,0 +1,58 @@
+package com.endava.mentorship2022.service;
+
+import com.endava.mentorship2022.cache.BoundedCache;
+import com.endava.mentorship2022.cache.BoundedCacheMetrics;
+import com.endava.mentorship2022.dto.ProductSummary;
+import com.endava.mentorship2022.model.Product;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.LongFunction;
+import java.util.function.Supplier;
+
+@Component
+public class ProductCache {
+
+    private final BoundedCache<Long, Product> productsById;
+
+    private final BoundedCache<Boolean, List<ProductSummary>> allProducts;
+
+    public ProductCache(@Value("${product.cache.maximum-size:10000}") int maximumSize,
+                        @Value("${product.cache.time-to-live:10m}") Duration timeToLive,
+                        MeterRegistry meterRegistry) {
+        this.productsById = BoundedCacheMetrics.monitor(meterRegistry,
+                new BoundedCache<>(maximumSize, timeToLive), "products");
+        this.allProducts = BoundedCacheMetrics.monitor(meterRegistry,
+                new BoundedCache<>(1, timeToLive), "products.all");
+    }
+
+    public Product getProduct(long id, LongFunction<Product> loader) {
+        return productsById.get(id, loader::apply);
+    }
+
+    public Map<Long, Product> getProducts(Collection<Long> ids, Function<Set<Long>, Map<Long, Product>> loader) {
+        return productsById.getAll(ids, loader);
+    }
+
+    public List<ProductSummary> getAllProducts(Supplier<List<ProductSummary>> loader) {
+        return allProducts.get(Boolean.TRUE, all -> List.copyOf(loader.get()));
+    }
+
+    // A product write changes both the product itself and any list it appears in
+    public void invalidate(long id) {
+        productsById.invalidate(id);
+        allProducts.invalidateAll();
+    }
+
+    public void invalidateAll() {
+        productsById.invalidateAll();
+        allProducts.invalidateAll();
+    }
+}
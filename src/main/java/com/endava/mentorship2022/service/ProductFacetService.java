@@ -0,0 +1,133 @@
+package com.endava.mentorship2022.service;
+
+import com.endava.mentorship2022.dto.FacetCounts;
+import com.endava.mentorship2022.dto.ProductFacetValues;
+import com.endava.mentorship2022.event.ProductChangedEvent;
+import com.endava.mentorship2022.event.ProductDeletedEvent;
+import com.endava.mentorship2022.event.ProductStockChangedEvent;
+import com.endava.mentorship2022.event.ProductsImportedEvent;
+import com.endava.mentorship2022.repository.ProductRepository;
+import com.endava.mentorship2022.search.FacetIndex;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+// Product counts per brand, category, price band, enabled and in-stock flag for the storefront filters.
+// Like the search index, the facet index is built on first use and then kept current by the product write events,
+// and by the stock changes of orders for the in-stock flag.
+@Service
+public class ProductFacetService {
+
+    private static final String BRAND = "brand";
+
+    private static final String CATEGORY = "category";
+
+    private static final String PRICE = "price";
+
+    private static final String ENABLED = "enabled";
+
+    private static final String IN_STOCK = "inStock";
+
+    // Lower bounds of the price bands, each band ends where the next one starts
+    private static final int[] PRICE_BANDS = {0, 25, 50, 100, 250};
+
+    private static final String NO_CATEGORY = "none";
+
+    private final ProductRepository productRepository;
+
+    private final FacetIndex facetIndex = new FacetIndex();
+
+    private volatile boolean built;
+
+    public ProductFacetService(ProductRepository productRepository) {
+        this.productRepository = productRepository;
+    }
+
+    public FacetCounts countFacets(Collection<String> brands, Collection<Long> categoryIds, Collection<String> priceBands,
+                                   Boolean enabled, Boolean inStock) {
+        ensureBuilt();
+        Map<String, Set<String>> filters = new HashMap<>();
+        filters.put(BRAND, toValues(brands));
+        filters.put(CATEGORY, toValues(categoryIds));
+        filters.put(PRICE, toValues(priceBands));
+        filters.put(ENABLED, enabled == null ? Set.of() : Set.of(enabled.toString()));
+        filters.put(IN_STOCK, inStock == null ? Set.of() : Set.of(inStock.toString()));
+        return facetIndex.count(filters);
+    }
+
+    // Synchronized with the build so an event is never dropped while the index is being built
+    @EventListener
+    public synchronized void onProductChanged(ProductChangedEvent event) {
+        if (built) {
+            List<ProductFacetValues> products = productRepository.findFacetValuesByIdIn(List.of(event.getProductId()));
+            if (products.isEmpty()) {
+                facetIndex.remove(event.getProductId());
+            }
+            products.forEach(this::index);
+        }
+    }
+
+    @EventListener
+    public synchronized void onProductStockChanged(ProductStockChangedEvent event) {
+        if (built) {
+            productRepository.findFacetValuesByIdIn(event.getProductIds()).forEach(this::index);
+        }
+    }
+
+    @EventListener
+    public synchronized void onProductDeleted(ProductDeletedEvent event) {
+        if (built) {
+            facetIndex.remove(event.getProductId());
+        }
+    }
+
+    @EventListener
+    public synchronized void onProductsImported(ProductsImportedEvent event) {
+        if (built) {
+            productRepository.findFacetValuesByIdIn(event.getProductIds()).forEach(this::index);
+        }
+    }
+
+    private void ensureBuilt() {
+        if (!built) {
+            synchronized (this) {
+                if (!built) {
+                    productRepository.findAllFacetValues().forEach(this::index);
+                    facetIndex.optimize();
+                    built = true;
+                }
+            }
+        }
+    }
+
+    private void index(ProductFacetValues product) {
+        Map<String, String> values = new HashMap<>();
+        values.put(BRAND, product.getBrand());
+        values.put(CATEGORY, product.getCategoryId() == null ? NO_CATEGORY : String.valueOf(product.getCategoryId()));
+        values.put(PRICE, priceBand(product.getPrice()));
+        values.put(ENABLED, String.valueOf(product.isEnabled()));
+        values.put(IN_STOCK, String.valueOf(product.getStock() > 0));
+        facetIndex.index(product.getId(), values);
+    }
+
+    // Band labels look like "25-50", the last one like "250+"
+    private static String priceBand(float price) {
+        int band = PRICE_BANDS.length - 1;
+        while (band > 0 && price < PRICE_BANDS[band]) {
+            band--;
+        }
+        return band == PRICE_BANDS.length - 1
+                ? PRICE_BANDS[band] + "+"
+                : PRICE_BANDS[band] + "-" + PRICE_BANDS[band + 1];
+    }
+
+    private static Set<String> toValues(Collection<?> values) {
+        return values == null ? Set.of() : values.stream().map(String::valueOf).collect(Collectors.toSet());
+    }
+}
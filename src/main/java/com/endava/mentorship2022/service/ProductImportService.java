@@ -0,0 +1,223 @@
+package com.endava.mentorship2022.service;
+
+import com.endava.mentorship2022.dto.ImportChunkResult;
+import com.endava.mentorship2022.dto.ImportSummary;
+import com.endava.mentorship2022.event.ProductsImportedEvent;
+import com.endava.mentorship2022.model.Product;
+import com.endava.mentorship2022.model.TechnicalDetail;
+import com.endava.mentorship2022.repository.ProductBulkRepository;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.core.NestedExceptionUtils;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.PersistenceException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+// Imports a JSON array or newline-delimited JSON of products, parsed one product at a time so the body
+// never has to fit in memory. Products are written in chunks, each chunk in its own transaction with
+// batched inserts. Invalid rows are skipped and reported, a chunk failing in the database is rolled back
+// and reported, and the import goes on with the next chunk.
+@Service
+public class ProductImportService {
+
+    private final ObjectMapper objectMapper;
+
+    private final ProductBulkRepository productBulkRepository;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final ProductCache productCache;
+
+    private final ApplicationEventPublisher eventPublisher;
+
+    private final int chunkSize;
+
+    public ProductImportService(ObjectMapper objectMapper, ProductBulkRepository productBulkRepository,
+                                PlatformTransactionManager transactionManager, ProductCache productCache,
+                                ApplicationEventPublisher eventPublisher,
+                                @Value("${product.import.chunk-size:1000}") int chunkSize) {
+        this.objectMapper = objectMapper;
+        this.productBulkRepository = productBulkRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.productCache = productCache;
+        this.eventPublisher = eventPublisher;
+        this.chunkSize = chunkSize;
+    }
+
+    public ImportSummary importProducts(InputStream body, Consumer<ImportChunkResult> progress) {
+        long start = System.nanoTime();
+        long imported = 0;
+        long failed = 0;
+        Chunk chunk = new Chunk(1, 0);
+        String error = null;
+
+        try (JsonParser parser = objectMapper.getFactory().createParser(body)) {
+            // A top level array is read element by element, otherwise the body is a sequence of objects
+            JsonToken token = parser.nextToken();
+            boolean array = token == JsonToken.START_ARRAY;
+            if (array) {
+                token = parser.nextToken();
+            }
+            while (token == JsonToken.START_OBJECT) {
+                JsonNode node = objectMapper.readTree(parser);
+                try {
+                    chunk.add(objectMapper.treeToValue(node, Product.class));
+                } catch (JsonProcessingException e) {
+                    chunk.fail("row " + chunk.nextRow() + ": " + e.getOriginalMessage());
+                }
+                if (chunk.size() == chunkSize) {
+                    ImportChunkResult result = importChunk(chunk);
+                    progress.accept(result);
+                    imported += result.getImported();
+                    failed += result.getFailed();
+                    chunk = chunk.next();
+                }
+                token = parser.nextToken();
+            }
+            if (token != null && !(array && token == JsonToken.END_ARRAY)) {
+                error = "Expected a product object at row " + chunk.nextRow() + ", got " + token;
+            }
+        } catch (IOException e) {
+            error = "Could not parse row " + chunk.nextRow() + ": " + e.getMessage();
+        }
+
+        if (chunk.size() > 0) {
+            ImportChunkResult result = importChunk(chunk);
+            progress.accept(result);
+            imported += result.getImported();
+            failed += result.getFailed();
+        }
+        return new ImportSummary(imported, failed, (System.nanoTime() - start) / 1_000_000, error);
+    }
+
+    private ImportChunkResult importChunk(Chunk chunk) {
+        List<Product> valid = validate(chunk);
+        if (!valid.isEmpty()) {
+            try {
+                transactionTemplate.executeWithoutResult(status -> productBulkRepository.insertAll(valid));
+            } catch (DataAccessException | PersistenceException e) {
+                chunk.errors.add("Chunk rolled back: " + NestedExceptionUtils.getMostSpecificCause(e).getMessage());
+                return new ImportChunkResult(chunk.number, chunk.firstRow, 0, chunk.size(), chunk.errors);
+            }
+            productCache.invalidateAll();
+            eventPublisher.publishEvent(new ProductsImportedEvent(
+                    valid.stream().map(Product::getId).collect(Collectors.toList())));
+        }
+        return new ImportChunkResult(chunk.number, chunk.firstRow, valid.size(), chunk.size() - valid.size(), chunk.errors);
+    }
+
+    // Checks the column constraints up front, so one bad row does not roll back the whole chunk
+    private List<Product> validate(Chunk chunk) {
+        Set<String> names = productBulkRepository.findExistingNames(
+                chunk.products.stream().map(Product::getName).filter(Objects::nonNull).collect(Collectors.toSet()));
+        Set<String> aliases = productBulkRepository.findExistingAliases(
+                chunk.products.stream().map(Product::getAlias).filter(Objects::nonNull).collect(Collectors.toSet()));
+        List<Product> valid = new ArrayList<>(chunk.products.size());
+        for (int i = 0; i < chunk.products.size(); i++) {
+            Product product = chunk.products.get(i);
+            String error = validate(product);
+            if (error == null && names.contains(product.getName())) {
+                error = "name " + product.getName() + " already exists";
+            }
+            if (error == null && aliases.contains(product.getAlias())) {
+                error = "alias " + product.getAlias() + " already exists";
+            }
+            if (error == null) {
+                // Also catches duplicates within the chunk
+                names.add(product.getName());
+                aliases.add(product.getAlias());
+                valid.add(product);
+            } else {
+                chunk.errors.add("row " + chunk.rows.get(i) + ": " + error);
+            }
+        }
+        return valid;
+    }
+
+    private static String validate(Product product) {
+        String error = checkText("name", product.getName(), 200);
+        error = error != null ? error : checkText("alias", product.getAlias(), 200);
+        error = error != null ? error : checkText("description", product.getDescription(), 3000);
+        error = error != null ? error : checkText("brand", product.getBrand(), 80);
+        if (error == null && product.getTechnicalDetails() == null) {
+            product.setTechnicalDetails(new HashSet<>());
+        }
+        if (error == null) {
+            for (TechnicalDetail technicalDetail : product.getTechnicalDetails()) {
+                error = checkText("technical detail name", technicalDetail.getName(), 250);
+                error = error != null ? error : checkText("technical detail value", technicalDetail.getValue(), 250);
+                if (error != null) {
+                    break;
+                }
+            }
+        }
+        return error;
+    }
+
+    private static String checkText(String field, String value, int maxLength) {
+        if (value == null || value.isBlank()) {
+            return field + " is required";
+        }
+        return value.length() > maxLength ? field + " is longer than " + maxLength + " characters" : null;
+    }
+
+    private static final class Chunk {
+
+        private final int number;
+
+        private final long firstRow;
+
+        private final List<Product> products = new ArrayList<>();
+
+        // Row of each product in the imported body, rows that could not be read are missing
+        private final List<Long> rows = new ArrayList<>();
+
+        private final List<String> errors = new ArrayList<>();
+
+        private int failedRows;
+
+        private Chunk(int number, long firstRow) {
+            this.number = number;
+            this.firstRow = firstRow;
+        }
+
+        private void add(Product product) {
+            rows.add(nextRow());
+            products.add(product);
+        }
+
+        private void fail(String error) {
+            errors.add(error);
+            failedRows++;
+        }
+
+        private long nextRow() {
+            return firstRow + size();
+        }
+
+        private int size() {
+            return products.size() + failedRows;
+        }
+
+        private Chunk next() {
+            return new Chunk(number + 1, nextRow());
+        }
+    }
+}
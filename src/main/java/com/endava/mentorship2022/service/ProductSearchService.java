@@ -0,0 +1,93 @@
+package com.endava.mentorship2022.service;
+
+import com.endava.mentorship2022.event.ProductChangedEvent;
+import com.endava.mentorship2022.event.ProductDeletedEvent;
+import com.endava.mentorship2022.event.ProductsImportedEvent;
+import com.endava.mentorship2022.model.Product;
+import com.endava.mentorship2022.repository.ProductRepository;
+import com.endava.mentorship2022.search.SearchHit;
+import com.endava.mentorship2022.search.SearchIndex;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+// Full-text search over product name, brand, description and technical detail values.
+// The index is built from the database on the first search and then kept current by the product write events.
+@Service
+public class ProductSearchService {
+
+    private static final int MAX_RESULTS = 100;
+
+    private final ProductRepository productRepository;
+
+    private final SearchIndex searchIndex = new SearchIndex();
+
+    private volatile boolean built;
+
+    public ProductSearchService(ProductRepository productRepository) {
+        this.productRepository = productRepository;
+    }
+
+    public List<Product> search(String query, int limit) {
+        ensureBuilt();
+        List<SearchHit> hits = searchIndex.search(query, Math.min(limit, MAX_RESULTS));
+        if (hits.isEmpty()) {
+            return List.of();
+        }
+
+        List<Long> ids = hits.stream().map(SearchHit::getId).collect(Collectors.toList());
+        Map<Long, Product> products = productRepository.findAllWithTechnicalDetailsByIdIn(ids).stream()
+                .collect(Collectors.toMap(Product::getId, Function.identity()));
+        // Keep the ranking order, skipping products deleted since the search
+        return ids.stream().map(products::get).filter(Objects::nonNull).collect(Collectors.toList());
+    }
+
+    // Synchronized with the build so an event is never dropped while the index is being built
+    @EventListener
+    public synchronized void onProductChanged(ProductChangedEvent event) {
+        if (built) {
+            productRepository.findWithTechnicalDetailsById(event.getProductId())
+                    .ifPresentOrElse(this::index, () -> searchIndex.remove(event.getProductId()));
+        }
+    }
+
+    @EventListener
+    public synchronized void onProductDeleted(ProductDeletedEvent event) {
+        if (built) {
+            searchIndex.remove(event.getProductId());
+        }
+    }
+
+    @EventListener
+    public synchronized void onProductsImported(ProductsImportedEvent event) {
+        if (built) {
+            productRepository.findAllWithTechnicalDetailsByIdIn(event.getProductIds()).forEach(this::index);
+        }
+    }
+
+    private void ensureBuilt() {
+        if (!built) {
+            synchronized (this) {
+                if (!built) {
+                    productRepository.findAll().forEach(this::index);
+                    built = true;
+                }
+            }
+        }
+    }
+
+    private void index(Product product) {
+        List<String> fields = new ArrayList<>();
+        fields.add(product.getName());
+        fields.add(product.getBrand());
+        fields.add(product.getDescription());
+        product.getTechnicalDetails().forEach(technicalDetail -> fields.add(technicalDetail.getValue()));
+        searchIndex.index(product.getId(), fields);
+    }
+}
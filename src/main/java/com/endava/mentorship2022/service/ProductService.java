@@ -1,55 +1,132 @@
 package com.endava.mentorship2022.service;
 
+import com.endava.mentorship2022.dto.KeysetPage;
+import com.endava.mentorship2022.dto.ProductSummary;
+import com.endava.mentorship2022.event.ProductChangedEvent;
+import com.endava.mentorship2022.event.ProductDeletedEvent;
 import com.endava.mentorship2022.exception.ProductNotFound;
 import com.endava.mentorship2022.model.Product;
-import com.endava.mentorship2022.model.TechnicalDetail;
+import com.endava.mentorship2022.repository.KeysetPageQuery;
 import com.endava.mentorship2022.repository.ProductRepository;
 import lombok.AllArgsConstructor;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
-import java.util.HashSet;
+import javax.transaction.Transactional;
+import java.util.Collection;
 import java.util.List;
-import java.util.Set;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @AllArgsConstructor
 @Service
 public class ProductService {
 
+    // Sort fields with a unique index, usable for keyset pagination
+    private static final Map<String, Function<Product, ?>> KEYSET_SORT_KEYS = Map.of(
+            "id", Product::getId,
+            "name", Product::getName,
+            "alias", Product::getAlias);
+
     private final ProductRepository productRepository;
 
-    public List<Product> findAllProducts() {
-        return productRepository.findAll();
+    private final ProductCache productCache;
+
+    private final KeysetPageQuery keysetPageQuery;
+
+    private final ApplicationEventPublisher eventPublisher;
+
+    public List<ProductSummary> findAllProducts() {
+        return productCache.getAllProducts(productRepository::findAllSummaries);
+    }
+
+    public List<Long> findIdsByCategoryId(long categoryId) {
+        return productRepository.findIdsByCategoryId(categoryId);
+    }
+
+    public List<Product> findAllByCategoryIds(Collection<Long> categoryIds) {
+        // An empty IN () is not valid SQL
+        if (categoryIds.isEmpty()) {
+            return List.of();
+        }
+        return productRepository.findAllWithTechnicalDetailsByCategoryIdIn(categoryIds);
+    }
+
+    // Must be consumed inside a transaction and closed afterwards
+    public Stream<Product> streamAllProducts() {
+        return productRepository.streamAll();
     }
 
     public Product findById(long id) {
-        return productRepository.findById(id).orElseThrow(() -> new ProductNotFound("Product: " + id + " not found!"));
+        return productCache.getProduct(id, this::loadProduct);
     }
 
-    public Product saveProduct(Product product) {
-        // Make a copy of technicalDetails
-        Set<TechnicalDetail> technicalDetails = new HashSet<>(product.getTechnicalDetails());
-        product.setTechnicalDetails(null);
+    // The products not cached are loaded with one query. Throws ProductNotFound for a missing product, as findById
+    public Map<Long, Product> findAllById(Collection<Long> ids) {
+        Map<Long, Product> products = productCache.getProducts(ids, missing ->
+                productRepository.findAllWithTechnicalDetailsByIdIn(missing).stream()
+                        .collect(Collectors.toMap(Product::getId, Function.identity())));
+        for (Long id : ids) {
+            if (!products.containsKey(id)) {
+                throw new ProductNotFound("Product: " + id + " not found!");
+            }
+        }
+        return products;
+    }
 
-        // Save without technicalDetails first, in order to get a productId to use in technicalDetails
-        productRepository.save(product);
+    // Cached products outlive the session that loaded them, so their technical details are fetched with them
+    private Product loadProduct(long id) {
+        return productRepository.findWithTechnicalDetailsById(id)
+                .orElseThrow(() -> new ProductNotFound("Product: " + id + " not found!"));
+    }
+
+    public Product saveProduct(Product product) {
+        // Saving the product cascades to its technical details, they only need the back reference
+        product.getTechnicalDetails().forEach(technicalDetail -> technicalDetail.setProduct(product));
+        Product savedProduct = productRepository.save(product);
+        productCache.invalidate(savedProduct.getId());
+        eventPublisher.publishEvent(new ProductChangedEvent(savedProduct.getId()));
+        return savedProduct;
+    }
 
-        // Add technicalDetails and then save product
-        technicalDetails.forEach(technicalDetail -> technicalDetail.setProduct(product));
-        product.setTechnicalDetails(technicalDetails);
-        return productRepository.save(product);
+    @Transactional
+    public void deleteById(long id) {
+        if (deleteAllById(List.of(id)) == 0) {
+            throw new ProductNotFound("Product: " + id + " not found!");
+        }
     }
 
-    public void deleteById(Long id) {
-        findById(id);
-        productRepository.deleteById(id);
+    // One statement per table whatever the number of products, returns the number of products deleted
+    @Transactional
+    public int deleteAllById(Collection<Long> ids) {
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        productRepository.deleteTechnicalDetailsByProductIdIn(ids);
+        productRepository.deleteCartItemsByProductIdIn(ids);
+        int deleted = productRepository.deleteAllByIdIn(ids);
+        if (deleted == 0) {
+            return 0;
+        }
+        // Only after the commit, a product dropped from the cache earlier could be loaded again before the delete is visible
+        afterCommit(() -> ids.forEach(id -> {
+            productCache.invalidate(id);
+            eventPublisher.publishEvent(new ProductDeletedEvent(id));
+        }));
+        return deleted;
     }
 
     public Product updateProduct(long id, Product newProduct) {
-        Product productToUpdate = findById(id);
+        // Always update a freshly loaded entity, never the shared cached instance
+        Product productToUpdate = loadProduct(id);
         productToUpdate.setName(newProduct.getName());
         productToUpdate.setAlias(newProduct.getAlias());
         productToUpdate.setBrand(newProduct.getBrand());
@@ -59,7 +136,10 @@ public class ProductService {
         productToUpdate.setPrice(newProduct.getPrice());
         productToUpdate.setStock(newProduct.getStock());
         productToUpdate.setTechnicalDetails(newProduct.getTechnicalDetails());
-        return productRepository.save(productToUpdate);
+        Product updatedProduct = productRepository.save(productToUpdate);
+        productCache.invalidate(id);
+        eventPublisher.publishEvent(new ProductChangedEvent(id));
+        return updatedProduct;
     }
 
     public List<Product> findAllByPage(int pageNum, int pageSize, String sortField, String sortDir) {
@@ -73,4 +153,21 @@ public class ProductService {
 
         return pageProducts.getContent();
     }
+
+    public KeysetPage<Product> findAllAfter(String after, int pageSize, String sortField, String sortDir) {
+        return keysetPageQuery.findPage(Product.class, KEYSET_SORT_KEYS, after, pageSize, sortField, sortDir);
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
 }
@@ -0,0 +1,250 @@
+package com.endava.mentorship2022.service;
+
+import com.endava.mentorship2022.event.ProductChangedEvent;
+import com.endava.mentorship2022.event.ProductDeletedEvent;
+import com.endava.mentorship2022.event.ProductStockChangedEvent;
+import com.endava.mentorship2022.exception.CartItemException;
+import com.endava.mentorship2022.exception.InsufficientStock;
+import com.endava.mentorship2022.model.CartItem;
+import com.endava.mentorship2022.repository.ProductBulkRepository;
+import com.endava.mentorship2022.repository.ProductRepository;
+import com.endava.mentorship2022.stock.StripedStockCounter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PreDestroy;
+import javax.transaction.Transactional;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Checks and takes the stock for all lines of an order inside the caller's transaction, all or nothing.
+// Stock is decremented with conditional UPDATEs sent in one JDBC batch in ascending product id order, so
+// checkouts sharing products lock the rows in the same order and cannot deadlock.
+// Products listed in product.stock.hot-products, e.g. during a promotion, are sold from an in-memory
+// striped counter instead, and the units sold are written behind to the products table every
+// product.stock.write-behind-interval. A crash loses at most one interval of unwritten sales.
+// ProductStockChangedEvent is published once the stock taken is committed, or written behind for hot products.
+@Slf4j
+@Service
+public class StockReservationService {
+
+    private static final int STRIPES = 16;
+
+    private final ProductRepository productRepository;
+
+    private final ProductBulkRepository productBulkRepository;
+
+    private final ProductCache productCache;
+
+    private final ApplicationEventPublisher eventPublisher;
+
+    private final TransactionTemplate writeBehindTransaction;
+
+    private final Set<Long> hotProductIds;
+
+    private final Map<Long, HotStock> hotStocks = new ConcurrentHashMap<>();
+
+    private final ScheduledExecutorService writeBehind;
+
+    public StockReservationService(ProductRepository productRepository, ProductBulkRepository productBulkRepository,
+                                   ProductCache productCache, ApplicationEventPublisher eventPublisher,
+                                   PlatformTransactionManager transactionManager,
+                                   @Value("${product.stock.hot-products:}") Set<Long> hotProductIds,
+                                   @Value("${product.stock.write-behind-interval:1s}") Duration writeBehindInterval) {
+        this.productRepository = productRepository;
+        this.productBulkRepository = productBulkRepository;
+        this.productCache = productCache;
+        this.eventPublisher = eventPublisher;
+        this.writeBehindTransaction = new TransactionTemplate(transactionManager);
+        this.writeBehindTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.hotProductIds = Set.copyOf(hotProductIds);
+        if (this.hotProductIds.isEmpty()) {
+            this.writeBehind = null;
+        } else {
+            this.writeBehind = Executors.newSingleThreadScheduledExecutor(task -> {
+                Thread thread = new Thread(task, "stock-write-behind");
+                thread.setDaemon(true);
+                return thread;
+            });
+            long interval = writeBehindInterval.toMillis();
+            writeBehind.scheduleWithFixedDelay(this::writeBehindAll, interval, interval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @Transactional(Transactional.TxType.MANDATORY)
+    public void reserve(List<CartItem> cartItems) {
+        // One line per product, in ascending id order
+        SortedMap<Long, Integer> quantities = new TreeMap<>();
+        Map<Long, String> names = new HashMap<>();
+        for (CartItem cartItem : cartItems) {
+            // A line below 1 would give stock back, e.g. a cart line saved before quantities were checked
+            if (cartItem.getQuantity() < 1) {
+                throw new CartItemException("Quantity of " + cartItem.getProduct().getName() + " must be at least 1, " +
+                        cartItem.getQuantity() + " requested.");
+            }
+            quantities.merge(cartItem.getProduct().getId(), (int) cartItem.getQuantity(), Integer::sum);
+            names.put(cartItem.getProduct().getId(), cartItem.getProduct().getName());
+        }
+
+        Map<StripedStockCounter, Integer> reservedInMemory = new HashMap<>();
+        List<Long> decremented = new ArrayList<>();
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                decremented.forEach(productCache::invalidate);
+                if (!decremented.isEmpty()) {
+                    eventPublisher.publishEvent(new ProductStockChangedEvent(decremented));
+                }
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                if (status != STATUS_COMMITTED) {
+                    reservedInMemory.forEach(StripedStockCounter::release);
+                }
+            }
+        });
+
+        // Hot products first, they need no round trip
+        SortedMap<Long, Integer> decrements = new TreeMap<>();
+        for (Map.Entry<Long, Integer> line : quantities.entrySet()) {
+            long productId = line.getKey();
+            int quantity = line.getValue();
+            if (!hotProductIds.contains(productId)) {
+                decrements.put(productId, quantity);
+                continue;
+            }
+            StripedStockCounter counter = hotStock(productId).counter;
+            if (!counter.tryReserve(quantity)) {
+                throw insufficientStock(names.get(productId), quantity);
+            }
+            reservedInMemory.put(counter, quantity);
+        }
+        if (decrements.isEmpty()) {
+            return;
+        }
+
+        int[] updated = productBulkRepository.decrementStock(decrements);
+        decremented.addAll(decrements.keySet());
+        int line = 0;
+        for (Map.Entry<Long, Integer> decrement : decrements.entrySet()) {
+            if (updated[line++] != 1) {
+                throw insufficientStock(names.get(decrement.getKey()), decrement.getValue());
+            }
+        }
+    }
+
+    // Sold units not yet written to the products table
+    public int unwrittenSales(long productId) {
+        HotStock hotStock = hotStocks.get(productId);
+        if (hotStock == null) {
+            return 0;
+        }
+        synchronized (hotStock) {
+            return hotStock.written - hotStock.counter.available();
+        }
+    }
+
+    public void writeBehindAll() {
+        List<Long> written = new ArrayList<>();
+        hotStocks.forEach((productId, hotStock) -> {
+            try {
+                if (writeBehind(productId, hotStock)) {
+                    written.add(productId);
+                }
+            } catch (RuntimeException e) {
+                // Kept in memory, the next run tries again
+                log.warn("Could not write the stock of product {}", productId, e);
+            }
+        });
+        if (!written.isEmpty()) {
+            eventPublisher.publishEvent(new ProductStockChangedEvent(written));
+        }
+    }
+
+    // Takes the stock set in the products table, counting the sales not written yet as made before the change
+    @EventListener
+    public void onProductChanged(ProductChangedEvent event) {
+        HotStock hotStock = hotStocks.get(event.getProductId());
+        if (hotStock != null) {
+            synchronized (hotStock) {
+                int stock = productRepository.findStockById(event.getProductId()).orElse(0);
+                int oversold = hotStock.counter.adjust(stock - hotStock.written);
+                hotStock.written = stock;
+                if (oversold > 0) {
+                    log.warn("Stock of product {} was set {} units below what was already sold", event.getProductId(), oversold);
+                }
+            }
+        }
+    }
+
+    @EventListener
+    public void onProductDeleted(ProductDeletedEvent event) {
+        hotStocks.remove(event.getProductId());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (writeBehind != null) {
+            writeBehind.shutdown();
+            writeBehindAll();
+        }
+    }
+
+    private static InsufficientStock insufficientStock(String name, int quantity) {
+        return new InsufficientStock("Not enough stock for " + name + ", " + quantity + " requested.");
+    }
+
+    private HotStock hotStock(long productId) {
+        return hotStocks.computeIfAbsent(productId, id -> {
+            int stock = productRepository.findStockById(id).orElse(0);
+            return new HotStock(new StripedStockCounter(stock, STRIPES), stock);
+        });
+    }
+
+    // True when sales were written
+    private boolean writeBehind(long productId, HotStock hotStock) {
+        synchronized (hotStock) {
+            int available = hotStock.counter.available();
+            int sold = hotStock.written - available;
+            if (sold == 0) {
+                return false;
+            }
+            writeBehindTransaction.executeWithoutResult(status -> productRepository.subtractStock(productId, sold));
+            hotStock.written = available;
+            productCache.invalidate(productId);
+            return true;
+        }
+    }
+
+    private static final class HotStock {
+
+        private final StripedStockCounter counter;
+
+        // Available units as last written to the products table
+        private int written;
+
+        private HotStock(StripedStockCounter counter, int written) {
+            this.counter = counter;
+            this.written = written;
+        }
+    }
+}
@@ -1,10 +1,14 @@
 package com.endava.mentorship2022.service;
+import com.endava.mentorship2022.event.ProductChangedEvent;
 import com.endava.mentorship2022.exception.TechnicalDetailNotFound;
+import com.endava.mentorship2022.model.Product;
 import com.endava.mentorship2022.model.TechnicalDetail;
 import com.endava.mentorship2022.repository.TechnicalDetailRepository;
 import lombok.AllArgsConstructor;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import java.util.List;
+import java.util.stream.Stream;
 
 @Service
 @AllArgsConstructor
@@ -12,34 +16,57 @@ public class TechnicalDetailService {
 
     private final TechnicalDetailRepository technicalDetailRepository;
 
+    private final ProductCache productCache;
+
+    private final ApplicationEventPublisher eventPublisher;
 
     public List<TechnicalDetail> findAllTechnicalDetails() {
         return technicalDetailRepository.findAll();
     }
 
+    // Must be consumed inside a transaction and closed afterwards
+    public Stream<TechnicalDetail> streamAllTechnicalDetails() {
+        return technicalDetailRepository.streamAll();
+    }
+
     public TechnicalDetail findByIdTechnicalDetail(Long id) {
         return technicalDetailRepository.findById(id).orElseThrow(() -> new TechnicalDetailNotFound("TechnicalDetail: " + id + " not found."));
     }
 
     public TechnicalDetail createTechnicalDetail(TechnicalDetail technicalDetail) {
-        return technicalDetailRepository.save(technicalDetail);
+        TechnicalDetail savedTechnicalDetail = technicalDetailRepository.save(technicalDetail);
+        productChanged(savedTechnicalDetail.getProduct());
+        return savedTechnicalDetail;
     }
 
     public TechnicalDetail updateTechnicalDetail(Long id, TechnicalDetail newTechnicalDetail) {
         TechnicalDetail technicalDetailToUpdate = findByIdTechnicalDetail(id);
+        Product previousProduct = technicalDetailToUpdate.getProduct();
         technicalDetailToUpdate.setName(newTechnicalDetail.getName());
         technicalDetailToUpdate.setValue(newTechnicalDetail.getValue());
         technicalDetailToUpdate.setProduct(newTechnicalDetail.getProduct());
-        return technicalDetailRepository.save(technicalDetailToUpdate);
+        TechnicalDetail updatedTechnicalDetail = technicalDetailRepository.save(technicalDetailToUpdate);
+        productChanged(previousProduct);
+        productChanged(updatedTechnicalDetail.getProduct());
+        return updatedTechnicalDetail;
     }
 
     public void deleteByIdTechnicalDetail(Long id) {
-        findByIdTechnicalDetail(id);
+        TechnicalDetail technicalDetail = findByIdTechnicalDetail(id);
         technicalDetailRepository.deleteById(id);
+        productChanged(technicalDetail.getProduct());
     }
 
     public List<TechnicalDetail> findTechnicalDetailsByProductId(Long id){
         return technicalDetailRepository.findByProductId(id);
     }
 
+    // Cached and indexed products carry their technical details, so any detail write makes the owning product stale
+    private void productChanged(Product product) {
+        if (product != null) {
+            productCache.invalidate(product.getId());
+            eventPublisher.publishEvent(new ProductChangedEvent(product.getId()));
+        }
+    }
+
 }
\ No newline at end of file
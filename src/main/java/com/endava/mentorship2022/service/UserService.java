@@ -1,29 +1,73 @@
 package com.endava.mentorship2022.service;
 
+import com.endava.mentorship2022.dto.KeysetPage;
+import com.endava.mentorship2022.exception.UserAlreadyExists;
 import com.endava.mentorship2022.exception.UserNotFound;
 import com.endava.mentorship2022.model.User;
 import com.endava.mentorship2022.model.UserStatus;
+import com.endava.mentorship2022.repository.KeysetPageQuery;
+import com.endava.mentorship2022.repository.RoleRepository;
 import com.endava.mentorship2022.repository.UserRepository;
-import lombok.AllArgsConstructor;
+import com.endava.mentorship2022.security.PasswordHashingService;
+import com.endava.mentorship2022.security.UserDetailsCache;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Function;
+import java.util.stream.Stream;
 
 @Service
-@AllArgsConstructor
 public class UserService {
 
+    // Sort fields with a unique index, usable for keyset pagination
+    private static final Map<String, Function<User, ?>> KEYSET_SORT_KEYS = Map.of(
+            "id", User::getId,
+            "email", User::getEmail);
+
     private final UserRepository userRepository;
 
+    private final KeysetPageQuery keysetPageQuery;
+
+    // Invalidated after each write has been saved, so the next authentication sees the new status and roles
+    private final UserDetailsCache userDetailsCache;
+
+    private final PasswordHashingService passwordHashingService;
+
+    private final RoleRepository roleRepository;
+
+    private final TransactionTemplate transactionTemplate;
+
+    public UserService(UserRepository userRepository, KeysetPageQuery keysetPageQuery,
+                       UserDetailsCache userDetailsCache, PasswordHashingService passwordHashingService,
+                       RoleRepository roleRepository, PlatformTransactionManager transactionManager) {
+        this.userRepository = userRepository;
+        this.keysetPageQuery = keysetPageQuery;
+        this.userDetailsCache = userDetailsCache;
+        this.passwordHashingService = passwordHashingService;
+        this.roleRepository = roleRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
     public List<User> findAll() {
         return userRepository.findAll();
     }
 
+    // Must be consumed inside a transaction and closed afterwards
+    public Stream<User> streamAll() {
+        return userRepository.streamAll();
+    }
+
     public List<User> findAllByPage(int pageNum, int pageSize, String sortField, String sortDir) {
         Sort sort = Sort.by(sortField);
         sort = sortDir.equals("asc") ? sort.ascending() : sort.descending();
@@ -36,35 +80,72 @@ public class UserService {
         return pageUsers.getContent();
     }
 
+    public KeysetPage<User> findAllAfter(String after, int pageSize, String sortField, String sortDir) {
+        return keysetPageQuery.findPage(User.class, KEYSET_SORT_KEYS, after, pageSize, sortField, sortDir);
+    }
+
     public User findById(Long id) {
         return userRepository.findById(id).
                 orElseThrow(() -> new UserNotFound("The user with the id: " + id + " doesn't exists"));
     }
 
     public User save(User user) {
-        return userRepository.save(user);
+        user.setPassword(hash(user.getPassword()));
+        User savedUser = userRepository.save(user);
+        userDetailsCache.invalidate(savedUser.getEmail());
+        return savedUser;
+    }
+
+    // Self sign-up: a pending user with the USER role, activated later by an admin.
+    // The calling thread does not wait for the password to be hashed: the new user is saved afterwards,
+    // on the password hashing pool in a transaction of its own.
+    public CompletableFuture<User> register(User user) {
+        if (userRepository.findUserByEmail(user.getEmail()) != null) {
+            throw new UserAlreadyExists("A user with the email: " + user.getEmail() + " already exists");
+        }
+        user.setId(null);
+        user.setStatus(UserStatus.PENDING);
+        return passwordHashingService.encode(user.getPassword())
+                .thenApply(hash -> transactionTemplate.execute(status -> {
+                    // Loaded in the same persistence context, the roles are cascaded from the user
+                    user.setRoles(roleRepository.findByName("USER").map(Set::of).orElse(Set.of()));
+                    user.setPassword(hash);
+                    User savedUser = userRepository.save(user);
+                    userDetailsCache.invalidate(savedUser.getEmail());
+                    return savedUser;
+                }));
     }
 
     public void deleteById(Long id) {
-        findById(id); // just call the method, if the user is not found it throws UserNotFound Exception
+        User user = findById(id); // if the user is not found it throws UserNotFound Exception
         userRepository.deleteById(id);
+        userDetailsCache.invalidate(user.getEmail());
     }
 
+    // The password is only changed when a new one is sent, otherwise the stored hash is kept
     public User update(Long id, User newUser) {
         User userToUpdate = findById(id);
+        String oldEmail = userToUpdate.getEmail();
+        if (newUser.getPassword() != null && !newUser.getPassword().isBlank()) {
+            userToUpdate.setPassword(hash(newUser.getPassword()));
+        }
         userToUpdate.setFirstName(newUser.getFirstName());
         userToUpdate.setLastName(newUser.getLastName());
         userToUpdate.setEmail(newUser.getEmail());
-        userToUpdate.setPassword(newUser.getPassword());
         userToUpdate.setAddress(newUser.getAddress());
         userToUpdate.setPhoneNumber(newUser.getPhoneNumber());
         userToUpdate.setBirthDate(newUser.getBirthDate());
-        return userRepository.save(userToUpdate);
+        User savedUser = userRepository.save(userToUpdate);
+        userDetailsCache.invalidate(oldEmail);
+        userDetailsCache.invalidate(savedUser.getEmail());
+        return savedUser;
     }
 
     public User updateStatus(UserStatus status, User user) {
         user.setStatus(status);
-        return userRepository.save(user);
+        User savedUser = userRepository.save(user);
+        userDetailsCache.invalidate(savedUser.getEmail());
+        return savedUser;
     }
 
     // returns the list of users sorted by their birthdate and after that by their first name
@@ -74,6 +155,19 @@ public class UserService {
         return sortUsersByBirthdateAndByFirstName(findAll());
     }
 
+    // Hashed on the password hashing pool, the caller waits for it so the user is saved on its own thread,
+    // in its transaction and persistence context
+    private String hash(String rawPassword) {
+        try {
+            return passwordHashingService.encode(rawPassword).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
     private List<User> sortUsersByBirthdateAndByFirstName(List<User> usersList) {
 
         Comparator<User> compareByBirthdateAndByFirstName =
@@ -86,6 +180,11 @@ public class UserService {
         return usersList;
     }
 
+    // A proxy for a user known to exist, e.g. the authenticated one, loaded only when more than the id is read
+    public User getReferenceById(long id) {
+        return userRepository.getReferenceById(id);
+    }
+
     public User findUserByEmail(String email) {
         return userRepository.findUserByEmail(email);
     }
@@ -0,0 +1,104 @@
+package com.endava.mentorship2022.stock;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+// Available units of one product spread over several counters, so concurrent buyers mostly
+// compare-and-set different cache lines instead of all retrying on one value.
+// A reservation takes from the calling thread's stripe, then from the others. Only when no single stripe
+// holds enough are the stripes merged under a lock, so the total is never lost or counted twice.
+public class StripedStockCounter {
+
+    // 16 ints are 64 bytes, one cache line between two used slots
+    private static final int PADDING = 16;
+
+    private final AtomicIntegerArray slots;
+
+    private final int stripes;
+
+    public StripedStockCounter(int stock, int stripes) {
+        if (stripes < 1) {
+            throw new IllegalArgumentException("At least one stripe is needed");
+        }
+        this.stripes = stripes;
+        this.slots = new AtomicIntegerArray(stripes * PADDING);
+        spread(Math.max(stock, 0));
+    }
+
+    public boolean tryReserve(int quantity) {
+        if (quantity <= 0) {
+            throw new IllegalArgumentException("Quantity must be positive: " + quantity);
+        }
+        int home = home();
+        for (int i = 0; i < stripes; i++) {
+            if (tryTake((home + i) % stripes, quantity)) {
+                return true;
+            }
+        }
+        return reserveMerged(quantity);
+    }
+
+    public void release(int quantity) {
+        slots.addAndGet(home() * PADDING, quantity);
+    }
+
+    // Consistent with the merges, each reservation and release is seen either fully or not at all
+    public synchronized int available() {
+        int total = 0;
+        for (int i = 0; i < stripes; i++) {
+            total += slots.get(i * PADDING);
+        }
+        return total;
+    }
+
+    // Adds to or removes from the available units, never going below zero.
+    // Returns the units that could not be removed because they are already reserved.
+    public synchronized int adjust(int delta) {
+        long total = (long) drain() + delta;
+        spread((int) Math.max(total, 0));
+        return (int) Math.max(-total, 0);
+    }
+
+    private boolean tryTake(int stripe, int quantity) {
+        int index = stripe * PADDING;
+        while (true) {
+            int current = slots.get(index);
+            if (current < quantity) {
+                return false;
+            }
+            if (slots.compareAndSet(index, current, current - quantity)) {
+                return true;
+            }
+        }
+    }
+
+    private synchronized boolean reserveMerged(int quantity) {
+        int total = drain();
+        if (total < quantity) {
+            spread(total);
+            return false;
+        }
+        spread(total - quantity);
+        return true;
+    }
+
+    private int drain() {
+        int total = 0;
+        for (int i = 0; i < stripes; i++) {
+            total += slots.getAndSet(i * PADDING, 0);
+        }
+        return total;
+    }
+
+    // Adds rather than sets, releases made while the stripes were drained are kept
+    private void spread(int total) {
+        int share = total / stripes;
+        int remainder = total % stripes;
+        for (int i = 0; i < stripes; i++) {
+            slots.addAndGet(i * PADDING, share + (i < remainder ? 1 : 0));
+        }
+    }
+
+    private int home() {
+        return (int) (Thread.currentThread().getId() % stripes);
+    }
+}
@@ -167,4 +167,11 @@ VALUES ('5', '1', '1'),
        ('10', '5', '2'),
        ('8', '5', '7'),
        ('1', '5', '8'),
-       ('1', '8', '9');
\ No newline at end of file
+       ('1', '8', '9');
+
+INSERT INTO `id_generators` (`name`, `next_id`)
+SELECT 'products', COALESCE(MAX(`id`), 0) + 51 FROM `products`
+UNION ALL SELECT 'technical_details', COALESCE(MAX(`id`), 0) + 51 FROM `technical_details`
+UNION ALL SELECT 'orders', COALESCE(MAX(`id`), 0) + 51 FROM `orders`
+UNION ALL SELECT 'order_details', COALESCE(MAX(`id`), 0) + 51 FROM `order_details`
+UNION ALL SELECT 'cart_items', COALESCE(MAX(`id`), 0) + 51 FROM `cart_items`;
\ No newline at end of file
@@ -95,4 +95,24 @@ CREATE TABLE `order_details` (
                                  KEY `FK_product_id_order_idx` (`product_id`),
                                  KEY `FK_order_id_idx` (`order_id`) ,
                                  CONSTRAINT `FK_product_id_order` FOREIGN KEY (`product_id`) REFERENCES `products` (`id`),
-                                 CONSTRAINT `FK_order_id` FOREIGN KEY (`order_id`) REFERENCES `orders` (`id`) ON DELETE CASCADE);
\ No newline at end of file
+                                 CONSTRAINT `FK_order_id` FOREIGN KEY (`order_id`) REFERENCES `orders` (`id`) ON DELETE CASCADE);
+
+-- Hibernate hands out ids for products, technical_details, orders, order_details and cart_items in blocks of 50
+-- from this table, so it can batch their inserts. next_id must stay at least MAX(id) + 50 of each table.
+CREATE TABLE `id_generators` (
+                                 `name` VARCHAR(50) NOT NULL,
+                                 `next_id` BIGINT NOT NULL,
+                                 PRIMARY KEY (`name`));
+
+-- Responses served for an Idempotency-Key, replayed to clients retrying POST /checkout or POST /orders.
+-- Rows older than idempotency.time-to-live are deleted by the application.
+CREATE TABLE `idempotency_keys` (
+                                    `id` VARCHAR(300) NOT NULL,
+                                    `request_hash` VARCHAR(64) NOT NULL,
+                                    `status` INT NOT NULL,
+                                    `content_type` VARCHAR(100) DEFAULT NULL,
+                                    `location` VARCHAR(300) DEFAULT NULL,
+                                    `body` LONGTEXT,
+                                    `created_at` DATETIME NOT NULL,
+                                    PRIMARY KEY (`id`),
+                                    KEY `created_at_idx` (`created_at`));
\ No newline at end of file
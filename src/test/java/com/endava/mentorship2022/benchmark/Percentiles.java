@@ -0,0 +1,23 @@
+package com.endava.mentorship2022.benchmark;
+
+import java.util.List;
+
+// Percentiles of the latencies measured by the benchmark tests, the values must be sorted
+public final class Percentiles {
+
+    private Percentiles() {
+    }
+
+    // The value below which the given percent of the values lie, e.g. 50 for the median
+    public static double percentile(double[] sorted, int percent) {
+        return sorted[index(sorted.length, percent)];
+    }
+
+    public static double percentile(List<Long> sorted, int percent) {
+        return sorted.get(index(sorted.size(), percent));
+    }
+
+    private static int index(int size, int percent) {
+        return Math.min(size - 1, size * percent / 100);
+    }
+}
@@ -0,0 +1,135 @@
+package com.endava.mentorship2022.cache;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.entry;
+
+class BoundedCacheTest {
+
+    private final AtomicLong now = new AtomicLong();
+
+    private final AtomicInteger loads = new AtomicInteger();
+
+    private BoundedCache<Long, String> cache;
+
+    @BeforeEach
+    void setUp() {
+        cache = new BoundedCache<>(2, Duration.ofSeconds(10), now::get);
+    }
+
+    @Test
+    void shouldLoadOnceAndServeHitsAfterwards() {
+        // when
+        cache.get(1L, this::load);
+        String actual = cache.get(1L, this::load);
+
+        // then
+        assertThat(actual).isEqualTo("value-1");
+        assertThat(loads).hasValue(1);
+        assertThat(cache.hitCount()).isEqualTo(1);
+        assertThat(cache.missCount()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldLoadAllMissingKeysWithOneCall() {
+        // given
+        cache.get(1L, this::load);
+        List<Set<Long>> batches = new ArrayList<>();
+
+        // when
+        Map<Long, String> actual = cache.getAll(List.of(1L, 2L, 3L), missing -> {
+            batches.add(Set.copyOf(missing));
+            return Map.of(2L, "value-2");
+        });
+
+        // then
+        assertThat(actual).containsOnly(entry(1L, "value-1"), entry(2L, "value-2"));
+        assertThat(batches).containsExactly(Set.of(2L, 3L));
+        assertThat(cache.getIfPresent(2L)).contains("value-2");
+        assertThat(cache.missCount()).isEqualTo(3);
+    }
+
+    @Test
+    void shouldEvictLeastRecentlyUsedEntryWhenFull() {
+        // given
+        cache.get(1L, this::load);
+        cache.get(2L, this::load);
+        cache.get(1L, this::load);
+
+        // when
+        cache.get(3L, this::load);
+
+        // then
+        assertThat(cache.size()).isEqualTo(2);
+        assertThat(cache.evictionCount()).isEqualTo(1);
+        assertThat(cache.getIfPresent(1L)).contains("value-1");
+        assertThat(cache.getIfPresent(2L)).isEmpty();
+    }
+
+    @Test
+    void shouldExpireEntriesAfterTimeToLive() {
+        // given
+        cache.get(1L, this::load);
+
+        // when
+        now.addAndGet(Duration.ofSeconds(10).toNanos());
+        cache.get(1L, this::load);
+
+        // then
+        assertThat(loads).hasValue(2);
+        assertThat(cache.evictionCount()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldReloadAfterInvalidation() {
+        // given
+        cache.get(1L, this::load);
+
+        // when
+        cache.invalidate(1L);
+        cache.get(1L, this::load);
+
+        // then
+        assertThat(loads).hasValue(2);
+    }
+
+    @Test
+    void shouldNotStoreValueLoadedConcurrentlyWithInvalidation() {
+        // when
+        String actual = cache.get(1L, key -> {
+            cache.invalidate(key);
+            return "stale";
+        });
+
+        // then
+        assertThat(actual).isEqualTo("stale");
+        assertThat(cache.getIfPresent(1L)).isEmpty();
+    }
+
+    @Test
+    void shouldNotCacheFailedLoads() {
+        // when
+        assertThatThrownBy(() -> cache.get(1L, key -> {
+            throw new IllegalStateException("not found");
+        })).isInstanceOf(IllegalStateException.class);
+
+        // then
+        assertThat(cache.size()).isZero();
+    }
+
+    private String load(Long key) {
+        loads.incrementAndGet();
+        return "value-" + key;
+    }
+}
@@ -0,0 +1,244 @@
+package com.endava.mentorship2022.cart;
+
+import com.endava.mentorship2022.exception.CartItemException;
+import com.endava.mentorship2022.jdbc.StatementBudget;
+import com.endava.mentorship2022.jdbc.StatementStatisticsPostProcessor;
+import com.endava.mentorship2022.model.Product;
+import com.endava.mentorship2022.model.User;
+import com.endava.mentorship2022.model.UserStatus;
+import com.endava.mentorship2022.repository.CartItemRepository;
+import com.endava.mentorship2022.repository.ProductRepository;
+import com.endava.mentorship2022.repository.UserRepository;
+import com.endava.mentorship2022.service.CartItemService;
+import com.endava.mentorship2022.service.ProductCache;
+import com.endava.mentorship2022.service.ProductService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManager;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+// Runs against H2 without a test transaction, so every cart change really commits
+@DataJpaTest(showSql = false)
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@ActiveProfiles("h2")
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@Import(StatementStatisticsPostProcessor.class)
+class CartCommandQueueTest {
+
+    private static final int THREADS = 64;
+
+    private static final int ADDS_PER_THREAD = 10;
+
+    @RegisterExtension
+    final StatementBudget statementBudget = new StatementBudget();
+
+    @Autowired
+    private CartItemRepository cartItemRepository;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private CartCommandQueue cartCommandQueue;
+
+    private CartItemService cartItemService;
+
+    private User user;
+
+    private Product product;
+
+    @BeforeEach
+    void setUp() {
+        cartCommandQueue = new CartCommandQueue(4, transactionManager, entityManager);
+        ProductService productService = new ProductService(productRepository,
+                new ProductCache(100, Duration.ofMinutes(10), new SimpleMeterRegistry()), null, null);
+        cartItemService = new CartItemService(new DatabaseCartStore(cartItemRepository), productService,
+                cartCommandQueue);
+        user = userRepository.save(new User(null, "Ion", "Popescu", "ion@example.com", "password", "Strada 1",
+                "0700000000", LocalDate.of(1990, 1, 1), UserStatus.ACTIVE, null));
+        product = productRepository.save(new Product(0, "Product", "product", "Cafea", "Lavazza", 10, 100, true,
+                null, null));
+    }
+
+    @AfterEach
+    void tearDown() {
+        cartCommandQueue.shutdown();
+        for (String table : List.of("cart_items", "products", "users")) {
+            jdbcTemplate.update("DELETE FROM " + table);
+        }
+    }
+
+    @Test
+    void shouldApplyConcurrentAddsOfOneUserOneAfterTheOther() throws InterruptedException {
+        // given
+        AtomicInteger added = new AtomicInteger();
+        AtomicInteger refused = new AtomicInteger();
+        AtomicInteger unexpected = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            threads.add(new Thread(() -> {
+                awaitQuietly(start);
+                for (int j = 0; j < ADDS_PER_THREAD; j++) {
+                    try {
+                        cartItemService.addProductToCart(user, product.getId(), (short) 1);
+                        added.incrementAndGet();
+                    } catch (CartItemException e) {
+                        refused.incrementAndGet();
+                    } catch (RuntimeException e) {
+                        unexpected.incrementAndGet();
+                    }
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+
+        // when
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        // then
+        assertThat(unexpected).hasValue(0);
+        assertThat(added).hasValue(CartItemService.MAXIMUM_QUANTITY_ALLOWED);
+        assertThat(refused).hasValue(THREADS * ADDS_PER_THREAD - CartItemService.MAXIMUM_QUANTITY_ALLOWED);
+        assertThat(jdbcTemplate.queryForList("SELECT quantity FROM cart_items WHERE user_id = ?", Short.class,
+                user.getId())).containsExactly((short) CartItemService.MAXIMUM_QUANTITY_ALLOWED);
+    }
+
+    // The command runs on its queue's thread, its statements still count for the caller waiting for it: product,
+    // technical details and cart line selects and the insert, plus an id_generators select and update when the
+    // pooled ids run out
+    @Test
+    void shouldCountTheStatementsOfACommandForItsCaller() {
+        // when
+        statementBudget.atMost(6, () -> cartItemService.addProductToCart(user, product.getId(), (short) 1));
+
+        // then
+        assertThat(statementBudget.last().getStatements()).isPositive();
+    }
+
+    @Test
+    void shouldRefuseCommandsOfAnotherQueueFromInsideACommand() {
+        // given
+        User otherUser = new User();
+        otherUser.setId(user.getId() + 1);
+
+        // when, then
+        assertThatThrownBy(() -> cartCommandQueue.execute(user,
+                commandUser -> cartCommandQueue.execute(otherUser, otherCommandUser -> null)))
+                .isInstanceOf(IllegalStateException.class);
+        Integer result = cartCommandQueue.execute(user, commandUser -> cartCommandQueue.execute(commandUser, same -> 1));
+        assertThat(result).isEqualTo(1);
+    }
+
+    @Test
+    void shouldHoldTheQueuesOfUsersRunTogether() throws Exception {
+        // given
+        User otherUser = new User();
+        otherUser.setId(user.getId() + 1);
+        CountDownLatch inside = new CountDownLatch(1);
+        CountDownLatch finish = new CountDownLatch(1);
+        Thread together = new Thread(() -> cartCommandQueue.executeTogether(List.of(user, otherUser), users -> {
+            // A command of a held queue runs directly, in the same transaction
+            cartItemService.addProductToCart(users.get(0), product.getId(), (short) 1);
+            inside.countDown();
+            awaitQuietly(finish);
+            return null;
+        }));
+        together.start();
+        assertThat(inside.await(5, TimeUnit.SECONDS)).isTrue();
+
+        // when
+        CompletableFuture<String> waitingAdd = CompletableFuture.supplyAsync(
+                () -> cartItemService.addProductToCart(user, product.getId(), (short) 1));
+        Thread.sleep(200);
+        boolean doneWhileHeld = waitingAdd.isDone();
+        finish.countDown();
+        together.join();
+        waitingAdd.get(5, TimeUnit.SECONDS);
+
+        // then
+        assertThat(doneWhileHeld).isFalse();
+        assertThat(jdbcTemplate.queryForList("SELECT quantity FROM cart_items WHERE user_id = ?", Short.class,
+                user.getId())).containsExactly((short) 2);
+    }
+
+    // A checkout group holds only the queues of its users, the commands of users on other queues go on
+    @Test
+    void shouldRunCommandsOfOtherQueuesWhileUsersRunTogether() throws Exception {
+        // given
+        User otherUser = new User();
+        otherUser.setId(user.getId() + 1);
+        User userOfAnotherQueue = new User();
+        userOfAnotherQueue.setId(user.getId() + 2);
+        CountDownLatch inside = new CountDownLatch(1);
+        CountDownLatch finish = new CountDownLatch(1);
+        Thread together = new Thread(() -> cartCommandQueue.executeTogether(List.of(user, otherUser), users -> {
+            inside.countDown();
+            awaitQuietly(finish);
+            return null;
+        }));
+        together.start();
+        assertThat(inside.await(5, TimeUnit.SECONDS)).isTrue();
+
+        // when
+        CompletableFuture<Integer> otherQueueCommand = CompletableFuture.supplyAsync(
+                () -> cartCommandQueue.execute(userOfAnotherQueue, commandUser -> 1));
+        Integer result;
+        try {
+            result = otherQueueCommand.get(5, TimeUnit.SECONDS);
+        } finally {
+            finish.countDown();
+            together.join();
+        }
+
+        // then
+        assertThat(result).isEqualTo(1);
+        assertThat(cartCommandQueue.stripeOf(userOfAnotherQueue)).isNotIn(cartCommandQueue.stripeOf(user),
+                cartCommandQueue.stripeOf(otherUser));
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package com.endava.mentorship2022.cart;
+
+import com.endava.mentorship2022.jdbc.StatementStatistics;
+import com.endava.mentorship2022.jdbc.StatementStatisticsPostProcessor;
+import com.endava.mentorship2022.model.Product;
+import com.endava.mentorship2022.model.User;
+import com.endava.mentorship2022.model.UserStatus;
+import com.endava.mentorship2022.repository.CartItemBulkRepository;
+import com.endava.mentorship2022.repository.CartItemRepository;
+import com.endava.mentorship2022.repository.ProductRepository;
+import com.endava.mentorship2022.repository.UserRepository;
+import com.endava.mentorship2022.service.CartItemService;
+import com.endava.mentorship2022.service.ProductCache;
+import com.endava.mentorship2022.service.ProductService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static com.endava.mentorship2022.benchmark.Percentiles.percentile;
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Latency and database round trips of cart operations, database against write-behind cart store.
+// The statements of every thread count in one StatementStatistics, the flushes are run here to count them too.
+// Run with: mvn test -Pbenchmark -Dtest=CartStoreBenchmarkTest
+@Tag("benchmark")
+@DataJpaTest(showSql = false)
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@ActiveProfiles("h2")
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@Import(StatementStatisticsPostProcessor.class)
+class CartStoreBenchmarkTest {
+
+    private static final int USERS = 200;
+
+    private static final int PRODUCTS = 50;
+
+    private static final int THREADS = 4;
+
+    private static final int OPERATIONS_PER_THREAD = 5_000;
+
+    @Autowired
+    private CartItemRepository cartItemRepository;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private final List<User> users = new ArrayList<>();
+
+    private final List<Product> products = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        for (int i = 0; i < USERS; i++) {
+            users.add(userRepository.save(new User(null, "Ion", "Popescu", "ion" + i + "@example.com", "password",
+                    "Strada 1", "0700000000", LocalDate.of(1990, 1, 1), UserStatus.ACTIVE, null)));
+        }
+        for (int i = 0; i < PRODUCTS; i++) {
+            products.add(productRepository.save(new Product(0, "Product " + i, "product-" + i, "Cafea", "Lavazza",
+                    10 + i, 1000, true, null, null)));
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        for (String table : List.of("cart_items", "products", "users")) {
+            jdbcTemplate.update("DELETE FROM " + table);
+        }
+    }
+
+    @Test
+    void compareCartStores() throws InterruptedException {
+        System.out.printf("%nCart operations, %d threads, %,d operations each, 50%% view, 30%% add, 10%% update, " +
+                "10%% remove%n", THREADS, OPERATIONS_PER_THREAD);
+        System.out.printf("%-14s %10s %8s %8s %8s %14s%n", "store", "ops/s", "p50 ms", "p99 ms", "max ms",
+                "round trips/op");
+
+        run("database", new DatabaseCartStore(cartItemRepository), null);
+        jdbcTemplate.update("DELETE FROM cart_items");
+
+        MemoryCartStore memoryCartStore = new MemoryCartStore(cartItemRepository,
+                new CartItemBulkRepository(jdbcTemplate, entityManager), productService(), transactionManager,
+                true, Duration.ofDays(1), Duration.ofMinutes(30));
+        try {
+            run("write-behind", memoryCartStore, memoryCartStore);
+        } finally {
+            memoryCartStore.shutdown();
+        }
+    }
+
+    private void run(String name, CartStore cartStore, MemoryCartStore flushed) throws InterruptedException {
+        CartCommandQueue cartCommandQueue = new CartCommandQueue(16, transactionManager, entityManager);
+        CartItemService cartItemService = new CartItemService(cartStore, productService(), cartCommandQueue);
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        // Warm up, loading every cart once
+        users.forEach(user -> transactionTemplate.execute(status -> cartItemService.findCartItemsByUser(user)));
+
+        StatementStatistics statistics = new StatementStatistics(false);
+        List<Long> latencies = Collections.synchronizedList(new ArrayList<>());
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            threads.add(new Thread(() -> StatementStatistics.runWith(statistics, () -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                List<Long> own = new ArrayList<>();
+                for (int j = 0; j < OPERATIONS_PER_THREAD; j++) {
+                    User user = users.get(random.nextInt(USERS));
+                    long productId = products.get(random.nextInt(PRODUCTS)).getId();
+                    int operation = random.nextInt(10);
+                    long start = System.nanoTime();
+                    if (operation < 5) {
+                        transactionTemplate.execute(status -> cartItemService.findCartItemsByUser(user));
+                    } else if (operation < 8) {
+                        cartItemService.addProductToCart(user, productId, (short) 1);
+                    } else if (operation < 9) {
+                        cartItemService.updateProductQuantity(user, productId, (short) 2);
+                    } else {
+                        cartItemService.removeProductFromCart(user, productId);
+                    }
+                    own.add((System.nanoTime() - start) / 1000);
+                }
+                return latencies.addAll(own);
+            })));
+        }
+
+        ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor();
+        if (flushed != null) {
+            flusher.scheduleWithFixedDelay(() -> StatementStatistics.runWith(statistics, () -> {
+                flushed.flush();
+                return null;
+            }), 1, 1, TimeUnit.SECONDS);
+        }
+        long begin = System.nanoTime();
+        threads.forEach(Thread::start);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        double seconds = (System.nanoTime() - begin) / 1e9;
+        cartCommandQueue.shutdown();
+        flusher.shutdown();
+        flusher.awaitTermination(1, TimeUnit.MINUTES);
+        if (flushed != null) {
+            StatementStatistics.runWith(statistics, () -> {
+                flushed.flush();
+                return null;
+            });
+        }
+        long roundTrips = statistics.getStatements();
+
+        Collections.sort(latencies);
+        System.out.printf("%-14s %,10.0f %8.3f %8.3f %8.1f %14.2f%n", name, latencies.size() / seconds,
+                percentile(latencies, 50) / 1000.0, percentile(latencies, 99) / 1000.0,
+                latencies.get(latencies.size() - 1) / 1000.0, (double) roundTrips / latencies.size());
+        assertThat(latencies).hasSize(THREADS * OPERATIONS_PER_THREAD);
+    }
+
+    private ProductService productService() {
+        return new ProductService(productRepository,
+                new ProductCache(1000, Duration.ofMinutes(10), new SimpleMeterRegistry()), null, null);
+    }
+}
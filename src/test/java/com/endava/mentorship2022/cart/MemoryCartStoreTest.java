@@ -0,0 +1,205 @@
+package com.endava.mentorship2022.cart;
+
+import com.endava.mentorship2022.model.CartItem;
+import com.endava.mentorship2022.model.Product;
+import com.endava.mentorship2022.model.User;
+import com.endava.mentorship2022.model.UserStatus;
+import com.endava.mentorship2022.repository.CartItemBulkRepository;
+import com.endava.mentorship2022.repository.CartItemRepository;
+import com.endava.mentorship2022.repository.ProductRepository;
+import com.endava.mentorship2022.repository.UserRepository;
+import com.endava.mentorship2022.service.ProductCache;
+import com.endava.mentorship2022.service.ProductService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.assertj.core.groups.Tuple;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+// Runs against H2 without a test transaction, so the flushes and the emptying of carts really commit
+@DataJpaTest(showSql = false)
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@ActiveProfiles("h2")
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class MemoryCartStoreTest {
+
+    @Autowired
+    private CartItemRepository cartItemRepository;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private final List<MemoryCartStore> stores = new ArrayList<>();
+
+    private final List<Product> products = new ArrayList<>();
+
+    private User user;
+
+    @BeforeEach
+    void setUp() {
+        user = userRepository.save(new User(null, "Ion", "Popescu", "ion@example.com", "password", "Strada 1",
+                "0700000000", LocalDate.of(1990, 1, 1), UserStatus.ACTIVE, null));
+        for (int i = 0; i < 3; i++) {
+            products.add(productRepository.save(new Product(0, "Product " + i, "product-" + i, "Cafea", "Lavazza",
+                    10 + i, 100, true, null, null)));
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        stores.forEach(MemoryCartStore::shutdown);
+        for (String table : List.of("cart_items", "products", "users")) {
+            jdbcTemplate.update("DELETE FROM " + table);
+        }
+    }
+
+    @Test
+    void shouldWriteBehindAndRecoverAfterRestart() {
+        // given
+        MemoryCartStore store = store(true);
+        store.save(new CartItem(0, (short) 2, user, products.get(0)));
+        store.save(new CartItem(0, (short) 1, user, products.get(1)));
+        store.flush();
+        store.updateQuantity(user, products.get(0).getId(), (short) 5);
+        store.remove(user, products.get(1).getId());
+        store.save(new CartItem(0, (short) 3, user, products.get(2)));
+        assertThat(rows()).containsExactly(quantity(0, 2), quantity(1, 1));
+
+        // when
+        store.flush();
+
+        // then
+        assertThat(rows()).containsExactly(quantity(0, 5), quantity(2, 3));
+        assertThat(cart(store(true))).extracting(cartItem -> cartItem.getProduct().getName(),
+                CartItem::getQuantity).containsExactlyInAnyOrder(quantity(0, 5), quantity(2, 3));
+    }
+
+    @Test
+    void shouldEmptyCartOnlyWhenTransactionCommits() {
+        // given
+        MemoryCartStore store = store(true);
+        store.save(new CartItem(0, (short) 2, user, products.get(0)));
+        store.flush();
+        store.save(new CartItem(0, (short) 1, user, products.get(1)));
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+
+        // when
+        transactionTemplate.executeWithoutResult(status -> {
+            store.removeAll(user);
+            status.setRollbackOnly();
+        });
+        int afterRollback = cart(store).size();
+        transactionTemplate.executeWithoutResult(status -> store.removeAll(user));
+        store.flush();
+
+        // then
+        assertThat(afterRollback).isEqualTo(2);
+        assertThat(cart(store)).isEmpty();
+        assertThat(rows()).isEmpty();
+    }
+
+    @Test
+    void shouldKeepChangesWhenFlushFails() {
+        // given
+        AtomicBoolean failing = new AtomicBoolean(true);
+        MemoryCartStore store = store(true, new CartItemBulkRepository(jdbcTemplate, entityManager) {
+            @Override
+            public List<Long> insertAll(List<long[]> userProductAndQuantity) {
+                if (failing.get()) {
+                    throw new DataAccessResourceFailureException("Connection lost");
+                }
+                return super.insertAll(userProductAndQuantity);
+            }
+        });
+        store.save(new CartItem(0, (short) 2, user, products.get(0)));
+        store.save(new CartItem(0, (short) 1, user, products.get(1)));
+        store.flush();
+        List<CartItem> afterFailure = cart(store);
+
+        // when
+        failing.set(false);
+        store.flush();
+
+        // then
+        assertThat(afterFailure).hasSize(2);
+        assertThat(rows()).containsExactly(quantity(0, 2), quantity(1, 1));
+        assertThat(cart(store(true))).hasSize(2);
+    }
+
+    @Test
+    void shouldWriteThroughImmediately() {
+        // given
+        MemoryCartStore store = store(false);
+
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+
+        // when
+        transactionTemplate.executeWithoutResult(status -> {
+            store.save(new CartItem(0, (short) 2, user, products.get(0)));
+            store.updateQuantity(user, products.get(0).getId(), (short) 4);
+        });
+
+        // then
+        assertThat(rows()).containsExactly(quantity(0, 4));
+        assertThat(cart(store)).extracting(CartItem::getId).allMatch(id -> id > 0);
+    }
+
+    private MemoryCartStore store(boolean writeBehind) {
+        return store(writeBehind, new CartItemBulkRepository(jdbcTemplate, entityManager));
+    }
+
+    private MemoryCartStore store(boolean writeBehind, CartItemBulkRepository cartItemBulkRepository) {
+        ProductService productService = new ProductService(productRepository,
+                new ProductCache(100, Duration.ofMinutes(10), new SimpleMeterRegistry()), null, null);
+        MemoryCartStore store = new MemoryCartStore(cartItemRepository, cartItemBulkRepository, productService,
+                transactionManager, writeBehind, Duration.ofHours(1), Duration.ofHours(1));
+        stores.add(store);
+        return store;
+    }
+
+    // Products are loaded with their technical details, as in the cart service transaction
+    private List<CartItem> cart(MemoryCartStore store) {
+        return new TransactionTemplate(transactionManager).execute(status -> store.findByUser(user));
+    }
+
+    private List<Tuple> rows() {
+        return jdbcTemplate.query("SELECT p.name, c.quantity FROM cart_items c JOIN products p ON p.id = c.product_id " +
+                "ORDER BY p.name", (resultSet, row) -> tuple(resultSet.getString(1), resultSet.getShort(2)));
+    }
+
+    private Tuple quantity(int product, int quantity) {
+        return tuple(products.get(product).getName(), (short) quantity);
+    }
+}
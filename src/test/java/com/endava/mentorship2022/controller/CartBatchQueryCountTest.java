@@ -0,0 +1,121 @@
+package com.endava.mentorship2022.controller;
+
+import com.endava.mentorship2022.dto.CartOperation;
+import com.endava.mentorship2022.jdbc.StatementBudget;
+import com.endava.mentorship2022.model.Product;
+import com.endava.mentorship2022.model.Role;
+import com.endava.mentorship2022.model.User;
+import com.endava.mentorship2022.model.UserStatus;
+import com.endava.mentorship2022.repository.ProductRepository;
+import com.endava.mentorship2022.repository.UserRepository;
+import com.endava.mentorship2022.security.TokenService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+// Syncing a whole cart with POST /cart/batch against one POST /cart/add per line
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles("h2")
+class CartBatchQueryCountTest {
+
+    private static final int LINES = 30;
+
+    @RegisterExtension
+    final StatementBudget statementBudget = new StatementBudget();
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private TokenService tokenService;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private final List<Product> products = new ArrayList<>();
+
+    private User user;
+
+    private String authorization;
+
+    @BeforeEach
+    void setUp() {
+        user = userRepository.save(new User(null, "Cart", "User", "batch@example.com", "hash", "Strada 1",
+                "0700000000", LocalDate.of(1990, 1, 1), UserStatus.ACTIVE, Set.of(new Role("USER"))));
+        // Two sets of products, so both syncs start with none of them cached
+        for (int i = 0; i < 2 * LINES; i++) {
+            products.add(productRepository.save(new Product(0, "Product " + i, "product-" + i, "Cafea", "Lavazza",
+                    10, 100, true, null, null)));
+        }
+        authorization = "Bearer " + tokenService.issue(user.getId(), user.getEmail(), Set.of()).getAccessToken();
+    }
+
+    @AfterEach
+    void tearDown() {
+        for (String table : List.of("cart_items", "products", "users_roles", "roles", "users")) {
+            jdbcTemplate.update("DELETE FROM " + table);
+        }
+    }
+
+    @Test
+    void batchSyncsCartInAHandfulOfRoundTrips() throws Exception {
+        // given
+        statementBudget.measure(() -> {
+            for (int i = 0; i < LINES; i++) {
+                mockMvc.perform(post("/cart/add/{productId}/{quantity}", products.get(i).getId(), 2)
+                                .header(HttpHeaders.AUTHORIZATION, authorization))
+                        .andExpect(status().isOk());
+            }
+            return null;
+        });
+        long oneByOne = statementBudget.last().getStatements();
+        jdbcTemplate.update("DELETE FROM cart_items");
+
+        List<CartOperation> operations = new ArrayList<>();
+        for (int i = LINES; i < 2 * LINES; i++) {
+            operations.add(new CartOperation(CartOperation.Type.ADD, products.get(i).getId(), (short) 2));
+        }
+
+        // when
+        statementBudget.measure(() -> mockMvc.perform(post("/cart/batch")
+                        .header(HttpHeaders.AUTHORIZATION, authorization)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsBytes(operations)))
+                .andExpect(status().isOk()));
+        long batch = statementBudget.last().getStatements();
+
+        // then
+        assertThat(batch).isLessThanOrEqualTo(6).isLessThan(oneByOne);
+        assertThat(jdbcTemplate.queryForObject("SELECT SUM(quantity) FROM cart_items WHERE user_id = ?",
+                Long.class, user.getId())).isEqualTo(2L * LINES);
+    }
+}
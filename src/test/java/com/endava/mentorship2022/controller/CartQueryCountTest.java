@@ -0,0 +1,268 @@
+package com.endava.mentorship2022.controller;
+
+import com.endava.mentorship2022.jdbc.StatementBudget;
+import com.endava.mentorship2022.model.CartItem;
+import com.endava.mentorship2022.model.Product;
+import com.endava.mentorship2022.model.Role;
+import com.endava.mentorship2022.model.User;
+import com.endava.mentorship2022.model.UserStatus;
+import com.endava.mentorship2022.repository.CartItemRepository;
+import com.endava.mentorship2022.repository.ProductRepository;
+import com.endava.mentorship2022.repository.UserRepository;
+import com.endava.mentorship2022.security.TokenService;
+import com.endava.mentorship2022.security.UserDetailsCache;
+import com.endava.mentorship2022.service.CartItemService;
+import com.endava.mentorship2022.service.CheckoutService;
+import com.endava.mentorship2022.service.UserService;
+import lombok.AllArgsConstructor;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpHeaders;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.security.Principal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+
+// The cart endpoints take the user from the authentication. Each one is compared with a copy of the
+// controller as it was, which looked the user up by email, through the same filters, transactions and JSON.
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles("h2")
+@Import(CartQueryCountTest.LookupByEmailController.class)
+class CartQueryCountTest {
+
+    private static final String EMAIL = "cart@example.com";
+
+    private static final int CHECKOUT_CART_SIZE = 20;
+
+    // Cart select, user select, stock update batch, order and details insert batches and cart delete, plus up to
+    // three id_generators select and update pairs when the pooled id blocks run out (the first block takes two)
+    private static final long CHECKOUT_STATEMENT_BUDGET = 12;
+
+    @RegisterExtension
+    final StatementBudget statementBudget = new StatementBudget();
+
+    @AllArgsConstructor
+    @RestController
+    @RequestMapping("/lookup-by-email")
+    static class LookupByEmailController {
+
+        private final CartItemService cartItemService;
+
+        private final CheckoutService checkoutService;
+
+        private final UserService userService;
+
+        @GetMapping("/cart")
+        public List<CartItem> viewCart(Principal principal) {
+            User user = userService.findUserByEmail(principal.getName());
+            return cartItemService.findCartItemsByUser(user);
+        }
+
+        @PostMapping("/cart/add/{productId}/{quantity}")
+        public String addProductToCart(@PathVariable long productId, @PathVariable short quantity,
+                                       Principal principal) {
+            User user = userService.findUserByEmail(principal.getName());
+            return cartItemService.addProductToCart(user, productId, quantity);
+        }
+
+        @PutMapping("/cart/update/{productId}/{quantity}")
+        public String updateProductQuantity(@PathVariable long productId, @PathVariable short quantity,
+                                            Principal principal) {
+            User user = userService.findUserByEmail(principal.getName());
+            return cartItemService.updateProductQuantity(user, productId, quantity);
+        }
+
+        @DeleteMapping("/cart/remove/{productId}")
+        public String removeProductFromCart(@PathVariable long productId, Principal principal) {
+            User user = userService.findUserByEmail(principal.getName());
+            return cartItemService.removeProductFromCart(user, productId);
+        }
+
+        @DeleteMapping("/cart")
+        public String deleteCart(Principal principal) {
+            User user = userService.findUserByEmail(principal.getName());
+            return cartItemService.deleteCartByUser(user);
+        }
+
+        @PostMapping("/checkout")
+        public String placeOrder(Principal principal) {
+            User user = userService.findUserByEmail(principal.getName());
+            return checkoutService.placeOrder(user);
+        }
+    }
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private TokenService tokenService;
+
+    @Autowired
+    private UserDetailsCache userDetailsCache;
+
+    @Autowired
+    private UserDetailsService userDetailsService;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private CartItemRepository cartItemRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private User user;
+
+    private Product coffee;
+
+    private Product tea;
+
+    private String authorization;
+
+    @BeforeEach
+    void setUp() {
+        user = userRepository.save(new User(null, "Cart", "User", EMAIL, "hash", "Strada 1", "0700000000",
+                LocalDate.of(1990, 1, 1), UserStatus.ACTIVE, Set.of(new Role("USER"))));
+        coffee = productRepository.save(new Product(0, "Coffee", "coffee", "Cafea", "Lavazza", 10, 100, true, null, null));
+        tea = productRepository.save(new Product(0, "Tea", "tea", "Ceai", "Lipton", 5, 100, true, null, null));
+        authorization = "Bearer " + tokenService.issue(user.getId(), EMAIL, Set.of()).getAccessToken();
+        // Cached as the login does, so the token finds its user without the database
+        userDetailsCache.invalidate(EMAIL);
+        userDetailsService.loadUserByUsername(EMAIL);
+    }
+
+    @AfterEach
+    void tearDown() {
+        for (String table : List.of("order_details", "orders", "cart_items", "products", "users_roles", "roles",
+                "users")) {
+            jdbcTemplate.update("DELETE FROM " + table);
+        }
+    }
+
+    @Test
+    void viewCartRunsOneQueryLess() throws Exception {
+        assertOneQueryLess(path -> get(path + "/cart"));
+    }
+
+    @Test
+    void addProductToCartRunsOneQueryLess() throws Exception {
+        assertOneQueryLess(path -> post(path + "/cart/add/{productId}/{quantity}", tea.getId(), 1));
+    }
+
+    @Test
+    void updateProductQuantityRunsOneQueryLess() throws Exception {
+        assertOneQueryLess(path -> put(path + "/cart/update/{productId}/{quantity}", coffee.getId(), 3));
+    }
+
+    @Test
+    void removeProductFromCartRunsOneQueryLess() throws Exception {
+        assertOneQueryLess(path -> delete(path + "/cart/remove/{productId}", coffee.getId()));
+    }
+
+    @Test
+    void deleteCartRunsOneQueryLess() throws Exception {
+        assertOneQueryLess(path -> delete(path + "/cart"));
+    }
+
+    @Test
+    void checkoutRunsOneQueryLess() throws Exception {
+        assertOneQueryLess(path -> post(path + "/checkout"));
+    }
+
+    @Test
+    void checkoutClearsCartWithOneDelete() throws Exception {
+        // given
+        cartItemRepository.save(new CartItem(0, (short) 2, user, coffee));
+        cartItemRepository.save(new CartItem(0, (short) 1, user, tea));
+
+        // when
+        int status = statementBudget.measure(() -> mockMvc.perform(post("/checkout")
+                .header(HttpHeaders.AUTHORIZATION, authorization))
+                .andReturn().getResponse().getStatus());
+
+        // then
+        assertThat(status).isEqualTo(200);
+        assertThat(StatementBudget.statements(statementBudget.last(), "delete")).isEqualTo(1);
+        assertThat(cartItemRepository.count()).isZero();
+    }
+
+    // Checkout loads the cart with its products in one query and batches the stock and order writes,
+    // so a cart of 20 items costs no more statements than a cart of one
+    @Test
+    void checkoutStaysWithinStatementBudget() throws Exception {
+        // given
+        List<CartItem> cartItems = new ArrayList<>();
+        for (int i = 0; i < CHECKOUT_CART_SIZE; i++) {
+            Product product = productRepository.save(new Product(0, "Product " + i, "product-" + i, "Cafea",
+                    "Lavazza", 10 + i, 100, true, null, null));
+            cartItems.add(new CartItem(0, (short) 2, user, product));
+        }
+        cartItemRepository.saveAll(cartItems);
+
+        // when
+        int status = statementBudget.measure(() -> mockMvc.perform(post("/checkout")
+                .header(HttpHeaders.AUTHORIZATION, authorization))
+                .andReturn().getResponse().getStatus());
+
+        // then
+        assertThat(status).isEqualTo(200);
+        assertThat(statementBudget.last().getStatements()).isLessThanOrEqualTo(CHECKOUT_STATEMENT_BUDGET);
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM order_details", Integer.class))
+                .isEqualTo(CHECKOUT_CART_SIZE);
+    }
+
+    // The first request only warms up the product cache and the id pools
+    private void assertOneQueryLess(Function<String, MockHttpServletRequestBuilder> request) throws Exception {
+        selectsOf(request.apply("/lookup-by-email"));
+        long withLookup = selectsOf(request.apply("/lookup-by-email"));
+        long withCurrentUser = selectsOf(request.apply(""));
+
+        assertThat(withCurrentUser).isLessThanOrEqualTo(withLookup - 1);
+    }
+
+    private long selectsOf(MockHttpServletRequestBuilder request) throws Exception {
+        jdbcTemplate.update("DELETE FROM order_details");
+        jdbcTemplate.update("DELETE FROM orders");
+        cartItemRepository.deleteAll();
+        cartItemRepository.save(new CartItem(0, (short) 2, user, coffee));
+
+        int status = statementBudget.measure(() -> mockMvc.perform(request
+                .header(HttpHeaders.AUTHORIZATION, authorization))
+                .andReturn().getResponse().getStatus());
+
+        assertThat(status).isEqualTo(200);
+        return StatementBudget.statements(statementBudget.last(), "select");
+    }
+}
@@ -0,0 +1,275 @@
+package com.endava.mentorship2022.controller;
+
+import com.endava.mentorship2022.jdbc.StatementBudget;
+import com.endava.mentorship2022.jdbc.StatementStatistics;
+import com.endava.mentorship2022.model.CartItem;
+import com.endava.mentorship2022.model.Order;
+import com.endava.mentorship2022.model.Product;
+import com.endava.mentorship2022.model.Role;
+import com.endava.mentorship2022.model.User;
+import com.endava.mentorship2022.model.UserStatus;
+import com.endava.mentorship2022.repository.CartItemRepository;
+import com.endava.mentorship2022.repository.IdempotencyRecordRepository;
+import com.endava.mentorship2022.repository.ProductRepository;
+import com.endava.mentorship2022.repository.UserRepository;
+import com.endava.mentorship2022.security.TokenService;
+import com.endava.mentorship2022.service.IdempotencyService;
+import com.endava.mentorship2022.service.OrderService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.mockito.AdditionalAnswers;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+import static org.assertj.core.api.Assertions.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+
+// Runs against H2 without a test transaction, so the orders and the kept responses really commit
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles("h2")
+class IdempotencyKeyTest {
+
+    private static final String EMAIL = "retry@example.com";
+
+    private static final int DUPLICATES = 8;
+
+    @RegisterExtension
+    final StatementBudget statementBudget = new StatementBudget();
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private TokenService tokenService;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private CartItemRepository cartItemRepository;
+
+    @Autowired
+    private IdempotencyRecordRepository idempotencyRecordRepository;
+
+    @Autowired
+    private OrderService orderService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private User user;
+
+    private String authorization;
+
+    @BeforeEach
+    void setUp() {
+        user = userRepository.save(new User(null, "Retry", "User", EMAIL, "hash", "Strada 1", "0700000000",
+                LocalDate.of(1990, 1, 1), UserStatus.ACTIVE, Set.of(new Role("USER"))));
+        Product coffee = productRepository.save(new Product(0, "Coffee", "coffee", "Cafea", "Lavazza", 10, 100, true,
+                null, null));
+        cartItemRepository.save(new CartItem(0, (short) 2, user, coffee));
+        authorization = "Bearer " + tokenService.issue(user.getId(), EMAIL, Set.of()).getAccessToken();
+    }
+
+    @AfterEach
+    void tearDown() {
+        for (String table : List.of("idempotency_keys", "order_details", "orders", "cart_items", "products",
+                "users_roles", "roles", "users")) {
+            jdbcTemplate.update("DELETE FROM " + table);
+        }
+    }
+
+    @Test
+    void shouldPlaceOneOrderForConcurrentDuplicateCheckouts() throws Exception {
+        // given
+        double executedBefore = requests("executed");
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService clients = Executors.newFixedThreadPool(DUPLICATES);
+        List<Future<MockHttpServletResponse>> responses = new ArrayList<>();
+        Callable<MockHttpServletResponse> checkout = () -> {
+            start.await();
+            return mockMvc.perform(post("/checkout")
+                    .header(HttpHeaders.AUTHORIZATION, authorization)
+                    .header(IdempotencyService.HEADER, "checkout-1"))
+                    .andReturn().getResponse();
+        };
+        for (int i = 0; i < DUPLICATES; i++) {
+            responses.add(clients.submit(checkout));
+        }
+
+        // when
+        start.countDown();
+        List<String> bodies = new ArrayList<>();
+        for (Future<MockHttpServletResponse> response : responses) {
+            assertThat(response.get().getStatus()).isEqualTo(200);
+            bodies.add(response.get().getContentAsString());
+        }
+        clients.shutdown();
+        MockHttpServletResponse retry = mockMvc.perform(post("/checkout")
+                .header(HttpHeaders.AUTHORIZATION, authorization)
+                .header(IdempotencyService.HEADER, "checkout-1"))
+                .andReturn().getResponse();
+
+        // then
+        assertThat(bodies).containsOnly("Order has been placed. Thank you for purchase.");
+        assertThat(retry.getContentAsString()).isEqualTo("Order has been placed. Thank you for purchase.");
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM orders", Integer.class)).isEqualTo(1);
+        assertThat(requests("executed") - executedBefore).isEqualTo(1);
+    }
+
+    @Test
+    void shouldReplayFromTheTableAfterRestart() throws Exception {
+        // given
+        String order = "{\"total\": 20, \"user\": {\"id\": " + user.getId() + "}}";
+        MockHttpServletResponse first = mockMvc.perform(post("/orders")
+                .header(HttpHeaders.AUTHORIZATION, authorization)
+                .header(IdempotencyService.HEADER, "order-1")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(order))
+                .andReturn().getResponse();
+        IdempotencyService restarted = new IdempotencyService(idempotencyRecordRepository, objectMapper,
+                transactionManager, 100, Duration.ofHours(24), new SimpleMeterRegistry());
+
+        // when
+        ResponseEntity<Object> replayed = restarted.execute(user, "POST /orders", "order-1",
+                objectMapper.readValue(order, Order.class),
+                () -> fail("The order was placed again"));
+        int reusedStatus = mockMvc.perform(post("/orders")
+                .header(HttpHeaders.AUTHORIZATION, authorization)
+                .header(IdempotencyService.HEADER, "order-1")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"total\": 30, \"user\": {\"id\": " + user.getId() + "}}"))
+                .andReturn().getResponse().getStatus();
+        restarted.shutdown();
+
+        // then
+        assertThat(first.getStatus()).isEqualTo(200);
+        assertThat(replayed.getBody()).isEqualTo(first.getContentAsString());
+        assertThat(reusedStatus).isEqualTo(422);
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM orders", Integer.class)).isEqualTo(1);
+    }
+
+    // The key is written in the transaction of the order, an order whose key could not be written is rolled back
+    @Test
+    void shouldRollBackTheOrderWhenItsKeyCannotBeWritten() {
+        // given
+        IdempotencyRecordRepository failingOnce = mock(IdempotencyRecordRepository.class,
+                AdditionalAnswers.delegatesTo(idempotencyRecordRepository));
+        doThrow(new DataAccessResourceFailureException("Connection lost"))
+                .doAnswer(AdditionalAnswers.delegatesTo(idempotencyRecordRepository))
+                .when(failingOnce).saveAndFlush(any());
+        IdempotencyService idempotencyService = new IdempotencyService(failingOnce, objectMapper,
+                transactionManager, 100, Duration.ofHours(24), new SimpleMeterRegistry());
+        Supplier<ResponseEntity<?>> placeOrder = () -> {
+            Order order = new Order();
+            order.setUser(user);
+            order.setTotal(20);
+            return ResponseEntity.ok(orderService.save(order));
+        };
+
+        // when
+        Throwable failure = catchThrowable(() -> idempotencyService.execute(user, "POST /orders", "order-2", "order",
+                placeOrder));
+        ResponseEntity<Object> retried = idempotencyService.execute(user, "POST /orders", "order-2", "order",
+                placeOrder);
+        ResponseEntity<Object> replayed = idempotencyService.execute(user, "POST /orders", "order-2", "order",
+                () -> fail("The order was placed again"));
+        idempotencyService.shutdown();
+
+        // then
+        assertThat(failure).isInstanceOf(DataAccessResourceFailureException.class);
+        assertThat(replayed.getBody()).isEqualTo(retried.getBody());
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM orders", Integer.class)).isEqualTo(1);
+    }
+
+    // The key has an assigned id, a new one must be inserted without the SELECT of a merge
+    @Test
+    void shouldReadTheKeyOnceBeforeInsertingIt() throws Exception {
+        // given
+        IdempotencyService idempotencyService = new IdempotencyService(idempotencyRecordRepository, objectMapper,
+                transactionManager, 100, Duration.ofHours(24), new SimpleMeterRegistry());
+
+        // when
+        ResponseEntity<Object> response = statementBudget.measure(() -> idempotencyService.execute(user,
+                "POST /orders", "order-3", "order", () -> ResponseEntity.ok("Placed")));
+        idempotencyService.shutdown();
+
+        // then
+        StatementStatistics statistics = statementBudget.last();
+        assertThat(response.getBody()).isEqualTo("Placed");
+        assertThat(StatementBudget.statements(statistics, "select")).isEqualTo(1);
+        assertThat(StatementBudget.statements(statistics, "insert")).isEqualTo(1);
+        assertThat(idempotencyRecordRepository.existsById(user.getId() + " POST /orders order-3")).isTrue();
+    }
+
+    @Test
+    void shouldReplaceAKeyExpiredButNotPrunedYet() {
+        // given
+        IdempotencyService idempotencyService = new IdempotencyService(idempotencyRecordRepository, objectMapper,
+                transactionManager, 100, Duration.ofHours(24), new SimpleMeterRegistry());
+        idempotencyService.execute(user, "POST /orders", "order-4", "order", () -> ResponseEntity.ok("First"));
+        idempotencyService.shutdown();
+        jdbcTemplate.update("UPDATE idempotency_keys SET created_at = ?", LocalDateTime.now().minusDays(2));
+        IdempotencyService restarted = new IdempotencyService(idempotencyRecordRepository, objectMapper,
+                transactionManager, 100, Duration.ofHours(24), new SimpleMeterRegistry());
+
+        // when
+        ResponseEntity<Object> response = restarted.execute(user, "POST /orders", "order-4", "order",
+                () -> ResponseEntity.ok("Second"));
+        restarted.shutdown();
+
+        // then
+        assertThat(response.getBody()).isEqualTo("Second");
+        assertThat(jdbcTemplate.queryForObject("SELECT body FROM idempotency_keys", String.class)).isEqualTo("Second");
+    }
+
+    private double requests(String result) {
+        return meterRegistry.counter("idempotency.requests", "result", result).count();
+    }
+}
@@ -0,0 +1,201 @@
+package com.endava.mentorship2022.controller;
+
+import com.endava.mentorship2022.jdbc.StatementBudget;
+import com.endava.mentorship2022.model.CartItem;
+import com.endava.mentorship2022.model.Category;
+import com.endava.mentorship2022.model.Order;
+import com.endava.mentorship2022.model.OrderDetail;
+import com.endava.mentorship2022.model.Product;
+import com.endava.mentorship2022.model.Role;
+import com.endava.mentorship2022.model.TechnicalDetail;
+import com.endava.mentorship2022.model.User;
+import com.endava.mentorship2022.model.UserStatus;
+import com.endava.mentorship2022.repository.CartItemRepository;
+import com.endava.mentorship2022.repository.CategoryRepository;
+import com.endava.mentorship2022.repository.OrderRepository;
+import com.endava.mentorship2022.repository.ProductRepository;
+import com.endava.mentorship2022.repository.UserRepository;
+import com.endava.mentorship2022.security.TokenService;
+import com.endava.mentorship2022.security.UserDetailsCache;
+import com.endava.mentorship2022.service.ProductCache;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+
+// The list endpoints select their rows in one query, whatever the number of rows and of their associations
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles("h2")
+class ListQueryCountTest {
+
+    private static final String EMAIL = "lists@example.com";
+
+    private static final int ROWS = 5;
+
+    @RegisterExtension
+    final StatementBudget statementBudget = new StatementBudget();
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private TokenService tokenService;
+
+    @Autowired
+    private UserDetailsCache userDetailsCache;
+
+    @Autowired
+    private UserDetailsService userDetailsService;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private CategoryRepository categoryRepository;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Autowired
+    private CartItemRepository cartItemRepository;
+
+    @Autowired
+    private ProductCache productCache;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private String authorization;
+
+    @BeforeEach
+    void setUp() {
+        User user = userRepository.save(new User(null, "List", "User", EMAIL, "hash", "Strada 1", "0700000000",
+                LocalDate.of(1990, 1, 1), UserStatus.ACTIVE, Set.of(new Role("USER"), new Role("ADMIN"))));
+        Category category = categoryRepository.save(new Category(0, "Coffee", "coffee", null));
+        List<Product> products = new ArrayList<>();
+        for (int i = 0; i < ROWS; i++) {
+            Product product = new Product(0, "Product " + i, "product-" + i, "Cafea", "Lavazza", 10 + i, 100, true,
+                    category, new HashSet<>());
+            product.getTechnicalDetails().add(new TechnicalDetail(0, "Origin", "Brazil", product));
+            products.add(product);
+        }
+        productRepository.saveAll(products);
+        for (int i = 0; i < ROWS; i++) {
+            Order order = new Order();
+            order.setUser(user);
+            order.setTotal(20);
+            order.getOrderDetails().add(new OrderDetail(0, (short) 2, 10, 20, order, products.get(i)));
+            orderRepository.save(order);
+            cartItemRepository.save(new CartItem(0, (short) 1, user, products.get(i)));
+        }
+        productCache.invalidateAll();
+        authorization = "Bearer " + tokenService.issue(user.getId(), EMAIL, Set.of()).getAccessToken();
+        // Cached as the login does, so the token finds its user without the database
+        userDetailsCache.invalidate(EMAIL);
+        userDetailsService.loadUserByUsername(EMAIL);
+    }
+
+    @AfterEach
+    void tearDown() {
+        for (String table : List.of("order_details", "orders", "cart_items", "technical_details", "products",
+                "categories", "users_roles", "roles", "users")) {
+            jdbcTemplate.update("DELETE FROM " + table);
+        }
+    }
+
+    @Test
+    void productListRunsOneQuery() throws Exception {
+        // when
+        String products = getList("/products");
+
+        // then
+        assertThat(statementBudget.last().getStatements()).isEqualTo(1);
+        assertThat(products).contains("\"categoryName\":\"Coffee\"").doesNotContain("technicalDetails");
+    }
+
+    @Test
+    void orderListRunsOneQuery() throws Exception {
+        // when
+        String orders = getList("/orders");
+
+        // then
+        assertThat(statementBudget.last().getStatements()).isEqualTo(1);
+        assertThat(orders).contains("\"lines\":1").doesNotContain("orderDetails");
+    }
+
+    @Test
+    void orderStreamRunsOneQuery() throws Exception {
+        // when
+        String orders = streamList("/orders");
+
+        // then
+        assertThat(statementBudget.last().getStatements()).isEqualTo(1);
+        assertThat(orders.lines()).hasSize(ROWS).allSatisfy(order -> assertThat(order).contains("\"lines\":1"));
+    }
+
+    @Test
+    void userStreamRunsOneQuery() throws Exception {
+        // when
+        String users = streamList("/users");
+
+        // then
+        assertThat(statementBudget.last().getStatements()).isEqualTo(1);
+        assertThat(users.lines()).singleElement().asString().contains("\"name\":\"ADMIN\"");
+    }
+
+    @Test
+    void cartListRunsOneQuery() throws Exception {
+        // when
+        String cart = getList("/cart");
+
+        // then
+        assertThat(statementBudget.last().getStatements()).isEqualTo(1);
+        assertThat(cart).contains("\"subtotal\":10.0").doesNotContain("description");
+    }
+
+    private String getList(String path) throws Exception {
+        MockHttpServletResponse response = statementBudget.measure(() -> mockMvc.perform(get(path)
+                .header(HttpHeaders.AUTHORIZATION, authorization))
+                .andReturn().getResponse());
+        assertThat(response.getStatus()).isEqualTo(200);
+        return response.getContentAsString();
+    }
+
+    // The rows are written on an async thread, which counts its statements for the request
+    private String streamList(String path) throws Exception {
+        MockHttpServletResponse response = statementBudget.measure(() -> {
+            MvcResult streaming = mockMvc.perform(get(path)
+                    .header(HttpHeaders.AUTHORIZATION, authorization)
+                    .accept(MediaType.APPLICATION_NDJSON))
+                    .andReturn();
+            return mockMvc.perform(asyncDispatch(streaming)).andReturn().getResponse();
+        });
+        assertThat(response.getStatus()).isEqualTo(200);
+        return response.getContentAsString();
+    }
+}
@@ -0,0 +1,149 @@
+package com.endava.mentorship2022.controller;
+
+import com.endava.mentorship2022.jdbc.StatementBudget;
+import com.endava.mentorship2022.model.CartItem;
+import com.endava.mentorship2022.model.Category;
+import com.endava.mentorship2022.model.Order;
+import com.endava.mentorship2022.model.OrderDetail;
+import com.endava.mentorship2022.model.Product;
+import com.endava.mentorship2022.model.Role;
+import com.endava.mentorship2022.model.TechnicalDetail;
+import com.endava.mentorship2022.model.User;
+import com.endava.mentorship2022.model.UserStatus;
+import com.endava.mentorship2022.repository.CartItemRepository;
+import com.endava.mentorship2022.repository.CategoryRepository;
+import com.endava.mentorship2022.repository.OrderRepository;
+import com.endava.mentorship2022.repository.ProductRepository;
+import com.endava.mentorship2022.repository.UserRepository;
+import com.endava.mentorship2022.security.TokenService;
+import com.endava.mentorship2022.service.ProductCache;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+
+// Statements and response size of the list endpoints. Run with: mvn test -Pbenchmark
+@Tag("benchmark")
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles("h2")
+class ListViewBenchmarkTest {
+
+    private static final String EMAIL = "lists@example.com";
+
+    private static final int PRODUCTS = 200;
+
+    private static final int DETAILS_PER_PRODUCT = 4;
+
+    private static final int ORDERS = 100;
+
+    private static final int LINES_PER_ORDER = 3;
+
+    private static final int CART_ITEMS = 20;
+
+    @RegisterExtension
+    final StatementBudget statementBudget = new StatementBudget();
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private TokenService tokenService;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private CategoryRepository categoryRepository;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Autowired
+    private CartItemRepository cartItemRepository;
+
+    @Autowired
+    private ProductCache productCache;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private String authorization;
+
+    @BeforeEach
+    void setUp() {
+        User user = userRepository.save(new User(null, "List", "User", EMAIL, "hash", "Strada 1", "0700000000",
+                LocalDate.of(1990, 1, 1), UserStatus.ACTIVE, Set.of(new Role("USER"), new Role("ADMIN"))));
+        Category category = categoryRepository.save(new Category(0, "Coffee", "coffee", null));
+        List<Product> products = new ArrayList<>();
+        for (int i = 0; i < PRODUCTS; i++) {
+            Product product = new Product(0, "Product " + i, "product-" + i, "Cafea ".repeat(500), "Lavazza",
+                    10 + i, 1000, true, category, new HashSet<>());
+            for (int j = 0; j < DETAILS_PER_PRODUCT; j++) {
+                product.getTechnicalDetails().add(new TechnicalDetail(0, "Detail " + j, "Value " + j, product));
+            }
+            products.add(product);
+        }
+        productRepository.saveAll(products);
+        List<Order> orders = new ArrayList<>();
+        for (int i = 0; i < ORDERS; i++) {
+            Order order = new Order();
+            order.setUser(user);
+            order.setTotal(30);
+            for (int j = 0; j < LINES_PER_ORDER; j++) {
+                order.getOrderDetails().add(new OrderDetail(0, (short) 1, 10, 10, order, products.get(j)));
+            }
+            orders.add(order);
+        }
+        orderRepository.saveAll(orders);
+        List<CartItem> cartItems = new ArrayList<>();
+        for (int i = 0; i < CART_ITEMS; i++) {
+            cartItems.add(new CartItem(0, (short) 1, user, products.get(i)));
+        }
+        cartItemRepository.saveAll(cartItems);
+        productCache.invalidateAll();
+        authorization = "Bearer " + tokenService.issue(user.getId(), EMAIL, Set.of()).getAccessToken();
+    }
+
+    @AfterEach
+    void tearDown() {
+        for (String table : List.of("order_details", "orders", "cart_items", "technical_details", "products",
+                "categories", "users_roles", "roles", "users")) {
+            jdbcTemplate.update("DELETE FROM " + table);
+        }
+    }
+
+    @Test
+    void measureListEndpoints() throws Exception {
+        System.out.printf("%n%-16s %10s %12s%n", "endpoint", "statements", "bytes");
+        for (String path : List.of("/products", "/products", "/orders", "/cart")) {
+            MockHttpServletResponse response = statementBudget.measure(() -> mockMvc.perform(get(path)
+                    .header(HttpHeaders.AUTHORIZATION, authorization))
+                    .andReturn().getResponse());
+            assertThat(response.getStatus()).isEqualTo(200);
+            System.out.printf("%-16s %10d %12d%n", path, statementBudget.last().getStatements(),
+                    response.getContentAsByteArray().length);
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.endava.mentorship2022.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import javax.persistence.EntityManager;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class NdjsonStreamerTest {
+
+    @Mock
+    private EntityManager entityManager;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private NdjsonStreamer ndjsonStreamer;
+
+    @BeforeEach
+    void setUp() {
+        ndjsonStreamer = new NdjsonStreamer(new ObjectMapper(), entityManager, transactionManager);
+    }
+
+    @Test
+    void canStreamRowsAsNdjsonInChunks() throws Exception {
+        // given
+        when(transactionManager.getTransaction(any())).thenReturn(new SimpleTransactionStatus());
+        AtomicBoolean closed = new AtomicBoolean();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        // when
+        ResponseEntity<StreamingResponseBody> response = ndjsonStreamer.stream(() ->
+                IntStream.rangeClosed(1, 1001).mapToObj(id -> Map.of("id", id)).onClose(() -> closed.set(true)));
+        response.getBody().writeTo(out);
+
+        // then
+        String[] lines = out.toString(StandardCharsets.UTF_8).split("\n");
+        assertThat(response.getHeaders().getContentType()).isEqualTo(MediaType.APPLICATION_NDJSON);
+        assertThat(lines).hasSize(1001);
+        assertThat(lines[0]).isEqualTo("{\"id\":1}");
+        assertThat(lines[1000]).isEqualTo("{\"id\":1001}");
+        assertThat(closed).isTrue();
+        verify(entityManager, times(2)).clear();
+        verify(transactionManager).commit(any());
+    }
+}
@@ -0,0 +1,203 @@
+package com.endava.mentorship2022.controller;
+
+import com.endava.mentorship2022.jdbc.StatementBudget;
+import com.endava.mentorship2022.model.CartItem;
+import com.endava.mentorship2022.model.Category;
+import com.endava.mentorship2022.model.Order;
+import com.endava.mentorship2022.model.OrderDetail;
+import com.endava.mentorship2022.model.Product;
+import com.endava.mentorship2022.model.Role;
+import com.endava.mentorship2022.model.TechnicalDetail;
+import com.endava.mentorship2022.model.User;
+import com.endava.mentorship2022.model.UserStatus;
+import com.endava.mentorship2022.repository.CartItemRepository;
+import com.endava.mentorship2022.repository.OrderDetailRepository;
+import com.endava.mentorship2022.repository.OrderRepository;
+import com.endava.mentorship2022.repository.ProductRepository;
+import com.endava.mentorship2022.repository.UserRepository;
+import com.endava.mentorship2022.security.TokenService;
+import com.endava.mentorship2022.service.CategoryService;
+import com.endava.mentorship2022.service.ProductCache;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+
+// Every list endpoint runs the same number of statements, within its budget, whatever the number of rows.
+// Each endpoint is measured with a few rows and again with many more rows; a query per row shows as a difference.
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles("h2")
+class QueryBudgetTest {
+
+    private static final String EMAIL = "budget@example.com";
+
+    private static final int FEW_ROWS = 3;
+
+    private static final int MANY_ROWS = 40;
+
+    @RegisterExtension
+    final StatementBudget statementBudget = new StatementBudget();
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private TokenService tokenService;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Autowired
+    private OrderDetailRepository orderDetailRepository;
+
+    @Autowired
+    private CartItemRepository cartItemRepository;
+
+    @Autowired
+    private ProductCache productCache;
+
+    @Autowired
+    private CategoryService categoryService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private User user;
+
+    private Category category;
+
+    private Order firstOrder;
+
+    private String authorization;
+
+    private int seeded;
+
+    @BeforeEach
+    void setUp() {
+        user = userRepository.save(new User(null, "Budget", "User", EMAIL, "hash", "Strada 1", "0700000000",
+                LocalDate.of(1990, 1, 1), UserStatus.ACTIVE, Set.of(new Role("USER"), new Role("ADMIN"))));
+        Category parent = categoryService.save(new Category(0, "Coffee", "coffee", null));
+        category = categoryService.save(new Category(0, "Beans", "beans", parent));
+        firstOrder = null;
+        seeded = 0;
+        authorization = "Bearer " + tokenService.issue(user.getId(), EMAIL, List.of(new SimpleGrantedAuthority("ADMIN")))
+                .getAccessToken();
+    }
+
+    @AfterEach
+    void tearDown() {
+        for (String table : List.of("order_details", "orders", "cart_items", "technical_details", "products",
+                "categories", "users_roles", "roles", "users")) {
+            jdbcTemplate.update("DELETE FROM " + table);
+        }
+        productCache.invalidateAll();
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @CsvSource({
+            "/products, 1",
+            "/products/page/1?pageSize=100, 3",
+            "/products/page?pageSize=100, 3",
+            "/categories/{category}/products, 2",
+            "/orders, 1",
+            "/orders/user/{user}, 4",
+            "/orders/{order}, 2",
+            "/order-details, 4",
+            "/order-details/{order}, 4",
+            "/technical-details, 2",
+            "/users, 1",
+            "/users/page/1?pageSize=100, 2",
+            "/users/page?pageSize=100, 2",
+            "/users/sorted, 1",
+            "/categories, 1",
+            "/cart, 1"
+    })
+    void listStaysWithinQueryBudget(String path, long budget) throws Exception {
+        // given
+        seed(FEW_ROWS);
+        long withFewRows = statementsOf(path);
+        seed(MANY_ROWS);
+
+        // when
+        long withManyRows = statementsOf(path);
+
+        // then
+        assertThat(withManyRows).as("statements with %d rows", MANY_ROWS).isEqualTo(withFewRows);
+        assertThat(withManyRows).as("statements of %s", path).isLessThanOrEqualTo(budget);
+    }
+
+    // Adds users, products with technical details, orders with details and cart lines up to the given number
+    private void seed(int rows) {
+        List<Product> products = new ArrayList<>();
+        for (int i = seeded; i < rows; i++) {
+            userRepository.save(new User(null, "Buyer", "No " + i, "buyer" + i + "@example.com", "hash", "Strada 1",
+                    "0700000000", LocalDate.of(1990, 1, 1), UserStatus.ACTIVE, Set.of(new Role("USER"))));
+            Category productCategory = categoryService.save(new Category(0, "Category " + i, "category-" + i,
+                    category));
+            Product product = new Product(0, "Product " + i, "product-" + i, "Cafea", "Lavazza", 10 + i, 100, true,
+                    i % 2 == 0 ? category : productCategory, new HashSet<>());
+            product.getTechnicalDetails().add(new TechnicalDetail(0, "Origin", "Brazil", product));
+            product.getTechnicalDetails().add(new TechnicalDetail(0, "Roast", "Dark", product));
+            products.add(product);
+        }
+        productRepository.saveAll(products);
+        for (Product product : products) {
+            Order order = new Order();
+            order.setUser(user);
+            order.setTotal(20);
+            order.getOrderDetails().add(new OrderDetail(0, (short) 2, 10, 20, order, product));
+            Order saved = orderRepository.save(order);
+            if (firstOrder == null) {
+                firstOrder = saved;
+            }
+            cartItemRepository.save(new CartItem(0, (short) 1, user, product));
+        }
+        // The first order gets every product, so its details grow with the rows too
+        List<OrderDetail> firstOrderDetails = new ArrayList<>();
+        for (Product product : products.subList(seeded == 0 ? 1 : 0, products.size())) {
+            firstOrderDetails.add(new OrderDetail(0, (short) 1, 10, 10, firstOrder, product));
+        }
+        orderDetailRepository.saveAll(firstOrderDetails);
+        seeded = rows;
+        productCache.invalidateAll();
+    }
+
+    // The first request warms up the caches, the second one is measured
+    private long statementsOf(String path) throws Exception {
+        String uri = path.replace("{user}", String.valueOf(user.getId()))
+                .replace("{order}", String.valueOf(firstOrder.getId()))
+                .replace("{category}", String.valueOf(category.getId()));
+        for (int i = 0; i < 2; i++) {
+            int status = statementBudget.measure(() -> mockMvc.perform(get(uri)
+                    .header(HttpHeaders.AUTHORIZATION, authorization))
+                    .andReturn().getResponse().getStatus());
+            assertThat(status).as(uri).isEqualTo(200);
+        }
+        return statementBudget.last().getStatements();
+    }
+}
@@ -0,0 +1,79 @@
+package com.endava.mentorship2022.jdbc;
+
+import org.junit.jupiter.api.extension.AfterEachCallback;
+import org.junit.jupiter.api.extension.BeforeEachCallback;
+import org.junit.jupiter.api.extension.ExtensionContext;
+
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Fails a test when an operation runs more statements than its budget, listing the SQL it ran. Needs a context
+// with StatementStatisticsPostProcessor, i.e. a @SpringBootTest or a @DataJpaTest importing it:
+//
+//     @RegisterExtension
+//     final StatementBudget statementBudget = new StatementBudget();
+//
+//     Order order = statementBudget.atMost(2, () -> orderService.findById(id));
+//
+// An HTTP request performed with MockMvc counts in the statistics of its caller, so it can be measured too.
+// Statements run on other threads only count when the statistics are handed over, as the cart command queue does.
+public class StatementBudget implements BeforeEachCallback, AfterEachCallback {
+
+    private StatementStatistics last;
+
+    @Override
+    public void beforeEach(ExtensionContext context) {
+        last = null;
+        StatementStatistics.attach(null);
+    }
+
+    @Override
+    public void afterEach(ExtensionContext context) {
+        StatementStatistics.attach(null);
+    }
+
+    public <T> T atMost(long statements, Supplier<T> operation) {
+        StatementStatistics statistics = new StatementStatistics(true);
+        T result = StatementStatistics.runWith(statistics, operation);
+        last = statistics;
+        assertThat(statistics.getStatements())
+                .as("statements run, at most %d expected:%n%s", statements, String.join("\n", statistics.getSql()))
+                .isLessThanOrEqualTo(statements);
+        return result;
+    }
+
+    public void atMost(long statements, Runnable operation) {
+        atMost(statements, () -> {
+            operation.run();
+            return null;
+        });
+    }
+
+    // Runs the operation without a budget, e.g. to compare it with another one, see last
+    public <T> T measure(Callable<T> operation) throws Exception {
+        StatementStatistics statistics = new StatementStatistics(true);
+        StatementStatistics previous = StatementStatistics.attach(statistics);
+        try {
+            return operation.call();
+        } finally {
+            StatementStatistics.attach(previous);
+            last = statistics;
+        }
+    }
+
+    // The statistics of the last operation, e.g. to check the rows it fetched
+    public StatementStatistics last() {
+        return last;
+    }
+
+    // Statements of the operation starting with the keyword, e.g. select
+    public static long statements(StatementStatistics statistics, String keyword) {
+        return statistics.getSql().stream()
+                .filter(sql -> sql.trim().toLowerCase(Locale.ROOT).startsWith(keyword))
+                .count();
+    }
+
+}
@@ -0,0 +1,133 @@
+package com.endava.mentorship2022.jdbc;
+
+import com.endava.mentorship2022.model.CartItem;
+import com.endava.mentorship2022.model.Product;
+import com.endava.mentorship2022.model.Role;
+import com.endava.mentorship2022.model.User;
+import com.endava.mentorship2022.model.UserStatus;
+import com.endava.mentorship2022.repository.CartItemRepository;
+import com.endava.mentorship2022.repository.ProductRepository;
+import com.endava.mentorship2022.repository.UserRepository;
+import com.endava.mentorship2022.security.TokenService;
+import com.endava.mentorship2022.security.UserDetailsCache;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles({"h2", "debug"})
+class StatementStatisticsFilterTest {
+
+    private static final String EMAIL = "statistics@example.com";
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private TokenService tokenService;
+
+    @Autowired
+    private UserDetailsCache userDetailsCache;
+
+    @Autowired
+    private UserDetailsService userDetailsService;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private CartItemRepository cartItemRepository;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private String authorization;
+
+    @BeforeEach
+    void setUp() {
+        User user = userRepository.save(new User(null, "Statistics", "User", EMAIL, "hash", "Strada 1",
+                "0700000000", LocalDate.of(1990, 1, 1), UserStatus.ACTIVE, Set.of(new Role("USER"))));
+        Product coffee = productRepository.save(new Product(0, "Coffee", "coffee", "Cafea", "Lavazza", 10, 100, true,
+                null, null));
+        Product tea = productRepository.save(new Product(0, "Tea", "tea", "Ceai", "Lipton", 5, 100, true, null,
+                null));
+        cartItemRepository.saveAll(List.of(new CartItem(0, (short) 2, user, coffee),
+                new CartItem(0, (short) 1, user, tea)));
+        authorization = "Bearer " + tokenService.issue(user.getId(), EMAIL, Set.of()).getAccessToken();
+        // Cached as the login does, so the token finds its user without the database
+        userDetailsCache.invalidate(EMAIL);
+        userDetailsService.loadUserByUsername(EMAIL);
+    }
+
+    @AfterEach
+    void tearDown() {
+        for (String table : List.of("cart_items", "products", "users_roles", "roles", "users")) {
+            jdbcTemplate.update("DELETE FROM " + table);
+        }
+    }
+
+    @Test
+    void shouldSendTheStatisticsOfTheRequestAsHeaders() throws Exception {
+        // given
+        long requestsBefore = meterRegistry.summary("jdbc.request.statements", "method", "GET", "uri", "/cart")
+                .count();
+
+        // when
+        MockHttpServletResponse response = mockMvc.perform(get("/cart")
+                .header(HttpHeaders.AUTHORIZATION, authorization))
+                .andReturn().getResponse();
+
+        // then
+        assertThat(response.getStatus()).isEqualTo(200);
+        assertThat(response.getHeader(StatementStatisticsFilter.STATEMENTS_HEADER)).isEqualTo("1");
+        assertThat(response.getHeader(StatementStatisticsFilter.ROWS_HEADER)).isEqualTo("2");
+        assertThat(Double.parseDouble(response.getHeader(StatementStatisticsFilter.TIME_HEADER))).isPositive();
+        assertThat(response.getContentAsString()).contains("\"name\":\"Coffee\"", "\"name\":\"Tea\"");
+        assertThat(meterRegistry.summary("jdbc.request.statements", "method", "GET", "uri", "/cart").count())
+                .isEqualTo(requestsBefore + 1);
+    }
+
+    // The body of an asynchronous response is passed through as it is written, so it gets no headers
+    @Test
+    void shouldNotBufferStreamedResponses() throws Exception {
+        // given
+        MvcResult streaming = mockMvc.perform(get("/products")
+                .header(HttpHeaders.AUTHORIZATION, authorization)
+                .accept(MediaType.APPLICATION_NDJSON))
+                .andReturn();
+
+        // when
+        MockHttpServletResponse response = mockMvc.perform(asyncDispatch(streaming)).andReturn().getResponse();
+
+        // then
+        assertThat(response.getContentAsString().lines()).hasSize(2);
+        assertThat(response.getHeader(StatementStatisticsFilter.STATEMENTS_HEADER)).isNull();
+    }
+}
@@ -0,0 +1,129 @@
+package com.endava.mentorship2022.repository;
+
+import com.endava.mentorship2022.dto.KeysetPage;
+import com.endava.mentorship2022.exception.InvalidPageRequest;
+import com.endava.mentorship2022.model.Product;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@ActiveProfiles("h2")
+@Import(KeysetPageQuery.class)
+class KeysetPageQueryTest {
+
+    private static final Map<String, Function<Product, ?>> SORT_KEYS = Map.of(
+            "id", Product::getId,
+            "name", Product::getName);
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private KeysetPageQuery keysetPageQuery;
+
+    @BeforeEach
+    void setUp() {
+        List<Product> products = new ArrayList<>();
+        for (int i = 0; i < 23; i++) {
+            Product product = new Product();
+            // Names are deliberately not in id order
+            product.setName("Product " + (char) ('a' + (i * 7) % 23));
+            product.setAlias("product-" + i);
+            product.setDescription("Description");
+            product.setBrand("Brand");
+            product.setPrice(10);
+            product.setStock(5);
+            product.setEnabled(true);
+            products.add(product);
+        }
+        productRepository.saveAll(products);
+    }
+
+    @Test
+    void shouldWalkAllPagesInIdOrder() {
+        // when
+        List<Product> walked = walk("id", "asc", 5);
+
+        // then
+        List<Long> expected = productRepository.findAll().stream()
+                .map(Product::getId).sorted().collect(Collectors.toList());
+        assertThat(walked).extracting(Product::getId).containsExactlyElementsOf(expected);
+    }
+
+    @Test
+    void shouldWalkAllPagesInDescendingNameOrder() {
+        // when
+        List<Product> walked = walk("name", "desc", 4);
+
+        // then
+        List<String> expected = productRepository.findAll().stream()
+                .map(Product::getName).sorted(Comparator.reverseOrder()).collect(Collectors.toList());
+        assertThat(walked).extracting(Product::getName).containsExactlyElementsOf(expected);
+    }
+
+    @Test
+    void shouldReturnNoNextTokenOnLastPage() {
+        // when
+        KeysetPage<Product> page = keysetPageQuery.findPage(Product.class, SORT_KEYS, null, 50, "id", "asc");
+
+        // then
+        assertThat(page.getContent()).hasSize(23);
+        assertThat(page.getNext()).isNull();
+    }
+
+    @Test
+    void willThrowInvalidPageRequestForUnindexedSortField() {
+        assertThatThrownBy(() -> keysetPageQuery.findPage(Product.class, SORT_KEYS, null, 5, "price", "asc"))
+                .isInstanceOf(InvalidPageRequest.class)
+                .hasMessageContaining("Cannot page by price");
+    }
+
+    @Test
+    void willThrowInvalidPageRequestForTokenOfAnotherSort() {
+        // given
+        String next = keysetPageQuery.findPage(Product.class, SORT_KEYS, null, 5, "name", "asc").getNext();
+
+        // then
+        assertThatThrownBy(() -> keysetPageQuery.findPage(Product.class, SORT_KEYS, next, 5, "id", "asc"))
+                .isInstanceOf(InvalidPageRequest.class);
+        assertThatThrownBy(() -> keysetPageQuery.findPage(Product.class, SORT_KEYS, "not a token", 5, "id", "asc"))
+                .isInstanceOf(InvalidPageRequest.class);
+    }
+
+    @Test
+    void willThrowInvalidPageRequestForPageSizeOutOfBounds() {
+        assertThatThrownBy(() -> keysetPageQuery.findPage(Product.class, SORT_KEYS, null, 0, "id", "asc"))
+                .isInstanceOf(InvalidPageRequest.class);
+        assertThatThrownBy(() -> keysetPageQuery.findPage(Product.class, SORT_KEYS, null,
+                KeysetPageQuery.MAX_PAGE_SIZE + 1, "id", "asc"))
+                .isInstanceOf(InvalidPageRequest.class)
+                .hasMessageContaining("between 1 and " + KeysetPageQuery.MAX_PAGE_SIZE);
+    }
+
+    private List<Product> walk(String sortField, String sortDir, int pageSize) {
+        List<Product> walked = new ArrayList<>();
+        String after = null;
+        do {
+            KeysetPage<Product> page = keysetPageQuery.findPage(Product.class, SORT_KEYS, after, pageSize, sortField, sortDir);
+            walked.addAll(page.getContent());
+            after = page.getNext();
+        } while (after != null);
+        return walked;
+    }
+}
@@ -0,0 +1,124 @@
+package com.endava.mentorship2022.repository;
+
+import com.endava.mentorship2022.model.Product;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+
+import static com.endava.mentorship2022.benchmark.Percentiles.percentile;
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Compares page 1 and page 10,000 latency of offset and keyset pagination. Run with: mvn test -Pbenchmark
+@Tag("benchmark")
+@DataJpaTest(showSql = false)
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@ActiveProfiles("h2")
+@Import(KeysetPageQuery.class)
+class KeysetPaginationBenchmarkTest {
+
+    private static final int PRODUCTS = 100_000;
+
+    private static final int PAGE_SIZE = 10;
+
+    private static final int DEEP_PAGE = 10_000;
+
+    private static final int WARMUP = 50;
+
+    private static final int ITERATIONS = 300;
+
+    private static final Map<String, Function<Product, ?>> SORT_KEYS = Map.of(
+            "id", Product::getId,
+            "name", Product::getName);
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private KeysetPageQuery keysetPageQuery;
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void setUp() {
+        List<Object[]> rows = new ArrayList<>();
+        for (int i = 0; i < PRODUCTS; i++) {
+            rows.add(new Object[]{i + 1L, "Product " + i, "product-" + i, "Description", "Brand", 10F, 5, true});
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO products (id, name, alias, description, brand, price, stock, enabled) " +
+                "VALUES (?, ?, ?, ?, ?, ?, ?, ?)", rows);
+    }
+
+    @Test
+    void comparePageOneWithDeepPage() {
+        // given
+        Sort byName = Sort.by("name").ascending().and(Sort.by("id").ascending());
+        String deepToken = skip((DEEP_PAGE - 1) * PAGE_SIZE);
+
+        // when
+        double[] offsetFirst = measure(() -> productRepository.findAll(PageRequest.of(0, PAGE_SIZE, byName)));
+        double[] offsetDeep = measure(() -> productRepository.findAll(PageRequest.of(DEEP_PAGE - 1, PAGE_SIZE, byName)));
+        double[] keysetFirst = measure(() -> keysetPageQuery.findPage(Product.class, SORT_KEYS, null, PAGE_SIZE, "name", "asc"));
+        double[] keysetDeep = measure(() -> keysetPageQuery.findPage(Product.class, SORT_KEYS, deepToken, PAGE_SIZE, "name", "asc"));
+
+        // then
+        System.out.printf("%nPagination over %,d products, page size %d (latency in microseconds)%n", PRODUCTS, PAGE_SIZE);
+        System.out.printf("%-28s %10s %10s%n", "", "median", "p99");
+        report("offset page 1", offsetFirst);
+        report("offset page " + DEEP_PAGE, offsetDeep);
+        report("keyset page 1", keysetFirst);
+        report("keyset page " + DEEP_PAGE, keysetDeep);
+
+        assertThat(percentile(keysetDeep, 50)).isLessThan(percentile(offsetDeep, 50));
+    }
+
+    // Walks in the largest pages allowed up to the token after the given number of rows
+    private String skip(int rows) {
+        String after = null;
+        for (int skipped = 0; skipped < rows; skipped += KeysetPageQuery.MAX_PAGE_SIZE) {
+            int pageSize = Math.min(KeysetPageQuery.MAX_PAGE_SIZE, rows - skipped);
+            after = keysetPageQuery.findPage(Product.class, SORT_KEYS, after, pageSize, "name", "asc").getNext();
+            entityManager.clear();
+        }
+        return after;
+    }
+
+    private double[] measure(Runnable query) {
+        IntStream.range(0, WARMUP).forEach(i -> {
+            query.run();
+            entityManager.clear();
+        });
+        double[] micros = new double[ITERATIONS];
+        for (int i = 0; i < ITERATIONS; i++) {
+            long start = System.nanoTime();
+            query.run();
+            micros[i] = (System.nanoTime() - start) / 1_000.0;
+            entityManager.clear();
+        }
+        Arrays.sort(micros);
+        return micros;
+    }
+
+    private static void report(String label, double[] micros) {
+        System.out.printf("%-28s %10.0f %10.0f%n", label, percentile(micros, 50), percentile(micros, 99));
+    }
+}
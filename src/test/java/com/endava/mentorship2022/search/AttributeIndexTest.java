@@ -0,0 +1,78 @@
+package com.endava.mentorship2022.search;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AttributeIndexTest {
+
+    private static final Attribute CONICAL = new Attribute("Burr type", "Conical");
+
+    private static final Attribute FLAT = new Attribute("Burr type", "Flat");
+
+    private static final Attribute BLACK = new Attribute("Color", "Black");
+
+    private static final Attribute SILVER = new Attribute("Color", "Silver");
+
+    private AttributeIndex attributeIndex;
+
+    @BeforeEach
+    void setUp() {
+        attributeIndex = new AttributeIndex();
+        attributeIndex.replace(1L, List.of(CONICAL, BLACK));
+        attributeIndex.replace(2L, List.of(CONICAL, SILVER));
+        attributeIndex.replace(3L, List.of(FLAT, BLACK));
+    }
+
+    @Test
+    void shouldFindProductsHavingAllAttributes() {
+        // when
+        int[] actual = attributeIndex.find(List.of(CONICAL, BLACK), List.of()).toArray();
+
+        // then
+        assertThat(actual).containsExactly(1);
+    }
+
+    @Test
+    void shouldFindProductsHavingAnyAttribute() {
+        // when
+        int[] actual = attributeIndex.find(List.of(), List.of(SILVER, FLAT)).toArray();
+
+        // then
+        assertThat(actual).containsExactly(2, 3);
+    }
+
+    @Test
+    void shouldCombineAllAndAny() {
+        // when
+        int[] actual = attributeIndex.find(List.of(BLACK), List.of(CONICAL, new Attribute("Color", "Red"))).toArray();
+
+        // then
+        assertThat(actual).containsExactly(1);
+    }
+
+    @Test
+    void shouldIgnoreCaseAndSurroundingWhitespace() {
+        // when
+        int[] actual = attributeIndex.find(List.of(new Attribute(" burr TYPE ", "conical")), List.of()).toArray();
+
+        // then
+        assertThat(actual).containsExactly(1, 2);
+    }
+
+    @Test
+    void shouldReplaceAndRemoveProducts() {
+        // when
+        attributeIndex.replace(1L, List.of(FLAT, SILVER));
+        attributeIndex.remove(3L);
+
+        // then
+        assertThat(attributeIndex.find(List.of(CONICAL), List.of()).toArray()).containsExactly(2);
+        assertThat(attributeIndex.find(List.of(FLAT), List.of()).toArray()).containsExactly(1);
+        assertThat(attributeIndex.find(List.of(BLACK), List.of()).isEmpty()).isTrue();
+        assertThat(attributeIndex.size()).isEqualTo(2);
+    }
+}
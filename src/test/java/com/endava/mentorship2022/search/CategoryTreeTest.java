@@ -0,0 +1,73 @@
+package com.endava.mentorship2022.search;
+
+import com.endava.mentorship2022.dto.CategoryNode;
+import com.endava.mentorship2022.model.Category;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CategoryTreeTest {
+
+    private final Category coffee = new Category(1L, "Coffee", "coffee", null);
+    private final Category beans = new Category(2L, "Beans", "beans", coffee);
+    private final Category ground = new Category(3L, "Ground", "ground", coffee);
+    private final Category arabica = new Category(4L, "Arabica", "arabica", beans);
+    private final Category machines = new Category(5L, "Machines", "machines", null);
+    private final Category espresso = new Category(6L, "Espresso", "espresso", machines);
+
+    private final CategoryTree tree = new CategoryTree(List.of(espresso, arabica, machines, ground, beans, coffee));
+
+    @Test
+    void shouldFindChildrenSortedByName() {
+        assertThat(tree.children(CategoryTree.ROOT)).containsExactly(coffee, machines);
+        assertThat(tree.children(1L)).containsExactly(beans, ground);
+        assertThat(tree.children(4L)).isEmpty();
+        assertThat(tree.children(99L)).isEmpty();
+    }
+
+    @Test
+    void shouldFindBreadcrumbFromTheTop() {
+        assertThat(tree.breadcrumb(4L)).containsExactly(coffee, beans, arabica);
+        assertThat(tree.breadcrumb(5L)).containsExactly(machines);
+        assertThat(tree.breadcrumb(99L)).isEmpty();
+    }
+
+    @Test
+    void shouldFindWholeSubtree() {
+        assertThat(tree.subtreeIds(1L)).containsExactly(1L, 2L, 4L, 3L);
+        assertThat(tree.subtreeIds(2L)).containsExactly(2L, 4L);
+        assertThat(tree.subtreeIds(6L)).containsExactly(6L);
+        assertThat(tree.subtreeIds(99L)).isEmpty();
+    }
+
+    @Test
+    void shouldBuildMenu() {
+        // when
+        List<CategoryNode> menu = tree.menu();
+
+        // then
+        assertThat(menu).extracting(CategoryNode::getName).containsExactly("Coffee", "Machines");
+        assertThat(menu.get(0).getChildren()).extracting(CategoryNode::getName).containsExactly("Beans", "Ground");
+        assertThat(menu.get(0).getChildren().get(0).getChildren()).extracting(CategoryNode::getAlias)
+                .containsExactly("arabica");
+    }
+
+    @Test
+    void shouldSurviveMissingParentsAndCycles() {
+        // given
+        Category orphan = new Category(7L, "Orphan", "orphan", new Category(404L));
+        Category first = new Category(8L, "First", "first", null);
+        Category second = new Category(9L, "Second", "second", first);
+        first.setParent(second);
+
+        // when
+        CategoryTree brokenTree = new CategoryTree(List.of(orphan, first, second));
+
+        // then
+        assertThat(brokenTree.children(CategoryTree.ROOT)).extracting(Category::getId).containsExactly(8L, 7L);
+        assertThat(brokenTree.subtreeIds(8L)).containsExactly(8L, 9L);
+        assertThat(brokenTree.breadcrumb(9L)).extracting(Category::getId).containsExactly(8L, 9L);
+    }
+}
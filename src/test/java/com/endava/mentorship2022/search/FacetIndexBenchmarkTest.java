@@ -0,0 +1,91 @@
+package com.endava.mentorship2022.search;
+
+import com.endava.mentorship2022.dto.FacetCounts;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static com.endava.mentorship2022.benchmark.Percentiles.percentile;
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Measures facet count latency over a large synthetic catalog. Run with: mvn test -Pbenchmark
+@Tag("benchmark")
+class FacetIndexBenchmarkTest {
+
+    private static final int PRODUCTS = 100_000;
+
+    private static final int BRANDS = 50;
+
+    private static final int CATEGORIES = 30;
+
+    private static final String[] PRICE_BANDS = {"0-25", "25-50", "50-100", "100-250", "250+"};
+
+    private static final int WARMUP = 2_000;
+
+    private static final int QUERIES = 10_000;
+
+    private final Random random = new Random(42);
+
+    private FacetIndex facetIndex;
+
+    @BeforeEach
+    void setUp() {
+        facetIndex = new FacetIndex();
+        for (int id = 1; id <= PRODUCTS; id++) {
+            facetIndex.index(id, Map.of(
+                    "brand", "brand-" + random.nextInt(BRANDS),
+                    "category", String.valueOf(random.nextInt(CATEGORIES)),
+                    "price", PRICE_BANDS[random.nextInt(PRICE_BANDS.length)],
+                    "enabled", String.valueOf(random.nextInt(10) > 0),
+                    "inStock", String.valueOf(random.nextInt(4) > 0)));
+        }
+        facetIndex.optimize();
+    }
+
+    @Test
+    void measureCountLatency() {
+        // when
+        for (int i = 0; i < WARMUP; i++) {
+            facetIndex.count(randomFilters());
+        }
+        double[] micros = new double[QUERIES];
+        long matches = 0;
+        for (int i = 0; i < QUERIES; i++) {
+            Map<String, Set<String>> filters = randomFilters();
+            long start = System.nanoTime();
+            FacetCounts counts = facetIndex.count(filters);
+            micros[i] = (System.nanoTime() - start) / 1_000.0;
+            matches += counts.getTotal();
+        }
+        Arrays.sort(micros);
+
+        // then
+        System.out.printf("%nFacet counts over %,d products, %d brands, %d categories (latency in microseconds)%n",
+                PRODUCTS, BRANDS, CATEGORIES);
+        System.out.printf("median %.0f, p99 %.0f, max %.0f%n",
+                percentile(micros, 50), percentile(micros, 99), micros[QUERIES - 1]);
+
+        assertThat(matches).isPositive();
+    }
+
+    // A brand or two, sometimes a category and a price band, usually only enabled and in stock products
+    private Map<String, Set<String>> randomFilters() {
+        Map<String, Set<String>> filters = new HashMap<>();
+        filters.put("brand", Set.of("brand-" + random.nextInt(BRANDS / 2), "brand-" + (BRANDS / 2 + random.nextInt(BRANDS / 2))));
+        if (random.nextBoolean()) {
+            filters.put("category", Set.of(String.valueOf(random.nextInt(CATEGORIES))));
+        }
+        if (random.nextBoolean()) {
+            filters.put("price", Set.of(PRICE_BANDS[random.nextInt(PRICE_BANDS.length)]));
+        }
+        filters.put("enabled", Set.of("true"));
+        filters.put("inStock", Set.of("true"));
+        return filters;
+    }
+}
@@ -0,0 +1,70 @@
+package com.endava.mentorship2022.search;
+
+import com.endava.mentorship2022.dto.FacetCounts;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class FacetIndexTest {
+
+    private FacetIndex facetIndex;
+
+    @BeforeEach
+    void setUp() {
+        facetIndex = new FacetIndex();
+        facetIndex.index(1L, Map.of("brand", "Lavazza", "inStock", "true"));
+        facetIndex.index(2L, Map.of("brand", "Lavazza", "inStock", "false"));
+        facetIndex.index(3L, Map.of("brand", "Tchibo", "inStock", "true"));
+        facetIndex.index(4L, Map.of("brand", "Illy", "inStock", "true"));
+    }
+
+    @Test
+    void shouldCountAllValuesWithoutFilters() {
+        // when
+        FacetCounts actual = facetIndex.count(Map.of());
+
+        // then
+        assertThat(actual.getTotal()).isEqualTo(4);
+        assertThat(actual.getFacets().get("brand")).isEqualTo(Map.of("Lavazza", 2, "Tchibo", 1, "Illy", 1));
+        assertThat(actual.getFacets().get("inStock")).isEqualTo(Map.of("true", 3, "false", 1));
+    }
+
+    @Test
+    void shouldIntersectFacetsButNotFilterTheSelectedFacetItself() {
+        // when
+        FacetCounts actual = facetIndex.count(Map.of("brand", Set.of("Lavazza", "Tchibo"), "inStock", Set.of("true")));
+
+        // then
+        assertThat(actual.getTotal()).isEqualTo(2);
+        assertThat(actual.getFacets().get("brand")).isEqualTo(Map.of("Lavazza", 1, "Tchibo", 1, "Illy", 1));
+        assertThat(actual.getFacets().get("inStock")).isEqualTo(Map.of("true", 2, "false", 1));
+    }
+
+    @Test
+    void shouldMoveReindexedDocumentsAndForgetRemovedOnes() {
+        // when
+        facetIndex.index(2L, Map.of("brand", "Lavazza", "inStock", "true"));
+        facetIndex.remove(4L);
+        facetIndex.optimize();
+
+        // then
+        FacetCounts actual = facetIndex.count(Map.of());
+        assertThat(actual.getTotal()).isEqualTo(3);
+        assertThat(actual.getFacets().get("brand")).isEqualTo(Map.of("Lavazza", 2, "Tchibo", 1));
+        assertThat(actual.getFacets().get("inStock")).isEqualTo(Map.of("true", 3));
+    }
+
+    @Test
+    void shouldMatchNothingForUnknownValue() {
+        // when
+        FacetCounts actual = facetIndex.count(Map.of("brand", Set.of("Jacobs")));
+
+        // then
+        assertThat(actual.getTotal()).isZero();
+        assertThat(actual.getFacets().get("inStock")).isEmpty();
+    }
+}
@@ -0,0 +1,134 @@
+package com.endava.mentorship2022.search;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static com.endava.mentorship2022.benchmark.Percentiles.percentile;
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Measures index build rate and query latency over synthetic products cut from src/main/greatexpectations.txt.
+// Run with: mvn test -Pbenchmark
+@Tag("benchmark")
+class SearchIndexBenchmarkTest {
+
+    // Same as the length of the products.description column
+    private static final int DESCRIPTION_LENGTH = 3000;
+
+    private static final int NAME_WORDS = 4;
+
+    private static final String[] BRANDS = {"Lavazza", "Tchibo", "Jacobs", "Illy", "Doncafé", "Davidoff", "Segafredo"};
+
+    private static final int BUILD_ROUNDS = 5;
+
+    private static final int WARMUP = 2_000;
+
+    private static final int QUERIES = 20_000;
+
+    private final Random random = new Random(42);
+
+    private List<List<String>> products;
+
+    private List<String> words;
+
+    private long textBytes;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        String text = Files.readString(Paths.get("src/main/greatexpectations.txt"));
+        words = Tokenizer.tokenize(text);
+        products = new ArrayList<>();
+        for (String paragraph : splitIntoDescriptions(text)) {
+            String[] paragraphWords = paragraph.trim().split("\\s+");
+            String name = String.join(" ", Arrays.asList(paragraphWords).subList(0, Math.min(NAME_WORDS, paragraphWords.length)));
+            String brand = BRANDS[products.size() % BRANDS.length];
+            products.add(List.of(name, brand, paragraph));
+            textBytes += name.length() + brand.length() + paragraph.length();
+        }
+    }
+
+    @Test
+    void measureBuildRateAndQueryLatency() {
+        // when
+        double[] buildMillis = new double[BUILD_ROUNDS];
+        SearchIndex searchIndex = null;
+        for (int round = 0; round < BUILD_ROUNDS; round++) {
+            searchIndex = new SearchIndex();
+            long start = System.nanoTime();
+            for (int id = 0; id < products.size(); id++) {
+                searchIndex.index(id, products.get(id));
+            }
+            buildMillis[round] = (System.nanoTime() - start) / 1_000_000.0;
+        }
+        Arrays.sort(buildMillis);
+
+        List<String> queries = randomQueries(WARMUP + QUERIES);
+        for (int i = 0; i < WARMUP; i++) {
+            searchIndex.search(queries.get(i), 20);
+        }
+        double[] queryMicros = new double[QUERIES];
+        int hits = 0;
+        for (int i = 0; i < QUERIES; i++) {
+            long start = System.nanoTime();
+            hits += searchIndex.search(queries.get(WARMUP + i), 20).size();
+            queryMicros[i] = (System.nanoTime() - start) / 1_000.0;
+        }
+        Arrays.sort(queryMicros);
+
+        // then
+        double medianBuild = percentile(buildMillis, 50);
+        System.out.printf("%nSearch index over %,d synthetic products (%.1f MB of text)%n", products.size(), textBytes / 1e6);
+        System.out.printf("build: median %.0f ms, %,.0f products/s, %.1f MB/s%n",
+                medianBuild, products.size() / (medianBuild / 1000), textBytes / 1e6 / (medianBuild / 1000));
+        System.out.printf("query latency over %,d queries (microseconds): median %.0f, p99 %.0f, max %.0f%n",
+                QUERIES, percentile(queryMicros, 50), percentile(queryMicros, 99), queryMicros[QUERIES - 1]);
+
+        assertThat(searchIndex.size()).isEqualTo(products.size());
+        assertThat(hits).isPositive();
+    }
+
+    // Paragraphs joined up to the description length, each becoming one product
+    private static List<String> splitIntoDescriptions(String text) {
+        List<String> descriptions = new ArrayList<>();
+        StringBuilder description = new StringBuilder();
+        for (String paragraph : text.split("\\R\\s*\\R")) {
+            if (description.length() > 0 && description.length() + paragraph.length() > DESCRIPTION_LENGTH) {
+                descriptions.add(description.toString());
+                description.setLength(0);
+            }
+            description.append(paragraph.length() > DESCRIPTION_LENGTH ? paragraph.substring(0, DESCRIPTION_LENGTH) : paragraph)
+                    .append('\n');
+        }
+        if (description.length() > 0) {
+            descriptions.add(description.toString());
+        }
+        return descriptions;
+    }
+
+    // A mix of single words, two-word queries and quoted two-word phrases taken from the text
+    private List<String> randomQueries(int count) {
+        List<String> queries = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int position = random.nextInt(words.size() - 1);
+            switch (i % 3) {
+                case 0:
+                    queries.add(words.get(position));
+                    break;
+                case 1:
+                    queries.add(words.get(position) + " " + words.get(random.nextInt(words.size())));
+                    break;
+                default:
+                    queries.add("\"" + words.get(position) + " " + words.get(position + 1) + "\"");
+            }
+        }
+        return queries;
+    }
+}
@@ -0,0 +1,90 @@
+package com.endava.mentorship2022.search;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SearchIndexTest {
+
+    private SearchIndex searchIndex;
+
+    @BeforeEach
+    void setUp() {
+        searchIndex = new SearchIndex();
+        searchIndex.index(1L, List.of("Lavazza cafea boabe", "Lavazza", "O cafea boabe foarte bună"));
+        searchIndex.index(2L, List.of("Tchibo cafea măcinată", "Tchibo", "Cafea măcinată pentru filtru, gust de ciocolată şi frişcă"));
+        searchIndex.index(3L, List.of("Espressor Delonghi", "Delonghi", "Espressor automat pentru cafea boabe"));
+    }
+
+    @Test
+    void shouldMatchRegardlessOfCaseAndDiacritics() {
+        // when
+        List<Long> withDiacritics = ids(searchIndex.search("MĂCINATĂ", 10));
+        List<Long> withoutDiacritics = ids(searchIndex.search("macinata", 10));
+        // Indexed with the cedilla ş, searched with the comma below ș
+        List<Long> withCommaBelow = ids(searchIndex.search("frișcă", 10));
+
+        // then
+        assertThat(withDiacritics).containsExactly(2L);
+        assertThat(withoutDiacritics).containsExactly(2L);
+        assertThat(withCommaBelow).containsExactly(2L);
+    }
+
+    @Test
+    void shouldRankDocumentsMatchingMoreTermsFirst() {
+        // when
+        List<Long> actual = ids(searchIndex.search("lavazza boabe", 10));
+
+        // then
+        assertThat(actual).containsExactly(1L, 3L);
+    }
+
+    @Test
+    void shouldRequireQuotedPhrasesToMatchInOrder() {
+        // when
+        List<Long> phrase = ids(searchIndex.search("\"cafea boabe\"", 10));
+        List<Long> reversedPhrase = ids(searchIndex.search("\"boabe cafea\"", 10));
+
+        // then
+        assertThat(phrase).containsExactlyInAnyOrder(1L, 3L);
+        assertThat(reversedPhrase).isEmpty();
+    }
+
+    @Test
+    void shouldNotMatchPhrasesAcrossFields() {
+        // when
+        List<Long> actual = ids(searchIndex.search("\"delonghi espressor\"", 10));
+
+        // then
+        assertThat(actual).isEmpty();
+    }
+
+    @Test
+    void shouldReplaceAndRemoveDocuments() {
+        // when
+        searchIndex.index(1L, List.of("Lavazza capsule", "Lavazza", "Capsule compatibile"));
+        searchIndex.remove(3L);
+
+        // then
+        assertThat(ids(searchIndex.search("boabe", 10))).isEmpty();
+        assertThat(ids(searchIndex.search("capsule", 10))).containsExactly(1L);
+        assertThat(searchIndex.size()).isEqualTo(2);
+    }
+
+    @Test
+    void shouldLimitNumberOfHits() {
+        // when
+        List<Long> actual = ids(searchIndex.search("cafea", 2));
+
+        // then
+        assertThat(actual).hasSize(2);
+    }
+
+    private static List<Long> ids(List<SearchHit> hits) {
+        return hits.stream().map(SearchHit::getId).collect(Collectors.toList());
+    }
+}
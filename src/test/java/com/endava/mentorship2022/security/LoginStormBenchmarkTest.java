@@ -0,0 +1,179 @@
+package com.endava.mentorship2022.security;
+
+import com.endava.mentorship2022.dto.LoginRequest;
+import com.endava.mentorship2022.model.Product;
+import com.endava.mentorship2022.model.Role;
+import com.endava.mentorship2022.model.User;
+import com.endava.mentorship2022.model.UserStatus;
+import com.endava.mentorship2022.repository.ProductRepository;
+import com.endava.mentorship2022.repository.UserRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.endava.mentorship2022.benchmark.Percentiles.percentile;
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Latency of catalog reads on their own and during a storm of logins, over real HTTP.
+// Run with: mvn test -Pbenchmark
+@Tag("benchmark")
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("h2")
+class LoginStormBenchmarkTest {
+
+    private static final String EMAIL = "storm@example.com";
+
+    private static final String PASSWORD = "storm-password";
+
+    private static final int READERS = 2;
+
+    private static final int LOGIN_CLIENTS = 32;
+
+    private static final Duration PHASE = Duration.ofSeconds(10);
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private PasswordEncoder passwordEncoder;
+
+    @Autowired
+    private TokenService tokenService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private final HttpClient httpClient = HttpClient.newBuilder().executor(Executors.newCachedThreadPool()).build();
+
+    private String authorization;
+
+    @BeforeEach
+    void setUp() {
+        User user = userRepository.save(new User(null, "Storm", "User", EMAIL, passwordEncoder.encode(PASSWORD),
+                "Strada 1", "0700000000", LocalDate.of(1990, 1, 1), UserStatus.ACTIVE, Set.of(new Role("USER"))));
+        for (int i = 0; i < 50; i++) {
+            productRepository.save(new Product(0, "Product " + i, "product-" + i, "Cafea", "Lavazza",
+                    10 + i, 100, true, null, null));
+        }
+        authorization = "Bearer " + tokenService.issue(user.getId(), EMAIL, Set.of()).getAccessToken();
+    }
+
+    @AfterEach
+    void tearDown() {
+        for (String table : List.of("products", "users_roles", "roles", "users")) {
+            jdbcTemplate.update("DELETE FROM " + table);
+        }
+    }
+
+    @Test
+    void catalogLatencyDuringLoginStorm() throws Exception {
+        // warm up
+        readProducts(Duration.ofSeconds(3), new AtomicBoolean());
+
+        List<Long> quiet = readProducts(PHASE, new AtomicBoolean());
+
+        Map<Integer, AtomicLong> logins = new ConcurrentHashMap<>();
+        AtomicBoolean stop = new AtomicBoolean();
+        ExecutorService storm = Executors.newFixedThreadPool(LOGIN_CLIENTS);
+        HttpRequest login = HttpRequest.newBuilder(uri("/auth/login"))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(
+                        objectMapper.writeValueAsString(new LoginRequest(EMAIL, PASSWORD))))
+                .build();
+        for (int i = 0; i < LOGIN_CLIENTS; i++) {
+            storm.submit(() -> {
+                while (!stop.get()) {
+                    int status = httpClient.send(login, HttpResponse.BodyHandlers.discarding()).statusCode();
+                    logins.computeIfAbsent(status, key -> new AtomicLong()).incrementAndGet();
+                }
+                return null;
+            });
+        }
+        Thread.sleep(1000);
+        List<Long> duringStorm = readProducts(PHASE, stop);
+        storm.shutdown();
+        storm.awaitTermination(1, TimeUnit.MINUTES);
+
+        System.out.printf("%nGET /products latency with %d readers, %d login clients in the storm%n",
+                READERS, LOGIN_CLIENTS);
+        System.out.printf("%-14s %8s %8s %8s %8s%n", "", "reads", "p50 ms", "p99 ms", "max ms");
+        print("quiet", quiet);
+        print("login storm", duringStorm);
+        System.out.printf("logins by status during the storm: %s%n", logins);
+        assertThat(duringStorm).isNotEmpty();
+    }
+
+    // Latencies in microseconds of GET /products from READERS threads, stop is set at the end
+    private List<Long> readProducts(Duration duration, AtomicBoolean stop) throws Exception {
+        ExecutorService readers = Executors.newFixedThreadPool(READERS);
+        HttpRequest request = HttpRequest.newBuilder(uri("/products")).header("Authorization", authorization).build();
+        long deadline = System.nanoTime() + duration.toNanos();
+        List<Future<List<Long>>> results = new ArrayList<>();
+        for (int i = 0; i < READERS; i++) {
+            results.add(readers.submit(() -> {
+                List<Long> latencies = new ArrayList<>();
+                while (System.nanoTime() < deadline) {
+                    long start = System.nanoTime();
+                    int status = httpClient.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+                    latencies.add((System.nanoTime() - start) / 1000);
+                    assertThat(status).isEqualTo(200);
+                }
+                return latencies;
+            }));
+        }
+        List<Long> latencies = new ArrayList<>();
+        for (Future<List<Long>> result : results) {
+            latencies.addAll(result.get());
+        }
+        stop.set(true);
+        readers.shutdown();
+        return latencies;
+    }
+
+    private URI uri(String path) {
+        return URI.create("http://localhost:" + port + path);
+    }
+
+    private static void print(String phase, List<Long> latencies) {
+        Collections.sort(latencies);
+        System.out.printf("%-14s %8d %8.1f %8.1f %8.1f%n", phase, latencies.size(),
+                percentile(latencies, 50) / 1000.0, percentile(latencies, 99) / 1000.0,
+                latencies.get(latencies.size() - 1) / 1000.0);
+    }
+}
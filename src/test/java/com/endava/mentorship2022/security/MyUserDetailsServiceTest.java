@@ -0,0 +1,81 @@
+package com.endava.mentorship2022.security;
+
+import com.endava.mentorship2022.model.Role;
+import com.endava.mentorship2022.model.User;
+import com.endava.mentorship2022.model.UserStatus;
+import com.endava.mentorship2022.repository.UserRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@ExtendWith(MockitoExtension.class)
+class MyUserDetailsServiceTest {
+
+    private static final String EMAIL = "ana@example.com";
+
+    @Mock
+    private UserRepository userRepository;
+
+    private final UserDetailsCache userDetailsCache =
+            new UserDetailsCache(100, Duration.ofMinutes(10), new SimpleMeterRegistry());
+
+    private MyUserDetailsService userDetailsService;
+
+    @BeforeEach
+    void setUp() {
+        userDetailsService = new MyUserDetailsService(userRepository, userDetailsCache);
+    }
+
+    @Test
+    void shouldLoadUserOnceUntilInvalidated() {
+        // given
+        given(userRepository.findUserByEmail(EMAIL))
+                .willReturn(user(UserStatus.ACTIVE))
+                .willReturn(user(UserStatus.BLOCKED));
+
+        // when
+        UserDetails first = userDetailsService.loadUserByUsername(EMAIL);
+        UserDetails second = userDetailsService.loadUserByUsername(EMAIL);
+        userDetailsCache.invalidate(EMAIL);
+        UserDetails afterInvalidation = userDetailsService.loadUserByUsername(EMAIL);
+
+        // then
+        assertThat(second).isSameAs(first);
+        assertThat(first.isAccountNonLocked()).isTrue();
+        assertThat(first.getAuthorities()).extracting(GrantedAuthority::getAuthority).containsExactly("USER");
+        assertThat(afterInvalidation.isAccountNonLocked()).isFalse();
+        verify(userRepository, times(2)).findUserByEmail(EMAIL);
+    }
+
+    @Test
+    void shouldNotCacheUnknownUser() {
+        // when
+        // then
+        assertThatThrownBy(() -> userDetailsService.loadUserByUsername(EMAIL))
+                .isInstanceOf(UsernameNotFoundException.class);
+        assertThatThrownBy(() -> userDetailsService.loadUserByUsername(EMAIL))
+                .isInstanceOf(UsernameNotFoundException.class);
+        verify(userRepository, times(2)).findUserByEmail(EMAIL);
+    }
+
+    private static User user(UserStatus status) {
+        return new User(1L, "Ana", "Pop", EMAIL, "hash", "Strada 1", "0700000000",
+                LocalDate.of(1990, 1, 1), status, Set.of(new Role("USER")));
+    }
+}
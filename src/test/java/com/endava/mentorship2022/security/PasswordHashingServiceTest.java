@@ -0,0 +1,85 @@
+package com.endava.mentorship2022.security;
+
+import com.endava.mentorship2022.exception.PasswordHashingBusy;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class PasswordHashingServiceTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private PasswordHashingService passwordHashingService;
+
+    @AfterEach
+    void tearDown() {
+        passwordHashingService.shutdown();
+    }
+
+    @Test
+    void shouldHashAndMatchOffTheCallingThread() {
+        // given
+        passwordHashingService = new PasswordHashingService(new BCryptPasswordEncoder(4), 1, 4, meterRegistry);
+
+        // when
+        String hash = passwordHashingService.encode("secret").join();
+
+        // then
+        assertThat(passwordHashingService.matches("secret", hash).join()).isTrue();
+        assertThat(passwordHashingService.matches("wrong", hash).join()).isFalse();
+        assertThat(passwordHashingService.matches("secret", null).join()).isFalse();
+    }
+
+    @Test
+    void shouldRejectWorkBeyondTheQueue() {
+        // given
+        CountDownLatch release = new CountDownLatch(1);
+        passwordHashingService = new PasswordHashingService(blockingEncoder(release), 1, 2, meterRegistry);
+
+        // when
+        List<CompletableFuture<String>> hashes = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            hashes.add(passwordHashingService.encode("secret"));
+        }
+        release.countDown();
+
+        // then
+        // one running, two queued, two rejected
+        assertThat(hashes.subList(0, 3)).allSatisfy(hash -> assertThat(hash.join()).isEqualTo("hashed"));
+        assertThat(hashes.subList(3, 5)).allSatisfy(hash -> assertThatThrownBy(hash::join)
+                .isInstanceOf(CompletionException.class)
+                .hasCauseInstanceOf(PasswordHashingBusy.class));
+        assertThat(passwordHashingService.rejectedCount()).isEqualTo(2);
+        assertThat(meterRegistry.get("password.hashing.rejected").counter().count()).isEqualTo(2);
+    }
+
+    private static PasswordEncoder blockingEncoder(CountDownLatch release) {
+        return new PasswordEncoder() {
+            @Override
+            public String encode(CharSequence rawPassword) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return "hashed";
+            }
+
+            @Override
+            public boolean matches(CharSequence rawPassword, String encodedPassword) {
+                return encodedPassword.equals(encode(rawPassword));
+            }
+        };
+    }
+}
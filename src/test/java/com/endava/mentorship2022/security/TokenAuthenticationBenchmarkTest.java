@@ -0,0 +1,144 @@
+package com.endava.mentorship2022.security;
+
+import com.endava.mentorship2022.dto.LoginRequest;
+import com.endava.mentorship2022.dto.TokenResponse;
+import com.endava.mentorship2022.model.Product;
+import com.endava.mentorship2022.model.Role;
+import com.endava.mentorship2022.model.User;
+import com.endava.mentorship2022.model.UserStatus;
+import com.endava.mentorship2022.repository.ProductRepository;
+import com.endava.mentorship2022.repository.UserRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+
+// Throughput of authenticated GET /products with Basic auth, which loads the user and runs BCrypt on every
+// request, against a bearer token from /auth/login. Run with: mvn test -Pbenchmark
+@Tag("benchmark")
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles("h2")
+class TokenAuthenticationBenchmarkTest {
+
+    private static final String EMAIL = "bench@example.com";
+
+    private static final String PASSWORD = "bench-password";
+
+    private static final int THREADS = 8;
+
+    private static final Duration WARM_UP = Duration.ofSeconds(2);
+
+    private static final Duration MEASURE = Duration.ofSeconds(5);
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private PasswordEncoder passwordEncoder;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void setUp() {
+        userRepository.save(new User(null, "Bench", "User", EMAIL, passwordEncoder.encode(PASSWORD), "Strada 1",
+                "0700000000", LocalDate.of(1990, 1, 1), UserStatus.ACTIVE, Set.of(new Role("USER"))));
+        for (int i = 0; i < 20; i++) {
+            productRepository.save(new Product(0, "Product " + i, "product-" + i, "Cafea", "Lavazza",
+                    10 + i, 100, true, null, null));
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        for (String table : List.of("products", "users_roles", "roles", "users")) {
+            jdbcTemplate.update("DELETE FROM " + table);
+        }
+    }
+
+    @Test
+    void compareBasicAndTokenThroughput() throws Exception {
+        String basic = "Basic " + Base64.getEncoder().encodeToString(
+                (EMAIL + ":" + PASSWORD).getBytes(StandardCharsets.UTF_8));
+        MvcResult login = mockMvc.perform(post("/auth/login")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(new LoginRequest(EMAIL, PASSWORD))))
+                .andReturn();
+        String tokens = mockMvc.perform(asyncDispatch(login)).andReturn().getResponse().getContentAsString();
+        String bearer = "Bearer " + objectMapper.readValue(tokens, TokenResponse.class).getAccessToken();
+
+        double basicThroughput = throughput(basic);
+        double tokenThroughput = throughput(bearer);
+
+        System.out.printf("%nGET /products with %d threads%n", THREADS);
+        System.out.printf("%-8s %10.0f requests/s%n", "basic", basicThroughput);
+        System.out.printf("%-8s %10.0f requests/s%n", "token", tokenThroughput);
+        assertThat(tokenThroughput).isGreaterThan(basicThroughput);
+    }
+
+    private double throughput(String authorization) throws Exception {
+        run(authorization, WARM_UP);
+        return (double) run(authorization, MEASURE) / MEASURE.toNanos() * 1_000_000_000L;
+    }
+
+    private long run(String authorization, Duration duration) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        long deadline = System.nanoTime() + duration.toNanos();
+        List<Future<Long>> results = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            results.add(executor.submit(() -> {
+                long requests = 0;
+                while (System.nanoTime() < deadline) {
+                    int status = mockMvc.perform(get("/products").header(HttpHeaders.AUTHORIZATION, authorization))
+                            .andReturn().getResponse().getStatus();
+                    assertThat(status).isEqualTo(200);
+                    requests++;
+                }
+                return requests;
+            }));
+        }
+        long total = 0;
+        for (Future<Long> result : results) {
+            total += result.get();
+        }
+        executor.shutdown();
+        return total;
+    }
+}
@@ -0,0 +1,144 @@
+package com.endava.mentorship2022.security;
+
+import com.endava.mentorship2022.model.Role;
+import com.endava.mentorship2022.model.User;
+import com.endava.mentorship2022.model.UserStatus;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+
+import javax.servlet.FilterChain;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.BDDMockito.given;
+
+@ExtendWith(MockitoExtension.class)
+class TokenAuthenticationFilterTest {
+
+    private static final String EMAIL = "ana@example.com";
+
+    private final TokenService tokenService = new TokenService(new ObjectMapper(),
+            "a-test-secret-that-is-long-enough-for-hs256", Duration.ofMinutes(15), Duration.ofDays(7), Clock.systemUTC());
+
+    private final AtomicReference<Authentication> authenticated = new AtomicReference<>();
+
+    private final FilterChain chain = (request, response) ->
+            authenticated.set(SecurityContextHolder.getContext().getAuthentication());
+
+    @Mock
+    private UserDetailsService userDetailsService;
+
+    private TokenAuthenticationFilter tokenAuthenticationFilter;
+
+    @BeforeEach
+    void setUp() {
+        tokenAuthenticationFilter = new TokenAuthenticationFilter(tokenService, userDetailsService,
+                new UserDetailsCache(100, Duration.ofMinutes(10), new SimpleMeterRegistry()));
+    }
+
+    @Test
+    void shouldAuthenticateWithTheCurrentRolesInsteadOfTheToken() throws Exception {
+        // given
+        given(userDetailsService.loadUserByUsername(EMAIL)).willReturn(userDetails(1L, UserStatus.ACTIVE));
+
+        // when
+        MockHttpServletResponse response = filter(token(1L, "ADMIN"));
+
+        // then
+        assertThat(response.getStatus()).isEqualTo(200);
+        assertThat(authenticated.get().getName()).isEqualTo(EMAIL);
+        assertThat(authenticated.get().getAuthorities()).extracting(GrantedAuthority::getAuthority)
+                .containsExactly("USER");
+        assertThat(SecurityContextHolder.getContext().getAuthentication()).isNull();
+    }
+
+    @Test
+    void shouldRefuseTheTokenOfABlockedUser() throws Exception {
+        // given
+        given(userDetailsService.loadUserByUsername(EMAIL)).willReturn(userDetails(1L, UserStatus.BLOCKED));
+
+        // when
+        MockHttpServletResponse response = filter(token(1L, "USER"));
+
+        // then
+        assertThat(response.getStatus()).isEqualTo(401);
+        assertThat(authenticated.get()).isNull();
+    }
+
+    @Test
+    void shouldRefuseTheTokenOfADeletedUser() throws Exception {
+        // given
+        given(userDetailsService.loadUserByUsername(EMAIL)).willThrow(new UsernameNotFoundException(EMAIL));
+
+        // when
+        MockHttpServletResponse response = filter(token(1L, "USER"));
+
+        // then
+        assertThat(response.getStatus()).isEqualTo(401);
+        assertThat(authenticated.get()).isNull();
+    }
+
+    // The cache of this instance still had a user deleted and created again elsewhere
+    @Test
+    void shouldLoadTheUserAgainWhenTheCachedOneHasAnotherId() throws Exception {
+        // given
+        given(userDetailsService.loadUserByUsername(EMAIL))
+                .willReturn(userDetails(1L, UserStatus.ACTIVE), userDetails(2L, UserStatus.ACTIVE));
+
+        // when
+        MockHttpServletResponse response = filter(token(2L, "USER"));
+
+        // then
+        assertThat(response.getStatus()).isEqualTo(200);
+        assertThat(((AuthenticatedUser) authenticated.get().getPrincipal()).getId()).isEqualTo(2L);
+    }
+
+    @Test
+    void shouldRefuseATokenWhoseEmailNowBelongsToAnotherUser() throws Exception {
+        // given
+        given(userDetailsService.loadUserByUsername(EMAIL)).willReturn(userDetails(2L, UserStatus.ACTIVE));
+
+        // when
+        MockHttpServletResponse response = filter(token(1L, "USER"));
+
+        // then
+        assertThat(response.getStatus()).isEqualTo(401);
+        assertThat(authenticated.get()).isNull();
+    }
+
+    private MockHttpServletResponse filter(String token) throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/products");
+        request.addHeader(HttpHeaders.AUTHORIZATION, "Bearer " + token);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        tokenAuthenticationFilter.doFilter(request, response, chain);
+        return response;
+    }
+
+    private String token(long id, String role) {
+        return tokenService.issue(id, EMAIL, List.of(new SimpleGrantedAuthority(role))).getAccessToken();
+    }
+
+    private static MyUserDetails userDetails(long id, UserStatus status) {
+        return new MyUserDetails(new User(id, "Ana", "Pop", EMAIL, "hash", "Strada 1", "0700000000",
+                LocalDate.of(1990, 1, 1), status, Set.of(new Role("USER"))));
+    }
+}
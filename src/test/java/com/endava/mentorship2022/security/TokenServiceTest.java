@@ -0,0 +1,84 @@
+package com.endava.mentorship2022.security;
+
+import com.endava.mentorship2022.dto.TokenResponse;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class TokenServiceTest {
+
+    private static final String SECRET = "a-test-secret-that-is-long-enough-for-hs256";
+
+    private static final Instant NOW = Instant.parse("2022-06-01T10:00:00Z");
+
+    private final TokenService tokenService = tokenService(NOW);
+
+    @Test
+    void shouldVerifyIssuedAccessToken() {
+        // given
+        TokenResponse tokens = tokenService.issue(7L, "ana@example.com", List.of(new SimpleGrantedAuthority("ADMIN")));
+
+        // when
+        Optional<AuthenticatedUser> user = tokenService.verify(tokens.getAccessToken(), TokenService.ACCESS);
+
+        // then
+        assertThat(tokens.getExpiresIn()).isEqualTo(900);
+        assertThat(user).hasValueSatisfying(actual -> {
+            assertThat(actual.getId()).isEqualTo(7L);
+            assertThat(actual.getName()).isEqualTo("ana@example.com");
+            assertThat(actual.getAuthorities()).extracting(GrantedAuthority::getAuthority).containsExactly("ADMIN");
+        });
+    }
+
+    @Test
+    void shouldRejectTokenOfOtherTypeOrTamperedOrSignedWithOtherKey() {
+        // given
+        TokenResponse tokens = tokenService.issue(7L, "ana@example.com", List.of());
+        String access = tokens.getAccessToken();
+        String tampered = access.substring(0, access.lastIndexOf('.') - 2) + "xx" + access.substring(access.lastIndexOf('.'));
+        TokenService otherKey = new TokenService(new ObjectMapper(), SECRET + "-other", Duration.ofMinutes(15),
+                Duration.ofDays(7), Clock.fixed(NOW, ZoneOffset.UTC));
+
+        // then
+        assertThat(tokenService.verify(tokens.getRefreshToken(), TokenService.ACCESS)).isEmpty();
+        assertThat(tokenService.verify(tokens.getRefreshToken(), TokenService.REFRESH)).isPresent();
+        assertThat(tokenService.verify(tampered, TokenService.ACCESS)).isEmpty();
+        assertThat(otherKey.verify(access, TokenService.ACCESS)).isEmpty();
+        assertThat(tokenService.verify("not.a-token", TokenService.ACCESS)).isEmpty();
+    }
+
+    @Test
+    void shouldRejectExpiredToken() {
+        // given
+        String access = tokenService.issue(7L, "ana@example.com", List.of()).getAccessToken();
+
+        // when
+        Optional<AuthenticatedUser> user = tokenService(NOW.plus(Duration.ofMinutes(15))).verify(access, TokenService.ACCESS);
+
+        // then
+        assertThat(user).isEmpty();
+    }
+
+    @Test
+    void shouldRejectShortSecret() {
+        assertThatThrownBy(() -> new TokenService(new ObjectMapper(), "short", Duration.ofMinutes(15),
+                Duration.ofDays(7), Clock.systemUTC()))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static TokenService tokenService(Instant now) {
+        return new TokenService(new ObjectMapper(), SECRET, Duration.ofMinutes(15), Duration.ofDays(7),
+                Clock.fixed(now, ZoneOffset.UTC));
+    }
+}
@@ -0,0 +1,109 @@
+package com.endava.mentorship2022.service;
+
+import com.endava.mentorship2022.dto.LoginRequest;
+import com.endava.mentorship2022.dto.RefreshRequest;
+import com.endava.mentorship2022.dto.TokenResponse;
+import com.endava.mentorship2022.exception.InvalidCredentials;
+import com.endava.mentorship2022.model.Role;
+import com.endava.mentorship2022.model.User;
+import com.endava.mentorship2022.model.UserStatus;
+import com.endava.mentorship2022.security.MyUserDetails;
+import com.endava.mentorship2022.security.PasswordHashingService;
+import com.endava.mentorship2022.security.TokenService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.Set;
+import java.util.concurrent.CompletionException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.BDDMockito.given;
+
+@ExtendWith(MockitoExtension.class)
+class AuthServiceTest {
+
+    @Mock
+    private UserDetailsService userDetailsService;
+
+    private final TokenService tokenService = new TokenService(new ObjectMapper(),
+            "a-test-secret-that-is-long-enough-for-hs256", Duration.ofMinutes(15), Duration.ofDays(7));
+
+    private final BCryptPasswordEncoder passwordEncoder = new BCryptPasswordEncoder(4);
+
+    private final PasswordHashingService passwordHashingService =
+            new PasswordHashingService(passwordEncoder, 1, 10, new SimpleMeterRegistry());
+
+    private AuthService authService;
+
+    @BeforeEach
+    void setUp() {
+        authService = new AuthService(userDetailsService, tokenService, passwordHashingService);
+    }
+
+    @Test
+    void canLoginAndRefresh() {
+        // given
+        MyUserDetails user = new MyUserDetails(user(UserStatus.ACTIVE));
+        given(userDetailsService.loadUserByUsername("ana@example.com")).willReturn(user);
+
+        // when
+        TokenResponse tokens = authService.login(new LoginRequest("ana@example.com", "password")).join();
+        TokenResponse refreshed = authService.refresh(new RefreshRequest(tokens.getRefreshToken()));
+
+        // then
+        assertThat(tokenService.verify(tokens.getAccessToken(), TokenService.ACCESS)).hasValueSatisfying(
+                actual -> assertThat(actual.getId()).isEqualTo(1L));
+        assertThat(tokenService.verify(refreshed.getAccessToken(), TokenService.ACCESS)).isPresent();
+    }
+
+    @Test
+    void willRejectWrongPasswordAndUnknownEmail() {
+        // given
+        given(userDetailsService.loadUserByUsername("ana@example.com"))
+                .willReturn(new MyUserDetails(user(UserStatus.ACTIVE)));
+        given(userDetailsService.loadUserByUsername("nobody@example.com"))
+                .willThrow(new UsernameNotFoundException("not found"));
+
+        // when
+        // then
+        assertThatThrownBy(() -> authService.login(new LoginRequest("ana@example.com", "wrong")).join())
+                .isInstanceOf(CompletionException.class)
+                .hasCauseInstanceOf(InvalidCredentials.class)
+                .hasMessageContaining("Invalid email or password.");
+        assertThatThrownBy(() -> authService.login(new LoginRequest("nobody@example.com", "password")).join())
+                .hasCauseInstanceOf(InvalidCredentials.class)
+                .hasMessageContaining("Invalid email or password.");
+    }
+
+    @Test
+    void willNotRefreshBlockedUser() {
+        // given
+        String refreshToken = tokenService.issue(1L, "ana@example.com", Set.of()).getRefreshToken();
+        given(userDetailsService.loadUserByUsername("ana@example.com"))
+                .willReturn(new MyUserDetails(user(UserStatus.BLOCKED)));
+
+        // when
+        // then
+        assertThatThrownBy(() -> authService.refresh(new RefreshRequest(refreshToken)))
+                .isInstanceOf(InvalidCredentials.class)
+                .hasMessageContaining("The account is not active.");
+    }
+
+    private static final String PASSWORD_HASH = new BCryptPasswordEncoder(4).encode("password");
+
+    private static User user(UserStatus status) {
+        return new User(1L, "Ana", "Pop", "ana@example.com", PASSWORD_HASH, "Strada 1", "0700000000",
+                LocalDate.of(1990, 1, 1), status, Set.of(new Role("USER")));
+    }
+}
@@ -1,5 +1,8 @@
 package com.endava.mentorship2022.service;
 
+import com.endava.mentorship2022.cart.CartCommandQueue;
+import com.endava.mentorship2022.cart.DatabaseCartStore;
+import com.endava.mentorship2022.dto.CartOperation;
 import com.endava.mentorship2022.exception.CartItemException;
 import com.endava.mentorship2022.model.CartItem;
 import com.endava.mentorship2022.model.Product;
@@ -8,15 +11,18 @@ import com.endava.mentorship2022.model.TechnicalDetail;
 import com.endava.mentorship2022.model.User;
 import com.endava.mentorship2022.model.UserStatus;
 import com.endava.mentorship2022.repository.CartItemRepository;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.PlatformTransactionManager;
 
+import javax.persistence.EntityManager;
 import java.time.LocalDate;
-import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
@@ -35,6 +41,14 @@ class CartItemServiceTest {
     @Mock
     private ProductService productService;
 
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @Mock
+    private EntityManager entityManager;
+
+    private CartCommandQueue cartCommandQueue;
+
     private CartItemService cartItemService;
 
     User user;
@@ -47,7 +61,9 @@ class CartItemServiceTest {
 
     @BeforeEach
     void setUp() {
-        cartItemService = new CartItemService(cartItemRepository, productService);
+        cartCommandQueue = new CartCommandQueue(1, transactionManager, entityManager);
+        cartItemService = new CartItemService(new DatabaseCartStore(cartItemRepository), productService,
+                cartCommandQueue);
 
         user = new User(1L,
                 "FirstName",
@@ -90,6 +106,11 @@ class CartItemServiceTest {
         );
     }
 
+    @AfterEach
+    void tearDown() {
+        cartCommandQueue.shutdown();
+    }
+
     @Test
     void canFindCartItemsByUser() {
         // given
@@ -219,53 +240,122 @@ class CartItemServiceTest {
     }
 
     @Test
-    void canRemoveProductFromCart() {
+    void willThrowWhenQuantityIsNotPositive() {
         // given
         given(cartItemRepository.findCartItemByUserIdAndProductId(anyLong(), anyLong())).willReturn(cartItems.get(0));
 
+        // when
+        assertThatThrownBy(() -> cartItemService.addProductToCart(user, product1.getId(), (short) 0))
+                .isInstanceOf(CartItemException.class)
+                .hasMessageContaining("Quantity must be at least 1.");
+        assertThatThrownBy(() -> cartItemService.updateProductQuantity(user, product1.getId(), (short) -2))
+                .isInstanceOf(CartItemException.class)
+                .hasMessageContaining("Could not update quantity to -2. Quantity must be at least 1");
+
+        // then
+        verify(productService, never()).findById(anyLong());
+        verify(cartItemRepository, never()).save(any(CartItem.class));
+        verify(cartItemRepository, never()).updateProductQuantity(anyShort(), anyLong(), anyLong());
+    }
+
+    @Test
+    void canRemoveProductFromCart() {
+        // given
+        given(cartItemRepository.deleteCartItemByUserIdAndProductId(anyLong(), anyLong())).willReturn(1);
+
         // when
         String actual = cartItemService.removeProductFromCart(user, product1.getId());
 
         // then
-        verify(cartItemRepository).deleteCartItemByUserIdAndProductId(anyLong(), anyLong());
+        verify(cartItemRepository, never()).findCartItemByUserIdAndProductId(anyLong(), anyLong());
         assertThat(actual).isEqualTo("The product has been removed from your shopping cart.");
     }
 
     @Test
     void cannotRemoveProduct_notFoundInCart() {
         // given
-        given(cartItemRepository.findCartItemByUserIdAndProductId(anyLong(), anyLong())).willReturn(null);
+        given(cartItemRepository.deleteCartItemByUserIdAndProductId(anyLong(), anyLong())).willReturn(0);
 
         // when
         String actual = cartItemService.removeProductFromCart(user, 55L);
 
         // then
         assertThat(actual).isEqualTo("The product is not in the cart.");
-        verify(cartItemRepository, never()).deleteCartItemByUserIdAndProductId(anyLong(), anyLong());
     }
 
     @Test
     void canDeleteCartByUser() {
         // given
-        given(cartItemRepository.findCartItemsByUserId(anyLong())).willReturn(cartItems);
+        given(cartItemRepository.deleteCartItemsByUserId(anyLong())).willReturn(2);
 
         // when
         String actual = cartItemService.deleteCartByUser(user);
 
         // then
+        verify(cartItemRepository, never()).findCartItemsByUserId(anyLong());
         assertThat(actual).isEqualTo("Cart has been deleted!");
     }
 
     @Test
     void cannotDeleteCartByUser_cartIsEmpty() {
         // given
-        given(cartItemRepository.findCartItemsByUserId(anyLong())).willReturn(Collections.emptyList());
+        given(cartItemRepository.deleteCartItemsByUserId(anyLong())).willReturn(0);
 
         // when
         String actual = cartItemService.deleteCartByUser(user);
 
         // then
-        verify(cartItemRepository, never()).deleteCartItemsByUserId(anyLong());
         assertThat(actual).isEqualTo("Cart is already empty");
     }
-}
\ No newline at end of file
+
+    @Test
+    void canApplyOperationsInOneGo() {
+        // given
+        Product product3 = new Product(3L, "Product 3", "product-3", "Description", "No-name", 75.86F, 2000, true,
+                null, Set.of());
+        given(productService.findAllById(Set.of(3L))).willReturn(Map.of(3L, product3));
+        given(cartItemRepository.findCartItemsByUserId(anyLong())).willReturn(cartItems);
+        List<CartOperation> operations = List.of(
+                new CartOperation(CartOperation.Type.ADD, 3L, (short) 3),
+                new CartOperation(CartOperation.Type.UPDATE, 1L, (short) 5),
+                new CartOperation(CartOperation.Type.REMOVE, 2L, (short) 0),
+                new CartOperation(CartOperation.Type.ADD, 3L, (short) 1),
+                new CartOperation(CartOperation.Type.UPDATE, 2L, (short) 4));
+
+        // when
+        List<String> actual = cartItemService.applyOperations(user, operations);
+
+        // then
+        assertThat(actual).isEqualTo(List.of(
+                "Product Product 3 x3 has been added to the cart.",
+                "Quantity has been updated! New quantity: 5",
+                "The product has been removed from your shopping cart.",
+                "Product Product 3 x4 has been added to the cart.",
+                "The product is not in the cart."));
+        verify(productService, never()).findById(anyLong());
+        verify(cartItemRepository).deleteCartItemsByUserIdAndProductIdIn(1L, List.of(2L));
+        verify(cartItemRepository).saveAll(List.of(
+                new CartItem(1L, (short) 5, user, product1),
+                new CartItem(0, (short) 4, user, product3)));
+    }
+
+    @Test
+    void willNotApplyAnyOperationWhenOneFails() {
+        // given
+        given(productService.findAllById(Set.of(1L))).willReturn(Map.of(1L, product1));
+        given(cartItemRepository.findCartItemsByUserId(anyLong())).willReturn(cartItems);
+        List<CartOperation> operations = List.of(
+                new CartOperation(CartOperation.Type.REMOVE, 2L, (short) 0),
+                new CartOperation(CartOperation.Type.ADD, 1L, (short) 3),
+                new CartOperation(CartOperation.Type.ADD, 1L, (short) 11));
+
+        // when
+        assertThatThrownBy(() -> cartItemService.applyOperations(user, operations))
+                .isInstanceOf(CartItemException.class)
+                .hasMessageContaining("already 5 item(s)");
+
+        // then
+        verify(cartItemRepository, never()).deleteCartItemsByUserIdAndProductIdIn(anyLong(), any());
+        verify(cartItemRepository, never()).saveAll(any());
+    }
+}
@@ -1,7 +1,9 @@
 package com.endava.mentorship2022.service;
 
+import com.endava.mentorship2022.event.ProductDeletedEvent;
 import com.endava.mentorship2022.exception.CategoryNotFound;
 import com.endava.mentorship2022.model.Category;
+import com.endava.mentorship2022.model.Product;
 import com.endava.mentorship2022.repository.CategoryRepository;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -9,6 +11,7 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
 
 import java.util.List;
 import java.util.Optional;
@@ -25,11 +28,20 @@ class CategoryServiceTest {
     @Mock
     private CategoryRepository categoryRepository;
 
+    @Mock
+    private ProductService productService;
+
+    @Mock
+    private ProductCache productCache;
+
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
     private CategoryService categoryService;
 
     @BeforeEach
     void setUp() {
-        categoryService = new CategoryService(categoryRepository);
+        categoryService = new CategoryService(categoryRepository, productService, productCache, eventPublisher);
     }
 
     @Test
@@ -100,13 +112,67 @@ class CategoryServiceTest {
                 "Sub-Category2",
                 "sub-category2",
                 category2);
-        given(categoryRepository.findAllByParent(new Category(2L))).willReturn(List.of(category3));
+        given(categoryRepository.findAll()).willReturn(List.of(category1, category2, category3));
 
         // when
         List actualCategories = categoryService.findAllByParent(2L);
+        categoryService.findAllByParent(0L);
 
         // then
         assertThat(actualCategories).isEqualTo(List.of(category3));
+        verify(categoryRepository, times(1)).findAll();
+    }
+
+    @Test
+    void canFindProductsInWholeSubtree() {
+        // given
+        Category category1 = new Category(1L,
+                "Category1",
+                "category1",
+                null);
+        Category category2 = new Category(2L,
+                "Category2",
+                "category2",
+                category1);
+        Category category3 = new Category(3L,
+                "Sub-Category2",
+                "sub-category2",
+                category2);
+        List<Product> products = List.of(new Product(1L), new Product(2L));
+        given(categoryRepository.findAll()).willReturn(List.of(category1, category2, category3));
+        given(productService.findAllByCategoryIds(List.of(1L, 2L, 3L))).willReturn(products);
+
+        // when
+        List<Product> actualProducts = categoryService.findProductsInSubtree(1L);
+
+        // then
+        assertThat(actualProducts).isEqualTo(products);
+        assertThat(categoryService.findBreadcrumb(3L)).isEqualTo(List.of(category1, category2, category3));
+        assertThatThrownBy(() -> categoryService.findProductsInSubtree(4L))
+                .isInstanceOf(CategoryNotFound.class);
+    }
+
+    @Test
+    void canReloadTreeAfterSave() {
+        // given
+        Category category1 = new Category(1L,
+                "Category1",
+                "category1",
+                null);
+        Category category2 = new Category(2L,
+                "Category2",
+                "category2",
+                category1);
+        given(categoryRepository.findAll()).willReturn(List.of(category1), List.of(category1, category2));
+        given(categoryRepository.save(category2)).willReturn(category2);
+        categoryService.findAllByParent(1L);
+
+        // when
+        categoryService.save(category2);
+
+        // then
+        assertThat(categoryService.findAllByParent(1L)).isEqualTo(List.of(category2));
+        verify(categoryRepository, times(2)).findAll();
     }
 
     @Test
@@ -145,6 +211,7 @@ class CategoryServiceTest {
                 ArgumentCaptor.forClass(Category.class);
 
         verify(categoryRepository).save(categoryArgumentCaptor.capture());
+        verify(productCache).invalidateAll();
 
         Category capturedCategory = categoryArgumentCaptor.getValue();
 
@@ -177,12 +244,18 @@ class CategoryServiceTest {
                 "category1",
                 null);
         given(categoryRepository.findById(1L)).willReturn(Optional.of(category));
+        given(productService.findIdsByCategoryId(1L)).willReturn(List.of(4L, 5L));
 
         // when
         categoryService.deleteById(1L);
 
         // then
+        ArgumentCaptor<ProductDeletedEvent> events = ArgumentCaptor.forClass(ProductDeletedEvent.class);
         verify(categoryRepository).delete(category);
+        verify(productCache).invalidateAll();
+        verify(eventPublisher, times(2)).publishEvent(events.capture());
+        assertThat(events.getAllValues().get(0).getProductId()).isEqualTo(4L);
+        assertThat(events.getAllValues().get(1).getProductId()).isEqualTo(5L);
     }
 
     @Test
@@ -0,0 +1,218 @@
+package com.endava.mentorship2022.service;
+
+import com.endava.mentorship2022.cart.CartCommandQueue;
+import com.endava.mentorship2022.dto.OrderTicket;
+import com.endava.mentorship2022.exception.CheckoutBusy;
+import com.endava.mentorship2022.exception.InsufficientStock;
+import com.endava.mentorship2022.exception.OrderTicketNotFound;
+import com.endava.mentorship2022.model.Order;
+import com.endava.mentorship2022.model.User;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.then;
+
+@ExtendWith(MockitoExtension.class)
+class CheckoutQueueTest {
+
+    private static final long TIMEOUT_MILLIS = 5_000;
+
+    @Mock
+    private CheckoutService checkoutService;
+
+    @Mock
+    private CartCommandQueue cartCommandQueue;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private CheckoutQueue checkoutQueue;
+
+    @AfterEach
+    void tearDown() {
+        checkoutQueue.shutdown();
+    }
+
+    @Test
+    void shouldPlaceQueuedCheckoutsTogether() throws InterruptedException {
+        // given
+        List<Integer> groupSizes = new CopyOnWriteArrayList<>();
+        CountDownLatch firstGroupStarted = new CountDownLatch(1);
+        CountDownLatch releaseFirstGroup = new CountDownLatch(1);
+        given(checkoutService.placeOrders(anyList())).willAnswer(invocation -> {
+            List<User> users = invocation.getArgument(0);
+            groupSizes.add(users.size());
+            firstGroupStarted.countDown();
+            releaseFirstGroup.await();
+            return users.stream().map(user -> order(user.getId() * 10)).collect(Collectors.toList());
+        });
+        checkoutQueue = new CheckoutQueue(checkoutService, cartCommandQueue, true, 100, 1, 20, 2, Duration.ofMinutes(1), meterRegistry);
+
+        // when
+        OrderTicket first = checkoutQueue.submit(user(1L));
+        assertThat(firstGroupStarted.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)).isTrue();
+        OrderTicket second = checkoutQueue.submit(user(2L));
+        OrderTicket third = checkoutQueue.submit(user(3L));
+        releaseFirstGroup.countDown();
+
+        // then
+        assertThat(first.getStatus()).isEqualTo(OrderTicket.Status.QUEUED);
+        assertThat(awaitDone(user(3L), third).getOrderId()).isEqualTo(30L);
+        assertThat(awaitDone(user(2L), second).getStatus()).isEqualTo(OrderTicket.Status.PLACED);
+        assertThat(awaitDone(user(1L), first).getOrderId()).isEqualTo(10L);
+        assertThat(groupSizes).containsExactly(1, 2);
+        assertThat(meterRegistry.summary("checkout.group.size").count()).isEqualTo(2);
+        assertThat(meterRegistry.timer("checkout.queue.wait").count()).isEqualTo(3);
+    }
+
+    // Users 2 and 4 share a cart command queue, user 3 has another one and waits for the next group
+    @Test
+    void shouldGroupUsersOfAtMostGroupStripesQueues() throws InterruptedException {
+        // given
+        List<List<Long>> groups = new CopyOnWriteArrayList<>();
+        CountDownLatch firstGroupStarted = new CountDownLatch(1);
+        CountDownLatch releaseFirstGroup = new CountDownLatch(1);
+        given(cartCommandQueue.stripeOf(any()))
+                .willAnswer(invocation -> (int) (invocation.<User>getArgument(0).getId() % 2));
+        given(checkoutService.placeOrders(anyList())).willAnswer(invocation -> {
+            List<User> users = invocation.getArgument(0);
+            groups.add(users.stream().map(User::getId).collect(Collectors.toList()));
+            firstGroupStarted.countDown();
+            releaseFirstGroup.await();
+            return users.stream().map(user -> order(user.getId() * 10)).collect(Collectors.toList());
+        });
+        checkoutQueue = new CheckoutQueue(checkoutService, cartCommandQueue, true, 100, 1, 20, 1, Duration.ofMinutes(1),
+                meterRegistry);
+        OrderTicket first = checkoutQueue.submit(user(1L));
+        assertThat(firstGroupStarted.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)).isTrue();
+
+        // when
+        OrderTicket second = checkoutQueue.submit(user(2L));
+        OrderTicket third = checkoutQueue.submit(user(3L));
+        OrderTicket fourth = checkoutQueue.submit(user(4L));
+        releaseFirstGroup.countDown();
+
+        // then
+        assertThat(awaitDone(user(3L), third).getOrderId()).isEqualTo(30L);
+        assertThat(awaitDone(user(4L), fourth).getOrderId()).isEqualTo(40L);
+        assertThat(awaitDone(user(2L), second).getOrderId()).isEqualTo(20L);
+        assertThat(awaitDone(user(1L), first).getOrderId()).isEqualTo(10L);
+        assertThat(groups).containsExactly(List.of(1L), List.of(2L, 4L), List.of(3L));
+    }
+
+    @Test
+    void shouldPlaceOneByOneWhenTheGroupFails() throws InterruptedException {
+        // given
+        CountDownLatch firstGroupStarted = new CountDownLatch(1);
+        CountDownLatch releaseFirstGroup = new CountDownLatch(1);
+        given(checkoutService.placeOrders(anyList())).willAnswer(invocation -> {
+            List<User> users = invocation.getArgument(0);
+            firstGroupStarted.countDown();
+            releaseFirstGroup.await();
+            if (users.stream().anyMatch(user -> user.getId() == 3L)) {
+                throw new InsufficientStock("Not enough stock for Coffee, 2 requested.");
+            }
+            return List.of(order(users.get(0).getId() * 10));
+        });
+        checkoutQueue = new CheckoutQueue(checkoutService, cartCommandQueue, true, 100, 1, 20, 2, Duration.ofMinutes(1), meterRegistry);
+        checkoutQueue.submit(user(1L));
+        assertThat(firstGroupStarted.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)).isTrue();
+
+        // when
+        OrderTicket placed = checkoutQueue.submit(user(2L));
+        OrderTicket outOfStock = checkoutQueue.submit(user(3L));
+        releaseFirstGroup.countDown();
+
+        // then
+        assertThat(awaitDone(user(2L), placed).getOrderId()).isEqualTo(20L);
+        OrderTicket failed = awaitDone(user(3L), outOfStock);
+        assertThat(failed.getStatus()).isEqualTo(OrderTicket.Status.FAILED);
+        assertThat(failed.getMessage()).contains("Not enough stock for Coffee");
+    }
+
+    @Test
+    void shouldRefuseWhenTheQueueIsFull() {
+        // given
+        checkoutQueue = new CheckoutQueue(checkoutService, cartCommandQueue, false, 1, 1, 20, 2, Duration.ofMinutes(1), meterRegistry);
+        OrderTicket queued = checkoutQueue.submit(user(1L));
+
+        // when, then
+        assertThatThrownBy(() -> checkoutQueue.submit(user(2L))).isInstanceOf(CheckoutBusy.class);
+        assertThat(meterRegistry.counter("checkout.queue.rejected").count()).isEqualTo(1);
+        assertThat(meterRegistry.get("checkout.queue.depth").gauge().value()).isEqualTo(1);
+        assertThat(checkoutQueue.find(user(1L), queued.getId()).getStatus()).isEqualTo(OrderTicket.Status.QUEUED);
+        assertThatThrownBy(() -> checkoutQueue.find(user(2L), queued.getId())).isInstanceOf(OrderTicketNotFound.class);
+    }
+
+    @Test
+    void shouldQueueOnlyWhenTheTransactionCommits() throws InterruptedException {
+        // given
+        given(checkoutService.placeOrders(anyList())).willReturn(List.of(order(20L)));
+        checkoutQueue = new CheckoutQueue(checkoutService, cartCommandQueue, true, 100, 1, 20, 2, Duration.ofMinutes(1), meterRegistry);
+
+        // when
+        OrderTicket rolledBack = inTransaction(() -> checkoutQueue.submit(user(1L)),
+                TransactionSynchronization.STATUS_ROLLED_BACK);
+        OrderTicket committed = inTransaction(() -> checkoutQueue.submit(user(2L)),
+                TransactionSynchronization.STATUS_COMMITTED);
+
+        // then
+        assertThat(awaitDone(user(2L), committed).getOrderId()).isEqualTo(20L);
+        assertThatThrownBy(() -> checkoutQueue.find(user(1L), rolledBack.getId()))
+                .isInstanceOf(OrderTicketNotFound.class);
+        then(checkoutService).should().placeOrders(List.of(user(2L)));
+    }
+
+    private static <T> T inTransaction(Supplier<T> work, int status) {
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            T result = work.get();
+            TransactionSynchronizationManager.getSynchronizations()
+                    .forEach(synchronization -> synchronization.afterCompletion(status));
+            return result;
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    private OrderTicket awaitDone(User user, OrderTicket ticket) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        OrderTicket current = checkoutQueue.find(user, ticket.getId());
+        while (current.getStatus() == OrderTicket.Status.QUEUED && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+            current = checkoutQueue.find(user, ticket.getId());
+        }
+        return current;
+    }
+
+    private static User user(long id) {
+        User user = new User();
+        user.setId(id);
+        return user;
+    }
+
+    private static Order order(long id) {
+        Order order = new Order();
+        order.setId(id);
+        order.setTotal(20);
+        return order;
+    }
+}
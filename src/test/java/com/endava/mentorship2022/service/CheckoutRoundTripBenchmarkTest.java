@@ -0,0 +1,150 @@
+package com.endava.mentorship2022.service;
+
+import com.endava.mentorship2022.cart.CartCommandQueue;
+import com.endava.mentorship2022.cart.DatabaseCartStore;
+import com.endava.mentorship2022.jdbc.StatementBudget;
+import com.endava.mentorship2022.jdbc.StatementStatisticsPostProcessor;
+import com.endava.mentorship2022.model.CartItem;
+import com.endava.mentorship2022.model.Product;
+import com.endava.mentorship2022.model.User;
+import com.endava.mentorship2022.model.UserStatus;
+import com.endava.mentorship2022.repository.CartItemRepository;
+import com.endava.mentorship2022.repository.OrderRepository;
+import com.endava.mentorship2022.repository.ProductBulkRepository;
+import com.endava.mentorship2022.repository.ProductRepository;
+import com.endava.mentorship2022.repository.UserRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManager;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Counts the database round trips of a checkout for growing carts. Run with: mvn test -Pbenchmark
+@Tag("benchmark")
+@DataJpaTest(showSql = false)
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@ActiveProfiles("h2")
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@Import(StatementStatisticsPostProcessor.class)
+class CheckoutRoundTripBenchmarkTest {
+
+    private static final int[] CART_SIZES = {1, 5, 20, 50};
+
+    private static final int CHECKOUTS = 20;
+
+    private static final List<String> KEYWORDS = List.of("select", "insert", "update", "delete");
+
+    @RegisterExtension
+    final StatementBudget statementBudget = new StatementBudget();
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private CartItemRepository cartItemRepository;
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private CartCommandQueue cartCommandQueue;
+
+    private CheckoutService checkoutService;
+
+    private final List<Product> products = new ArrayList<>();
+
+    private User user;
+
+    @BeforeEach
+    void setUp() {
+        StockReservationService stockReservationService = new StockReservationService(productRepository,
+                new ProductBulkRepository(new NamedParameterJdbcTemplate(jdbcTemplate), entityManager),
+                new ProductCache(100, Duration.ofMinutes(10), new SimpleMeterRegistry()), event -> {
+                }, transactionManager,
+                Set.of(), Duration.ofSeconds(1));
+        OrderService orderService = new OrderService(orderRepository, null, stockReservationService);
+        cartCommandQueue = new CartCommandQueue(1, transactionManager, entityManager);
+        checkoutService = new CheckoutService(orderService,
+                new CartItemService(new DatabaseCartStore(cartItemRepository), null, cartCommandQueue),
+                cartCommandQueue);
+        user = userRepository.save(new User(null, "Ion", "Popescu", "ion@example.com", "password", "Strada 1",
+                "0700000000", LocalDate.of(1990, 1, 1), UserStatus.ACTIVE, null));
+        for (int i = 0; i < CART_SIZES[CART_SIZES.length - 1]; i++) {
+            products.add(productRepository.save(new Product(0, "Product " + i, "product-" + i, "Cafea", "Lavazza",
+                    10 + i, 1000, true, null, null)));
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        cartCommandQueue.shutdown();
+        for (String table : List.of("order_details", "orders", "cart_items", "products", "users")) {
+            jdbcTemplate.update("DELETE FROM " + table);
+        }
+    }
+
+    @Test
+    void countRoundTripsPerCheckout() throws Exception {
+        System.out.printf("%nRound trips per checkout, average of %d checkouts%n", CHECKOUTS);
+        System.out.printf("%-12s %8s %8s %8s %8s %8s%n", "cart items", "total", "select", "insert", "update", "delete");
+
+        for (int cartSize : CART_SIZES) {
+            long[] roundTrips = new long[KEYWORDS.size() + 1];
+            for (int i = 0; i < CHECKOUTS; i++) {
+                // given
+                List<CartItem> cartItems = new ArrayList<>();
+                for (int j = 0; j < cartSize; j++) {
+                    cartItems.add(new CartItem(0, (short) 2, user, products.get(j)));
+                }
+                cartItemRepository.saveAll(cartItems);
+
+                // when
+                statementBudget.measure(() -> checkoutService.placeOrder(user));
+                roundTrips[0] += statementBudget.last().getStatements();
+                for (int k = 0; k < KEYWORDS.size(); k++) {
+                    roundTrips[k + 1] += StatementBudget.statements(statementBudget.last(), KEYWORDS.get(k));
+                }
+            }
+
+            // then
+            System.out.printf("%-12d", cartSize);
+            for (long count : roundTrips) {
+                System.out.printf(" %8.1f", (double) count / CHECKOUTS);
+            }
+            System.out.println();
+            assertThat(cartItemRepository.count()).isZero();
+        }
+        assertThat(orderRepository.count()).isEqualTo((long) CHECKOUTS * CART_SIZES.length);
+    }
+}
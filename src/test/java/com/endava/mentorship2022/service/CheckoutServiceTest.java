@@ -1,12 +1,17 @@
 package com.endava.mentorship2022.service;
 
+import com.endava.mentorship2022.cart.CartCommandQueue;
 import com.endava.mentorship2022.model.*;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.PlatformTransactionManager;
 
+import javax.persistence.EntityManager;
 import java.time.LocalDate;
 import java.util.Collections;
 import java.util.List;
@@ -15,6 +20,7 @@ import java.util.Set;
 import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 
@@ -25,13 +31,19 @@ class CheckoutServiceTest {
     private OrderService orderService;
     @Mock
     private CartItemService cartItemService;
+    @Mock
+    private PlatformTransactionManager transactionManager;
+    @Mock
+    private EntityManager entityManager;
+    private CartCommandQueue cartCommandQueue;
     private CheckoutService checkoutService;
 
     User user;
 
     @BeforeEach
     void setUp() {
-        checkoutService = new CheckoutService(orderService, cartItemService);
+        cartCommandQueue = new CartCommandQueue(1, transactionManager, entityManager);
+        checkoutService = new CheckoutService(orderService, cartItemService, cartCommandQueue);
 
         user = new User(1L,
                 "FirstName",
@@ -45,6 +57,11 @@ class CheckoutServiceTest {
                 Set.of(new Role("ADMIN")));
     }
 
+    @AfterEach
+    void tearDown() {
+        cartCommandQueue.shutdown();
+    }
+
     @Test
     void canPlaceOrder() {
         // given
@@ -100,6 +117,23 @@ class CheckoutServiceTest {
         assertThat(actual).isEqualTo("Order has been placed. Thank you for purchase.");
     }
 
+    @Test
+    void shouldEmptyTheCartBeforeReservingTheStock() {
+        // given
+        Product product = new Product(1L, "Product 1", "product-1", "Description", "No-name", 15.49F, 1500, true,
+                null, null);
+        List<CartItem> cartItems = List.of(new CartItem(1L, (short) 2, user, product));
+        given(cartItemService.findCartItemsByUser(user)).willReturn(cartItems);
+
+        // when
+        checkoutService.placeOrder(user);
+
+        // then
+        InOrder inOrder = inOrder(cartItemService, orderService);
+        inOrder.verify(cartItemService).deleteCartByUser(user);
+        inOrder.verify(orderService).createOrder(user, cartItems);
+    }
+
     @Test
     void cannotPlaceOrderCartIsEmpty() {
         // given
@@ -113,4 +147,28 @@ class CheckoutServiceTest {
         verify(orderService, never()).createOrder(any(User.class), any(List.class));
         verify(cartItemService, never()).deleteCartByUser(any(User.class));
     }
-}
\ No newline at end of file
+
+    @Test
+    void canPlaceOrdersOfSeveralUsersTogether() {
+        // given
+        User emptyCartUser = new User();
+        emptyCartUser.setId(2L);
+        Product product = new Product(1L, "Product 1", "product-1", "Description", "No-name", 15.49F, 1500, true,
+                null, null);
+        List<CartItem> cartItems = List.of(new CartItem(1L, (short) 2, user, product));
+        Order order = new Order(1L, LocalDate.now(), 30.98F, user, null, OrderStatus.PENDING);
+        given(cartItemService.findCartItemsByUser(user)).willReturn(cartItems);
+        given(cartItemService.findCartItemsByUser(emptyCartUser)).willReturn(Collections.emptyList());
+        given(orderService.createOrder(user, cartItems)).willReturn(order);
+
+        // when
+        List<Order> orders = checkoutService.placeOrders(List.of(user, emptyCartUser));
+
+        // then
+        assertThat(orders.size()).isEqualTo(2);
+        assertThat(orders.get(0)).isEqualTo(order);
+        assertThat(orders.get(1)).isNull();
+        verify(cartItemService).deleteCartByUser(user);
+        verify(cartItemService, never()).deleteCartByUser(emptyCartUser);
+    }
+}
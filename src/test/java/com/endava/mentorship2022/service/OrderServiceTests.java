@@ -1,5 +1,7 @@
 package com.endava.mentorship2022.service;
 
+import com.endava.mentorship2022.dto.OrderSummary;
+import com.endava.mentorship2022.exception.InsufficientStock;
 import com.endava.mentorship2022.exception.OrderNotFound;
 import com.endava.mentorship2022.model.*;
 import com.endava.mentorship2022.repository.OrderRepository;
@@ -19,6 +21,7 @@ import java.util.Set;
 
 import static com.endava.mentorship2022.model.OrderStatus.PENDING;
 import static com.endava.mentorship2022.model.UserStatus.ACTIVE;
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.AssertionsForClassTypes.assertThatThrownBy;
 import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.BDDMockito.given;
@@ -33,40 +36,30 @@ class OrderServiceTests {
     @Mock
     private UserService userService;
 
+    @Mock
+    private StockReservationService stockReservationService;
+
     private OrderService orderService;
 
     @BeforeEach
     void setUp() {
-        orderService = new OrderService(orderRepository, userService);
+        orderService = new OrderService(orderRepository, userService, stockReservationService);
     }
 
     @Test
     @DisplayName("Find all Orders")
     void findAllOrdersTest() {
         // given
-        List<Order> orders = List.of(
-                new Order(
-                        1L,
-                        LocalDate.of(2022, 1, 1),
-                        300,
-                        null,
-                        null,
-                        PENDING),
-                new Order(
-                        2L,
-                        LocalDate.of(2022, 1, 1),
-                        900,
-                        null,
-                        null,
-                        PENDING)
-        );
-        given(orderRepository.findAll()).willReturn(orders);
+        List<OrderSummary> orders = List.of(
+                new OrderSummary(1L, LocalDate.of(2022, 1, 1), 300, PENDING, 1L, 2),
+                new OrderSummary(2L, LocalDate.of(2022, 1, 1), 900, PENDING, 1L, 3));
+        given(orderRepository.findAllSummaries()).willReturn(orders);
 
         // when
-        List<Order> actualOrders = orderService.findAll();
+        List<OrderSummary> actualOrders = orderService.findAll();
 
         // then
-        verify(orderRepository).findAll();
+        verify(orderRepository).findAllSummaries();
         AssertionsForClassTypes.assertThat(actualOrders).isEqualTo(orders);
     }
 
@@ -123,51 +116,34 @@ class OrderServiceTests {
         Order actualOrder = orderService.save(order1);
 
         // then
-        verify(orderRepository, times(2)).save(any());
+        verify(orderRepository, times(1)).save(any());
         AssertionsForClassTypes.assertThat(actualOrder).isEqualTo(order1);
+        assertThat(actualOrder.getOrderDetails()).allMatch(orderDetail -> orderDetail.getOrder() == order1);
     }
 
 
     @Test
     void deleteOrderByIdTest() {
         // given
-        Order orderToDelete = new Order(
-                1L,
-                LocalDate.of(2022, 1, 1),
-                300,
-                null,
-                null,
-                PENDING
-        );
-        given(orderRepository.findById(1L)).willReturn(Optional.of(orderToDelete));
+        given(orderRepository.deleteAllByIdIn(List.of(1L))).willReturn(1);
 
         // when
         orderService.deleteById(1L);
 
         // then
-        verify(orderRepository).deleteById(1L);
+        verify(orderRepository).deleteOrderDetailsByOrderIdIn(List.of(1L));
+        verify(orderRepository, never()).findById(anyLong());
     }
 
     @Test
     void deleteOrderExceptionTest() {
         // given
-        Order orderToDelete = new Order(
-                1L,
-                LocalDate.of(2022, 1, 1),
-                300,
-                null,
-                null,
-                PENDING
-        );
-        given(orderRepository.findById(1L)).willReturn(Optional.empty());
+        given(orderRepository.deleteAllByIdIn(List.of(1L))).willReturn(0);
 
-        // when
+        // when, then
         assertThatThrownBy(() -> orderService.deleteById(1L))
                 .isInstanceOf(OrderNotFound.class)
                 .hasMessageContaining("Order: " + 1L + " not found.");
-
-        // then
-        verify(orderRepository, never()).delete(orderToDelete);
     }
 
     @Test
@@ -333,10 +309,25 @@ class OrderServiceTests {
         Order actualOrder = orderService.createOrder(user, cartItems);
 
         // then
+        verify(stockReservationService).reserve(cartItems);
         verify(orderRepository).save(any());
         AssertionsForClassTypes.assertThat(actualOrder).isEqualTo(expectedOrder);
 
     }
 
+    @Test
+    void willNotCreateOrderWithoutStockTest() {
+        // given
+        List<CartItem> cartItems = List.of(new CartItem(1L, (short) 3, null, new Product(1L)));
+        doThrow(new InsufficientStock("Not enough stock")).when(stockReservationService).reserve(cartItems);
+
+        // when
+        assertThatThrownBy(() -> orderService.createOrder(null, cartItems))
+                .isInstanceOf(InsufficientStock.class);
+
+        // then
+        verify(orderRepository, never()).save(any());
+    }
+
 }
 
@@ -0,0 +1,116 @@
+package com.endava.mentorship2022.service;
+
+import com.endava.mentorship2022.dto.TechnicalDetailAttribute;
+import com.endava.mentorship2022.event.ProductChangedEvent;
+import com.endava.mentorship2022.exception.InvalidAttributeQuery;
+import com.endava.mentorship2022.model.Product;
+import com.endava.mentorship2022.repository.ProductRepository;
+import com.endava.mentorship2022.repository.TechnicalDetailRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.lenient;
+
+@ExtendWith(MockitoExtension.class)
+class ProductAttributeServiceTest {
+
+    @Mock
+    private TechnicalDetailRepository technicalDetailRepository;
+
+    @Mock
+    private ProductRepository productRepository;
+
+    private ProductAttributeService productAttributeService;
+
+    @BeforeEach
+    void setUp() {
+        productAttributeService = new ProductAttributeService(technicalDetailRepository, productRepository);
+        lenient().when(technicalDetailRepository.findMaxProductId()).thenReturn(Optional.of(10L));
+        // Only one of the parallel product id ranges holds the rows
+        lenient().when(technicalDetailRepository.findAttributesByProductIdBetween(anyLong(), anyLong())).thenReturn(List.of());
+        lenient().when(technicalDetailRepository.findAttributesByProductIdBetween(0L, 2L)).thenReturn(List.of(
+                attribute(1L, "Burr type", "Conical"),
+                attribute(2L, "Burr type", "Flat")));
+    }
+
+    @Test
+    void canBuildIndexAtStartupAndFindProducts() {
+        // given
+        Product grinder = new Product(1L);
+        given(productRepository.findAllWithTechnicalDetailsByIdIn(List.of(1L))).willReturn(List.of(grinder));
+
+        // when
+        productAttributeService.buildOnStartup();
+        List<Product> actual = productAttributeService.findProducts(List.of("Burr type:Conical"), null, 100);
+
+        // then
+        assertThat(actual).containsExactly(grinder);
+    }
+
+    @Test
+    void canReindexProductOnChange() {
+        // given
+        productAttributeService.buildOnStartup();
+        given(technicalDetailRepository.findAttributesByProductId(2L))
+                .willReturn(List.of(attribute(2L, "Burr type", "Conical")));
+        given(productRepository.findAllWithTechnicalDetailsByIdIn(List.of(1L, 2L)))
+                .willReturn(List.of(new Product(2L), new Product(1L)));
+
+        // when
+        productAttributeService.onProductChanged(new ProductChangedEvent(2L));
+        List<Product> actual = productAttributeService.findProducts(null, List.of("Burr type:Conical"), 100);
+
+        // then
+        assertThat(actual).extracting(Product::getId).containsExactly(1L, 2L);
+    }
+
+    @Test
+    void shouldFindNothingForALimitBelowOne() {
+        // given
+        productAttributeService.buildOnStartup();
+
+        // when
+        List<Product> actual = productAttributeService.findProducts(List.of("Burr type:Conical"), null, -1);
+
+        // then
+        assertThat(actual).isEmpty();
+    }
+
+    @Test
+    void willThrowInvalidAttributeQueryWithoutSeparator() {
+        // when
+        // then
+        assertThatThrownBy(() -> productAttributeService.findProducts(List.of("Conical"), null, 100))
+                .isInstanceOf(InvalidAttributeQuery.class)
+                .hasMessageContaining("name:value");
+    }
+
+    private static TechnicalDetailAttribute attribute(long productId, String name, String value) {
+        return new TechnicalDetailAttribute() {
+            @Override
+            public long getProductId() {
+                return productId;
+            }
+
+            @Override
+            public String getName() {
+                return name;
+            }
+
+            @Override
+            public String getValue() {
+                return value;
+            }
+        };
+    }
+}
@@ -0,0 +1,114 @@
+package com.endava.mentorship2022.service;
+
+import com.endava.mentorship2022.dto.FacetCounts;
+import com.endava.mentorship2022.dto.ProductFacetValues;
+import com.endava.mentorship2022.event.ProductChangedEvent;
+import com.endava.mentorship2022.event.ProductDeletedEvent;
+import com.endava.mentorship2022.event.ProductStockChangedEvent;
+import com.endava.mentorship2022.repository.ProductRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@ExtendWith(MockitoExtension.class)
+class ProductFacetServiceTest {
+
+    @Mock
+    private ProductRepository productRepository;
+
+    private ProductFacetService productFacetService;
+
+    @BeforeEach
+    void setUp() {
+        productFacetService = new ProductFacetService(productRepository);
+        given(productRepository.findAllFacetValues()).willReturn(List.of(
+                product(1L, "Lavazza", 3L, 15, 10),
+                product(2L, "Lavazza", 4L, 60, 0),
+                product(3L, "Illy", null, 300, 2)));
+    }
+
+    @Test
+    void canCountProductsPerFacetValue() {
+        // when
+        FacetCounts actual = productFacetService.countFacets(List.of("Lavazza"), null, null, null, true);
+
+        // then
+        assertThat(actual.getTotal()).isEqualTo(1);
+        assertThat(actual.getFacets().get("brand")).isEqualTo(Map.of("Lavazza", 1, "Illy", 1));
+        assertThat(actual.getFacets().get("category")).isEqualTo(Map.of("3", 1));
+        assertThat(actual.getFacets().get("price")).isEqualTo(Map.of("0-25", 1));
+        assertThat(actual.getFacets().get("inStock")).isEqualTo(Map.of("true", 1, "false", 1));
+    }
+
+    @Test
+    void canFilterByCategoryAndPriceBand() {
+        // when
+        FacetCounts actual = productFacetService.countFacets(null, List.of(4L), List.of("50-100", "250+"), true, null);
+
+        // then
+        assertThat(actual.getTotal()).isEqualTo(1);
+        assertThat(actual.getFacets().get("price")).isEqualTo(Map.of("50-100", 1));
+    }
+
+    @Test
+    void canUpdateFacetsOnProductEvents() {
+        // given
+        productFacetService.countFacets(null, null, null, null, null);
+        given(productRepository.findFacetValuesByIdIn(List.of(1L))).willReturn(List.of(product(1L, "Tchibo", 3L, 30, 0)));
+
+        // when
+        productFacetService.onProductChanged(new ProductChangedEvent(1L));
+        productFacetService.onProductDeleted(new ProductDeletedEvent(3L));
+        FacetCounts actual = productFacetService.countFacets(null, null, null, null, null);
+
+        // then
+        verify(productRepository, times(1)).findAllFacetValues();
+        assertThat(actual.getTotal()).isEqualTo(2);
+        assertThat(actual.getFacets().get("brand")).isEqualTo(Map.of("Lavazza", 1, "Tchibo", 1));
+        assertThat(actual.getFacets().get("price")).isEqualTo(Map.of("25-50", 1, "50-100", 1));
+    }
+
+    @Test
+    void canRemoveAChangedProductThatIsGone() {
+        // given
+        productFacetService.countFacets(null, null, null, null, null);
+        given(productRepository.findFacetValuesByIdIn(List.of(2L))).willReturn(List.of());
+
+        // when
+        productFacetService.onProductChanged(new ProductChangedEvent(2L));
+        FacetCounts actual = productFacetService.countFacets(null, null, null, null, null);
+
+        // then
+        assertThat(actual.getTotal()).isEqualTo(2);
+        assertThat(actual.getFacets().get("category")).isEqualTo(Map.of("3", 1, "none", 1));
+    }
+
+    @Test
+    void canFollowStockChangesOfOrders() {
+        // given
+        productFacetService.countFacets(null, null, null, null, null);
+        given(productRepository.findFacetValuesByIdIn(List.of(1L))).willReturn(List.of(product(1L, "Lavazza", 3L, 15, 0)));
+
+        // when
+        productFacetService.onProductStockChanged(new ProductStockChangedEvent(List.of(1L)));
+        FacetCounts actual = productFacetService.countFacets(null, null, null, null, true);
+
+        // then
+        assertThat(actual.getTotal()).isEqualTo(1);
+        assertThat(actual.getFacets().get("inStock")).isEqualTo(Map.of("true", 1, "false", 2));
+    }
+
+    private static ProductFacetValues product(long id, String brand, Long categoryId, float price, int stock) {
+        return new ProductFacetValues(id, brand, categoryId, price, true, stock);
+    }
+}
@@ -0,0 +1,119 @@
+package com.endava.mentorship2022.service;
+
+import com.endava.mentorship2022.dto.ImportSummary;
+import com.endava.mentorship2022.model.Product;
+import com.endava.mentorship2022.model.TechnicalDetail;
+import com.endava.mentorship2022.repository.KeysetPageQuery;
+import com.endava.mentorship2022.repository.ProductBulkRepository;
+import com.endava.mentorship2022.repository.ProductRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManager;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+// Compares the per-product throughput of saveProduct with the bulk import. Run with: mvn test -Pbenchmark
+@Tag("benchmark")
+@DataJpaTest(showSql = false)
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@ActiveProfiles("h2")
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class ProductImportBenchmarkTest {
+
+    private static final int SAVED_PRODUCTS = 2_000;
+
+    private static final int IMPORTED_PRODUCTS = 50_000;
+
+    private static final int TECHNICAL_DETAILS = 3;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private NamedParameterJdbcTemplate namedParameterJdbcTemplate;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private ProductService productService;
+
+    private ProductImportService productImportService;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @BeforeEach
+    void setUp() {
+        ProductCache productCache = new ProductCache(100, Duration.ofMinutes(10), new SimpleMeterRegistry());
+        ApplicationEventPublisher eventPublisher = mock(ApplicationEventPublisher.class);
+        productService = new ProductService(productRepository, productCache, new KeysetPageQuery(entityManager), eventPublisher);
+        productImportService = new ProductImportService(objectMapper, new ProductBulkRepository(namedParameterJdbcTemplate, entityManager),
+                transactionManager, productCache, eventPublisher, 1000);
+    }
+
+    @Test
+    void compareSaveProductWithBulkImport() throws Exception {
+        // given
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        for (int i = 0; i < IMPORTED_PRODUCTS; i++) {
+            objectMapper.writeValue(body, product("imported-" + i));
+            body.write('\n');
+        }
+
+        // when
+        long start = System.nanoTime();
+        for (int i = 0; i < SAVED_PRODUCTS; i++) {
+            productService.saveProduct(product("saved-" + i));
+        }
+        double saveSeconds = (System.nanoTime() - start) / 1e9;
+
+        start = System.nanoTime();
+        ImportSummary summary = productImportService.importProducts(new ByteArrayInputStream(body.toByteArray()), chunk -> { });
+        double importSeconds = (System.nanoTime() - start) / 1e9;
+
+        // then
+        double saveRate = SAVED_PRODUCTS / saveSeconds;
+        double importRate = IMPORTED_PRODUCTS / importSeconds;
+        System.out.printf("%nProducts with %d technical details each (products per second)%n", TECHNICAL_DETAILS);
+        System.out.printf("saveProduct, %,d products: %,10.0f%n", SAVED_PRODUCTS, saveRate);
+        System.out.printf("bulk import, %,d products: %,10.0f (%.1fx)%n", IMPORTED_PRODUCTS, importRate, importRate / saveRate);
+
+        assertThat(summary.getImported()).isEqualTo(IMPORTED_PRODUCTS);
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM technical_details", Long.class))
+                .isEqualTo((long) (SAVED_PRODUCTS + IMPORTED_PRODUCTS) * TECHNICAL_DETAILS);
+    }
+
+    private static Product product(String key) {
+        Set<TechnicalDetail> technicalDetails = new HashSet<>();
+        for (int i = 0; i < TECHNICAL_DETAILS; i++) {
+            technicalDetails.add(new TechnicalDetail(0, "Detail " + i, "Value " + i, null));
+        }
+        return new Product(0, "Product " + key, "product-" + key, "Cafea boabe", "Lavazza", 15, 10, true,
+                null, technicalDetails);
+    }
+}
@@ -0,0 +1,161 @@
+package com.endava.mentorship2022.service;
+
+import com.endava.mentorship2022.dto.ImportChunkResult;
+import com.endava.mentorship2022.dto.ImportSummary;
+import com.endava.mentorship2022.event.ProductsImportedEvent;
+import com.endava.mentorship2022.repository.ProductBulkRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManager;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+// Runs against H2 without a test transaction, so every chunk really commits or rolls back
+@DataJpaTest(showSql = false)
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@ActiveProfiles("h2")
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class ProductImportServiceTest {
+
+    @Autowired
+    private NamedParameterJdbcTemplate namedParameterJdbcTemplate;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private final ApplicationEventPublisher eventPublisher = mock(ApplicationEventPublisher.class);
+
+    private final List<ImportChunkResult> progress = new ArrayList<>();
+
+    private ProductImportService productImportService;
+
+    @BeforeEach
+    void setUp() {
+        ProductCache productCache = new ProductCache(100, Duration.ofMinutes(10), new SimpleMeterRegistry());
+        productImportService = new ProductImportService(new ObjectMapper(),
+                new ProductBulkRepository(namedParameterJdbcTemplate, entityManager), transactionManager, productCache, eventPublisher, 2);
+    }
+
+    @AfterEach
+    void tearDown() {
+        jdbcTemplate.update("DELETE FROM technical_details");
+        jdbcTemplate.update("DELETE FROM products");
+    }
+
+    @Test
+    void canImportJsonArrayInChunks() {
+        // given
+        String body = "[" + product("a", "{\"name\": \"Origine\", \"value\": \"Brazilia\"}") + ", " +
+                product("b", "") + ", " + product("c", "") + "]";
+
+        // when
+        ImportSummary summary = productImportService.importProducts(stream(body), progress::add);
+
+        // then
+        assertThat(summary.getImported()).isEqualTo(3);
+        assertThat(summary.getError()).isNull();
+        assertThat(progress).extracting(ImportChunkResult::getChunk).containsExactly(1, 2);
+        assertThat(progress).extracting(ImportChunkResult::getFirstRow).containsExactly(0L, 2L);
+        assertThat(count("products")).isEqualTo(3);
+        assertThat(jdbcTemplate.queryForObject("SELECT t.value FROM technical_details t " +
+                "JOIN products p ON p.id = t.product_id WHERE p.alias = 'product-a'", String.class)).isEqualTo("Brazilia");
+        verify(eventPublisher, times(2)).publishEvent(any(ProductsImportedEvent.class));
+    }
+
+    @Test
+    void canSkipAndReportInvalidRows() {
+        // given
+        productImportService.importProducts(stream(product("taken", "")), result -> { });
+        String body = product("a", "") + "\n" +
+                "{\"name\": \"No brand\", \"alias\": \"no-brand\", \"description\": \"Cafea\"}\n" +
+                product("taken", "") + "\n" +
+                "{\"name\": \"Bad price\", \"alias\": \"bad-price\", \"description\": \"Cafea\", \"brand\": \"X\", \"price\": \"abc\"}\n" +
+                product("a", "") + "\n";
+
+        // when
+        ImportSummary summary = productImportService.importProducts(stream(body), progress::add);
+
+        // then
+        assertThat(summary.getImported()).isEqualTo(1);
+        assertThat(summary.getFailed()).isEqualTo(4);
+        assertThat(progress).flatExtracting(ImportChunkResult::getErrors).hasSize(4)
+                .anyMatch(error -> error.startsWith("row 1: brand is required"))
+                .anyMatch(error -> error.startsWith("row 2: name Product taken already exists"))
+                .anyMatch(error -> error.startsWith("row 3: "))
+                .anyMatch(error -> error.startsWith("row 4: name Product a already exists"));
+        assertThat(count("products")).isEqualTo(2);
+    }
+
+    @Test
+    void canRollBackFailingChunkAndGoOn() {
+        // given
+        String body = "[" + product("a", "").replace("}", ", \"category\": {\"id\": 404}}") + ", " +
+                product("b", "") + ", " + product("c", "") + "]";
+
+        // when
+        ImportSummary summary = productImportService.importProducts(stream(body), progress::add);
+
+        // then
+        assertThat(summary.getImported()).isEqualTo(1);
+        assertThat(summary.getFailed()).isEqualTo(2);
+        assertThat(progress.get(0).getErrors()).singleElement().asString().startsWith("Chunk rolled back");
+        assertThat(count("products")).isEqualTo(1);
+    }
+
+    @Test
+    void canKeepRowsReadBeforeMalformedJson() {
+        // given
+        String body = product("a", "") + "\n{\"name\": ";
+
+        // when
+        ImportSummary summary = productImportService.importProducts(stream(body), progress::add);
+
+        // then
+        assertThat(summary.getImported()).isEqualTo(1);
+        assertThat(summary.getError()).startsWith("Could not parse row 1");
+        assertThat(count("products")).isEqualTo(1);
+    }
+
+    private static String product(String key, String technicalDetails) {
+        return "{\"name\": \"Product " + key + "\", \"alias\": \"product-" + key + "\", \"description\": \"Cafea\", " +
+                "\"brand\": \"Lavazza\", \"price\": 15, \"stock\": 10, \"enabled\": true, " +
+                "\"technicalDetails\": [" + technicalDetails + "]}";
+    }
+
+    private static ByteArrayInputStream stream(String body) {
+        return new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private int count(String table) {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM " + table, Integer.class);
+    }
+}
@@ -0,0 +1,88 @@
+package com.endava.mentorship2022.service;
+
+import com.endava.mentorship2022.event.ProductChangedEvent;
+import com.endava.mentorship2022.event.ProductDeletedEvent;
+import com.endava.mentorship2022.model.Product;
+import com.endava.mentorship2022.model.TechnicalDetail;
+import com.endava.mentorship2022.repository.ProductRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@ExtendWith(MockitoExtension.class)
+class ProductSearchServiceTest {
+
+    @Mock
+    private ProductRepository productRepository;
+
+    private ProductSearchService productSearchService;
+
+    private Product lavazza;
+
+    private Product tchibo;
+
+    @BeforeEach
+    void setUp() {
+        productSearchService = new ProductSearchService(productRepository);
+        lavazza = new Product(1L, "Lavazza cafea boabe", "Lavazza-cafea-boabe", "O cafea boabe foarte buna",
+                "Lavazza", 15, 10, true, null, Set.of(new TechnicalDetail(1L, "Origine", "Brazilia", null)));
+        tchibo = new Product(2L, "Tchibo cafea macinata", "Tchibo-cafea-macinata", "Cafea macinata pentru filtru",
+                "Tchibo", 12, 5, true, null, Set.of());
+    }
+
+    @Test
+    void canBuildIndexOnFirstSearchOnly() {
+        // given
+        given(productRepository.findAll()).willReturn(List.of(lavazza, tchibo));
+        given(productRepository.findAllWithTechnicalDetailsByIdIn(List.of(1L))).willReturn(List.of(lavazza));
+
+        // when
+        List<Product> byDetail = productSearchService.search("brazilia", 10);
+        List<Product> noMatch = productSearchService.search("ceai", 10);
+
+        // then
+        verify(productRepository, times(1)).findAll();
+        assertThat(byDetail).containsExactly(lavazza);
+        assertThat(noMatch).isEmpty();
+    }
+
+    @Test
+    void canApplyProductEventsToBuiltIndex() {
+        // given
+        given(productRepository.findAll()).willReturn(List.of(lavazza));
+        productSearchService.search("lavazza", 10);
+        given(productRepository.findWithTechnicalDetailsById(2L)).willReturn(Optional.of(tchibo));
+        given(productRepository.findAllWithTechnicalDetailsByIdIn(List.of(2L))).willReturn(List.of(tchibo));
+
+        // when
+        productSearchService.onProductChanged(new ProductChangedEvent(2L));
+        productSearchService.onProductDeleted(new ProductDeletedEvent(1L));
+
+        // then
+        assertThat(productSearchService.search("tchibo", 10)).containsExactly(tchibo);
+        assertThat(productSearchService.search("lavazza", 10)).isEmpty();
+    }
+
+    @Test
+    void willIgnoreEventsBeforeIndexIsBuilt() {
+        // when
+        productSearchService.onProductChanged(new ProductChangedEvent(2L));
+
+        // then
+        verify(productRepository, never()).findWithTechnicalDetailsById(2L);
+        verify(productRepository, never()).findAllWithTechnicalDetailsByIdIn(anyCollection());
+    }
+}
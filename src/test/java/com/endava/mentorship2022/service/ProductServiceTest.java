@@ -1,15 +1,20 @@
 package com.endava.mentorship2022.service;
 
+import com.endava.mentorship2022.dto.ProductSummary;
+import com.endava.mentorship2022.event.ProductDeletedEvent;
 import com.endava.mentorship2022.exception.ProductNotFound;
 import com.endava.mentorship2022.model.Product;
 import com.endava.mentorship2022.model.TechnicalDetail;
+import com.endava.mentorship2022.repository.KeysetPageQuery;
 import com.endava.mentorship2022.repository.ProductRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.Pageable;
@@ -17,6 +22,7 @@ import org.springframework.data.domain.Pageable;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -28,6 +34,8 @@ import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -37,42 +45,33 @@ class ProductServiceTest {
     @Mock
     private ProductRepository productRepository;
 
-    @InjectMocks
+    @Mock
+    private KeysetPageQuery keysetPageQuery;
+
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
     private ProductService productService;
 
+    @BeforeEach
+    void setUp() {
+        ProductCache productCache = new ProductCache(100, Duration.ofMinutes(10), new SimpleMeterRegistry());
+        productService = new ProductService(productRepository, productCache, keysetPageQuery, eventPublisher);
+    }
+
     @Test
     @DisplayName("Should find all products")
     void findAllProductsTest() {
         // given
-        Product product1 = new Product(1L,
-                "Tchibo cafea macinata",
-                "Tchibo-cafea-macinata",
-                "O cafea macinata foarte buna",
-                "Tchibo",
-                20,
-                15,
-                true,
-                null,
-                null
-        );
-
-        Product product2 = new Product(2L,
-                "Lavazza cafea boabe",
-                "Lavazza-cafea-boabe",
-                "O cafea boabe foarte buna",
-                "Lavazza",
-                15,
-                10,
-                false,
-                null,
-                null
-        );
-
-        List<Product> productList = List.of(product1, product2);
-        when(productRepository.findAll()).thenReturn(productList);
+        List<ProductSummary> productList = List.of(
+                new ProductSummary(1L, "Tchibo cafea macinata", "Tchibo-cafea-macinata", "Tchibo", 20, 15, true,
+                        null, null),
+                new ProductSummary(2L, "Lavazza cafea boabe", "Lavazza-cafea-boabe", "Lavazza", 15, 10, false,
+                        null, null));
+        when(productRepository.findAllSummaries()).thenReturn(productList);
 
         // when
-        List<Product> actualProducts = productService.findAllProducts();
+        List<ProductSummary> actualProducts = productService.findAllProducts();
 
         // then
         assertThat(actualProducts).hasSize(2);
@@ -95,7 +94,7 @@ class ProductServiceTest {
                 null
         );
 
-        when(productRepository.findById(anyLong())).thenReturn(Optional.of(productToBeFound));
+        when(productRepository.findWithTechnicalDetailsById(anyLong())).thenReturn(Optional.of(productToBeFound));
 
         // when
         Product actualProduct = productService.findById(anyLong());
@@ -108,7 +107,7 @@ class ProductServiceTest {
     @DisplayName("Should throw ProductNotFound Exception")
     void findProductById_ExceptionTest() {
         // given
-        when(productRepository.findById(anyLong())).thenReturn(Optional.empty());
+        when(productRepository.findWithTechnicalDetailsById(anyLong())).thenReturn(Optional.empty());
 
         // then
         assertThrows(ProductNotFound.class, () -> productService.findById(anyLong()));
@@ -142,7 +141,7 @@ class ProductServiceTest {
                 null
         );
 
-        when(productRepository.findById(anyLong())).thenReturn(Optional.of(productToBeUpdated));
+        when(productRepository.findWithTechnicalDetailsById(anyLong())).thenReturn(Optional.of(productToBeUpdated));
         when(productRepository.save(productToBeUpdated)).thenReturn(newProduct);
 
         // when
@@ -156,10 +155,11 @@ class ProductServiceTest {
     @DisplayName("Should throw ProductNotFound Exception")
     void updateProduct_ExceptionTest() {
         // given
-        when(productRepository.findById(anyLong())).thenReturn(Optional.empty());
+        when(productRepository.deleteAllByIdIn(List.of(2L))).thenReturn(0);
 
         // then
-        assertThrows(ProductNotFound.class, () -> productService.deleteById(anyLong()));
+        assertThrows(ProductNotFound.class, () -> productService.deleteById(2L));
+        verify(eventPublisher, never()).publishEvent(any(ProductDeletedEvent.class));
     }
 
     @Test
@@ -187,6 +187,8 @@ class ProductServiceTest {
 
         // then
         assertThat(newProduct).isEqualTo(product);
+        assertThat(newProduct.getTechnicalDetails()).allMatch(technicalDetail -> technicalDetail.getProduct() == product);
+        verify(productRepository, times(1)).save(product);
     }
 
     @Test
@@ -252,26 +254,16 @@ class ProductServiceTest {
     @Test
     void shouldDeleteById() {
         // given
-        Product product = new Product(2L,
-                "Lavazza cafea boabe",
-                "Lavazza-cafea-boabe",
-                "O cafea boabe foarte buna",
-                "Lavazza",
-                15,
-                10,
-                false,
-                null,
-                Set.of(
-                        new TechnicalDetail(1L, "Brand", "Lavazza", null)
-                )
-        );
-        when(productRepository.findById(anyLong())).thenReturn(Optional.of(product));
+        when(productRepository.deleteAllByIdIn(List.of(2L))).thenReturn(1);
 
         // when
         productService.deleteById(2L);
 
         // then
-        verify(productRepository).deleteById(2L);
+        verify(productRepository).deleteTechnicalDetailsByProductIdIn(List.of(2L));
+        verify(productRepository).deleteCartItemsByProductIdIn(List.of(2L));
+        verify(productRepository, never()).findWithTechnicalDetailsById(anyLong());
+        verify(eventPublisher).publishEvent(any(ProductDeletedEvent.class));
     }
 
     @Test
@@ -310,4 +302,77 @@ class ProductServiceTest {
         assertThat(actual).isEqualTo(products);
     }
 
-}
\ No newline at end of file
+    @Test
+    @DisplayName("Should serve repeated reads of a product from the cache")
+    void findProductByIdCachedTest() {
+        // given
+        Product product = new Product(2L,
+                "Lavazza cafea boabe",
+                "Lavazza-cafea-boabe",
+                "O cafea boabe foarte buna",
+                "Lavazza",
+                15,
+                10,
+                false,
+                null,
+                null
+        );
+        when(productRepository.findWithTechnicalDetailsById(2L)).thenReturn(Optional.of(product));
+
+        // when
+        productService.findById(2L);
+        Product actualProduct = productService.findById(2L);
+
+        // then
+        assertThat(actualProduct).isEqualTo(product);
+        verify(productRepository, times(1)).findWithTechnicalDetailsById(2L);
+    }
+
+    @Test
+    @DisplayName("Should reload a product from the database after it was updated")
+    void updateProductInvalidatesCacheTest() {
+        // given
+        Product product = new Product(2L,
+                "Lavazza cafea boabe",
+                "Lavazza-cafea-boabe",
+                "O cafea boabe foarte buna",
+                "Lavazza",
+                15,
+                10,
+                false,
+                null,
+                null
+        );
+        when(productRepository.findWithTechnicalDetailsById(2L)).thenReturn(Optional.of(product));
+        when(productRepository.save(product)).thenReturn(product);
+
+        // when
+        productService.findById(2L);
+        productService.updateProduct(2L, product);
+        productService.findById(2L);
+
+        // then
+        verify(productRepository, times(3)).findWithTechnicalDetailsById(2L);
+    }
+
+    @Test
+    @DisplayName("Should serve the product list from the cache until a product is deleted")
+    void findAllProductsCachedTest() {
+        // given
+        ProductSummary product = new ProductSummary(2L, "Lavazza cafea boabe", "Lavazza-cafea-boabe", "Lavazza", 15,
+                10, false, null, null);
+        when(productRepository.findAllSummaries()).thenReturn(List.of(product), List.of());
+        when(productRepository.deleteAllByIdIn(List.of(2L))).thenReturn(1);
+
+        // when
+        productService.findAllProducts();
+        productService.findAllProducts();
+        productService.deleteById(2L);
+        List<ProductSummary> actualProducts = productService.findAllProducts();
+
+        // then
+        assertThat(actualProducts).isEmpty();
+        verify(productRepository, times(2)).findAllSummaries();
+    }
+
+}
@@ -0,0 +1,261 @@
+package com.endava.mentorship2022.service;
+
+import com.endava.mentorship2022.event.ProductChangedEvent;
+import com.endava.mentorship2022.exception.CartItemException;
+import com.endava.mentorship2022.exception.InsufficientStock;
+import com.endava.mentorship2022.jdbc.StatementBudget;
+import com.endava.mentorship2022.jdbc.StatementStatisticsPostProcessor;
+import com.endava.mentorship2022.model.CartItem;
+import com.endava.mentorship2022.model.Product;
+import com.endava.mentorship2022.repository.ProductBulkRepository;
+import com.endava.mentorship2022.repository.ProductRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+// Runs against H2 without a test transaction, so every reservation really commits or rolls back
+@DataJpaTest(showSql = false)
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@ActiveProfiles("h2")
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@Import(StatementStatisticsPostProcessor.class)
+class StockReservationServiceTest {
+
+    private static final int STOCK = 1_000;
+
+    private static final int BUYERS = 300;
+
+    private static final int ATTEMPTS_PER_BUYER = 5;
+
+    private static final int CART_SIZE = 20;
+
+    @RegisterExtension
+    final StatementBudget statementBudget = new StatementBudget();
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private NamedParameterJdbcTemplate namedParameterJdbcTemplate;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private TransactionTemplate transactionTemplate;
+
+    private StockReservationService stockReservationService;
+
+    private final List<Object> events = new ArrayList<>();
+
+    private Product cold;
+
+    private Product hot;
+
+    private Product other;
+
+    @BeforeEach
+    void setUp() {
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        cold = productRepository.save(product("cold", STOCK));
+        hot = productRepository.save(product("hot", STOCK));
+        other = productRepository.save(product("other", 1));
+        ProductCache productCache = new ProductCache(100, Duration.ofMinutes(10), new SimpleMeterRegistry());
+        stockReservationService = new StockReservationService(productRepository,
+                new ProductBulkRepository(namedParameterJdbcTemplate, entityManager), productCache, events::add,
+                transactionManager, Set.of(hot.getId()), Duration.ofHours(1));
+    }
+
+    @AfterEach
+    void tearDown() {
+        stockReservationService.shutdown();
+        jdbcTemplate.update("DELETE FROM products");
+    }
+
+    @Test
+    void shouldNotOversellUnderContention() throws InterruptedException {
+        // when
+        int soldCold = buyConcurrently(cold);
+        int soldHot = buyConcurrently(hot);
+        stockReservationService.writeBehindAll();
+
+        // then
+        assertThat(soldCold).isEqualTo(STOCK);
+        assertThat(soldHot).isEqualTo(STOCK);
+        assertThat(stock(cold)).isZero();
+        assertThat(stock(hot)).isZero();
+    }
+
+    @Test
+    void shouldTakeBackAllLinesWhenOneIsOutOfStock() {
+        // given
+        List<CartItem> cartItems = List.of(cartItem(cold, 2), cartItem(hot, 3), cartItem(other, 2));
+
+        // when
+        assertThatThrownBy(() -> transactionTemplate.executeWithoutResult(
+                status -> stockReservationService.reserve(cartItems)))
+                .isInstanceOf(InsufficientStock.class)
+                .hasMessageContaining("Product other");
+        stockReservationService.writeBehindAll();
+
+        // then
+        assertThat(stock(cold)).isEqualTo(STOCK);
+        assertThat(stock(hot)).isEqualTo(STOCK);
+        assertThat(stockReservationService.unwrittenSales(hot.getId())).isZero();
+    }
+
+    @Test
+    void shouldRefuseLinesThatAreNotPositive() {
+        // given
+        List<CartItem> cartItems = List.of(cartItem(cold, 2), cartItem(hot, 0), cartItem(other, -3));
+
+        // when
+        assertThatThrownBy(() -> transactionTemplate.executeWithoutResult(
+                status -> stockReservationService.reserve(cartItems)))
+                .isInstanceOf(CartItemException.class)
+                .hasMessageContaining("must be at least 1");
+        stockReservationService.writeBehindAll();
+
+        // then
+        assertThat(stock(cold)).isEqualTo(STOCK);
+        assertThat(stock(other)).isEqualTo(1);
+        assertThat(stockReservationService.unwrittenSales(hot.getId())).isZero();
+    }
+
+    // All cold lines are updated in one JDBC batch, whatever their number
+    @Test
+    void shouldReserveColdLinesInOneBatch() {
+        // given
+        List<CartItem> cartItems = new ArrayList<>();
+        for (int i = 0; i < CART_SIZE; i++) {
+            cartItems.add(cartItem(productRepository.save(product("line-" + i, STOCK)), 1));
+        }
+
+        // when
+        statementBudget.atMost(1, () -> transactionTemplate.executeWithoutResult(
+                status -> stockReservationService.reserve(cartItems)));
+
+        // then
+        assertThat(jdbcTemplate.queryForObject("SELECT SUM(stock) FROM products WHERE alias LIKE 'product-line-%'",
+                Integer.class)).isEqualTo(CART_SIZE * (STOCK - 1));
+    }
+
+    @Test
+    void shouldWriteBehindAndFollowStockChanges() {
+        // given
+        transactionTemplate.executeWithoutResult(status -> stockReservationService.reserve(List.of(cartItem(hot, 4))));
+        assertThat(stockReservationService.unwrittenSales(hot.getId())).isEqualTo(4);
+
+        // when
+        stockReservationService.writeBehindAll();
+        jdbcTemplate.update("UPDATE products SET stock = 10 WHERE id = ?", hot.getId());
+        stockReservationService.onProductChanged(new ProductChangedEvent(hot.getId()));
+
+        // then
+        assertThat(stockReservationService.unwrittenSales(hot.getId())).isZero();
+        transactionTemplate.executeWithoutResult(status -> stockReservationService.reserve(List.of(cartItem(hot, 10))));
+        assertThatThrownBy(() -> transactionTemplate.executeWithoutResult(
+                status -> stockReservationService.reserve(List.of(cartItem(hot, 1)))))
+                .isInstanceOf(InsufficientStock.class);
+        stockReservationService.writeBehindAll();
+        assertThat(stock(hot)).isZero();
+    }
+
+    // The facets follow the stock through these events, cold products after commit, hot ones once written behind
+    @Test
+    void shouldPublishStockChangesOnceWritten() {
+        // given
+        List<CartItem> cartItems = List.of(cartItem(cold, 2), cartItem(hot, 3));
+
+        // when
+        transactionTemplate.executeWithoutResult(status -> stockReservationService.reserve(cartItems));
+        List<Object> afterCommit = new ArrayList<>(events);
+        stockReservationService.writeBehindAll();
+
+        // then
+        assertThat(afterCommit).singleElement().extracting("productIds").asList().containsExactly(cold.getId());
+        assertThat(events).last().extracting("productIds").asList().containsExactly(hot.getId());
+    }
+
+    // Every buyer tries to buy one unit a few times, more than the stock in total
+    private int buyConcurrently(Product product) throws InterruptedException {
+        AtomicInteger sold = new AtomicInteger();
+        AtomicInteger unexpected = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> buyers = new ArrayList<>();
+        for (int i = 0; i < BUYERS; i++) {
+            buyers.add(new Thread(() -> {
+                awaitQuietly(start);
+                for (int attempt = 0; attempt < ATTEMPTS_PER_BUYER; attempt++) {
+                    try {
+                        transactionTemplate.executeWithoutResult(
+                                status -> stockReservationService.reserve(List.of(cartItem(product, 1))));
+                        sold.incrementAndGet();
+                    } catch (InsufficientStock e) {
+                        // Sold out
+                    } catch (RuntimeException e) {
+                        unexpected.incrementAndGet();
+                    }
+                }
+            }));
+        }
+        buyers.forEach(Thread::start);
+
+        start.countDown();
+        for (Thread buyer : buyers) {
+            buyer.join();
+        }
+
+        assertThat(unexpected).hasValue(0);
+        return sold.get();
+    }
+
+    private int stock(Product product) {
+        return jdbcTemplate.queryForObject("SELECT stock FROM products WHERE id = ?", Integer.class, product.getId());
+    }
+
+    private static Product product(String key, int stock) {
+        return new Product(0, "Product " + key, "product-" + key, "Cafea", "Lavazza", 15, stock, true, null, null);
+    }
+
+    private static CartItem cartItem(Product product, int quantity) {
+        return new CartItem(0, (short) quantity, null, product);
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
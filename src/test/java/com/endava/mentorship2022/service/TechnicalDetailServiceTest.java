@@ -1,6 +1,7 @@
 package com.endava.mentorship2022.service;
 
 import com.endava.mentorship2022.exception.TechnicalDetailNotFound;
+import com.endava.mentorship2022.model.Product;
 import com.endava.mentorship2022.model.TechnicalDetail;
 import com.endava.mentorship2022.repository.TechnicalDetailRepository;
 import org.junit.jupiter.api.BeforeEach;
@@ -9,6 +10,7 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
 import java.util.List;
 import java.util.Optional;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
@@ -25,11 +27,17 @@ public class TechnicalDetailServiceTest {
     @Mock
     private TechnicalDetailRepository technicalDetailRepository;
 
+    @Mock
+    private ProductCache productCache;
+
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
     private TechnicalDetailService technicalDetailService;
 
     @BeforeEach
     void setUp() {
-        technicalDetailService = new TechnicalDetailService(technicalDetailRepository);
+        technicalDetailService = new TechnicalDetailService(technicalDetailRepository, productCache, eventPublisher);
     }
 
     @Test
@@ -158,6 +166,22 @@ public class TechnicalDetailServiceTest {
         verify(technicalDetailRepository).deleteById(1L);
     }
 
+    @Test
+    void canInvalidateCachedProductOnDelete() {
+        TechnicalDetail technicalDetail1 = new TechnicalDetail(1L,
+                "TechDet 1",
+                "TechDet-1",
+                new Product(7L));
+
+        given(technicalDetailRepository.findById(1L)).willReturn(Optional.of(technicalDetail1));
+
+        // when
+        technicalDetailService.deleteByIdTechnicalDetail(1L);
+
+        // then
+        verify(productCache).invalidate(7L);
+    }
+
     @Test
     void willThrowTechnicalDetailNotFoundForDelete() {
         // given
@@ -1,9 +1,14 @@
 package com.endava.mentorship2022.service;
 
+import com.endava.mentorship2022.exception.UserAlreadyExists;
 import com.endava.mentorship2022.exception.UserNotFound;
 import com.endava.mentorship2022.model.Role;
 import com.endava.mentorship2022.model.User;
+import com.endava.mentorship2022.repository.KeysetPageQuery;
+import com.endava.mentorship2022.repository.RoleRepository;
 import com.endava.mentorship2022.repository.UserRepository;
+import com.endava.mentorship2022.security.PasswordHashingService;
+import com.endava.mentorship2022.security.UserDetailsCache;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -13,6 +18,7 @@ import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.Pageable;
+import org.springframework.transaction.PlatformTransactionManager;
 
 import java.time.LocalDate;
 import java.util.List;
@@ -21,6 +27,7 @@ import java.util.Set;
 
 import static com.endava.mentorship2022.model.UserStatus.ACTIVE;
 import static com.endava.mentorship2022.model.UserStatus.PENDING;
+import static java.util.concurrent.CompletableFuture.completedFuture;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.ArgumentMatchers.anyLong;
@@ -32,6 +39,21 @@ class UserServiceTests {
     @Mock
     private UserRepository userRepository;
 
+    @Mock
+    private KeysetPageQuery keysetPageQuery;
+
+    @Mock
+    private UserDetailsCache userDetailsCache;
+
+    @Mock
+    private PasswordHashingService passwordHashingService;
+
+    @Mock
+    private RoleRepository roleRepository;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
     @InjectMocks
     private UserService userService;
 
@@ -139,12 +161,36 @@ class UserServiceTests {
 
         when(userRepository.findById(anyLong())).thenReturn(Optional.of(userToUpdate));
         when(userRepository.save(userToUpdate)).thenReturn(newUser);
+        when(passwordHashingService.encode("updated")).thenReturn(completedFuture("updated-hash"));
 
         // when
-        User resultedUser = userService.update(anyLong(), newUser);
+        User resultedUser = userService.update(1L, newUser);
 
         //then
         assertThat(resultedUser).isEqualTo(newUser);
+        assertThat(userToUpdate.getPassword()).isEqualTo("updated-hash");
+        verify(userDetailsCache).invalidate("angel@gmail.com");
+        verify(userDetailsCache).invalidate("updated@gmail.com");
+    }
+
+    @Test
+    void shouldKeepThePasswordWhenNoneIsSent() {
+        // given
+        User userToUpdate = new User(1L, "Stanciu", "Angel", "angel@gmail.com", "stored-hash",
+                "Romania, Bucuresti, Strada Gabroveni 030089", "+40721058124", LocalDate.of(2010, 1, 1), ACTIVE,
+                Set.of(new Role("USER")));
+        User newUser = new User(null, "Stanciu", "Angel", "angel@gmail.com", " ", "Strada Noua 1", "+40721058124",
+                LocalDate.of(2010, 1, 1), null, null);
+        when(userRepository.findById(1L)).thenReturn(Optional.of(userToUpdate));
+        when(userRepository.save(userToUpdate)).thenReturn(userToUpdate);
+
+        // when
+        User resultedUser = userService.update(1L, newUser);
+
+        // then
+        assertThat(resultedUser.getPassword()).isEqualTo("stored-hash");
+        assertThat(resultedUser.getAddress()).isEqualTo("Strada Noua 1");
+        verifyNoInteractions(passwordHashingService);
     }
 
     @Test
@@ -192,6 +238,7 @@ class UserServiceTests {
 
         // then
         assertThat(resultedUser).isEqualTo(updatedUser);
+        verify(userDetailsCache).invalidate("angel@gmail.com");
     }
 
     @Test
@@ -209,13 +256,56 @@ class UserServiceTests {
                 Set.of(new Role("ADMIN"))
         );
         when(userRepository.save(user)).thenReturn(user);
+        when(passwordHashingService.encode("pass")).thenReturn(completedFuture("hash"));
 
         // when
         User actualUser = userService.save(user);
 
         // then
         assertThat(actualUser).isEqualTo(user);
+        assertThat(actualUser.getPassword()).isEqualTo("hash");
+
+    }
 
+    @Test
+    void shouldRegisterPendingUserWithUserRole() {
+        // given
+        Role userRole = new Role("USER");
+        User user = new User(7L,
+                "Gigel",
+                "Popescu",
+                "gigelp@gmail.com",
+                "pass",
+                "Str. Paltinului, Pitesti, Arges",
+                "0700112233",
+                LocalDate.now(),
+                ACTIVE,
+                Set.of(new Role("ADMIN"))
+        );
+        when(roleRepository.findByName("USER")).thenReturn(Optional.of(userRole));
+        when(passwordHashingService.encode("pass")).thenReturn(completedFuture("hash"));
+        when(userRepository.save(user)).thenReturn(user);
+
+        // when
+        User actualUser = userService.register(user).join();
+
+        // then
+        assertThat(actualUser.getId()).isNull();
+        assertThat(actualUser.getStatus()).isEqualTo(PENDING);
+        assertThat(actualUser.getRoles()).containsExactly(userRole);
+        assertThat(actualUser.getPassword()).isEqualTo("hash");
+    }
+
+    @Test
+    void shouldNotRegisterExistingEmail() {
+        // given
+        User user = new User(null, "Gigel", "Popescu", "gigelp@gmail.com", "pass", "Str. Paltinului, Pitesti, Arges",
+                "0700112233", LocalDate.now(), PENDING, Set.of());
+        when(userRepository.findUserByEmail("gigelp@gmail.com")).thenReturn(user);
+
+        // then
+        assertThrows(UserAlreadyExists.class, () -> userService.register(user));
+        verify(userRepository, never()).save(any());
     }
 
     @Test
@@ -240,6 +330,7 @@ class UserServiceTests {
 
         // then
         verify(userRepository).deleteById(1L);
+        verify(userDetailsCache).invalidate("gigelp@gmail.com");
 
     }
 
@@ -0,0 +1,82 @@
+package com.endava.mentorship2022.stock;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class StripedStockCounterTest {
+
+    @Test
+    void shouldReserveAcrossStripes() {
+        // given
+        StripedStockCounter counter = new StripedStockCounter(10, 4);
+
+        // when
+        boolean reserved = counter.tryReserve(9);
+
+        // then
+        assertThat(reserved).isTrue();
+        assertThat(counter.available()).isEqualTo(1);
+        assertThat(counter.tryReserve(2)).isFalse();
+        assertThat(counter.available()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldReleaseAndAdjust() {
+        // given
+        StripedStockCounter counter = new StripedStockCounter(5, 4);
+        counter.tryReserve(4);
+
+        // when
+        counter.release(2);
+        int notRemoved = counter.adjust(-5);
+
+        // then
+        assertThat(notRemoved).isEqualTo(2);
+        assertThat(counter.available()).isZero();
+        assertThat(counter.adjust(7)).isZero();
+        assertThat(counter.available()).isEqualTo(7);
+    }
+
+    @Test
+    void shouldNeverSellMoreThanTheStock() throws InterruptedException {
+        // given
+        StripedStockCounter counter = new StripedStockCounter(10_000, 8);
+        AtomicInteger sold = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 64; i++) {
+            int quantity = i % 3 + 1;
+            threads.add(new Thread(() -> {
+                awaitQuietly(start);
+                while (counter.tryReserve(quantity)) {
+                    sold.addAndGet(quantity);
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+
+        // when
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        // then
+        assertThat(sold.get() + counter.available()).isEqualTo(10_000);
+        assertThat(counter.available()).isLessThan(3);
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}